@@ -0,0 +1,108 @@
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.swing.SwingUtilities;
+
+/**
+ * Ejecuta el acceso a datos fuera del EDT y entrega los resultados en el EDT
+ *
+ * Un único hilo dedicado serializa las operaciones sobre ModeloECG, que no
+ * es seguro entre hilos, en el orden en que se solicitan. Las operaciones
+ * con clave reemplazan a la anterior de la misma clave: si todavía no
+ * empezó se cancela, y si ya terminó su resultado no llega a la vista
+ */
+public class AccesoDatosAsync {
+    private static final long TIEMPO_CIERRE_MS = 5000;
+    private static final Executor EDT = SwingUtilities::invokeLater;
+
+    private final ExecutorService ejecutor;
+    private final Map<String, CompletableFuture<?>> vigentes = new ConcurrentHashMap<>();
+
+    public AccesoDatosAsync() {
+        this.ejecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ecg-datos");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Ejecuta la tarea en el hilo de datos
+     */
+    public <T> CompletableFuture<T> ejecutar(Supplier<T> tarea) {
+        return CompletableFuture.supplyAsync(tarea, ejecutor);
+    }
+
+    public CompletableFuture<Void> ejecutar(Runnable tarea) {
+        return CompletableFuture.runAsync(tarea, ejecutor);
+    }
+
+    /**
+     * Ejecuta la tarea y entrega el resultado en el EDT
+     * @param alFallar recibe el mensaje del error (en el EDT); puede ser null
+     */
+    public <T> CompletableFuture<T> consultar(Supplier<T> tarea, Consumer<T> alTerminar, Consumer<String> alFallar) {
+        CompletableFuture<T> f = ejecutar(tarea);
+        f.whenCompleteAsync((resultado, error) -> entregar(f, null, resultado, error, alTerminar, alFallar), EDT);
+        return f;
+    }
+
+    /**
+     * Como consultar, pero cancela la operación anterior con la misma clave
+     * (por ejemplo, al seleccionar otro paciente antes de que termine la carga)
+     */
+    public <T> CompletableFuture<T> consultarUnica(String clave, Supplier<T> tarea,
+                                                   Consumer<T> alTerminar, Consumer<String> alFallar) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        CompletableFuture<?> anterior = vigentes.put(clave, f);
+        if (anterior != null) anterior.cancel(false);
+        // Se registra antes de encolar para que una respuesta rápida ya la encuentre vigente
+        ejecutor.execute(() -> {
+            if (f.isDone()) return;
+            try {
+                f.complete(tarea.get());
+            } catch (Throwable e) {
+                f.completeExceptionally(e);
+            }
+        });
+        f.whenCompleteAsync((resultado, error) -> entregar(f, clave, resultado, error, alTerminar, alFallar), EDT);
+        return f;
+    }
+
+    private <T> void entregar(CompletableFuture<T> f, String clave, T resultado, Throwable error,
+                              Consumer<T> alTerminar, Consumer<String> alFallar) {
+        if (clave != null && !vigentes.remove(clave, f)) return;
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (error instanceof CancellationException) return;
+        if (error != null) {
+            System.err.println("Error en acceso a datos: " + error.getMessage());
+            if (alFallar != null) alFallar.accept(error.getMessage());
+            return;
+        }
+        if (alTerminar != null) alTerminar.accept(resultado);
+    }
+
+    /**
+     * Deja terminar las operaciones encoladas y detiene el hilo
+     */
+    public void cerrar() {
+        ejecutor.shutdown();
+        try {
+            if (!ejecutor.awaitTermination(TIEMPO_CIERRE_MS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Error cerrando acceso a datos: operaciones pendientes descartadas");
+                ejecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ejecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,678 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Banco de pruebas de rendimiento de los caminos calientes, sin dependencias
+ *
+ * Sigue el esquema de JMH: cada caso se mide en un JVM propio (fork), con
+ * iteraciones de calentamiento descartadas y luego iteraciones de medición
+ * de duración fija; el resultado de cada operación se acumula y se publica
+ * en un campo volátil para que el JIT no elimine el trabajo. Informa ns por
+ * operación con el error del intervalo de confianza del 99,9 % y ns por
+ * elemento (muestra, fila, latido...)
+ *
+ * Uso: java -cp .:sqlite-jdbc.jar BenchmarkECG [filtro] [-w 5] [-i 5] [-t 1000]
+ *      [-f 1] [-csv resultados.csv] [-base benchmarks-base.csv] [-tolerancia 0.15]
+ * Con -base, un caso más lento que la línea base más la tolerancia se marca
+ * como REGRESIÓN y el proceso termina con código 1
+ */
+public class BenchmarkECG {
+    private static final String PREFIJO_RESULTADO = "RESULTADO|";
+    // Duración mínima de un tramo entre lecturas del reloj, para no medir System.nanoTime()
+    private static final long TRAMO_MINIMO_NANOS = 200_000;
+
+    private static volatile double sumidero;
+
+    /**
+     * Caso de prueba: preparar y liberar quedan fuera de la medición
+     */
+    abstract static class Caso {
+        final String nombre;
+        final int elementos;
+        final String elemento;
+
+        Caso(String nombre, int elementos, String elemento) {
+            this.nombre = nombre;
+            this.elementos = elementos;
+            this.elemento = elemento;
+        }
+
+        void preparar() throws Exception {}
+
+        /** Una operación; el resultado se consume para evitar código muerto */
+        abstract double operacion() throws Exception;
+
+        void liberar() throws Exception {}
+    }
+
+    /**
+     * Estadística de un caso sobre todas sus iteraciones medidas
+     */
+    static final class Resultado {
+        final String nombre;
+        final double media;
+        final double error;
+        final double minimo;
+        final double maximo;
+        final double porElemento;
+        final String elemento;
+
+        Resultado(String nombre, double media, double error, double minimo, double maximo,
+                  double porElemento, String elemento) {
+            this.nombre = nombre;
+            this.media = media;
+            this.error = error;
+            this.minimo = minimo;
+            this.maximo = maximo;
+            this.porElemento = porElemento;
+            this.elemento = elemento;
+        }
+    }
+
+    private int calentamiento = 5;
+    private int iteraciones = 5;
+    private long duracionMs = 1000;
+    private int forks = 1;
+    private String filtro = "";
+    private String archivoCsv;
+    private String archivoBase;
+    private double tolerancia = 0.15;
+
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+        BenchmarkECG banco = new BenchmarkECG();
+        boolean hijo = banco.leerArgumentos(args);
+        if (hijo) {
+            banco.ejecutarHijo();
+            return;
+        }
+        System.exit(banco.ejecutar());
+    }
+
+    /** @return true si este proceso es un fork que mide un solo caso */
+    private boolean leerArgumentos(String[] args) {
+        boolean hijo = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-w": calentamiento = Integer.parseInt(args[++i]); break;
+                case "-i": iteraciones = Integer.parseInt(args[++i]); break;
+                case "-t": duracionMs = Long.parseLong(args[++i]); break;
+                case "-f": forks = Integer.parseInt(args[++i]); break;
+                case "-csv": archivoCsv = args[++i]; break;
+                case "-base": archivoBase = args[++i]; break;
+                case "-tolerancia": tolerancia = Double.parseDouble(args[++i]); break;
+                case "--hijo": hijo = true; break;
+                default: filtro = args[i];
+            }
+        }
+        return hijo;
+    }
+
+    // ============================================
+    // PROCESO PRINCIPAL
+    // ============================================
+
+    private int ejecutar() throws Exception {
+        List<Resultado> resultados = new ArrayList<>();
+        System.out.printf("Calentamiento %d x %d ms, medición %d x %d ms, %d fork(s)%n%n",
+            calentamiento, duracionMs, iteraciones, duracionMs, forks);
+        System.out.printf("%-34s %14s %12s %12s  %s%n", "Caso", "ns/op", "± error", "ns/elem", "elemento");
+        for (Caso c : casos()) {
+            if (!c.nombre.contains(filtro)) continue;
+            List<Double> medidas = new ArrayList<>();
+            if (forks <= 0) {
+                medidas.addAll(medir(c));
+            } else {
+                for (int f = 0; f < forks; f++) medidas.addAll(medirEnFork(c.nombre));
+            }
+            if (medidas.isEmpty()) {
+                System.out.printf("%-34s %14s%n", c.nombre, "ERROR");
+                continue;
+            }
+            Resultado r = resumir(c, medidas);
+            resultados.add(r);
+            System.out.printf("%-34s %14.1f %12.1f %12.2f  %s%n", r.nombre, r.media, r.error, r.porElemento, r.elemento);
+        }
+        if (archivoCsv != null) escribirCsv(resultados);
+        return archivoBase != null ? compararConBase(resultados) : 0;
+    }
+
+    /**
+     * Mide el caso en un JVM nuevo con el mismo classpath; así el perfil del
+     * JIT de un caso no contamina al siguiente
+     */
+    private List<Double> medirEnFork(String nombre) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> comando = new ArrayList<>(List.of(java, "-Djava.awt.headless=true", "-Dfile.encoding=UTF-8",
+            "-Decg.metricas.intervalo=0", "-cp", System.getProperty("java.class.path"), BenchmarkECG.class.getName(),
+            "--hijo", "-w", String.valueOf(calentamiento), "-i", String.valueOf(iteraciones),
+            "-t", String.valueOf(duracionMs), nombre));
+        Process p = new ProcessBuilder(comando).redirectErrorStream(true).start();
+        List<Double> medidas = new ArrayList<>();
+        List<String> salida = new ArrayList<>();
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (linea.startsWith(PREFIJO_RESULTADO + nombre + "|")) {
+                    medidas.add(Double.parseDouble(linea.substring(linea.lastIndexOf('|') + 1)));
+                } else {
+                    salida.add(linea);
+                }
+            }
+        }
+        if (p.waitFor() != 0 || medidas.isEmpty()) {
+            System.err.println("Error en el fork de " + nombre + ":");
+            salida.forEach(System.err::println);
+        }
+        return medidas;
+    }
+
+    private void ejecutarHijo() throws Exception {
+        for (Caso c : casos()) {
+            if (!c.nombre.equals(filtro)) continue;
+            for (double ns : medir(c)) {
+                System.out.println(PREFIJO_RESULTADO + c.nombre + "|" + ns);
+            }
+            return;
+        }
+        throw new IllegalArgumentException("Caso inexistente: " + filtro);
+    }
+
+    // ============================================
+    // MEDICIÓN
+    // ============================================
+
+    /**
+     * @return ns por operación de cada iteración medida
+     */
+    private List<Double> medir(Caso c) throws Exception {
+        c.preparar();
+        try {
+            long porTramo = calibrar(c);
+            for (int i = 0; i < calentamiento; i++) iteracion(c, porTramo);
+            List<Double> medidas = new ArrayList<>();
+            for (int i = 0; i < iteraciones; i++) medidas.add(iteracion(c, porTramo));
+            return medidas;
+        } finally {
+            c.liberar();
+        }
+    }
+
+    /** Operaciones por tramo para que cada lectura del reloj cubra al menos TRAMO_MINIMO_NANOS */
+    private static long calibrar(Caso c) throws Exception {
+        long n = 1;
+        while (true) {
+            long inicio = System.nanoTime();
+            double acumulado = 0;
+            for (long k = 0; k < n; k++) acumulado += c.operacion();
+            sumidero = acumulado;
+            if (System.nanoTime() - inicio >= TRAMO_MINIMO_NANOS || n >= 1L << 30) return n;
+            n *= 2;
+        }
+    }
+
+    private double iteracion(Caso c, long porTramo) throws Exception {
+        long duracion = duracionMs * 1_000_000L;
+        long operaciones = 0;
+        double acumulado = 0;
+        long inicio = System.nanoTime();
+        long transcurrido;
+        do {
+            for (long k = 0; k < porTramo; k++) acumulado += c.operacion();
+            operaciones += porTramo;
+            transcurrido = System.nanoTime() - inicio;
+        } while (transcurrido < duracion);
+        sumidero = acumulado;
+        return (double) transcurrido / operaciones;
+    }
+
+    private static Resultado resumir(Caso c, List<Double> medidas) {
+        int n = medidas.size();
+        double suma = 0, minimo = Double.MAX_VALUE, maximo = 0;
+        for (double m : medidas) {
+            suma += m;
+            minimo = Math.min(minimo, m);
+            maximo = Math.max(maximo, m);
+        }
+        double media = suma / n;
+        double cuadrados = 0;
+        for (double m : medidas) cuadrados += (m - media) * (m - media);
+        double error = n > 1 ? tStudent999(n - 1) * Math.sqrt(cuadrados / (n - 1)) / Math.sqrt(n) : Double.NaN;
+        return new Resultado(c.nombre, media, error, minimo, maximo, media / c.elementos, c.elemento);
+    }
+
+    /** t de Student bilateral al 99,9 % (conservador entre los valores tabulados) */
+    private static double tStudent999(int gradosLibertad) {
+        int[] gl = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 15, 20, 30};
+        double[] t = {636.6, 31.60, 12.92, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587, 4.073, 3.850, 3.646};
+        for (int i = gl.length - 1; i >= 0; i--) {
+            if (gradosLibertad >= gl[i]) return gradosLibertad > 30 ? 3.291 : t[i];
+        }
+        return t[0];
+    }
+
+    // ============================================
+    // LÍNEA BASE
+    // ============================================
+
+    private void escribirCsv(List<Resultado> resultados) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(Paths.get(archivoCsv), StandardCharsets.UTF_8))) {
+            w.println("caso,ns_op,error,minimo,maximo,ns_elemento,elemento");
+            for (Resultado r : resultados) {
+                w.printf("%s,%.1f,%.1f,%.1f,%.1f,%.3f,%s%n", r.nombre, r.media, r.error, r.minimo, r.maximo,
+                    r.porElemento, r.elemento);
+            }
+        }
+        System.out.println("\n✓ Resultados guardados en " + archivoCsv);
+    }
+
+    private int compararConBase(List<Resultado> resultados) throws IOException {
+        Map<String, Double> base = new LinkedHashMap<>();
+        for (String linea : Files.readAllLines(Paths.get(archivoBase), StandardCharsets.UTF_8)) {
+            String[] campos = linea.split(",");
+            if (campos.length < 2 || campos[0].equals("caso")) continue;
+            base.put(campos[0], Double.parseDouble(campos[1]));
+        }
+        int regresiones = 0;
+        System.out.printf("%nComparación con %s (tolerancia %.0f %%)%n", archivoBase, tolerancia * 100);
+        for (Resultado r : resultados) {
+            Double anterior = base.get(r.nombre);
+            if (anterior == null) continue;
+            double cambio = r.media / anterior - 1;
+            boolean regresion = cambio > tolerancia;
+            if (regresion) regresiones++;
+            System.out.printf("%-34s %+7.1f %%%s%n", r.nombre, cambio * 100, regresion ? "  REGRESIÓN" : "");
+        }
+        return regresiones > 0 ? 1 : 0;
+    }
+
+    // ============================================
+    // CASOS
+    // ============================================
+
+    private static final int FRECUENCIA = 250;
+    private static final int LOTE = 256;
+
+    static List<Caso> casos() {
+        List<Caso> casos = new ArrayList<>();
+
+        casos.add(new Caso("generador.muestras_1000", 1000, "muestra") {
+            GeneradorSenalECG generador;
+            final double[] destino = new double[1000];
+
+            @Override void preparar() { generador = new GeneradorSenalECG(FRECUENCIA, 72, 1); }
+
+            @Override double operacion() {
+                generador.generar(destino, destino.length);
+                return destino[999];
+            }
+        });
+
+        casos.add(new Caso("filtro.lote_256", LOTE, "muestra") {
+            FiltroECG filtro;
+            double[] senal;
+            final double[] lote = new double[LOTE];
+            int pos;
+
+            @Override void preparar() {
+                filtro = FiltroECG.desdeSistema(FRECUENCIA);
+                senal = senal(FRECUENCIA, 60, 72);
+            }
+
+            @Override double operacion() {
+                pos = copiarCiclico(senal, pos, lote);
+                filtro.procesar(lote, LOTE);
+                return lote[LOTE - 1];
+            }
+        });
+
+        for (int frecuencia : new int[] {FRECUENCIA, 1000}) {
+            int ventana = frecuencia * 10;
+            casos.add(new Caso("detector.ventana_10s_" + frecuencia + "Hz", ventana, "muestra") {
+                DetectorQRS detector;
+                double[] senal;
+                int pos;
+
+                @Override void preparar() {
+                    detector = new DetectorQRS(frecuencia);
+                    senal = senal(frecuencia, 60, 72);
+                }
+
+                @Override double operacion() {
+                    int latidos = 0;
+                    for (int i = 0; i < ventana; i++) {
+                        if (detector.procesar(senal[pos])) latidos++;
+                        if (++pos == senal.length) pos = 0;
+                    }
+                    return latidos + detector.getBPM();
+                }
+            });
+        }
+
+        casos.add(new Caso("eventos.latido_fa", 1, "latido") {
+            MotorEventos motor;
+            final double[] rr = new double[4096];
+            int pos;
+
+            @Override void preparar() {
+                motor = new MotorEventos(-1, evento -> sumidero = evento.getValor());
+                java.util.Random aleatorio = new java.util.Random(3);
+                for (int i = 0; i < rr.length; i++) rr[i] = 500 + aleatorio.nextInt(500);
+            }
+
+            @Override double operacion() {
+                pos = (pos + 1) & (rr.length - 1);
+                return motor.procesarLatido(rr[pos], pos, 1.0);
+            }
+        });
+
+        casos.add(new Caso("vfc.latido", 1, "latido") {
+            MotorVFC motor;
+            final double[] rr = new double[4096];
+            int pos;
+            double instante;
+
+            @Override void preparar() {
+                motor = new MotorVFC(-1, null);
+                java.util.Random aleatorio = new java.util.Random(3);
+                for (int i = 0; i < rr.length; i++) rr[i] = 850 + 40 * aleatorio.nextGaussian();
+            }
+
+            @Override double operacion() {
+                pos = (pos + 1) & (rr.length - 1);
+                instante += rr[pos];
+                return motor.procesarLatido(rr[pos], instante) ? 1 : 0;
+            }
+        });
+
+        casos.add(new Caso("vfc.espectro_5min", 1, "ventana") {
+            final double[] instantes = new double[350];
+            final double[] nn = new double[350];
+
+            @Override void preparar() {
+                java.util.Random aleatorio = new java.util.Random(3);
+                double t = 0;
+                for (int i = 0; i < nn.length; i++) {
+                    nn[i] = 850 + 30 * Math.sin(2 * Math.PI * 0.25 * t / 1000) + 5 * aleatorio.nextGaussian();
+                    t += nn[i];
+                    instantes[i] = t;
+                }
+            }
+
+            @Override double operacion() {
+                return MotorVFC.potenciaBandas(instantes, nn)[1];
+            }
+        });
+
+        casos.add(new Caso("pipeline.ingesta_lote_256", LOTE, "muestra") {
+            PipelineSesion pipeline;
+            double[] senal;
+            final double[] lote = new double[LOTE];
+            int pos;
+
+            @Override void preparar() {
+                // Sin sesión: sin persistencia ni alarmas, sólo el camino de la señal
+                pipeline = new PipelineSesion(-1, -1, FRECUENCIA, null);
+                senal = senal(FRECUENCIA, 60, 72);
+            }
+
+            @Override double operacion() {
+                for (int i = 0; i < LOTE; i++) {
+                    pipeline.recibir(senal[pos]);
+                    if (++pos == senal.length) pos = 0;
+                }
+                return pipeline.procesarPendientes(lote);
+            }
+        });
+
+        casos.add(new Caso("buffer.leer_ventana_600", PipelineSesion.VENTANA_SENAL, "muestra") {
+            final BufferCircularECG buffer = new BufferCircularECG(PipelineSesion.VENTANA_SENAL);
+            final BufferCircularECG.Instantanea destino = new BufferCircularECG.Instantanea(PipelineSesion.VENTANA_SENAL);
+
+            @Override void preparar() {
+                for (double v : senal(FRECUENCIA, 4, 72)) buffer.agregar(v);
+            }
+
+            @Override double operacion() {
+                buffer.agregar(0);
+                buffer.leerUltimas(destino);
+                return destino.get(destino.getLongitud() - 1);
+            }
+        });
+
+        casos.add(new Caso("bloque.comprimir_1s", FRECUENCIA, "muestra") {
+            double[] senal;
+
+            @Override void preparar() { senal = senal(FRECUENCIA, 1, 72); }
+
+            @Override double operacion() {
+                return BloqueECG.comprimir(1, 0, FRECUENCIA, senal, FRECUENCIA, BloqueECG.ESCALA_DEFECTO).getDatos().length;
+            }
+        });
+
+        casos.add(new Caso("bloque.descomprimir_1s", FRECUENCIA, "muestra") {
+            BloqueECG bloque;
+            final double[] destino = new double[FRECUENCIA];
+
+            @Override void preparar() {
+                bloque = BloqueECG.comprimir(1, 0, FRECUENCIA, senal(FRECUENCIA, 1, 72), FRECUENCIA,
+                    BloqueECG.ESCALA_DEFECTO);
+            }
+
+            @Override double operacion() {
+                return bloque.descomprimir(destino, 0);
+            }
+        });
+
+        casos.add(new CasoBaseDatos("db.lectura_individual", 1, "fila") {
+            @Override double operacion() {
+                // Una transacción por lectura, como la inserción fila a fila original
+                return db.insertarLoteLecturasECG(sesiones, valores, instantes, 1);
+            }
+        });
+
+        casos.add(new CasoBaseDatos("db.lectura_lote_500", EscritorLecturasECG.TAMANO_LOTE_DEFECTO, "fila") {
+            @Override double operacion() {
+                return db.insertarLoteLecturasECG(sesiones, valores, instantes, EscritorLecturasECG.TAMANO_LOTE_DEFECTO);
+            }
+        });
+
+        casos.add(new CasoBaseDatos("db.bloques_16x1s", 16 * FRECUENCIA, "muestra") {
+            final List<BloqueECG> bloques = new ArrayList<>();
+            final List<BloqueECG> lote = new ArrayList<>();
+            long inicioMs;
+
+            @Override void preparar() throws Exception {
+                super.preparar();
+                double[] senal = senal(FRECUENCIA, 16, 72);
+                for (int b = 0; b < 16; b++) {
+                    double[] segundo = java.util.Arrays.copyOfRange(senal, b * FRECUENCIA, (b + 1) * FRECUENCIA);
+                    bloques.add(BloqueECG.comprimir(idSesion, b * 1000L, FRECUENCIA, segundo, FRECUENCIA,
+                        BloqueECG.ESCALA_DEFECTO));
+                }
+            }
+
+            @Override double operacion() {
+                // Cada lote avanza 16 s, como la grabación, para que el resumen cierre cubetas y teselas
+                lote.clear();
+                for (BloqueECG b : bloques) lote.add(desplazado(b, inicioMs));
+                inicioMs += 16_000;
+                return db.insertarLoteBloquesECG(lote);
+            }
+        });
+
+        casos.add(new Caso("piramide.agregar_1s", FRECUENCIA, "muestra") {
+            BloqueECG bloque;
+            PiramideECG.Acumulador acumulador;
+            long inicioMs;
+            int agregados;
+
+            @Override void preparar() {
+                bloque = BloqueECG.comprimir(1, 0, FRECUENCIA, senal(FRECUENCIA, 1, 72), FRECUENCIA,
+                    BloqueECG.ESCALA_DEFECTO);
+                acumulador = new PiramideECG.Acumulador(1, null);
+            }
+
+            @Override double operacion() {
+                acumulador.agregar(desplazado(bloque, inicioMs));
+                inicioMs += 1000;
+                // Se vacía una vez por lote del escritor, como en insertarLoteBloquesECG
+                return ++agregados % 16 == 0 ? acumulador.vaciar().size() : 0;
+            }
+        });
+
+        casos.add(new Caso("importacion.csv_60s", FRECUENCIA * 60, "muestra") {
+            Path archivo;
+            ImportadorECG importador;
+            ImportadorECG.Registro registro;
+
+            @Override void preparar() throws Exception {
+                // Tiempo y señal en mV, como una exportación de PhysioNet
+                StringBuilder csv = new StringBuilder("tiempo,ECG\n");
+                double[] senal = senal(FRECUENCIA, 60, 72);
+                for (int i = 0; i < senal.length; i++) {
+                    csv.append(String.format("%.4f,%.3f%n", (double) i / FRECUENCIA, senal[i]));
+                }
+                archivo = Files.createTempFile("ecg-benchmark", ".csv");
+                Files.writeString(archivo, csv);
+                importador = new ImportadorECG(null, 1);
+                registro = importador.abrir(archivo);
+            }
+
+            @Override double operacion() throws Exception {
+                // Todo el archivo es un trozo: sólo la decodificación, sin base
+                return registro.decodificar(registro.desde, registro.hasta).cantidad;
+            }
+
+            @Override void liberar() throws Exception {
+                registro.close();
+                importador.cerrar();
+                Files.deleteIfExists(archivo);
+            }
+        });
+
+        for (boolean barrido : new boolean[] {false, true}) {
+            // Un cuadro a 30 cuadros/s recibe FRECUENCIA / 30 muestras nuevas
+            int nuevas = FRECUENCIA / PanelOsciloscopio.CUADROS_POR_SEGUNDO_DEFECTO;
+            casos.add(new Caso(barrido ? "vista.barrido_cuadro_1200x400" : "vista.desplazar_cuadro_1200x400", 1, "cuadro") {
+                PanelOsciloscopio panel;
+                BufferCircularECG buffer;
+                BufferedImage imagen;
+                Graphics2D g;
+                double[] senal;
+                int pos;
+
+                @Override void preparar() {
+                    buffer = new BufferCircularECG(PipelineSesion.VENTANA_SENAL);
+                    senal = senal(FRECUENCIA, 60, 72);
+                    for (int i = 0; i < PipelineSesion.VENTANA_SENAL; i++) buffer.agregar(senal[i]);
+                    panel = new PanelOsciloscopio();
+                    panel.setModoBarrido(barrido);
+                    panel.setBuffer(buffer);
+                    panel.setSize(1200, 400);
+                    imagen = new BufferedImage(1200, 400, BufferedImage.TYPE_INT_RGB);
+                    g = imagen.createGraphics();
+                    panel.paint(g);
+                }
+
+                @Override double operacion() {
+                    for (int i = 0; i < nuevas; i++) {
+                        buffer.agregar(senal[pos]);
+                        if (++pos == senal.length) pos = 0;
+                    }
+                    // Barrido: sólo la franja nueva sobre la capa; desplazar: el cuadro completo
+                    if (barrido) panel.refrescarSiHayDatos();
+                    else panel.paint(g);
+                    return panel.getMuestrasVisibles();
+                }
+
+                @Override void liberar() { g.dispose(); }
+            });
+        }
+
+        casos.add(new Caso("metricas.histograma_registrar", 1, "valor") {
+            final Histograma histograma = Histograma.latencia("benchmark");
+            long valor;
+
+            @Override double operacion() {
+                valor = (valor * 6364136223846793005L + 1442695040888963407L);
+                histograma.registrar(valor >>> 40);
+                return valor;
+            }
+        });
+
+        return casos;
+    }
+
+    /**
+     * Base SQLite temporal con un paciente y una sesión; se borra al liberar
+     */
+    abstract static class CasoBaseDatos extends Caso {
+        Path directorio;
+        DatabaseManager db;
+        int idSesion;
+        final int[] sesiones = new int[EscritorLecturasECG.TAMANO_LOTE_DEFECTO];
+        final double[] valores = new double[EscritorLecturasECG.TAMANO_LOTE_DEFECTO];
+        final long[] instantes = new long[EscritorLecturasECG.TAMANO_LOTE_DEFECTO];
+
+        CasoBaseDatos(String nombre, int elementos, String elemento) {
+            super(nombre, elementos, elemento);
+        }
+
+        @Override void preparar() throws Exception {
+            directorio = Files.createTempDirectory("ecg-benchmark");
+            db = new DatabaseManager(PerfilAlmacenamiento.desdeSistema(), directorio.resolve("ecg.db").toString());
+            int idPaciente = db.insertarPaciente("Benchmark", 40, 170.0);
+            idSesion = db.crearSesionMonitoreo(idPaciente, "benchmark");
+            double[] senal = senal(FRECUENCIA, 2, 72);
+            long ahora = System.currentTimeMillis();
+            for (int i = 0; i < valores.length; i++) {
+                sesiones[i] = idSesion;
+                valores[i] = senal[i];
+                instantes[i] = ahora + i * 1000L / FRECUENCIA;
+            }
+        }
+
+        @Override void liberar() throws Exception {
+            db.cerrarConexion();
+            try (var archivos = Files.list(directorio)) {
+                for (Path p : (Iterable<Path>) archivos::iterator) Files.deleteIfExists(p);
+            }
+            Files.deleteIfExists(directorio);
+        }
+    }
+
+    /** Ritmo sinusal con interferencia de red, siempre la misma semilla */
+    private static double[] senal(int frecuencia, int segundos, double bpm) {
+        GeneradorSenalECG generador = new GeneradorSenalECG(frecuencia, bpm, 42);
+        generador.setInterferenciaRed(50, 0.05);
+        return generador.generar(frecuencia * segundos);
+    }
+
+    /** El mismo bloque corrido en el tiempo, sin volver a comprimirlo */
+    private static BloqueECG desplazado(BloqueECG b, long desplazamientoMs) {
+        return new BloqueECG(b.getIdSesion(), b.getInicioMs() + desplazamientoMs, b.getFrecuencia(), b.getNumMuestras(),
+            b.getEscala(), b.getMinimo(), b.getMaximo(), b.getDatos());
+    }
+
+    private static int copiarCiclico(double[] origen, int pos, double[] destino) {
+        for (int i = 0; i < destino.length; i++) {
+            destino[i] = origen[pos];
+            if (++pos == origen.length) pos = 0;
+        }
+        return pos;
+    }
+}
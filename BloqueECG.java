@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * Bloque de muestras consecutivas de una sesión (fila de Bloque_ECG)
+ *
+ * Las muestras se cuantizan con la escala del bloque (0.0001 conserva la
+ * precisión de DECIMAL(10,4)) y se guardan como diferencias sucesivas en
+ * zigzag + varint: una señal ECG suave ocupa 1-3 bytes por muestra en vez de
+ * una fila completa con id, índice y timestamp
+ */
+public final class BloqueECG {
+    public static final double ESCALA_DEFECTO = 0.0001;
+    public static final int SEGUNDOS_BLOQUE = 1;
+
+    private final int idSesion;
+    private final long inicioMs;
+    private final int frecuencia;
+    private final int numMuestras;
+    private final double escala;
+    private final double minimo;
+    private final double maximo;
+    private final byte[] datos;
+
+    public BloqueECG(int idSesion, long inicioMs, int frecuencia, int numMuestras,
+                     double escala, double minimo, double maximo, byte[] datos) {
+        this.idSesion = idSesion;
+        this.inicioMs = inicioMs;
+        this.frecuencia = frecuencia;
+        this.numMuestras = numMuestras;
+        this.escala = escala;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.datos = datos;
+    }
+
+    // ============================================
+    // CODIFICACIÓN
+    // ============================================
+
+    public static BloqueECG comprimir(int idSesion, long inicioMs, int frecuencia,
+                                      double[] muestras, int cantidad, double escala) {
+        byte[] salida = new byte[cantidad * 10];
+        int pos = 0;
+        long anterior = 0;
+        double minimo = Double.POSITIVE_INFINITY;
+        double maximo = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < cantidad; i++) {
+            double v = muestras[i];
+            if (v < minimo) minimo = v;
+            if (v > maximo) maximo = v;
+            long q = Math.round(v / escala);
+            pos = escribirVarint(salida, pos, zigzag(q - anterior));
+            anterior = q;
+        }
+        return new BloqueECG(idSesion, inicioMs, frecuencia, cantidad, escala,
+                             minimo, maximo, Arrays.copyOf(salida, pos));
+    }
+
+    /**
+     * Reconstruye las muestras del bloque en destino a partir de desde
+     * @return número de muestras escritas
+     */
+    public int descomprimir(double[] destino, int desde) {
+        int pos = 0;
+        long q = 0;
+        for (int i = 0; i < numMuestras; i++) {
+            long crudo = 0;
+            int desplazamiento = 0;
+            byte b;
+            do {
+                if (pos >= datos.length || desplazamiento > 63) {
+                    throw new IllegalStateException("Bloque ECG corrupto (sesión " + idSesion + ")");
+                }
+                b = datos[pos++];
+                crudo |= (long) (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b < 0);
+            q += (crudo >>> 1) ^ -(crudo & 1);
+            destino[desde + i] = q * escala;
+        }
+        return numMuestras;
+    }
+
+    public double[] descomprimir() {
+        double[] muestras = new double[numMuestras];
+        descomprimir(muestras, 0);
+        return muestras;
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static int escribirVarint(byte[] salida, int pos, long v) {
+        while ((v & ~0x7FL) != 0) {
+            salida[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        salida[pos++] = (byte) v;
+        return pos;
+    }
+
+    // ============================================
+    // ACCESO
+    // ============================================
+
+    /** Instante de la muestra i según la frecuencia del bloque */
+    public long instanteMuestra(int i) {
+        return inicioMs + i * 1000L / frecuencia;
+    }
+
+    public long getFinMs() { return instanteMuestra(numMuestras); }
+    public int getIdSesion() { return idSesion; }
+    public long getInicioMs() { return inicioMs; }
+    public int getFrecuencia() { return frecuencia; }
+    public int getNumMuestras() { return numMuestras; }
+    public double getEscala() { return escala; }
+    public double getMinimo() { return minimo; }
+    public double getMaximo() { return maximo; }
+    public byte[] getDatos() { return datos; }
+}
@@ -0,0 +1,115 @@
+import java.lang.invoke.VarHandle;
+
+/**
+ * Búfer circular de muestras ECG respaldado por un double[]
+ * Un único productor escribe sin bloqueos; varios lectores obtienen
+ * instantáneas consistentes validando el número de secuencia (estilo seqlock)
+ */
+public class BufferCircularECG {
+    private final int ventana;
+    private final double[] muestras;
+    private final int mascara;
+    // Total de muestras publicadas; la muestra con secuencia s vive en muestras[s & mascara]
+    private volatile long secuencia;
+    // System.nanoTime() de la última publicación de un lote (para medir la latencia hasta la pantalla)
+    private volatile long escrituraNanos;
+
+    /**
+     * @param ventana número máximo de muestras que un lector puede pedir
+     */
+    public BufferCircularECG(int ventana) {
+        if (ventana <= 0) {
+            throw new IllegalArgumentException("Ventana inválida: " + ventana);
+        }
+        this.ventana = ventana;
+        // El doble de margen evita que el productor alcance a un lector que copia la ventana completa
+        int capacidad = Integer.highestOneBit(ventana * 2 - 1) << 1;
+        this.muestras = new double[capacidad];
+        this.mascara = capacidad - 1;
+    }
+
+    // ============================================
+    // PRODUCTOR (un solo hilo)
+    // ============================================
+
+    public long agregar(double valor) {
+        long s = secuencia;
+        muestras[(int) (s & mascara)] = valor;
+        secuencia = s + 1;
+        return s + 1;
+    }
+
+    /** Marca el instante en que el productor terminó de publicar un lote */
+    public void marcarEscritura(long nanos) {
+        escrituraNanos = nanos;
+    }
+
+    // ============================================
+    // LECTORES (cualquier hilo)
+    // ============================================
+
+    public long getSecuencia() { return secuencia; }
+
+    public long getEscrituraNanos() { return escrituraNanos; }
+
+    public int getCapacidad() { return muestras.length; }
+
+    public int getVentana() { return ventana; }
+
+    public int tamano() {
+        return (int) Math.min(secuencia, ventana);
+    }
+
+    /**
+     * Copia en el destino las últimas muestras (como máximo la ventana)
+     */
+    public void leerUltimas(Instantanea destino) {
+        leerDesde(0, destino);
+    }
+
+    /**
+     * Copia en el destino las muestras con secuencia >= desde, limitadas
+     * a la ventana y a la capacidad del destino (se conservan las más recientes)
+     */
+    public void leerDesde(long desde, Instantanea destino) {
+        double[] datos = destino.datos;
+        while (true) {
+            long fin = secuencia;
+            long inicio = Math.max(desde, fin - Math.min(ventana, datos.length));
+            if (inicio > fin) inicio = fin;
+            int n = (int) (fin - inicio);
+            for (int i = 0; i < n; i++) {
+                datos[i] = muestras[(int) ((inicio + i) & mascara)];
+            }
+            // Las lecturas del arreglo no pueden reordenarse después de la validación
+            VarHandle.acquireFence();
+            long actual = secuencia;
+            // El productor sólo pisa la muestra s al escribir s + capacidad
+            if (actual - inicio < muestras.length) {
+                destino.longitud = n;
+                destino.secuenciaFin = fin;
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Copia privada de un lector; se reutiliza entre lecturas para no generar basura
+     */
+    public static final class Instantanea {
+        private final double[] datos;
+        private int longitud;
+        private long secuenciaFin;
+
+        public Instantanea(int capacidad) {
+            this.datos = new double[capacidad];
+        }
+
+        public double get(int i) { return datos[i]; }
+        public double[] getDatos() { return datos; }
+        public int getLongitud() { return longitud; }
+        public long getSecuenciaFin() { return secuenciaFin; }
+        public long getSecuenciaInicio() { return secuenciaFin - longitud; }
+    }
+}
@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal de baja latencia para los eventos de severidad ALTA o CRITICA
+ *
+ * Los eventos prioritarios no esperan el lote del escritor masivo: un hilo de
+ * prioridad máxima bloqueado sobre una cola acotada los entrega, en este
+ * orden, a la vista (aviso no modal), al tópico MQTT de alarmas y a la base
+ * por una conexión propia con synchronous = FULL. Las alarmas que se juntan
+ * mientras se escribe se avisan todas antes del siguiente fsync. Cada etapa
+ * mide su latencia desde la detección y se compara con un presupuesto
+ */
+public class CanalAlarmas {
+    public static final String TOPICO_ALARMAS = "ecg/alarmas/";
+    public static final long PRESUPUESTO_MS = 100;
+    private static final int CAPACIDAD = 256;
+    private static final long ESPERA_CIERRE_MS = 2000;
+
+    /**
+     * Recibe cada alarma en el hilo del canal; debe volver enseguida (por
+     * ejemplo, con invokeLater) y llamar a confirmarEntregaUI al mostrarla
+     */
+    public interface OyenteAlarmas {
+        void onAlarma(Alarma alarma);
+    }
+
+    /**
+     * Publica un mensaje (lo implementa el lector MQTT conectado)
+     */
+    public interface Publicador {
+        void publicar(String topico, String mensaje);
+    }
+
+    /**
+     * Evento prioritario con el paciente y la severidad de su Tipo_Evento
+     */
+    public static final class Alarma {
+        private final MotorEventos.Evento evento;
+        private final int idPaciente;
+        private final String severidad;
+
+        Alarma(MotorEventos.Evento evento, int idPaciente, String severidad) {
+            this.evento = evento;
+            this.idPaciente = idPaciente;
+            this.severidad = severidad;
+        }
+
+        public MotorEventos.Evento getEvento() { return evento; }
+        public int getIdPaciente() { return idPaciente; }
+        public String getSeveridad() { return severidad; }
+        public boolean isCritica() { return "CRITICA".equals(severidad); }
+
+        /** Carga JSON publicada en el tópico de alarmas */
+        public String aJson() {
+            return "{\"paciente\":" + idPaciente
+                + ",\"sesion\":" + evento.getIdSesion()
+                + ",\"tipo\":\"" + escapar(evento.getTipo())
+                + "\",\"severidad\":\"" + severidad
+                + "\",\"instante_ms\":" + evento.getInstanteMs()
+                + ",\"descripcion\":\"" + escapar(evento.getDescripcion()) + "\"}";
+        }
+
+        private static String escapar(String s) {
+            return s.replace("\\", "\\\\").replace("\"", "\\\"");
+        }
+
+        @Override
+        public String toString() {
+            return severidad + " - " + evento.getTipo() + " (paciente " + idPaciente + "): " + evento.getDescripcion();
+        }
+    }
+
+    /**
+     * Latencias de una etapa desde la detección, en nanosegundos
+     */
+    static final class Latencias {
+        private final String etapa;
+        private long cantidad;
+        private long suma;
+        private long maxima;
+        private long ultima;
+        private long excedidas;
+
+        Latencias(String etapa) {
+            this.etapa = etapa;
+        }
+
+        /** @return true si se excedió el presupuesto */
+        synchronized boolean registrar(long nanos) {
+            cantidad++;
+            suma += nanos;
+            ultima = nanos;
+            maxima = Math.max(maxima, nanos);
+            boolean excedida = nanos > TimeUnit.MILLISECONDS.toNanos(PRESUPUESTO_MS);
+            if (excedida) excedidas++;
+            return excedida;
+        }
+
+        synchronized long getCantidad() { return cantidad; }
+        synchronized long getMaximaNanos() { return maxima; }
+        synchronized long getExcedidas() { return excedidas; }
+
+        @Override
+        public synchronized String toString() {
+            if (cantidad == 0) return etapa + " -";
+            return String.format("%s media %.2f ms, máx %.2f ms, última %.2f ms, %d/%d fuera de presupuesto",
+                etapa, suma / 1e6 / cantidad, maxima / 1e6, ultima / 1e6, excedidas, cantidad);
+        }
+    }
+
+    private final DatabaseManager db;
+    private final Map<String, String> severidades;
+    private final BlockingQueue<Alarma> cola = new ArrayBlockingQueue<>(CAPACIDAD);
+    private final Thread hilo;
+    private volatile boolean activo = true;
+    private volatile OyenteAlarmas oyente;
+    private volatile Publicador publicador;
+
+    private final Latencias latenciaUI = new Latencias("vista");
+    private final Latencias latenciaMQTT = new Latencias("MQTT");
+    private final Latencias latenciaDisco = new Latencias("disco");
+    // Los shards emiten en paralelo
+    private final AtomicLong emitidas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private volatile long fallosDisco;
+
+    public CanalAlarmas(DatabaseManager db) {
+        this.db = db;
+        this.severidades = db.obtenerSeveridadesEventos();
+        this.hilo = new Thread(this::atender, "CanalAlarmas");
+        hilo.setDaemon(true);
+        hilo.setPriority(Thread.MAX_PRIORITY);
+        hilo.start();
+    }
+
+    /**
+     * Indica si el tipo de evento viaja por este canal (severidad ALTA o CRITICA)
+     */
+    public boolean esPrioritario(String tipo) {
+        String severidad = severidades.get(tipo);
+        return "CRITICA".equals(severidad) || "ALTA".equals(severidad);
+    }
+
+    /**
+     * Encola un evento prioritario sin bloquear al llamador (hilo del shard)
+     * @return false si el evento no es prioritario o la cola está llena; el
+     *         llamador lo registra entonces por la vía normal
+     */
+    public boolean emitir(MotorEventos.Evento evento, int idPaciente) {
+        if (!activo || !esPrioritario(evento.getTipo())) return false;
+        if (!cola.offer(new Alarma(evento, idPaciente, severidades.get(evento.getTipo())))) {
+            rechazadas.incrementAndGet();
+            return false;
+        }
+        emitidas.incrementAndGet();
+        return true;
+    }
+
+    // ============================================
+    // ENTREGA (hilo del canal)
+    // ============================================
+
+    private void atender() {
+        List<Alarma> tanda = new ArrayList<>();
+        List<MotorEventos.Evento> persistir = new ArrayList<>();
+        while (activo) {
+            try {
+                tanda.add(cola.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            // Las que llegaron mientras tanto se avisan antes de esperar al disco
+            cola.drainTo(tanda);
+            for (Alarma a : tanda) notificar(a);
+            for (Alarma a : tanda) publicar(a);
+            for (Alarma a : tanda) {
+                // Un pipeline sin sesión muestra y publica, pero no tiene dónde persistir
+                if (a.getEvento().getIdSesion() > 0) persistir.add(a.getEvento());
+            }
+            if (!persistir.isEmpty()) persistir(tanda, persistir);
+            tanda.clear();
+            persistir.clear();
+        }
+    }
+
+    private void notificar(Alarma a) {
+        OyenteAlarmas o = oyente;
+        if (o == null) return;
+        try {
+            o.onAlarma(a);
+        } catch (RuntimeException e) {
+            System.err.println("Error notificando alarma: " + e.getMessage());
+        }
+    }
+
+    private void publicar(Alarma a) {
+        Publicador p = publicador;
+        if (p == null || a.getIdPaciente() < 0) return;
+        try {
+            p.publicar(TOPICO_ALARMAS + a.getIdPaciente(), a.aJson());
+            registrar(latenciaMQTT, a);
+        } catch (RuntimeException e) {
+            System.err.println("Error publicando alarma: " + e.getMessage());
+        }
+    }
+
+    private void persistir(List<Alarma> tanda, List<MotorEventos.Evento> eventos) {
+        if (db.insertarEventosDurables(eventos)) {
+            for (Alarma a : tanda) {
+                if (a.getEvento().getIdSesion() > 0) registrar(latenciaDisco, a);
+            }
+            return;
+        }
+        // Sin la conexión de alarmas quedan al menos en el lote del escritor
+        fallosDisco += eventos.size();
+        for (MotorEventos.Evento e : eventos) db.registrarEvento(e);
+    }
+
+    /**
+     * La vista llama a este método (en el EDT) cuando el aviso ya está visible
+     */
+    public void confirmarEntregaUI(Alarma a) {
+        registrar(latenciaUI, a);
+    }
+
+    private void registrar(Latencias latencias, Alarma a) {
+        long nanos = System.nanoTime() - a.getEvento().getDetectadoNanos();
+        if (latencias.registrar(nanos)) {
+            System.err.printf("Advertencia: alarma entregada a %s en %.1f ms (presupuesto %d ms): %s%n",
+                latencias.etapa, nanos / 1e6, PRESUPUESTO_MS, a);
+        }
+    }
+
+    // ============================================
+    // CONFIGURACIÓN Y CIERRE
+    // ============================================
+
+    public void setOyente(OyenteAlarmas oyente) { this.oyente = oyente; }
+    public void setPublicador(Publicador publicador) { this.publicador = publicador; }
+
+    /**
+     * Detiene el hilo y persiste por la vía durable las alarmas que queden
+     */
+    public void cerrar() {
+        activo = false;
+        hilo.interrupt();
+        try {
+            hilo.join(ESPERA_CIERRE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Alarma> pendientes = new ArrayList<>();
+        cola.drainTo(pendientes);
+        List<MotorEventos.Evento> eventos = new ArrayList<>();
+        for (Alarma a : pendientes) {
+            if (a.getEvento().getIdSesion() > 0) eventos.add(a.getEvento());
+        }
+        if (!eventos.isEmpty()) persistir(pendientes, eventos);
+        System.out.println("✓ Canal de alarmas detenido: " + resumen());
+    }
+
+    Latencias getLatenciaUI() { return latenciaUI; }
+    Latencias getLatenciaMQTT() { return latenciaMQTT; }
+    Latencias getLatenciaDisco() { return latenciaDisco; }
+
+    public long getEmitidas() { return emitidas.get(); }
+    public long getRechazadas() { return rechazadas.get(); }
+
+    public String resumen() {
+        return emitidas.get() + " alarmas (" + rechazadas.get() + " por vía normal, " + fallosDisco + " fallos de disco); "
+            + latenciaUI + "; " + latenciaMQTT + "; " + latenciaDisco;
+    }
+}
@@ -0,0 +1,658 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente MQTT 3.1.1 no bloqueante sobre SocketChannel/Selector
+ * Soporta CONNECT, SUBSCRIBE, PUBLISH (QoS 0/1), PINGREQ y reconexión con
+ * espera exponencial. Las publicaciones recibidas se entregan como una vista
+ * sobre el búfer de lectura, sin copiar la carga útil
+ */
+public class ClienteMQTT {
+    // Tipos de paquete MQTT 3.1.1
+    private static final int CONNECT = 1;
+    private static final int CONNACK = 2;
+    private static final int PUBLISH = 3;
+    private static final int PUBACK = 4;
+    private static final int SUBSCRIBE = 8;
+    private static final int SUBACK = 9;
+    private static final int PINGREQ = 12;
+    private static final int PINGRESP = 13;
+    private static final int DISCONNECT = 14;
+
+    private static final int TAMANO_LECTURA = 64 * 1024;
+    private static final int TAMANO_MAXIMO_PAQUETE = 1 << 20;
+    private static final int KEEP_ALIVE_DEFECTO_S = 30;
+    private static final long ESPERA_CONNACK_MS = 10000;
+    private static final long BACKOFF_INICIAL_MS = 500;
+    private static final long BACKOFF_MAXIMO_MS = 30000;
+    private static final int MAX_PENDIENTES_QOS1 = 1000;
+
+    private enum Estado { DESCONECTADO, CONECTANDO, ESPERANDO_CONNACK, CONECTADO }
+
+    /**
+     * Eventos del cliente; se invocan desde el hilo de red y no deben bloquear
+     */
+    public interface OyenteMQTT {
+        void onConectado();
+        void onConexionPerdida(String motivo);
+        void onPublicacion(Publicacion publicacion);
+    }
+
+    private final String host;
+    private final int puerto;
+    private final String idCliente;
+    private final int keepAliveSegundos;
+    private final OyenteMQTT oyente;
+
+    private volatile boolean ejecutando;
+    private volatile Estado estado = Estado.DESCONECTADO;
+    private Thread hiloRed;
+    private Selector selector;
+    private SocketChannel canal;
+    private SelectionKey clave;
+
+    private ByteBuffer lectura = ByteBuffer.allocateDirect(TAMANO_LECTURA);
+    private final ArrayDeque<ByteBuffer> colaEscritura = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<ByteBuffer> salida = new ConcurrentLinkedQueue<>();
+    private final Publicacion publicacion = new Publicacion();
+
+    private final List<Suscripcion> suscripciones = new CopyOnWriteArrayList<>();
+    // Publicaciones QoS 1 sin PUBACK, en orden de envío; protegidas por su propio monitor
+    private final LinkedHashMap<Integer, Pendiente> pendientesQoS1 = new LinkedHashMap<>();
+    private final IdentityHashMap<ByteBuffer, Pendiente> enVuelo = new IdentityHashMap<>();
+    private volatile boolean hayPendientesNuevos;
+    private boolean avisoDescarte;
+    private final AtomicInteger siguienteId = new AtomicInteger();
+
+    private long inicioConexionNanos;
+    private long ultimoEnvioNanos;
+    private long pingEnviadoNanos;
+    private boolean pingPendiente;
+    private long backoffMs = BACKOFF_INICIAL_MS;
+    private long proximoIntentoNanos;
+
+    // Contadores
+    private volatile long mensajesRecibidos;
+    private final AtomicLong mensajesPublicados = new AtomicLong();
+    private volatile long reconexiones;
+    private final AtomicLong descartadosQoS1 = new AtomicLong();
+
+    public ClienteMQTT(String host, int puerto, String idCliente, OyenteMQTT oyente) {
+        this(host, puerto, idCliente, KEEP_ALIVE_DEFECTO_S, oyente);
+    }
+
+    /**
+     * @param keepAliveSegundos intervalo de keep-alive; 0 lo desactiva (MQTT 3.1.1)
+     */
+    public ClienteMQTT(String host, int puerto, String idCliente, int keepAliveSegundos, OyenteMQTT oyente) {
+        if (keepAliveSegundos < 0 || keepAliveSegundos > 0xFFFF) {
+            throw new IllegalArgumentException("Keep-alive fuera de rango (0-65535 s): " + keepAliveSegundos);
+        }
+        this.host = host;
+        this.puerto = puerto;
+        this.idCliente = idCliente;
+        this.keepAliveSegundos = keepAliveSegundos;
+        this.oyente = oyente;
+    }
+
+    // ============================================
+    // API PÚBLICA
+    // ============================================
+
+    public synchronized void iniciar() throws IOException {
+        if (ejecutando) return;
+        selector = Selector.open();
+        ejecutando = true;
+        hiloRed = new Thread(this::ejecutar, "ClienteMQTT-" + idCliente);
+        hiloRed.setDaemon(true);
+        hiloRed.start();
+    }
+
+    /**
+     * Envía DISCONNECT (si hay sesión) y detiene el hilo de red
+     */
+    public synchronized void detener() {
+        if (!ejecutando) return;
+        ejecutando = false;
+        selector.wakeup();
+        try {
+            hiloRed.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Registra una suscripción; se reenvía automáticamente en cada reconexión
+     */
+    public void suscribir(String topico, int qos) {
+        Suscripcion s = new Suscripcion(topico, Math.min(qos, 1));
+        suscripciones.add(s);
+        if (estado == Estado.CONECTADO) {
+            encolarSalida(paqueteSubscribe(List.of(s)));
+        }
+    }
+
+    /**
+     * Publica un mensaje. Con QoS 1 el mensaje se conserva hasta recibir PUBACK
+     * y se reenvía tras una reconexión; si se acumulan más de MAX_PENDIENTES_QOS1
+     * se descarta el más antiguo
+     * @return false si el mensaje QoS 0 no pudo enviarse por falta de conexión
+     */
+    public boolean publicar(String topico, byte[] carga, int qos, boolean retener) {
+        if (qos == 0 && estado != Estado.CONECTADO) return false;
+        int id = qos > 0 ? nuevoIdPaquete() : 0;
+        ByteBuffer paquete = paquetePublish(topico.getBytes(StandardCharsets.UTF_8), carga, 0, carga.length,
+                                            Math.min(qos, 1), retener, id);
+        mensajesPublicados.incrementAndGet();
+        if (qos == 0) {
+            encolarSalida(paquete);
+            return true;
+        }
+        // El hilo de red envía los QoS 1 desde pendientesQoS1, en orden, al estar conectado
+        synchronized (pendientesQoS1) {
+            if (pendientesQoS1.size() >= MAX_PENDIENTES_QOS1) {
+                Iterator<Pendiente> it = pendientesQoS1.values().iterator();
+                it.next();
+                it.remove();
+                descartadosQoS1.incrementAndGet();
+                if (!avisoDescarte) {
+                    avisoDescarte = true;
+                    System.err.println("MQTT: más de " + MAX_PENDIENTES_QOS1
+                            + " publicaciones QoS 1 sin confirmar, se descartan las más antiguas");
+                }
+            }
+            pendientesQoS1.put(id, new Pendiente(paquete.array()));
+        }
+        hayPendientesNuevos = true;
+        Selector s = selector;
+        if (s != null) s.wakeup();
+        return true;
+    }
+
+    public boolean estaConectado() { return estado == Estado.CONECTADO; }
+
+    public long getMensajesRecibidos() { return mensajesRecibidos; }
+    public long getMensajesPublicados() { return mensajesPublicados.get(); }
+    public long getReconexiones() { return reconexiones; }
+    public long getDescartadosQoS1() { return descartadosQoS1.get(); }
+
+    public int getPendientesQoS1() {
+        synchronized (pendientesQoS1) {
+            return pendientesQoS1.size();
+        }
+    }
+
+    // ============================================
+    // HILO DE RED
+    // ============================================
+
+    private void ejecutar() {
+        while (ejecutando) {
+            try {
+                if (canal == null) {
+                    long espera = TimeUnit.NANOSECONDS.toMillis(proximoIntentoNanos - System.nanoTime());
+                    if (espera > 0) {
+                        selector.select(espera);
+                        continue;
+                    }
+                    abrirCanal();
+                }
+
+                selector.select(1000);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) continue;
+                    if (k.isConnectable()) terminarConexionTCP();
+                    if (k.isValid() && k.isReadable()) leer();
+                    if (k.isValid() && k.isWritable()) escribir();
+                }
+
+                if (canal != null) {
+                    revisarTiempos();
+                    if (estado == Estado.CONECTADO) {
+                        ByteBuffer b;
+                        while ((b = salida.poll()) != null) colaEscritura.add(b);
+                        if (hayPendientesNuevos) encolarPendientes();
+                    }
+                    escribir();
+                }
+            } catch (IOException | RuntimeException e) {
+                perderConexion(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            }
+        }
+        cerrarOrdenadamente();
+    }
+
+    private void abrirCanal() throws IOException {
+        estado = Estado.CONECTANDO;
+        inicioConexionNanos = System.nanoTime();
+        canal = SocketChannel.open();
+        canal.configureBlocking(false);
+        canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        clave = canal.register(selector, SelectionKey.OP_CONNECT);
+        if (canal.connect(new InetSocketAddress(host, puerto))) {
+            terminarConexionTCP();
+        }
+    }
+
+    private void terminarConexionTCP() throws IOException {
+        if (canal.isConnectionPending() && !canal.finishConnect()) return;
+        clave.interestOps(SelectionKey.OP_READ);
+        estado = Estado.ESPERANDO_CONNACK;
+        lectura.clear();
+        colaEscritura.clear();
+        enVuelo.clear();
+        synchronized (pendientesQoS1) {
+            for (Pendiente p : pendientesQoS1.values()) p.encolado = false;
+        }
+        colaEscritura.add(paqueteConnect());
+    }
+
+    private void perderConexion(String motivo) {
+        boolean estabaConectado = estado == Estado.CONECTADO;
+        cerrarCanal();
+        estado = Estado.DESCONECTADO;
+        if (!ejecutando) return;
+        proximoIntentoNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        System.err.println("MQTT: conexión perdida (" + motivo + "), reintento en " + backoffMs + " ms");
+        backoffMs = Math.min(backoffMs * 2, BACKOFF_MAXIMO_MS);
+        if (estabaConectado) {
+            reconexiones++;
+            try {
+                oyente.onConexionPerdida(motivo);
+            } catch (RuntimeException e) {
+                System.err.println("Error en oyente MQTT: " + e.getMessage());
+            }
+        }
+    }
+
+    private void cerrarCanal() {
+        if (clave != null) clave.cancel();
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException ignored) {
+            }
+        }
+        canal = null;
+        clave = null;
+        pingPendiente = false;
+    }
+
+    private void cerrarOrdenadamente() {
+        if (canal != null && estado == Estado.CONECTADO) {
+            try {
+                canal.write(ByteBuffer.wrap(new byte[]{(byte) (DISCONNECT << 4), 0}));
+            } catch (IOException ignored) {
+            }
+        }
+        cerrarCanal();
+        estado = Estado.DESCONECTADO;
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void revisarTiempos() throws IOException {
+        long ahora = System.nanoTime();
+        if (estado == Estado.ESPERANDO_CONNACK || estado == Estado.CONECTANDO) {
+            if (ahora - inicioConexionNanos > TimeUnit.MILLISECONDS.toNanos(ESPERA_CONNACK_MS)) {
+                throw new IOException("Tiempo de espera agotado conectando a " + host + ":" + puerto);
+            }
+            return;
+        }
+        if (keepAliveSegundos == 0) return;
+        long keepAlive = TimeUnit.SECONDS.toNanos(keepAliveSegundos);
+        if (pingPendiente) {
+            if (ahora - pingEnviadoNanos > keepAlive) {
+                throw new IOException("Sin respuesta a PINGREQ");
+            }
+        } else if (ahora - ultimoEnvioNanos >= keepAlive / 2) {
+            colaEscritura.add(ByteBuffer.wrap(new byte[]{(byte) (PINGREQ << 4), 0}));
+            pingPendiente = true;
+            pingEnviadoNanos = ahora;
+        }
+    }
+
+    // ============================================
+    // ESCRITURA
+    // ============================================
+
+    private void encolarSalida(ByteBuffer paquete) {
+        salida.add(paquete);
+        Selector s = selector;
+        if (s != null) s.wakeup();
+    }
+
+    /**
+     * Pasa a la cola de escritura las publicaciones QoS 1 aún no encoladas en
+     * esta conexión. Solo las que ya se escribieron alguna vez llevan DUP
+     */
+    private void encolarPendientes() {
+        hayPendientesNuevos = false;
+        synchronized (pendientesQoS1) {
+            for (Pendiente p : pendientesQoS1.values()) {
+                if (p.encolado) continue;
+                byte[] paquete = p.paquete;
+                if (p.escrito) {
+                    paquete = paquete.clone();
+                    paquete[0] |= 0x08;
+                }
+                ByteBuffer b = ByteBuffer.wrap(paquete);
+                p.encolado = true;
+                enVuelo.put(b, p);
+                colaEscritura.add(b);
+            }
+        }
+    }
+
+    private void escribir() throws IOException {
+        if (canal == null || !canal.isConnected()) return;
+        ByteBuffer b;
+        while ((b = colaEscritura.peek()) != null) {
+            canal.write(b);
+            if (b.hasRemaining()) break;
+            colaEscritura.poll();
+            ultimoEnvioNanos = System.nanoTime();
+            if (!enVuelo.isEmpty()) {
+                Pendiente p = enVuelo.remove(b);
+                if (p != null) p.escrito = true;
+            }
+        }
+        int interes = colaEscritura.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (clave.interestOps() != interes) clave.interestOps(interes);
+    }
+
+    // ============================================
+    // LECTURA Y DECODIFICACIÓN
+    // ============================================
+
+    private void leer() throws IOException {
+        if (canal.read(lectura) < 0) {
+            throw new IOException("Conexión cerrada por el broker");
+        }
+        lectura.flip();
+        int necesario = 0;
+        while (lectura.remaining() >= 2) {
+            int inicio = lectura.position();
+            int limite = lectura.limit();
+            int cabecera = lectura.get(inicio) & 0xFF;
+
+            // Longitud restante codificada como entero variable (1 a 4 bytes)
+            int largo = 0, multiplicador = 1, i = inicio + 1;
+            boolean completo = false;
+            while (i < limite && i - inicio <= 4) {
+                int b = lectura.get(i++) & 0xFF;
+                largo += (b & 0x7F) * multiplicador;
+                multiplicador <<= 7;
+                if ((b & 0x80) == 0) {
+                    completo = true;
+                    break;
+                }
+            }
+            if (!completo) {
+                if (i - inicio > 4) throw new IOException("Longitud de paquete malformada");
+                break;
+            }
+            if (largo > TAMANO_MAXIMO_PAQUETE) {
+                throw new IOException("Paquete demasiado grande: " + largo + " bytes");
+            }
+            int fin = i + largo;
+            if (fin > limite) {
+                necesario = fin - inicio;
+                break;
+            }
+            procesarPaquete(cabecera, i, largo);
+            lectura.position(fin);
+        }
+        lectura.compact();
+
+        // Agrandar el búfer si un solo paquete no cabe
+        if (necesario > lectura.capacity()) {
+            ByteBuffer mayor = ByteBuffer.allocateDirect(Integer.highestOneBit(necesario) << 1);
+            lectura.flip();
+            mayor.put(lectura);
+            lectura = mayor;
+        }
+    }
+
+    private void procesarPaquete(int cabecera, int inicio, int largo) throws IOException {
+        switch (cabecera >>> 4) {
+            case CONNACK:
+                int codigo = lectura.get(inicio + 1) & 0xFF;
+                if (codigo != 0) {
+                    throw new IOException("CONNACK rechazado, código " + codigo);
+                }
+                alConectar();
+                break;
+            case PUBLISH:
+                procesarPublish(cabecera, inicio, largo);
+                break;
+            case PUBACK:
+                synchronized (pendientesQoS1) {
+                    pendientesQoS1.remove(lectura.getShort(inicio) & 0xFFFF);
+                }
+                break;
+            case SUBACK:
+                for (int i = inicio + 2; i < inicio + largo; i++) {
+                    if ((lectura.get(i) & 0xFF) == 0x80) {
+                        System.err.println("MQTT: el broker rechazó una suscripción");
+                    }
+                }
+                break;
+            case PINGRESP:
+                pingPendiente = false;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void alConectar() {
+        estado = Estado.CONECTADO;
+        backoffMs = BACKOFF_INICIAL_MS;
+        ultimoEnvioNanos = System.nanoTime();
+        if (!suscripciones.isEmpty()) {
+            colaEscritura.add(paqueteSubscribe(suscripciones));
+        }
+        // Reenviar publicaciones QoS 1 sin confirmar en su orden original
+        synchronized (pendientesQoS1) {
+            avisoDescarte = false;
+        }
+        encolarPendientes();
+        System.out.println("✓ MQTT conectado a " + host + ":" + puerto);
+        try {
+            oyente.onConectado();
+        } catch (RuntimeException e) {
+            System.err.println("Error en oyente MQTT: " + e.getMessage());
+        }
+    }
+
+    private void procesarPublish(int cabecera, int inicio, int largo) {
+        int qos = (cabecera >>> 1) & 0x03;
+        int largoTopico = lectura.getShort(inicio) & 0xFFFF;
+        int p = inicio + 2 + largoTopico;
+        int idPaquete = 0;
+        if (qos > 0) {
+            idPaquete = lectura.getShort(p) & 0xFFFF;
+            p += 2;
+        }
+        publicacion.buffer = lectura;
+        publicacion.inicioTopico = inicio + 2;
+        publicacion.largoTopico = largoTopico;
+        publicacion.inicioCarga = p;
+        publicacion.largoCarga = inicio + largo - p;
+        publicacion.qos = qos;
+        mensajesRecibidos++;
+        try {
+            oyente.onPublicacion(publicacion);
+        } catch (RuntimeException e) {
+            System.err.println("Error procesando mensaje MQTT: " + e.getMessage());
+        }
+        if (qos == 1) {
+            colaEscritura.add(ByteBuffer.wrap(new byte[]{
+                (byte) (PUBACK << 4), 2, (byte) (idPaquete >>> 8), (byte) idPaquete}));
+        }
+    }
+
+    // ============================================
+    // CODIFICACIÓN DE PAQUETES
+    // ============================================
+
+    private int nuevoIdPaquete() {
+        // Los identificadores válidos van de 1 a 65535
+        return (siguienteId.getAndIncrement() & 0xFFFF) % 65535 + 1;
+    }
+
+    private static ByteBuffer nuevoPaquete(int cabecera, int largo) {
+        int bytesLargo = largo < 128 ? 1 : largo < 16384 ? 2 : largo < 2097152 ? 3 : 4;
+        ByteBuffer b = ByteBuffer.allocate(1 + bytesLargo + largo);
+        b.put((byte) cabecera);
+        int resto = largo;
+        do {
+            int digito = resto & 0x7F;
+            resto >>>= 7;
+            b.put((byte) (resto > 0 ? digito | 0x80 : digito));
+        } while (resto > 0);
+        return b;
+    }
+
+    private static void ponerCadena(ByteBuffer b, byte[] cadena) {
+        b.putShort((short) cadena.length);
+        b.put(cadena);
+    }
+
+    private ByteBuffer paqueteConnect() {
+        byte[] id = idCliente.getBytes(StandardCharsets.UTF_8);
+        byte[] protocolo = "MQTT".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer b = nuevoPaquete(CONNECT << 4, 2 + protocolo.length + 4 + 2 + id.length);
+        ponerCadena(b, protocolo);
+        b.put((byte) 4);            // nivel de protocolo 3.1.1
+        b.put((byte) 0x02);         // sesión limpia
+        b.putShort((short) keepAliveSegundos);
+        ponerCadena(b, id);
+        return b.flip();
+    }
+
+    private ByteBuffer paqueteSubscribe(List<Suscripcion> topicos) {
+        int largo = 2;
+        byte[][] nombres = new byte[topicos.size()][];
+        for (int i = 0; i < nombres.length; i++) {
+            nombres[i] = topicos.get(i).topico.getBytes(StandardCharsets.UTF_8);
+            largo += 2 + nombres[i].length + 1;
+        }
+        ByteBuffer b = nuevoPaquete((SUBSCRIBE << 4) | 0x02, largo);
+        b.putShort((short) nuevoIdPaquete());
+        for (int i = 0; i < nombres.length; i++) {
+            ponerCadena(b, nombres[i]);
+            b.put((byte) topicos.get(i).qos);
+        }
+        return b.flip();
+    }
+
+    static ByteBuffer paquetePublish(byte[] topico, byte[] carga, int desde, int largoCarga,
+                                     int qos, boolean retener, int idPaquete) {
+        int largo = 2 + topico.length + (qos > 0 ? 2 : 0) + largoCarga;
+        ByteBuffer b = nuevoPaquete((PUBLISH << 4) | (qos << 1) | (retener ? 1 : 0), largo);
+        ponerCadena(b, topico);
+        if (qos > 0) b.putShort((short) idPaquete);
+        b.put(carga, desde, largoCarga);
+        return b.flip();
+    }
+
+    private static final class Pendiente {
+        final byte[] paquete;
+        // Solo se modifican desde el hilo de red
+        boolean encolado;
+        boolean escrito;
+
+        Pendiente(byte[] paquete) {
+            this.paquete = paquete;
+        }
+    }
+
+    private static final class Suscripcion {
+        final String topico;
+        final int qos;
+
+        Suscripcion(String topico, int qos) {
+            this.topico = topico;
+            this.qos = qos;
+        }
+    }
+
+    // ============================================
+    // VISTA DE UNA PUBLICACIÓN RECIBIDA
+    // ============================================
+
+    /**
+     * Vista reutilizable sobre el búfer de lectura; sólo es válida durante
+     * la llamada a onPublicacion
+     */
+    public static final class Publicacion {
+        private ByteBuffer buffer;
+        private int inicioTopico, largoTopico;
+        private int inicioCarga, largoCarga;
+        private int qos;
+
+        public ByteBuffer getBuffer() { return buffer; }
+        public int getInicioCarga() { return inicioCarga; }
+        public int getLargoCarga() { return largoCarga; }
+        public int getQos() { return qos; }
+
+        public byte byteCarga(int i) {
+            return buffer.get(inicioCarga + i);
+        }
+
+        public boolean topicoEs(byte[] topico) {
+            if (topico.length != largoTopico) return false;
+            for (int i = 0; i < largoTopico; i++) {
+                if (buffer.get(inicioTopico + i) != topico[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Número al final del tópico (ecg/datos/17 → 17), o -1 si no termina en dígitos
+         */
+        public int sufijoNumericoTopico() {
+            int valor = 0, multiplicador = 1;
+            int i = inicioTopico + largoTopico - 1;
+            for (; i >= inicioTopico; i--) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9') break;
+                if (multiplicador > 100_000_000) return -1;
+                valor += (b - '0') * multiplicador;
+                multiplicador *= 10;
+            }
+            boolean hayDigitos = i < inicioTopico + largoTopico - 1;
+            return hayDigitos && i >= inicioTopico && buffer.get(i) == '/' ? valor : -1;
+        }
+
+        public String getTopico() {
+            byte[] b = new byte[largoTopico];
+            buffer.get(inicioTopico, b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+}
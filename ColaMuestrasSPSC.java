@@ -0,0 +1,154 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cola acotada sin bloqueos de un productor y un consumidor para muestras double
+ * El productor (hilo de red MQTT) nunca espera: si la cola está llena la muestra
+ * se rechaza y se contabiliza, de modo que la pérdida siempre es visible
+ */
+public class ColaMuestrasSPSC {
+    private final double[] datos;
+    private final int mascara;
+
+    // Índices monotónicos; la posición real es índice & mascara
+    private final AtomicLong escritura = new IndiceRelleno();
+    private final AtomicLong lectura = new IndiceRelleno();
+    // Estado privado de cada lado, separado para evitar compartir líneas de caché
+    private final LadoProductor productor = new LadoProductor();
+    private final LadoConsumidor consumidor = new LadoConsumidor();
+    private volatile boolean consumidorEsperando;
+
+    public ColaMuestrasSPSC(int capacidad) {
+        if (capacidad < 2) {
+            throw new IllegalArgumentException("Capacidad inválida: " + capacidad);
+        }
+        int potencia = Integer.highestOneBit(capacidad - 1) << 1;
+        this.datos = new double[potencia];
+        this.mascara = potencia - 1;
+    }
+
+    // ============================================
+    // PRODUCTOR (un solo hilo)
+    // ============================================
+
+    /**
+     * @return false si la cola está llena y la muestra se descartó
+     */
+    public boolean ofrecer(double valor) {
+        LadoProductor p = productor;
+        long w = p.escritura;
+        if (w - p.lecturaVista >= datos.length) {
+            p.lecturaVista = lectura.get();
+            if (w - p.lecturaVista >= datos.length) {
+                p.descartadas++;
+                return false;
+            }
+        }
+        datos[(int) (w & mascara)] = valor;
+        p.escritura = w + 1;
+        // Escritura volátil: publica la muestra y ordena la lectura de consumidorEsperando
+        escritura.set(w + 1);
+        p.aceptadas++;
+        // Muestreo periódico de la ocupación real para la marca máxima
+        if ((w & 63) == 0) {
+            p.lecturaVista = lectura.get();
+            int ocupacion = (int) (w + 1 - p.lecturaVista);
+            if (ocupacion > p.ocupacionMaxima) p.ocupacionMaxima = ocupacion;
+        }
+        if (consumidorEsperando) {
+            LockSupport.unpark(consumidor.hilo);
+        }
+        return true;
+    }
+
+    // ============================================
+    // CONSUMIDOR (un solo hilo)
+    // ============================================
+
+    /**
+     * Copia hasta max muestras en destino
+     * @return número de muestras drenadas (0 si la cola está vacía)
+     */
+    public int drenar(double[] destino, int max) {
+        LadoConsumidor c = consumidor;
+        long r = c.lectura;
+        if (r == c.escrituraVista) {
+            c.escrituraVista = escritura.get();
+            if (r == c.escrituraVista) return 0;
+        }
+        int n = (int) Math.min(max, c.escrituraVista - r);
+        for (int i = 0; i < n; i++) {
+            destino[i] = datos[(int) ((r + i) & mascara)];
+        }
+        c.lectura = r + n;
+        lectura.lazySet(r + n);
+        return n;
+    }
+
+    /**
+     * Estaciona al consumidor hasta que llegue una muestra o pase el tiempo indicado
+     */
+    public void esperar(long nanos) {
+        consumidor.hilo = Thread.currentThread();
+        consumidorEsperando = true;
+        if (escritura.get() == lectura.get()) {
+            LockSupport.parkNanos(this, nanos);
+        }
+        consumidorEsperando = false;
+    }
+
+    // ============================================
+    // CONTRAPRESIÓN Y MÉTRICAS
+    // ============================================
+
+    public int getCapacidad() { return datos.length; }
+
+    public int getOcupacion() {
+        return (int) (escritura.get() - lectura.get());
+    }
+
+    /** true cuando la cola supera el 75% de su capacidad */
+    public boolean estaSaturada() {
+        return getOcupacion() > datos.length - (datos.length >> 2);
+    }
+
+    // Lecturas aproximadas desde otros hilos; sólo el productor las modifica
+    public int getOcupacionMaxima() { return productor.ocupacionMaxima; }
+    public long getAceptadas() { return productor.aceptadas; }
+    public long getDescartadas() { return productor.descartadas; }
+
+    public String resumen() {
+        return getAceptadas() + " aceptadas, " + getDescartadas() + " descartadas, ocupación máxima "
+            + getOcupacionMaxima() + "/" + datos.length;
+    }
+
+    // ============================================
+    // RELLENO CONTRA FALSO COMPARTIDO
+    // ============================================
+
+    @SuppressWarnings("unused")
+    private static final class IndiceRelleno extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long r1, r2, r3, r4, r5, r6, r7;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class LadoProductor {
+        private long r0, r1, r2, r3, r4, r5, r6;
+        long escritura;
+        long lecturaVista;
+        long aceptadas;
+        long descartadas;
+        int ocupacionMaxima;
+        private long r7, r8, r9, r10, r11, r12, r13;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class LadoConsumidor {
+        private long r0, r1, r2, r3, r4, r5, r6;
+        long lectura;
+        long escrituraVista;
+        volatile Thread hilo;
+        private long r7, r8, r9, r10, r11, r12, r13;
+    }
+}
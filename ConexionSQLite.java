@@ -0,0 +1,75 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Conexión JDBC con caché LRU de sentencias preparadas
+ * No es segura entre hilos: la usa un solo hilo a la vez (la conexión de
+ * escritura bajo el monitor de DatabaseManager, las de lectura prestadas
+ * desde el pool)
+ */
+public class ConexionSQLite {
+    private final Connection conexion;
+    private final int maxSentencias;
+    private final LinkedHashMap<String, PreparedStatement> sentencias;
+    private long aciertos;
+    private long fallos;
+
+    public ConexionSQLite(Connection conexion, int maxSentencias) {
+        this.conexion = conexion;
+        this.maxSentencias = maxSentencias;
+        this.sentencias = new LinkedHashMap<>(maxSentencias * 2, 0.75f, true);
+    }
+
+    /**
+     * Devuelve la sentencia preparada para sql, reutilizándola si ya existe
+     * El llamador no debe cerrarla; sí debe cerrar sus ResultSet
+     */
+    public PreparedStatement preparar(String sql) throws SQLException {
+        PreparedStatement pstmt = sentencias.get(sql);
+        if (pstmt != null && !pstmt.isClosed()) {
+            aciertos++;
+            pstmt.clearParameters();
+            return pstmt;
+        }
+        fallos++;
+        pstmt = conexion.prepareStatement(sql);
+        sentencias.put(sql, pstmt);
+        if (sentencias.size() > maxSentencias) {
+            Iterator<Map.Entry<String, PreparedStatement>> it = sentencias.entrySet().iterator();
+            cerrarSilencioso(it.next().getValue());
+            it.remove();
+        }
+        return pstmt;
+    }
+
+    public Connection getConnection() {
+        return conexion;
+    }
+
+    public void cerrar() {
+        for (PreparedStatement pstmt : sentencias.values()) {
+            cerrarSilencioso(pstmt);
+        }
+        sentencias.clear();
+        try {
+            if (!conexion.isClosed()) conexion.close();
+        } catch (SQLException e) {
+            System.err.println("Error cerrando conexión: " + e.getMessage());
+        }
+    }
+
+    private static void cerrarSilencioso(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            // La sentencia se descarta de todos modos
+        }
+    }
+
+    public long getAciertos() { return aciertos; }
+    public long getFallos() { return fallos; }
+}
@@ -0,0 +1,117 @@
+import java.util.List;
+
+/**
+ * Filtros de una consulta de historial paginada por clave (keyset)
+ *
+ * El historial se recorre por sesión, de la más reciente a la más antigua;
+ * dentro de cada sesión primero la señal de Bloque_ECG (por inicio_ms y
+ * posición de la muestra) y luego las filas de Lectura_ECG (por id_lectura).
+ * Cada página parte del cursor de la anterior usando los índices, así que
+ * su costo no depende de cuántas lecturas haya antes
+ */
+public class ConsultaHistorial {
+    public static final int TAMANO_PAGINA_DEFECTO = 1000;
+
+    private final int idPaciente;
+    private int idSesion = -1;
+    private long desdeMs = Long.MIN_VALUE;
+    private long hastaMs = Long.MAX_VALUE;
+    private int tamanoPagina = TAMANO_PAGINA_DEFECTO;
+
+    /**
+     * @param idPaciente paciente a consultar, o -1 si se filtra sólo por sesión
+     */
+    public ConsultaHistorial(int idPaciente) {
+        this.idPaciente = idPaciente;
+    }
+
+    public static ConsultaHistorial deSesion(int idSesion) {
+        ConsultaHistorial c = new ConsultaHistorial(-1);
+        c.setIdSesion(idSesion);
+        return c;
+    }
+
+    public int getIdPaciente() { return idPaciente; }
+    public int getIdSesion() { return idSesion; }
+    public void setIdSesion(int idSesion) { this.idSesion = idSesion; }
+    public long getDesdeMs() { return desdeMs; }
+    public long getHastaMs() { return hastaMs; }
+    public int getTamanoPagina() { return tamanoPagina; }
+    public void setTamanoPagina(int tamanoPagina) { this.tamanoPagina = Math.max(1, tamanoPagina); }
+
+    /**
+     * Limita la consulta al intervalo [desdeMs, hastaMs) en ms desde época
+     */
+    public void setRango(long desdeMs, long hastaMs) {
+        this.desdeMs = desdeMs;
+        this.hastaMs = hastaMs;
+    }
+
+    // ============================================
+    // RECEPTOR SIN ASIGNACIONES
+    // ============================================
+
+    /**
+     * Recibe cada lectura del recorrido sin crear objetos intermedios
+     * idLectura es 0 para muestras que provienen de un bloque comprimido
+     */
+    public interface Receptor {
+        void recibir(int idSesion, int idLectura, long instanteMs, double valor, String tipoEvento);
+    }
+
+    // ============================================
+    // CURSOR
+    // ============================================
+
+    /**
+     * Posición inmutable dentro del recorrido; se obtiene de la página anterior
+     */
+    public static final class Cursor {
+        static final int FASE_SESION = 0;
+        static final int FASE_BLOQUES = 1;
+        static final int FASE_LECTURAS = 2;
+        static final int FASE_FIN = 3;
+
+        public static final Cursor INICIO = new Cursor(Integer.MAX_VALUE, FASE_SESION, Long.MAX_VALUE, -1);
+        static final Cursor FIN = new Cursor(Integer.MIN_VALUE, FASE_FIN, Long.MIN_VALUE, -1);
+
+        final int idSesion;
+        final int fase;
+        // inicio_ms del bloque (FASE_BLOQUES) o id_lectura (FASE_LECTURAS)
+        final long clave;
+        // Siguiente muestra a entregar dentro del bloque clave; -1 si el bloque terminó
+        final int indice;
+
+        Cursor(int idSesion, int fase, long clave, int indice) {
+            this.idSesion = idSesion;
+            this.fase = fase;
+            this.clave = clave;
+            this.indice = indice;
+        }
+
+        public boolean esFin() { return fase == FASE_FIN; }
+
+        @Override
+        public String toString() {
+            return esFin() ? "fin" : "sesión " + idSesion + ", fase " + fase + ", clave " + clave + ", muestra " + indice;
+        }
+    }
+
+    // ============================================
+    // PÁGINA
+    // ============================================
+
+    public static final class Pagina {
+        private final List<DatoHistorico> datos;
+        private final Cursor siguiente;
+
+        Pagina(List<DatoHistorico> datos, Cursor siguiente) {
+            this.datos = datos;
+            this.siguiente = siguiente;
+        }
+
+        public List<DatoHistorico> getDatos() { return datos; }
+        public Cursor getSiguiente() { return siguiente; }
+        public boolean hayMas() { return !siguiente.esFin(); }
+    }
+}
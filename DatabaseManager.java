@@ -1,19 +1,59 @@
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Gestor de Base de Datos para el Sistema ECG
  * Implementa operaciones CRUD cumpliendo con las 3 Formas Normales
+ *
+ * Las escrituras usan una única conexión dedicada (serializadas por el
+ * monitor de esta clase); las consultas toman prestada una conexión de un
+ * pool de lectura, de modo que el historial nunca espera a la ingesta.
+ * Las alarmas prioritarias tienen su propia conexión de escritura
  */
 public class DatabaseManager {
-    private static final String DB_URL = "jdbc:sqlite:ecg_database.db";
+    public static final String ARCHIVO_DEFECTO = "ecg_database.db";
+    private final String url;
+    private final PerfilAlmacenamiento perfil;
     private Connection connection;
+    private ConexionSQLite escritura;
+    private final BlockingQueue<ConexionSQLite> lectores;
+    private final List<ConexionSQLite> todosLectores = new ArrayList<>();
+    // Conexión propia de CanalAlarmas: no espera la cola del escritor masivo
+    private ConexionSQLite alarmas;
+    private final EscritorLecturasECG escritorLecturas;
+    // Pirámide de resúmenes en construcción por sesión (bajo el monitor)
+    private final Map<Integer, PiramideECG.Acumulador> piramides = new HashMap<>();
+    private static final Histograma RESUMEN_LOTE = MetricasECG.global().latencia("db.resumen_lote");
 
     public DatabaseManager() {
+        this(PerfilAlmacenamiento.desdeSistema());
+    }
+
+    public DatabaseManager(PerfilAlmacenamiento perfil) {
+        this(perfil, ARCHIVO_DEFECTO);
+    }
+
+    /**
+     * @param archivo ruta del archivo SQLite (se crea si no existe)
+     */
+    public DatabaseManager(PerfilAlmacenamiento perfil, String archivo) {
+        this.url = "jdbc:sqlite:" + archivo;
+        this.perfil = perfil;
+        this.lectores = new ArrayBlockingQueue<>(perfil.getConexionesLectura());
         conectar();
         inicializarBaseDatos();
+        abrirLectores();
+        abrirConexionAlarmas();
+        escritorLecturas = new EscritorLecturasECG(this);
+        escritorLecturas.iniciar();
     }
 
     // ============================================
@@ -23,8 +63,10 @@ public class DatabaseManager {
     private void conectar() {
         try {
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(DB_URL);
-            System.out.println("✓ Conexión a base de datos establecida");
+            connection = DriverManager.getConnection(url);
+            perfil.aplicarEscritura(connection);
+            escritura = new ConexionSQLite(connection, perfil.getSentenciasEnCache());
+            System.out.println("✓ Conexión a base de datos establecida: perfil " + perfil);
         } catch (ClassNotFoundException e) {
             System.err.println("ERROR: Driver SQLite no encontrado");
             System.err.println("Ejecuta: Descarga sqlite-jdbc-3.x.x.jar y agrégalo al classpath");
@@ -36,6 +78,7 @@ public class DatabaseManager {
     private void inicializarBaseDatos() {
         try {
             Statement stmt = connection.createStatement();
+            migrarEventos(stmt);
             
             // Leer y ejecutar el archivo schema.sql
             String schema = leerSchema();
@@ -62,6 +105,108 @@ public class DatabaseManager {
         }
     }
 
+    private void abrirLectores() {
+        if (connection == null) return;
+        try {
+            for (int i = 0; i < perfil.getConexionesLectura(); i++) {
+                Connection c = DriverManager.getConnection(url);
+                perfil.aplicarLectura(c);
+                ConexionSQLite lector = new ConexionSQLite(c, perfil.getSentenciasEnCache());
+                todosLectores.add(lector);
+                lectores.add(lector);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error abriendo conexiones de lectura: " + e.getMessage());
+        }
+    }
+
+    private void abrirConexionAlarmas() {
+        if (connection == null) return;
+        try {
+            Connection c = DriverManager.getConnection(url);
+            perfil.aplicarEscritura(c);
+            // Cada alarma confirmada llega al disco aunque el perfil relaje la sincronización
+            try (Statement stmt = c.createStatement()) {
+                stmt.execute("PRAGMA synchronous = FULL");
+            }
+            alarmas = new ConexionSQLite(c, perfil.getSentenciasEnCache());
+        } catch (SQLException e) {
+            System.err.println("Error abriendo conexión de alarmas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Presta una conexión de lectura; espera si todas están ocupadas
+     * @return null si el pool no pudo abrirse
+     */
+    private ConexionSQLite tomarLector() {
+        if (todosLectores.isEmpty()) return null;
+        try {
+            return lectores.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void devolverLector(ConexionSQLite lector) {
+        if (lector != null) lectores.add(lector);
+    }
+
+    private int ultimoIdInsertado() throws SQLException {
+        try (ResultSet rs = escritura.preparar("SELECT last_insert_rowid()").executeQuery()) {
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
+    /**
+     * Bases anteriores: Evento_Detectado exigía id_lectura y cada evento
+     * guardaba una lectura marcadora en Lectura_ECG. Se reconstruye la tabla
+     * con (id_sesion, instante_ms) y se borran las marcadoras de las sesiones
+     * con bloques, donde no hay otras lecturas
+     */
+    private void migrarEventos(Statement stmt) throws SQLException {
+        boolean existe = false;
+        boolean migrada = false;
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(Evento_Detectado)")) {
+            while (rs.next()) {
+                existe = true;
+                if ("instante_ms".equalsIgnoreCase(rs.getString("name"))) migrada = true;
+            }
+        }
+        if (!existe || migrada) return;
+        connection.setAutoCommit(false);
+        try {
+            stmt.execute("ALTER TABLE Evento_Detectado RENAME TO Evento_Detectado_anterior");
+            for (String sql : leerSchema().split(";")) {
+                if (sql.contains("CREATE TABLE IF NOT EXISTS Evento_Detectado")) stmt.execute(sql);
+            }
+            int eventos = stmt.executeUpdate("""
+                INSERT INTO Evento_Detectado (id_evento, id_sesion, instante_ms, id_lectura, id_tipo_evento, descripcion, timestamp)
+                SELECT e.id_evento, l.id_sesion,
+                       CAST((julianday(COALESCE(l.timestamp, e.timestamp)) - 2440587.5) * 86400000 AS INTEGER),
+                       CASE WHEN l.id_sesion IN (SELECT id_sesion FROM Bloque_ECG) THEN NULL ELSE e.id_lectura END,
+                       e.id_tipo_evento, e.descripcion, e.timestamp
+                FROM Evento_Detectado_anterior e
+                LEFT JOIN Lectura_ECG l ON l.id_lectura = e.id_lectura
+                """);
+            int marcadoras = stmt.executeUpdate("""
+                DELETE FROM Lectura_ECG
+                WHERE id_lectura IN (SELECT id_lectura FROM Evento_Detectado_anterior)
+                  AND id_sesion IN (SELECT id_sesion FROM Bloque_ECG)
+                """);
+            stmt.execute("DROP TABLE Evento_Detectado_anterior");
+            connection.commit();
+            System.out.println("✓ Evento_Detectado migrada: " + eventos + " eventos, "
+                + marcadoras + " lecturas marcadoras eliminadas");
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
     private String leerSchema() {
         // Schema SQL embebido para facilitar distribución
         return """
@@ -91,6 +236,30 @@ public class DatabaseManager {
                 FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
             );
             
+            CREATE TABLE IF NOT EXISTS Bloque_ECG (
+                id_bloque INTEGER PRIMARY KEY AUTOINCREMENT,
+                id_sesion INTEGER NOT NULL,
+                inicio_ms INTEGER NOT NULL,
+                frecuencia INTEGER NOT NULL,
+                num_muestras INTEGER NOT NULL,
+                escala REAL NOT NULL,
+                valor_min DECIMAL(10,4),
+                valor_max DECIMAL(10,4),
+                datos BLOB NOT NULL,
+                FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
+            );
+            
+            CREATE INDEX IF NOT EXISTS idx_bloque_sesion_inicio ON Bloque_ECG(id_sesion, inicio_ms);
+            
+            CREATE TABLE IF NOT EXISTS Resumen_ECG (
+                id_sesion INTEGER NOT NULL,
+                nivel INTEGER NOT NULL,
+                indice INTEGER NOT NULL,
+                datos BLOB NOT NULL,
+                PRIMARY KEY (id_sesion, nivel, indice),
+                FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
+            ) WITHOUT ROWID;
+            
             CREATE TABLE IF NOT EXISTS Tipo_Evento (
                 id_tipo_evento INTEGER PRIMARY KEY AUTOINCREMENT,
                 nombre VARCHAR(50) NOT NULL UNIQUE,
@@ -100,14 +269,20 @@ public class DatabaseManager {
             
             CREATE TABLE IF NOT EXISTS Evento_Detectado (
                 id_evento INTEGER PRIMARY KEY AUTOINCREMENT,
-                id_lectura INTEGER NOT NULL,
+                id_sesion INTEGER,
+                instante_ms INTEGER,
+                id_lectura INTEGER NULL,
                 id_tipo_evento INTEGER NOT NULL,
                 descripcion TEXT,
                 timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                CHECK (id_lectura IS NOT NULL OR (id_sesion IS NOT NULL AND instante_ms IS NOT NULL)),
+                FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE,
                 FOREIGN KEY (id_lectura) REFERENCES Lectura_ECG(id_lectura) ON DELETE CASCADE,
                 FOREIGN KEY (id_tipo_evento) REFERENCES Tipo_Evento(id_tipo_evento)
             );
             
+            CREATE INDEX IF NOT EXISTS idx_evento_sesion_instante ON Evento_Detectado(id_sesion, instante_ms);
+            
             CREATE TABLE IF NOT EXISTS Calculo_BPM (
                 id_calculo INTEGER PRIMARY KEY AUTOINCREMENT,
                 id_sesion INTEGER NOT NULL,
@@ -118,6 +293,28 @@ public class DatabaseManager {
                 FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
             );
             
+            CREATE TABLE IF NOT EXISTS Calculo_VFC (
+                id_calculo INTEGER PRIMARY KEY AUTOINCREMENT,
+                id_sesion INTEGER NOT NULL,
+                instante_ms INTEGER NOT NULL,
+                ventana_segundos REAL NOT NULL,
+                num_nn INTEGER NOT NULL,
+                rr_descartados INTEGER NOT NULL,
+                rr_medio REAL,
+                sdnn REAL,
+                rmssd REAL,
+                pnn50 REAL,
+                sd1 REAL,
+                sd2 REAL,
+                lf REAL,
+                hf REAL,
+                lf_hf REAL,
+                timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
+            );
+            
+            CREATE INDEX IF NOT EXISTS idx_vfc_sesion_instante ON Calculo_VFC(id_sesion, instante_ms);
+            
             CREATE TABLE IF NOT EXISTS Configuracion_MQTT (
                 id_config INTEGER PRIMARY KEY AUTOINCREMENT,
                 broker_url VARCHAR(255) NOT NULL,
@@ -136,6 +333,10 @@ public class DatabaseManager {
                 FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE SET NULL
             );
             
+            CREATE INDEX IF NOT EXISTS idx_lectura_sesion_cubre ON Lectura_ECG(id_sesion, id_lectura, timestamp, valor_senal);
+            CREATE INDEX IF NOT EXISTS idx_evento_lectura ON Evento_Detectado(id_lectura);
+            CREATE INDEX IF NOT EXISTS idx_sesion_paciente ON Sesion_Monitoreo(id_paciente);
+            
             INSERT OR IGNORE INTO Tipo_Evento (nombre, descripcion, severidad) VALUES
                 ('Taquicardia', 'Frecuencia cardíaca superior a 100 BPM', 'MEDIA');
             INSERT OR IGNORE INTO Tipo_Evento (nombre, descripcion, severidad) VALUES
@@ -153,20 +354,17 @@ public class DatabaseManager {
     // OPERACIONES PACIENTE (CRUD)
     // ============================================
 
-    public int insertarPaciente(String nombre, int edad, double estatura) {
+    public synchronized int insertarPaciente(String nombre, int edad, double estatura) {
         String sql = "INSERT INTO Paciente (nombre, edad, estatura) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
             pstmt.setString(1, nombre);
             pstmt.setInt(2, edad);
             pstmt.setDouble(3, estatura);
             pstmt.executeUpdate();
             
             // Obtener el ID generado usando last_insert_rowid()
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()");
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
+            return ultimoIdInsertado();
         } catch (SQLException e) {
             System.err.println("Error insertando paciente: " + e.getMessage());
         }
@@ -175,21 +373,26 @@ public class DatabaseManager {
 
     public Paciente obtenerPaciente(int idPaciente) {
         String sql = "SELECT * FROM Paciente WHERE id_paciente = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return null;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
             pstmt.setInt(1, idPaciente);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                Paciente p = new Paciente(
-                    rs.getString("nombre"),
-                    rs.getInt("edad"),
-                    rs.getDouble("estatura")
-                );
-                p.setIdPaciente(rs.getInt("id_paciente"));
-                return p;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    Paciente p = new Paciente(
+                        rs.getString("nombre"),
+                        rs.getInt("edad"),
+                        rs.getDouble("estatura")
+                    );
+                    p.setIdPaciente(rs.getInt("id_paciente"));
+                    return p;
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error obteniendo paciente: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
         }
         return null;
     }
@@ -198,8 +401,9 @@ public class DatabaseManager {
         List<Paciente> pacientes = new ArrayList<>();
         String sql = "SELECT * FROM Paciente ORDER BY fecha_registro DESC";
         
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return pacientes;
+        try (ResultSet rs = lector.preparar(sql).executeQuery()) {
             
             while (rs.next()) {
                 Paciente p = new Paciente(
@@ -212,13 +416,16 @@ public class DatabaseManager {
             }
         } catch (SQLException e) {
             System.err.println("Error obteniendo pacientes: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
         }
         return pacientes;
     }
 
-    public void actualizarPaciente(int idPaciente, String nombre, int edad, double estatura) {
+    public synchronized void actualizarPaciente(int idPaciente, String nombre, int edad, double estatura) {
         String sql = "UPDATE Paciente SET nombre = ?, edad = ?, estatura = ? WHERE id_paciente = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
             pstmt.setString(1, nombre);
             pstmt.setInt(2, edad);
             pstmt.setDouble(3, estatura);
@@ -229,9 +436,10 @@ public class DatabaseManager {
         }
     }
 
-    public void eliminarPaciente(int idPaciente) {
+    public synchronized void eliminarPaciente(int idPaciente) {
         String sql = "DELETE FROM Paciente WHERE id_paciente = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
             pstmt.setInt(1, idPaciente);
             pstmt.executeUpdate();
         } catch (SQLException e) {
@@ -243,19 +451,16 @@ public class DatabaseManager {
     // OPERACIONES SESIÓN DE MONITOREO
     // ============================================
 
-    public int crearSesionMonitoreo(int idPaciente, String notas) {
+    public synchronized int crearSesionMonitoreo(int idPaciente, String notas) {
         String sql = "INSERT INTO Sesion_Monitoreo (id_paciente, notas, estado) VALUES (?, ?, 'ACTIVA')";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
             pstmt.setInt(1, idPaciente);
             pstmt.setString(2, notas);
             pstmt.executeUpdate();
             
             // Obtener el ID generado usando last_insert_rowid()
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()");
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
+            return ultimoIdInsertado();
         } catch (SQLException e) {
             System.err.println("Error creando sesión: " + e.getMessage());
         }
@@ -263,12 +468,54 @@ public class DatabaseManager {
     }
 
     public void finalizarSesion(int idSesion) {
+        // Confirmar las lecturas pendientes antes de cerrar la sesión
+        // (fuera del monitor: el hilo escritor lo necesita para confirmar)
+        escritorLecturas.vaciar();
         String sql = "UPDATE Sesion_Monitoreo SET estado = 'FINALIZADA', fecha_fin = CURRENT_TIMESTAMP WHERE id_sesion = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, idSesion);
+        synchronized (this) {
+            // Ya está guardada; si llegan bloques tardíos se retoma desde las teselas
+            piramides.remove(idSesion);
+            try {
+                PreparedStatement pstmt = escritura.preparar(sql);
+                pstmt.setInt(1, idSesion);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                System.err.println("Error finalizando sesión: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sesión de un registro importado (ImportadorECG): empieza en el instante
+     * de la grabación y queda en estado IMPORTANDO hasta finalizarSesionImportada
+     */
+    public synchronized int crearSesionImportada(int idPaciente, String notas, long inicioMs) {
+        String sql = "INSERT INTO Sesion_Monitoreo (id_paciente, fecha_inicio, notas, estado) "
+                   + "VALUES (?, strftime('%Y-%m-%d %H:%M:%S', ?, 'unixepoch'), ?, 'IMPORTANDO')";
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
+            pstmt.setInt(1, idPaciente);
+            pstmt.setDouble(2, inicioMs / 1000.0);
+            pstmt.setString(3, notas);
             pstmt.executeUpdate();
+            return ultimoIdInsertado();
         } catch (SQLException e) {
-            System.err.println("Error finalizando sesión: " + e.getMessage());
+            System.err.println("Error creando sesión importada: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    public synchronized void finalizarSesionImportada(int idSesion, long finMs) {
+        String sql = "UPDATE Sesion_Monitoreo SET estado = 'FINALIZADA', "
+                   + "fecha_fin = strftime('%Y-%m-%d %H:%M:%S', ?, 'unixepoch') WHERE id_sesion = ?";
+        piramides.remove(idSesion);
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
+            pstmt.setDouble(1, finMs / 1000.0);
+            pstmt.setInt(2, idSesion);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error finalizando sesión importada: " + e.getMessage());
         }
     }
 
@@ -276,76 +523,798 @@ public class DatabaseManager {
     // OPERACIONES LECTURA ECG
     // ============================================
 
+    /**
+     * Encola la lectura en el escritor por lotes; no espera a la base de datos
+     */
     public void insertarLecturaECG(int idSesion, double valorSenal) {
-        String sql = "INSERT INTO Lectura_ECG (id_sesion, valor_senal) VALUES (?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, idSesion);
-            pstmt.setDouble(2, valorSenal);
-            pstmt.executeUpdate();
+        escritorLecturas.encolar(idSesion, valorSenal);
+    }
+
+    /**
+     * Inserta un lote de lecturas en una sola transacción
+     * @return número de lecturas confirmadas (0 si el lote se revirtió)
+     */
+    public synchronized int insertarLoteLecturasECG(int[] sesiones, double[] valores, long[] instantesMs, int cantidad) {
+        String sql = "INSERT INTO Lectura_ECG (id_sesion, valor_senal, timestamp) "
+                   + "VALUES (?, ?, strftime('%Y-%m-%d %H:%M:%f', ?, 'unixepoch'))";
+        try {
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement pstmt = escritura.preparar(sql);
+                for (int i = 0; i < cantidad; i++) {
+                    pstmt.setInt(1, sesiones[i]);
+                    pstmt.setDouble(2, valores[i]);
+                    pstmt.setDouble(3, instantesMs[i] / 1000.0);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                connection.commit();
+                return cantidad;
+            } catch (SQLException e) {
+                connection.rollback();
+                System.err.println("Error insertando lote de lecturas ECG: " + e.getMessage());
+            } finally {
+                connection.setAutoCommit(true);
+            }
         } catch (SQLException e) {
-            System.err.println("Error insertando lectura ECG: " + e.getMessage());
+            System.err.println("Error en transacción de lecturas ECG: " + e.getMessage());
         }
+        return 0;
     }
 
+    /**
+     * Primera página del historial del paciente (las 1000 lecturas más recientes)
+     */
     public List<DatoHistorico> obtenerHistorialPaciente(int idPaciente) {
-        List<DatoHistorico> historial = new ArrayList<>();
+        return obtenerPaginaHistorial(new ConsultaHistorial(idPaciente), ConsultaHistorial.Cursor.INICIO).getDatos();
+    }
+
+    /**
+     * Página de historial a partir del cursor de la página anterior
+     */
+    public ConsultaHistorial.Pagina obtenerPaginaHistorial(ConsultaHistorial consulta, ConsultaHistorial.Cursor desde) {
+        List<DatoHistorico> datos = new ArrayList<>(consulta.getTamanoPagina());
+        int idPaciente = consulta.getIdPaciente();
+        ConsultaHistorial.Cursor siguiente = recorrerHistorial(consulta, desde, consulta.getTamanoPagina(),
+            (idSesion, idLectura, instanteMs, valor, tipoEvento) -> {
+                DatoHistorico d = new DatoHistorico(idPaciente, valor);
+                d.setIdDato(idLectura);
+                d.setTimestamp(aFecha(instanteMs));
+                if (tipoEvento != null) {
+                    d.setEventoDetectado(true);
+                    d.setTipoEvento(tipoEvento);
+                }
+                datos.add(d);
+            });
+        return new ConsultaHistorial.Pagina(datos, siguiente);
+    }
+
+    /**
+     * Entrega todo el historial de la consulta al receptor, página a página,
+     * sin acumularlo en memoria
+     * @return número de lecturas entregadas
+     */
+    public long recorrerHistorialCompleto(ConsultaHistorial consulta, ConsultaHistorial.Receptor receptor) {
+        long total = 0;
+        ConsultaHistorial.Cursor cursor = ConsultaHistorial.Cursor.INICIO;
+        while (!cursor.esFin()) {
+            ReceptorContado contado = new ReceptorContado(receptor);
+            cursor = recorrerHistorial(consulta, cursor, consulta.getTamanoPagina(), contado);
+            total += contado.entregadas;
+        }
+        return total;
+    }
+
+    /**
+     * Número de lecturas de la consulta sin recorrerlas. Exacto sin rango de
+     * tiempo; con rango, los bloques se cuentan completos por su inicio
+     * @return total, o -1 si falló la consulta
+     */
+    public long contarHistorial(ConsultaHistorial consulta) {
+        String sql = """
+            WITH sesiones AS (
+                SELECT id_sesion FROM Sesion_Monitoreo
+                WHERE (?1 < 0 OR id_paciente = ?1) AND (?2 < 0 OR id_sesion = ?2)
+            )
+            SELECT
+                (SELECT COALESCE(SUM(num_muestras), 0) FROM Bloque_ECG
+                 WHERE id_sesion IN sesiones AND inicio_ms >= ?3 AND inicio_ms < ?4)
+              + (SELECT COUNT(*) FROM Lectura_ECG
+                 WHERE id_sesion IN sesiones
+                   AND (?5 IS NULL OR julianday(timestamp) >= ?5)
+                   AND (?6 IS NULL OR julianday(timestamp) < ?6))
+            """;
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return -1;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
+            long desdeMs = consulta.getDesdeMs();
+            long hastaMs = consulta.getHastaMs();
+            pstmt.setInt(1, consulta.getIdSesion() > 0 ? -1 : consulta.getIdPaciente());
+            pstmt.setInt(2, consulta.getIdSesion());
+            pstmt.setLong(3, desdeMs);
+            pstmt.setLong(4, hastaMs);
+            if (desdeMs == Long.MIN_VALUE) pstmt.setNull(5, Types.DOUBLE); else pstmt.setDouble(5, aDiaJuliano(desdeMs));
+            if (hastaMs == Long.MAX_VALUE) pstmt.setNull(6, Types.DOUBLE); else pstmt.setDouble(6, aDiaJuliano(hastaMs));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error contando historial: " + e.getMessage());
+            return -1;
+        } finally {
+            devolverLector(lector);
+        }
+    }
+
+    /**
+     * Entrega hasta limite lecturas a partir del cursor
+     * @return cursor para continuar (esFin() cuando no quedan lecturas)
+     */
+    public ConsultaHistorial.Cursor recorrerHistorial(ConsultaHistorial consulta, ConsultaHistorial.Cursor desde,
+                                                      int limite, ConsultaHistorial.Receptor receptor) {
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return ConsultaHistorial.Cursor.FIN;
+        ReceptorContado contado = receptor instanceof ReceptorContado ? (ReceptorContado) receptor : new ReceptorContado(receptor);
+        int base = contado.entregadas;
+        int objetivo = base + limite;
+        ConsultaHistorial.Cursor c = desde;
+        try {
+            while (!c.esFin() && contado.entregadas < objetivo) {
+                switch (c.fase) {
+                    case ConsultaHistorial.Cursor.FASE_SESION:
+                        int idSesion = siguienteSesion(lector, consulta, c.idSesion);
+                        c = idSesion < 0 ? ConsultaHistorial.Cursor.FIN
+                            : new ConsultaHistorial.Cursor(idSesion, ConsultaHistorial.Cursor.FASE_BLOQUES, Long.MAX_VALUE, -1);
+                        break;
+                    case ConsultaHistorial.Cursor.FASE_BLOQUES:
+                        c = recorrerBloques(lector, consulta, c, objetivo, contado);
+                        break;
+                    default:
+                        c = recorrerLecturas(lector, consulta, c, objetivo, contado);
+                        break;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error recorriendo historial: " + e.getMessage());
+            c = ConsultaHistorial.Cursor.FIN;
+        } finally {
+            devolverLector(lector);
+        }
+        return c;
+    }
+
+    private int siguienteSesion(ConexionSQLite lector, ConsultaHistorial consulta, int anterior) throws SQLException {
+        if (consulta.getIdSesion() > 0) {
+            return consulta.getIdSesion() < anterior ? consulta.getIdSesion() : -1;
+        }
+        // idx_sesion_paciente (id_paciente, rowid) resuelve filtro y orden
+        String sql = "SELECT id_sesion FROM Sesion_Monitoreo WHERE id_paciente = ? AND id_sesion < ? ORDER BY id_sesion DESC LIMIT 1";
+        PreparedStatement pstmt = lector.preparar(sql);
+        pstmt.setInt(1, consulta.getIdPaciente());
+        pstmt.setInt(2, anterior);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
+    /**
+     * Muestras de Bloque_ECG de la sesión del cursor, por (inicio_ms, muestra) descendente
+     */
+    private ConsultaHistorial.Cursor recorrerBloques(ConexionSQLite lector, ConsultaHistorial consulta,
+                                                     ConsultaHistorial.Cursor c, int objetivo,
+                                                     ReceptorContado receptor) throws SQLException {
+        final int loteBloques = 16;
         String sql = """
-            SELECT l.id_lectura, l.id_sesion, l.valor_senal, l.timestamp,
-                   e.id_tipo_evento, te.nombre as tipo_evento
+            SELECT inicio_ms, frecuencia, num_muestras, escala, valor_min, valor_max, datos
+            FROM Bloque_ECG
+            WHERE id_sesion = ? AND inicio_ms <= ? AND inicio_ms >= ?
+            ORDER BY inicio_ms DESC
+            LIMIT ?
+            """;
+        long desdeMs = consulta.getDesdeMs();
+        long hastaMs = consulta.getHastaMs();
+        long piso = desdeMs == Long.MIN_VALUE ? Long.MIN_VALUE : desdeMs - BloqueECG.SEGUNDOS_BLOQUE * 1000L;
+        long clave = c.clave;
+        int indice = c.indice;
+        double[] muestras = new double[0];
+        ConsultaHistorial.Cursor fase = new ConsultaHistorial.Cursor(c.idSesion, ConsultaHistorial.Cursor.FASE_LECTURAS, Long.MAX_VALUE, -1);
+
+        while (true) {
+            long tope = Math.min(indice >= 0 ? clave : clave - 1, hastaMs == Long.MAX_VALUE ? Long.MAX_VALUE : hastaMs - 1);
+            PreparedStatement pstmt = lector.preparar(sql);
+            pstmt.setInt(1, c.idSesion);
+            pstmt.setLong(2, tope);
+            pstmt.setLong(3, piso);
+            pstmt.setInt(4, loteBloques);
+            List<BloqueECG> bloques = new ArrayList<>(loteBloques);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    bloques.add(new BloqueECG(c.idSesion, rs.getLong(1), rs.getInt(2), rs.getInt(3),
+                                              rs.getDouble(4), rs.getDouble(5), rs.getDouble(6), rs.getBytes(7)));
+                }
+            }
+            if (bloques.isEmpty()) return fase;
+            // Eventos del tramo, de más nuevo a más viejo como las muestras
+            EventosTramo eventos = eventosTramo(lector, c.idSesion, bloques.get(bloques.size() - 1).getInicioMs(),
+                                                bloques.get(0).getFinMs());
+            for (BloqueECG b : bloques) {
+                int n = b.getNumMuestras();
+                if (muestras.length < n) muestras = new double[n];
+                b.descomprimir(muestras, 0);
+                int i = indice >= 0 && b.getInicioMs() == clave ? Math.min(indice, n - 1) : n - 1;
+                clave = b.getInicioMs();
+                indice = -1;
+                for (; i >= 0; i--) {
+                    long instante = b.instanteMuestra(i);
+                    if (instante >= hastaMs) continue;
+                    // Los bloques siguientes son todos anteriores al rango
+                    if (instante < desdeMs) return fase;
+                    if (receptor.entregadas == objetivo) {
+                        return new ConsultaHistorial.Cursor(c.idSesion, ConsultaHistorial.Cursor.FASE_BLOQUES, clave, i);
+                    }
+                    receptor.recibir(c.idSesion, 0, instante, muestras[i], eventos.tipoEntre(instante, b.instanteMuestra(i + 1)));
+                }
+            }
+            if (bloques.size() < loteBloques) return fase;
+        }
+    }
+
+    /**
+     * Eventos de la sesión con instante en [desdeMs, hastaMs), por instante descendente
+     */
+    private static EventosTramo eventosTramo(ConexionSQLite lector, int idSesion, long desdeMs, long hastaMs)
+            throws SQLException {
+        String sql = """
+            SELECT e.instante_ms, te.nombre
+            FROM Evento_Detectado e
+            JOIN Tipo_Evento te ON e.id_tipo_evento = te.id_tipo_evento
+            WHERE e.id_sesion = ? AND e.instante_ms >= ? AND e.instante_ms < ?
+            ORDER BY e.instante_ms DESC
+            """;
+        EventosTramo eventos = new EventosTramo();
+        PreparedStatement pstmt = lector.preparar(sql);
+        pstmt.setInt(1, idSesion);
+        pstmt.setLong(2, desdeMs);
+        pstmt.setLong(3, hastaMs);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                eventos.instantes.add(rs.getLong(1));
+                eventos.tipos.add(rs.getString(2));
+            }
+        }
+        return eventos;
+    }
+
+    /**
+     * Eventos de un tramo de bloques; se consumen en el mismo orden
+     * descendente en que se recorren las muestras
+     */
+    private static final class EventosTramo {
+        final List<Long> instantes = new ArrayList<>();
+        final List<String> tipos = new ArrayList<>();
+        int siguiente;
+
+        /** Tipo del evento cuya R cae en [desdeMs, hastaMs), o null */
+        String tipoEntre(long desdeMs, long hastaMs) {
+            while (siguiente < instantes.size() && instantes.get(siguiente) >= hastaMs) siguiente++;
+            if (siguiente < instantes.size() && instantes.get(siguiente) >= desdeMs) {
+                return tipos.get(siguiente++);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Filas de Lectura_ECG de la sesión del cursor, por id_lectura descendente
+     * (idx_lectura_sesion_cubre cubre filtro, orden y columnas)
+     */
+    private ConsultaHistorial.Cursor recorrerLecturas(ConexionSQLite lector, ConsultaHistorial consulta,
+                                                      ConsultaHistorial.Cursor c, int objetivo,
+                                                      ReceptorContado receptor) throws SQLException {
+        String sql = """
+            SELECT l.id_lectura, l.valor_senal,
+                   CAST((julianday(l.timestamp) - 2440587.5) * 86400000 AS INTEGER) AS instante_ms,
+                   te.nombre AS tipo_evento
             FROM Lectura_ECG l
-            INNER JOIN Sesion_Monitoreo s ON l.id_sesion = s.id_sesion
             LEFT JOIN Evento_Detectado e ON l.id_lectura = e.id_lectura
             LEFT JOIN Tipo_Evento te ON e.id_tipo_evento = te.id_tipo_evento
-            WHERE s.id_paciente = ?
-            ORDER BY l.timestamp DESC
-            LIMIT 1000
+            WHERE l.id_sesion = ? AND l.id_lectura < ?
+              AND (?3 IS NULL OR julianday(l.timestamp) >= ?3)
+              AND (?4 IS NULL OR julianday(l.timestamp) < ?4)
+            ORDER BY l.id_lectura DESC
+            LIMIT ?5
             """;
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, idPaciente);
-            ResultSet rs = pstmt.executeQuery();
-            
+        int solicitadas = objetivo - receptor.entregadas;
+        PreparedStatement pstmt = lector.preparar(sql);
+        pstmt.setInt(1, c.idSesion);
+        pstmt.setLong(2, c.clave);
+        if (consulta.getDesdeMs() == Long.MIN_VALUE) pstmt.setNull(3, Types.REAL);
+        else pstmt.setDouble(3, aDiaJuliano(consulta.getDesdeMs()));
+        if (consulta.getHastaMs() == Long.MAX_VALUE) pstmt.setNull(4, Types.REAL);
+        else pstmt.setDouble(4, aDiaJuliano(consulta.getHastaMs()));
+        pstmt.setInt(5, solicitadas);
+
+        int filas = 0;
+        long ultima = c.clave;
+        try (ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
-                DatoHistorico d = new DatoHistorico(idPaciente, rs.getDouble("valor_senal"));
-                d.setIdDato(rs.getInt("id_lectura"));
-                
-                String tipoEvento = rs.getString("tipo_evento");
-                if (tipoEvento != null) {
-                    d.setEventoDetectado(true);
-                    d.setTipoEvento(tipoEvento);
+                filas++;
+                ultima = rs.getLong(1);
+                receptor.recibir(c.idSesion, (int) ultima, rs.getLong(3), rs.getDouble(2), rs.getString(4));
+            }
+        }
+        if (filas < solicitadas) {
+            return new ConsultaHistorial.Cursor(c.idSesion, ConsultaHistorial.Cursor.FASE_SESION, Long.MAX_VALUE, -1);
+        }
+        return new ConsultaHistorial.Cursor(c.idSesion, ConsultaHistorial.Cursor.FASE_LECTURAS, ultima, -1);
+    }
+
+    private static double aDiaJuliano(long instanteMs) {
+        return instanteMs / 86400000.0 + 2440587.5;
+    }
+
+    /**
+     * Cuenta lo entregado en la página actual
+     */
+    private static final class ReceptorContado implements ConsultaHistorial.Receptor {
+        private final ConsultaHistorial.Receptor destino;
+        private int entregadas;
+
+        ReceptorContado(ConsultaHistorial.Receptor destino) {
+            this.destino = destino;
+        }
+
+        @Override
+        public void recibir(int idSesion, int idLectura, long instanteMs, double valor, String tipoEvento) {
+            entregadas++;
+            destino.recibir(idSesion, idLectura, instanteMs, valor, tipoEvento);
+        }
+    }
+
+    // ============================================
+    // OPERACIONES BLOQUES ECG (señal comprimida)
+    // ============================================
+
+    /**
+     * Encola un bloque comprimido en el escritor por lotes
+     */
+    public void insertarBloqueECG(BloqueECG bloque) {
+        escritorLecturas.encolarBloque(bloque);
+    }
+
+    /**
+     * Inserta varios bloques en una sola transacción, junto con la
+     * actualización de su pirámide de resúmenes
+     * @return número de bloques confirmados (0 si el lote se revirtió)
+     */
+    public synchronized int insertarLoteBloquesECG(List<BloqueECG> bloques) {
+        String sql = "INSERT INTO Bloque_ECG (id_sesion, inicio_ms, frecuencia, num_muestras, escala, valor_min, valor_max, datos) "
+                   + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try {
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement pstmt = escritura.preparar(sql);
+                for (BloqueECG b : bloques) {
+                    pstmt.setInt(1, b.getIdSesion());
+                    pstmt.setLong(2, b.getInicioMs());
+                    pstmt.setInt(3, b.getFrecuencia());
+                    pstmt.setInt(4, b.getNumMuestras());
+                    pstmt.setDouble(5, b.getEscala());
+                    pstmt.setDouble(6, b.getMinimo());
+                    pstmt.setDouble(7, b.getMaximo());
+                    pstmt.setBytes(8, b.getDatos());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                actualizarResumen(bloques);
+                connection.commit();
+                return bloques.size();
+            } catch (SQLException e) {
+                connection.rollback();
+                // Las teselas en memoria ya no coinciden con la base: se recargan con el próximo bloque
+                for (BloqueECG b : bloques) piramides.remove(b.getIdSesion());
+                System.err.println("Error insertando lote de bloques ECG: " + e.getMessage());
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en transacción de bloques ECG: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Bloques de una sesión que se solapan con [desdeMs, hastaMs), en orden temporal
+     */
+    public List<BloqueECG> obtenerBloquesSesion(int idSesion, long desdeMs, long hastaMs) {
+        List<BloqueECG> bloques = new ArrayList<>();
+        // El bloque que empieza antes de desdeMs puede cubrirlo: se incluye
+        // un margen de un bloque y se filtra por el fin real
+        String sql = """
+            SELECT * FROM Bloque_ECG
+            WHERE id_sesion = ? AND inicio_ms >= ? AND inicio_ms < ?
+            ORDER BY inicio_ms
+            """;
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return bloques;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
+            pstmt.setInt(1, idSesion);
+            pstmt.setLong(2, desdeMs - BloqueECG.SEGUNDOS_BLOQUE * 1000L);
+            pstmt.setLong(3, hastaMs);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    BloqueECG b = leerBloque(rs);
+                    if (b.getFinMs() > desdeMs) bloques.add(b);
                 }
-                
-                historial.add(d);
             }
         } catch (SQLException e) {
-            System.err.println("Error obteniendo historial: " + e.getMessage());
+            System.err.println("Error obteniendo bloques de sesión: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
         }
-        return historial;
+        return bloques;
+    }
+
+    /**
+     * Hasta limite bloques de la sesión con inicio_ms >= desdeMs, en orden
+     * temporal; para recorrer una sesión larga sin cargarla entera
+     */
+    public List<BloqueECG> obtenerBloquesDesde(int idSesion, long desdeMs, int limite) {
+        List<BloqueECG> bloques = new ArrayList<>(limite);
+        String sql = """
+            SELECT * FROM Bloque_ECG
+            WHERE id_sesion = ? AND inicio_ms >= ?
+            ORDER BY inicio_ms
+            LIMIT ?
+            """;
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return bloques;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
+            pstmt.setInt(1, idSesion);
+            pstmt.setLong(2, desdeMs);
+            pstmt.setInt(3, limite);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) bloques.add(leerBloque(rs));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error obteniendo bloques de sesión: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
+        }
+        return bloques;
+    }
+
+    /**
+     * Primer instante y fin del último bloque de la sesión
+     * @return {inicioMs, finMs}, o null si la sesión no tiene señal
+     */
+    public long[] obtenerExtensionSesion(int idSesion) {
+        String primero = "SELECT inicio_ms FROM Bloque_ECG WHERE id_sesion = ? ORDER BY inicio_ms LIMIT 1";
+        String ultimo = "SELECT * FROM Bloque_ECG WHERE id_sesion = ? ORDER BY inicio_ms DESC LIMIT 1";
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return null;
+        try {
+            long inicio;
+            PreparedStatement pstmt = lector.preparar(primero);
+            pstmt.setInt(1, idSesion);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return null;
+                inicio = rs.getLong(1);
+            }
+            pstmt = lector.preparar(ultimo);
+            pstmt.setInt(1, idSesion);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new long[] {inicio, leerBloque(rs).getFinMs()} : null;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error obteniendo extensión de sesión: " + e.getMessage());
+            return null;
+        } finally {
+            devolverLector(lector);
+        }
+    }
+
+    /**
+     * Sesiones del paciente, de la más reciente a la más antigua
+     */
+    public List<Integer> obtenerSesionesPaciente(int idPaciente) {
+        List<Integer> sesiones = new ArrayList<>();
+        String sql = "SELECT id_sesion FROM Sesion_Monitoreo WHERE id_paciente = ? ORDER BY id_sesion DESC";
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return sesiones;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
+            pstmt.setInt(1, idPaciente);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) sesiones.add(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error obteniendo sesiones del paciente: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
+        }
+        return sesiones;
+    }
+
+    private static BloqueECG leerBloque(ResultSet rs) throws SQLException {
+        return new BloqueECG(
+            rs.getInt("id_sesion"),
+            rs.getLong("inicio_ms"),
+            rs.getInt("frecuencia"),
+            rs.getInt("num_muestras"),
+            rs.getDouble("escala"),
+            rs.getDouble("valor_min"),
+            rs.getDouble("valor_max"),
+            rs.getBytes("datos")
+        );
+    }
+
+    private static LocalDateTime aFecha(long instanteMs) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(instanteMs), ZoneId.systemDefault());
     }
 
     // ============================================
-    // OPERACIONES BPM
+    // PIRÁMIDE DE RESÚMENES (Resumen_ECG)
     // ============================================
 
-    public void insertarCalculoBPM(int idSesion, int bpm, int numLatidos) {
-        String sql = "INSERT INTO Calculo_BPM (id_sesion, bpm, num_latidos) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+    /**
+     * Suma los bloques a la pirámide de su sesión y guarda las teselas
+     * modificadas; corre dentro de la transacción de los bloques
+     */
+    private void actualizarResumen(List<BloqueECG> bloques) throws SQLException {
+        long inicio = System.nanoTime();
+        Map<Integer, PiramideECG.Acumulador> tocados = new HashMap<>();
+        for (BloqueECG b : bloques) {
+            PiramideECG.Acumulador a = piramides.computeIfAbsent(b.getIdSesion(),
+                id -> new PiramideECG.Acumulador(id, this::cargarTesela));
+            a.agregar(b);
+            tocados.put(a.getIdSesion(), a);
+        }
+        for (PiramideECG.Acumulador a : tocados.values()) guardarTeselas(a.getIdSesion(), a.vaciar());
+        RESUMEN_LOTE.registrarDesde(inicio);
+    }
+
+    private void guardarTeselas(int idSesion, List<PiramideECG.Tesela> teselas) throws SQLException {
+        PreparedStatement pstmt = escritura.preparar(
+            "INSERT OR REPLACE INTO Resumen_ECG (id_sesion, nivel, indice, datos) VALUES (?, ?, ?, ?)");
+        for (PiramideECG.Tesela t : teselas) {
+            pstmt.setInt(1, idSesion);
+            pstmt.setInt(2, t.getNivel());
+            pstmt.setLong(3, t.getIndice());
+            pstmt.setBytes(4, t.serializar());
+            pstmt.addBatch();
+        }
+        pstmt.executeBatch();
+    }
+
+    /** Cargador de PiramideECG sobre la conexión de escritura (bajo el monitor) */
+    private PiramideECG.Tesela cargarTesela(int idSesion, int nivel, long indice) {
+        try {
+            PreparedStatement pstmt = escritura.preparar(
+                "SELECT datos FROM Resumen_ECG WHERE id_sesion = ? AND nivel = ? AND indice = ?");
             pstmt.setInt(1, idSesion);
-            pstmt.setInt(2, bpm);
-            pstmt.setInt(3, numLatidos);
+            pstmt.setInt(2, nivel);
+            pstmt.setLong(3, indice);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? PiramideECG.Tesela.deserializar(nivel, indice, rs.getBytes(1)) : null;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error leyendo tesela de resumen: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Teselas guardadas del nivel con índice en [desde, hasta], en orden;
+     * las que faltan no tienen señal
+     */
+    public List<PiramideECG.Tesela> obtenerTeselas(int idSesion, int nivel, long desde, long hasta) {
+        List<PiramideECG.Tesela> teselas = new ArrayList<>();
+        String sql = """
+            SELECT indice, datos FROM Resumen_ECG
+            WHERE id_sesion = ? AND nivel = ? AND indice BETWEEN ? AND ?
+            ORDER BY indice
+            """;
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return teselas;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
+            pstmt.setInt(1, idSesion);
+            pstmt.setInt(2, nivel);
+            pstmt.setLong(3, desde);
+            pstmt.setLong(4, hasta);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) teselas.add(PiramideECG.Tesela.deserializar(nivel, rs.getLong(1), rs.getBytes(2)));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error obteniendo teselas de resumen: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
+        }
+        return teselas;
+    }
+
+    public boolean tieneResumen(int idSesion) {
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return false;
+        try {
+            PreparedStatement pstmt = lector.preparar("SELECT 1 FROM Resumen_ECG WHERE id_sesion = ? LIMIT 1");
+            pstmt.setInt(1, idSesion);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error consultando resumen: " + e.getMessage());
+            return false;
+        } finally {
+            devolverLector(lector);
+        }
+    }
+
+    /**
+     * Construye la pirámide de una sesión grabada antes de que existiera
+     * Resumen_ECG, recorriendo sus bloques por páginas. Amplía las teselas
+     * existentes en lugar de reemplazarlas
+     * @return número de bloques recorridos
+     */
+    public int reconstruirResumen(int idSesion) {
+        final int bloquesPorPagina = 300;
+        PiramideECG.Acumulador a = new PiramideECG.Acumulador(idSesion, this::cargarTesela);
+        int total = 0;
+        long desde = Long.MIN_VALUE;
+        while (true) {
+            List<BloqueECG> pagina = obtenerBloquesDesde(idSesion, desde, bloquesPorPagina);
+            if (pagina.isEmpty()) break;
+            synchronized (this) {
+                try {
+                    connection.setAutoCommit(false);
+                    try {
+                        for (BloqueECG b : pagina) a.agregar(b);
+                        guardarTeselas(idSesion, a.vaciar());
+                        connection.commit();
+                    } catch (SQLException e) {
+                        connection.rollback();
+                        System.err.println("Error reconstruyendo resumen: " + e.getMessage());
+                        return total;
+                    } finally {
+                        connection.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Error en transacción de resumen: " + e.getMessage());
+                    return total;
+                }
+            }
+            total += pagina.size();
+            desde = pagina.get(pagina.size() - 1).getInicioMs() + 1;
+            if (pagina.size() < bloquesPorPagina) break;
+        }
+        return total;
+    }
+
+    // ============================================
+    // OPERACIONES BPM
+    // ============================================
+
+    /**
+     * Encola un cálculo de BPM en el escritor por lotes
+     * @param instanteMs instante de la señal al final del intervalo
+     */
+    public void registrarCalculoBPM(int idSesion, int bpm, int numLatidos, long instanteMs) {
+        escritorLecturas.encolarCalculoBPM(idSesion, bpm, numLatidos, instanteMs);
+    }
+
+    /**
+     * Inserta cálculos de BPM con su instante de señal en una sola transacción
+     * (escritor por lotes e importaciones)
+     * @return número de cálculos confirmados (0 si el lote se revirtió)
+     */
+    public synchronized int insertarLoteCalculosBPM(int[] sesiones, int[] bpm, int[] latidos, long[] instantesMs, int cantidad) {
+        String sql = "INSERT INTO Calculo_BPM (id_sesion, bpm, num_latidos, timestamp) "
+                   + "VALUES (?, ?, ?, strftime('%Y-%m-%d %H:%M:%S', ?, 'unixepoch'))";
+        try {
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement pstmt = escritura.preparar(sql);
+                for (int i = 0; i < cantidad; i++) {
+                    pstmt.setInt(1, sesiones[i]);
+                    pstmt.setInt(2, bpm[i]);
+                    pstmt.setInt(3, latidos[i]);
+                    pstmt.setDouble(4, instantesMs[i] / 1000.0);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                connection.commit();
+                return cantidad;
+            } catch (SQLException e) {
+                connection.rollback();
+                System.err.println("Error insertando lote de cálculos BPM: " + e.getMessage());
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error en transacción de cálculos BPM: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // ============================================
+    // OPERACIONES VFC
+    // ============================================
+
+    /**
+     * Guarda las métricas de una ventana de MotorVFC; las que no se pudieron
+     * calcular (NaN) quedan en NULL
+     */
+    public synchronized void insertarCalculoVFC(MotorVFC.Resultado r) {
+        String sql = """
+            INSERT INTO Calculo_VFC (id_sesion, instante_ms, ventana_segundos, num_nn, rr_descartados,
+                rr_medio, sdnn, rmssd, pnn50, sd1, sd2, lf, hf, lf_hf)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
+            pstmt.setInt(1, r.getIdSesion());
+            pstmt.setLong(2, r.getInstanteMs());
+            pstmt.setDouble(3, r.getVentanaS());
+            pstmt.setInt(4, r.getNumNN());
+            pstmt.setInt(5, r.getDescartados());
+            double[] valores = {r.getRrMedio(), r.getSdnn(), r.getRmssd(), r.getPnn50(), r.getSd1(), r.getSd2(),
+                r.getLf(), r.getHf(), r.getLfHf()};
+            for (int i = 0; i < valores.length; i++) {
+                if (Double.isNaN(valores[i])) pstmt.setNull(6 + i, Types.REAL); else pstmt.setDouble(6 + i, valores[i]);
+            }
             pstmt.executeUpdate();
         } catch (SQLException e) {
-            System.err.println("Error insertando cálculo BPM: " + e.getMessage());
+            System.err.println("Error insertando cálculo VFC: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Últimas métricas de VFC de la sesión, de la más reciente a la más antigua
+     */
+    public List<MotorVFC.Resultado> obtenerCalculosVFC(int idSesion, int limite) {
+        List<MotorVFC.Resultado> resultados = new ArrayList<>();
+        String sql = "SELECT * FROM Calculo_VFC WHERE id_sesion = ? ORDER BY instante_ms DESC LIMIT ?";
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return resultados;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
+            pstmt.setInt(1, idSesion);
+            pstmt.setInt(2, limite);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    MotorVFC.Resultado r = new MotorVFC.Resultado(idSesion, rs.getLong("instante_ms"),
+                        rs.getDouble("ventana_segundos"), rs.getInt("num_nn"), rs.getInt("rr_descartados"),
+                        realONaN(rs, "rr_medio"), realONaN(rs, "sdnn"), realONaN(rs, "rmssd"),
+                        realONaN(rs, "pnn50"), realONaN(rs, "sd1"), realONaN(rs, "sd2"));
+                    r.setEspectro(realONaN(rs, "lf"), realONaN(rs, "hf"));
+                    resultados.add(r);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error obteniendo cálculos VFC: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
         }
+        return resultados;
+    }
+
+    private static double realONaN(ResultSet rs, String columna) throws SQLException {
+        double v = rs.getDouble(columna);
+        return rs.wasNull() ? Double.NaN : v;
     }
 
     // ============================================
     // OPERACIONES EVENTOS
     // ============================================
 
-    public void insertarEvento(int idLectura, int idTipoEvento, String descripcion) {
+    public synchronized void insertarEvento(int idLectura, int idTipoEvento, String descripcion) {
         String sql = "INSERT INTO Evento_Detectado (id_lectura, id_tipo_evento, descripcion) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
             pstmt.setInt(1, idLectura);
             pstmt.setInt(2, idTipoEvento);
             pstmt.setString(3, descripcion);
@@ -355,16 +1324,112 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Encola un evento de MotorEventos en el escritor por lotes
+     */
+    public void registrarEvento(MotorEventos.Evento evento) {
+        escritorLecturas.encolarEvento(evento);
+    }
+
+    /**
+     * Inserta varios eventos en una sola transacción
+     * @return número de eventos confirmados (0 si el lote se revirtió)
+     */
+    public synchronized int insertarLoteEventos(List<MotorEventos.Evento> eventos) {
+        try {
+            return escribirEventos(escritura, eventos);
+        } catch (SQLException e) {
+            System.err.println("Error insertando lote de eventos: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Escribe eventos prioritarios por la conexión de alarmas, en una
+     * transacción propia con synchronous = FULL (lo usa el hilo de CanalAlarmas)
+     * @return true si quedaron confirmados en disco
+     */
+    public boolean insertarEventosDurables(List<MotorEventos.Evento> eventos) {
+        ConexionSQLite c = alarmas;
+        if (c == null) return false;
+        synchronized (c) {
+            try {
+                return escribirEventos(c, eventos) == eventos.size();
+            } catch (SQLException e) {
+                System.err.println("Error insertando alarmas: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Inserta cada evento, ubicado por sesión e instante de la R, en una sola transacción
+     * @throws SQLException si falla (la transacción se deshace)
+     */
+    private static int escribirEventos(ConexionSQLite c, List<MotorEventos.Evento> eventos) throws SQLException {
+        String sqlEvento = "INSERT INTO Evento_Detectado (id_sesion, instante_ms, id_tipo_evento, descripcion, timestamp) "
+                         + "SELECT ?, ?, id_tipo_evento, ?, strftime('%Y-%m-%d %H:%M:%f', ?, 'unixepoch') "
+                         + "FROM Tipo_Evento WHERE nombre = ?";
+        Connection conexion = c.getConnection();
+        conexion.setAutoCommit(false);
+        try {
+            PreparedStatement evento = c.preparar(sqlEvento);
+            for (MotorEventos.Evento e : eventos) {
+                evento.setInt(1, e.getIdSesion());
+                evento.setLong(2, e.getInstanteMs());
+                evento.setString(3, e.getDescripcion());
+                evento.setDouble(4, e.getInstanteMs() / 1000.0);
+                evento.setString(5, e.getTipo());
+                if (evento.executeUpdate() != 1) {
+                    throw new SQLException("tipo de evento desconocido: " + e.getTipo());
+                }
+            }
+            conexion.commit();
+            return eventos.size();
+        } catch (SQLException e) {
+            conexion.rollback();
+            throw e;
+        } finally {
+            conexion.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Severidad (BAJA, MEDIA, ALTA, CRITICA) de cada Tipo_Evento por nombre
+     */
+    public Map<String, String> obtenerSeveridadesEventos() {
+        Map<String, String> severidades = new HashMap<>();
+        String sql = "SELECT nombre, severidad FROM Tipo_Evento";
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return severidades;
+        try (ResultSet rs = lector.preparar(sql).executeQuery()) {
+            while (rs.next()) {
+                severidades.put(rs.getString("nombre"), rs.getString("severidad"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error obteniendo severidades de eventos: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
+        }
+        return severidades;
+    }
+
     public int obtenerIdTipoEvento(String nombreEvento) {
         String sql = "SELECT id_tipo_evento FROM Tipo_Evento WHERE nombre = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        ConexionSQLite lector = tomarLector();
+        if (lector == null) return -1;
+        try {
+            PreparedStatement pstmt = lector.preparar(sql);
             pstmt.setString(1, nombreEvento);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("id_tipo_evento");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("id_tipo_evento");
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error obteniendo tipo de evento: " + e.getMessage());
+        } finally {
+            devolverLector(lector);
         }
         return -1;
     }
@@ -373,9 +1438,10 @@ public class DatabaseManager {
     // OPERACIONES MOTOR
     // ============================================
 
-    public void registrarComandoMotor(int idSesion, String comando) {
+    public synchronized void registrarComandoMotor(int idSesion, String comando) {
         String sql = "INSERT INTO Historial_Motor (id_sesion, comando) VALUES (?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement pstmt = escritura.preparar(sql);
             pstmt.setInt(1, idSesion);
             pstmt.setString(2, comando);
             pstmt.executeUpdate();
@@ -388,18 +1454,17 @@ public class DatabaseManager {
     // OPERACIONES CONFIGURACIÓN MQTT
     // ============================================
 
-    public void guardarConfiguracionMQTT(String brokerUrl, int puerto, String topicoDatos, String topicoMotor) {
+    public synchronized void guardarConfiguracionMQTT(String brokerUrl, int puerto, String topicoDatos, String topicoMotor) {
         // Desactivar configuraciones anteriores
         String sqlDesactivar = "UPDATE Configuracion_MQTT SET activo = 0";
         
         // Insertar nueva configuración
         String sqlInsertar = "INSERT INTO Configuracion_MQTT (broker_url, puerto, topico_datos, topico_motor) VALUES (?, ?, ?, ?)";
         
-        try (Statement stmt = connection.createStatement();
-             PreparedStatement pstmt = connection.prepareStatement(sqlInsertar)) {
-            
-            stmt.execute(sqlDesactivar);
+        try {
+            escritura.preparar(sqlDesactivar).executeUpdate();
             
+            PreparedStatement pstmt = escritura.preparar(sqlInsertar);
             pstmt.setString(1, brokerUrl);
             pstmt.setInt(2, puerto);
             pstmt.setString(3, topicoDatos);
@@ -415,17 +1480,40 @@ public class DatabaseManager {
     // ============================================
 
     public void cerrarConexion() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        escritorLecturas.cerrar();
+        for (ConexionSQLite lector : todosLectores) {
+            lector.cerrar();
+        }
+        ConexionSQLite c = alarmas;
+        if (c != null) {
+            synchronized (c) {
+                c.cerrar();
+            }
+        }
+        synchronized (this) {
+            if (escritura != null) {
+                escritura.cerrar();
                 System.out.println("✓ Conexión a base de datos cerrada");
             }
-        } catch (SQLException e) {
-            System.err.println("Error cerrando conexión: " + e.getMessage());
         }
     }
 
+    /** Conexión de escritura (uso bajo el monitor de esta clase) */
     public Connection getConnection() {
         return connection;
     }
+
+    public PerfilAlmacenamiento getPerfil() {
+        return perfil;
+    }
+
+    /** Aciertos/fallos de la caché de sentencias de la conexión de escritura */
+    public synchronized String resumenCacheSentencias() {
+        return escritura == null ? "sin conexión"
+            : escritura.getAciertos() + " aciertos, " + escritura.getFallos() + " preparaciones";
+    }
+
+    public EscritorLecturasECG getEscritorLecturas() {
+        return escritorLecturas;
+    }
 }
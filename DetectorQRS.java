@@ -0,0 +1,262 @@
+/**
+ * Detector QRS incremental estilo Pan-Tompkins
+ * Procesa una muestra a la vez con costo O(1): pasa-banda 5-15 Hz, derivada,
+ * cuadrado, integración en ventana móvil, umbrales adaptativos con periodo
+ * refractario y búsqueda hacia atrás de latidos perdidos
+ *
+ * El máximo de la señal integrada sólo dice que hubo un QRS: es ancho y
+ * puede tener varios lóbulos. El instante del latido es el pico R de la
+ * señal de entrada dentro de la ventana que lo precede, con interpolación
+ * parabólica; así los RR sirven para la variabilidad (MotorVFC)
+ */
+public class DetectorQRS {
+    public static final int FRECUENCIA_DEFECTO = 250;
+
+    private static final double VENTANA_INTEGRACION_S = 0.150;
+    private static final double REFRACTARIO_S = 0.200;
+    private static final double APRENDIZAJE_S = 2.0;
+    private static final double FACTOR_BUSQUEDA_ATRAS = 1.66;
+    private static final int PROMEDIO_RR = 8;
+    // Cuánto antes del máximo integrado se busca la R (ventana de integración + retardo de los filtros)
+    private static final double BUSQUEDA_R_S = 0.220;
+
+    private final int frecuencia;
+    private final Biquad pasaAltos;
+    private final Biquad pasaBajos;
+    private final int muestrasRefractario;
+    private final int muestrasAprendizaje;
+
+    // Anillo de la señal de entrada para ubicar la R
+    private final double[] entrada;
+    // > 0 si el QRS es positivo en esta derivación; se promedia entre latidos
+    private double polaridad;
+
+    // Derivada de 5 puntos
+    private double x1, x2, x3, x4;
+
+    // Integración en ventana móvil sobre un anillo de valores al cuadrado
+    private final double[] ventana;
+    private int posVentana;
+    private double sumaVentana;
+
+    // Detección de máximos locales sobre la señal integrada
+    private double integrada1, integrada2;
+
+    // Umbrales adaptativos
+    private double spki, npki, umbral1, umbral2;
+    private double maxAprendizaje, sumaAprendizaje;
+
+    // Estado de latidos
+    private long muestra;
+    private long ultimoLatido = -1;
+    private double ultimaR = -1;
+    private double picoRuidoMax;
+    private long picoRuidoMuestra = -1;
+    private double picoRuidoR;
+    private final double[] rrRecientes = new double[PROMEDIO_RR];
+    private int numRR, posRR;
+    private double sumaRR;
+    private double ultimoRRMs;
+    private int bpm;
+
+    public DetectorQRS() {
+        this(FRECUENCIA_DEFECTO);
+    }
+
+    public DetectorQRS(int frecuencia) {
+        if (frecuencia < 50) {
+            throw new IllegalArgumentException("Frecuencia de muestreo demasiado baja: " + frecuencia);
+        }
+        this.frecuencia = frecuencia;
+        this.pasaAltos = Biquad.pasaAltos(5.0, frecuencia);
+        this.pasaBajos = Biquad.pasaBajos(15.0, frecuencia);
+        this.ventana = new double[Math.max(1, (int) Math.round(VENTANA_INTEGRACION_S * frecuencia))];
+        this.muestrasRefractario = (int) Math.round(REFRACTARIO_S * frecuencia);
+        this.muestrasAprendizaje = (int) Math.round(APRENDIZAJE_S * frecuencia);
+        this.entrada = new double[(int) Math.round(BUSQUEDA_R_S * frecuencia) + 2];
+    }
+
+    /**
+     * Procesa una muestra cruda
+     * @return true si con esta muestra se confirmó un nuevo latido
+     */
+    public boolean procesar(double valor) {
+        long n = muestra++;
+        entrada[(int) (n % entrada.length)] = valor;
+
+        double filtrada = pasaBajos.procesar(pasaAltos.procesar(valor));
+        double derivada = (2 * filtrada + x1 - x3 - 2 * x4) * 0.125;
+        x4 = x3; x3 = x2; x2 = x1; x1 = filtrada;
+
+        double cuadrado = derivada * derivada;
+        sumaVentana += cuadrado - ventana[posVentana];
+        ventana[posVentana] = cuadrado;
+        if (++posVentana == ventana.length) posVentana = 0;
+        double integrada = sumaVentana / ventana.length;
+
+        boolean esPico = integrada1 > integrada2 && integrada1 >= integrada;
+        double pico = integrada1;
+        integrada2 = integrada1;
+        integrada1 = integrada;
+
+        if (n < muestrasAprendizaje) {
+            maxAprendizaje = Math.max(maxAprendizaje, integrada);
+            sumaAprendizaje += integrada;
+            if (n == muestrasAprendizaje - 1) {
+                spki = maxAprendizaje / 3;
+                npki = sumaAprendizaje / muestrasAprendizaje / 2;
+                actualizarUmbrales();
+            }
+            return false;
+        }
+
+        long muestraPico = n - 1;
+        if (esPico && (ultimoLatido < 0 || muestraPico - ultimoLatido > muestrasRefractario)) {
+            if (pico > umbral1) {
+                spki = 0.125 * pico + 0.875 * spki;
+                actualizarUmbrales();
+                registrarLatido(muestraPico, ubicarR(muestraPico));
+                return true;
+            }
+            npki = 0.125 * pico + 0.875 * npki;
+            actualizarUmbrales();
+            if (pico > picoRuidoMax) {
+                picoRuidoMax = pico;
+                picoRuidoMuestra = muestraPico;
+                // Sólo la búsqueda hacia atrás lo usa (con margen por si el umbral baja),
+                // y después la ventana ya no está en el anillo
+                picoRuidoR = pico > 0.5 * umbral2 ? ubicarR(muestraPico) : muestraPico;
+            }
+        }
+
+        // Búsqueda hacia atrás: ningún latido en 1.66 RR promedio
+        if (numRR > 0 && picoRuidoMuestra >= 0 && picoRuidoMax > umbral2
+                && n - ultimoLatido > FACTOR_BUSQUEDA_ATRAS * rrPromedioMuestras()) {
+            spki = 0.25 * picoRuidoMax + 0.75 * spki;
+            actualizarUmbrales();
+            registrarLatido(picoRuidoMuestra, picoRuidoR);
+            return true;
+        }
+        return false;
+    }
+
+    private void actualizarUmbrales() {
+        umbral1 = npki + 0.25 * (spki - npki);
+        umbral2 = 0.5 * umbral1;
+    }
+
+    /**
+     * Pico R (en muestras, fraccionario) entre muestraPico - BUSQUEDA_R_S y
+     * muestraPico, del signo que domina en los QRS de la sesión
+     */
+    private double ubicarR(long muestraPico) {
+        long desde = Math.max(0, muestraPico - entrada.length + 2);
+        int cantidad = (int) (muestraPico - desde + 1);
+        int pos = (int) (desde % entrada.length);
+        double max = Double.NEGATIVE_INFINITY, min = Double.POSITIVE_INFINITY, suma = 0;
+        int iMax = 0, iMin = 0;
+        for (int i = 0; i < cantidad; i++) {
+            double v = entrada[pos];
+            if (++pos == entrada.length) pos = 0;
+            suma += v;
+            if (v > max) { max = v; iMax = i; }
+            if (v < min) { min = v; iMin = i; }
+        }
+        double media = suma / cantidad;
+        double arriba = max - media, abajo = media - min;
+        if (arriba + abajo > 0) polaridad = 0.9 * polaridad + 0.1 * (arriba - abajo) / (arriba + abajo);
+        long k = desde + (polaridad >= 0 ? iMax : iMin);
+        if (k <= desde || k >= muestraPico) return k;
+        // Vértice de la parábola por los tres puntos alrededor del extremo
+        double y0 = entrada[(int) ((k - 1) % entrada.length)];
+        double y1 = entrada[(int) (k % entrada.length)];
+        double y2 = entrada[(int) ((k + 1) % entrada.length)];
+        double curvatura = y0 - 2 * y1 + y2;
+        if (curvatura == 0) return k;
+        return k + Math.max(-0.5, Math.min(0.5, 0.5 * (y0 - y2) / curvatura));
+    }
+
+    private void registrarLatido(long muestraPico, double posicionR) {
+        if (ultimaR >= 0) {
+            double rr = (posicionR - ultimaR) * 1000.0 / frecuencia;
+            if (numRR == PROMEDIO_RR) {
+                sumaRR -= rrRecientes[posRR];
+            } else {
+                numRR++;
+            }
+            rrRecientes[posRR] = rr;
+            sumaRR += rr;
+            posRR = (posRR + 1) % PROMEDIO_RR;
+            ultimoRRMs = rr;
+            bpm = (int) Math.min(300, Math.round(60000.0 / (sumaRR / numRR)));
+        }
+        ultimoLatido = muestraPico;
+        ultimaR = posicionR;
+        picoRuidoMax = 0;
+        picoRuidoMuestra = -1;
+    }
+
+    private double rrPromedioMuestras() {
+        return sumaRR / numRR * frecuencia / 1000.0;
+    }
+
+    // ============================================
+    // RESULTADOS
+    // ============================================
+
+    public int getFrecuencia() { return frecuencia; }
+
+    /** Posición de la última onda R, en muestras (con fracción) desde la primera */
+    public double getUltimaR() {
+        return Math.max(0, ultimaR);
+    }
+
+    /** Instante de la última onda R, en ms desde la primera muestra */
+    public double getUltimoLatidoMs() {
+        return Math.max(0, ultimaR) * 1000.0 / frecuencia;
+    }
+
+    /** Último intervalo RR en ms (0 hasta tener dos latidos) */
+    public double getUltimoRRMs() { return ultimoRRMs; }
+
+    /** BPM a partir del promedio de los últimos 8 intervalos RR (0 hasta tener dos latidos) */
+    public int getBPM() { return bpm; }
+
+    public long getMuestrasProcesadas() { return muestra; }
+
+    // ============================================
+    // FILTRO IIR DE SEGUNDO ORDEN
+    // ============================================
+
+    static final class Biquad {
+        private final double b0, b1, b2, a1, a2;
+        private double z1, z2;
+
+        private Biquad(double b0, double b1, double b2, double a0, double a1, double a2) {
+            this.b0 = b0 / a0;
+            this.b1 = b1 / a0;
+            this.b2 = b2 / a0;
+            this.a1 = a1 / a0;
+            this.a2 = a2 / a0;
+        }
+
+        static Biquad pasaAltos(double corte, int frecuencia) {
+            double w = 2 * Math.PI * corte / frecuencia;
+            double cos = Math.cos(w), alfa = Math.sin(w) / Math.sqrt(2);
+            return new Biquad((1 + cos) / 2, -(1 + cos), (1 + cos) / 2, 1 + alfa, -2 * cos, 1 - alfa);
+        }
+
+        static Biquad pasaBajos(double corte, int frecuencia) {
+            double w = 2 * Math.PI * corte / frecuencia;
+            double cos = Math.cos(w), alfa = Math.sin(w) / Math.sqrt(2);
+            return new Biquad((1 - cos) / 2, 1 - cos, (1 - cos) / 2, 1 + alfa, -2 * cos, 1 - alfa);
+        }
+
+        double procesar(double x) {
+            double y = b0 * x + z1;
+            z1 = b1 * x - a1 * y + z2;
+            z2 = b2 * x - a2 * y;
+            return y;
+        }
+    }
+}
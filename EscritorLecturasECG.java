@@ -0,0 +1,437 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Escritor asíncrono por lotes para las tablas Lectura_ECG y Bloque_ECG
+ * (y los eventos de MotorEventos hacia Evento_Detectado y los cálculos de
+ * BPM de cada sesión hacia Calculo_BPM)
+ * Acumula las muestras en arreglos primitivos (y los bloques comprimidos y
+ * eventos en listas) y los confirma en una sola transacción cuando se
+ * alcanza el tamaño de lote o el tiempo máximo de espera
+ */
+public class EscritorLecturasECG {
+    public static final int CAPACIDAD_DEFECTO = 16384;
+    public static final int TAMANO_LOTE_DEFECTO = 500;
+    public static final long ESPERA_MAXIMA_MS_DEFECTO = 250;
+    private static final long TIEMPO_VACIADO_MS = 5000;
+    private static final int LOTE_BLOQUES = 16;
+    private static final int MAX_BLOQUES_PENDIENTES = 4096;
+    private static final int MAX_EVENTOS_PENDIENTES = 1024;
+    private static final int MAX_CALCULOS_PENDIENTES = 1024;
+    private static final Histograma ENCOLADO_COMMIT = MetricasECG.global().latencia("db.encolado_commit");
+    private static final Histograma TAMANO_LOTE_LECTURAS = MetricasECG.global().distribucion("db.lote_lecturas", "filas");
+    private static final Histograma TAMANO_LOTE_BLOQUES = MetricasECG.global().distribucion("db.lote_bloques", "bloques");
+
+    private final DatabaseManager db;
+    private final int capacidad;
+    private final int tamanoLote;
+    private final long esperaMaximaNanos;
+
+    // Doble búfer: los productores llenan "pendientes" y el hilo escritor confirma "enVuelo"
+    private int[] sesionesPendientes;
+    private double[] valoresPendientes;
+    private long[] instantesPendientes;
+    private int numPendientes;
+    private long inicioLoteNanos;
+
+    private int[] sesionesEnVuelo;
+    private double[] valoresEnVuelo;
+    private long[] instantesEnVuelo;
+
+    private List<BloqueECG> bloquesPendientes = new ArrayList<>();
+    private List<BloqueECG> bloquesEnVuelo = new ArrayList<>();
+    private List<MotorEventos.Evento> eventosPendientes = new ArrayList<>();
+    private List<MotorEventos.Evento> eventosEnVuelo = new ArrayList<>();
+    private CalculosBPM calculosPendientes = new CalculosBPM();
+    private CalculosBPM calculosEnVuelo = new CalculosBPM();
+
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Condition hayTrabajo = cerrojo.newCondition();
+    private final Condition loteProcesado = cerrojo.newCondition();
+    private long totalAceptadas;
+    private long totalProcesadas;
+    private boolean vaciadoSolicitado;
+    private boolean activo;
+    private Thread hiloEscritor;
+
+    // Contadores
+    private final AtomicLong lecturasEnLote = new AtomicLong();
+    private final AtomicLong lecturasConfirmadas = new AtomicLong();
+    private final AtomicLong lecturasDescartadas = new AtomicLong();
+    private final AtomicLong lotesConfirmados = new AtomicLong();
+    private final AtomicLong bloquesConfirmados = new AtomicLong();
+    private final AtomicLong bloquesDescartados = new AtomicLong();
+    private final AtomicLong eventosConfirmados = new AtomicLong();
+    private final AtomicLong eventosDescartados = new AtomicLong();
+    private final AtomicLong calculosConfirmados = new AtomicLong();
+    private final AtomicLong calculosDescartados = new AtomicLong();
+
+    public EscritorLecturasECG(DatabaseManager db) {
+        this(db, CAPACIDAD_DEFECTO, TAMANO_LOTE_DEFECTO, ESPERA_MAXIMA_MS_DEFECTO);
+    }
+
+    public EscritorLecturasECG(DatabaseManager db, int capacidad, int tamanoLote, long esperaMaximaMs) {
+        if (capacidad <= 0 || tamanoLote <= 0 || tamanoLote > capacidad) {
+            throw new IllegalArgumentException("Capacidad y tamaño de lote inválidos: " + capacidad + "/" + tamanoLote);
+        }
+        this.db = db;
+        this.capacidad = capacidad;
+        this.tamanoLote = tamanoLote;
+        this.esperaMaximaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+        this.sesionesPendientes = new int[capacidad];
+        this.valoresPendientes = new double[capacidad];
+        this.instantesPendientes = new long[capacidad];
+        this.sesionesEnVuelo = new int[capacidad];
+        this.valoresEnVuelo = new double[capacidad];
+        this.instantesEnVuelo = new long[capacidad];
+    }
+
+    // ============================================
+    // CICLO DE VIDA
+    // ============================================
+
+    public void iniciar() {
+        cerrojo.lock();
+        try {
+            if (activo) return;
+            activo = true;
+        } finally {
+            cerrojo.unlock();
+        }
+        MetricasECG.global().medidor("db.escritor_pendientes", this::getPendientes);
+        hiloEscritor = new Thread(this::ejecutar, "EscritorLecturasECG");
+        hiloEscritor.setDaemon(true);
+        hiloEscritor.start();
+    }
+
+    /**
+     * Detiene el hilo escritor después de confirmar todas las lecturas pendientes
+     */
+    public void cerrar() {
+        cerrojo.lock();
+        try {
+            if (!activo) return;
+            activo = false;
+            hayTrabajo.signalAll();
+        } finally {
+            cerrojo.unlock();
+        }
+        try {
+            hiloEscritor.join(TIEMPO_VACIADO_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("✓ Escritor de lecturas detenido: " + resumen());
+    }
+
+    // ============================================
+    // PRODUCTORES
+    // ============================================
+
+    /**
+     * Agrega una lectura a la cola. Nunca bloquea por E/S: si la cola está
+     * llena la lectura se descarta y se contabiliza
+     * @return false si la lectura fue descartada
+     */
+    public boolean encolar(int idSesion, double valorSenal) {
+        long instanteMs = System.currentTimeMillis();
+        cerrojo.lock();
+        try {
+            if (!activo || numPendientes == capacidad) {
+                lecturasDescartadas.incrementAndGet();
+                return false;
+            }
+            int i = numPendientes++;
+            sesionesPendientes[i] = idSesion;
+            valoresPendientes[i] = valorSenal;
+            instantesPendientes[i] = instanteMs;
+            totalAceptadas++;
+            if (i == 0 && bloquesPendientes.isEmpty() && eventosPendientes.isEmpty() && calculosPendientes.cantidad == 0) {
+                inicioLoteNanos = System.nanoTime();
+                hayTrabajo.signal();
+            } else if (numPendientes == tamanoLote) {
+                hayTrabajo.signal();
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+        lecturasEnLote.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Agrega un bloque comprimido; igual que encolar, nunca bloquea por E/S
+     * @return false si el bloque fue descartado
+     */
+    public boolean encolarBloque(BloqueECG bloque) {
+        cerrojo.lock();
+        try {
+            if (!activo || bloquesPendientes.size() == MAX_BLOQUES_PENDIENTES) {
+                bloquesDescartados.incrementAndGet();
+                return false;
+            }
+            bloquesPendientes.add(bloque);
+            totalAceptadas++;
+            if (numPendientes == 0 && bloquesPendientes.size() == 1 && eventosPendientes.isEmpty()
+                && calculosPendientes.cantidad == 0) {
+                inicioLoteNanos = System.nanoTime();
+                hayTrabajo.signal();
+            } else if (bloquesPendientes.size() == LOTE_BLOQUES) {
+                hayTrabajo.signal();
+            }
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Agrega un evento detectado; viaja en el mismo lote que las lecturas y
+     * bloques, así que se confirma como mucho tras la espera máxima
+     * @return false si el evento fue descartado
+     */
+    public boolean encolarEvento(MotorEventos.Evento evento) {
+        cerrojo.lock();
+        try {
+            if (!activo || eventosPendientes.size() == MAX_EVENTOS_PENDIENTES) {
+                eventosDescartados.incrementAndGet();
+                return false;
+            }
+            eventosPendientes.add(evento);
+            totalAceptadas++;
+            if (numPendientes == 0 && bloquesPendientes.isEmpty() && eventosPendientes.size() == 1
+                && calculosPendientes.cantidad == 0) {
+                inicioLoteNanos = System.nanoTime();
+                hayTrabajo.signal();
+            }
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Agrega un cálculo de BPM con el instante de la señal al que corresponde;
+     * igual que los eventos, viaja en el lote siguiente
+     * @return false si el cálculo fue descartado
+     */
+    public boolean encolarCalculoBPM(int idSesion, int bpm, int numLatidos, long instanteMs) {
+        cerrojo.lock();
+        try {
+            CalculosBPM c = calculosPendientes;
+            if (!activo || c.cantidad == MAX_CALCULOS_PENDIENTES) {
+                calculosDescartados.incrementAndGet();
+                return false;
+            }
+            c.agregar(idSesion, bpm, numLatidos, instanteMs);
+            totalAceptadas++;
+            if (numPendientes == 0 && bloquesPendientes.isEmpty() && eventosPendientes.isEmpty() && c.cantidad == 1) {
+                inicioLoteNanos = System.nanoTime();
+                hayTrabajo.signal();
+            }
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Bloquea hasta que todas las lecturas encoladas antes de la llamada
+     * hayan sido confirmadas (o descartadas por error de escritura)
+     */
+    public void vaciar() {
+        cerrojo.lock();
+        try {
+            long objetivo = totalAceptadas;
+            if (!activo || totalProcesadas >= objetivo) return;
+            vaciadoSolicitado = true;
+            hayTrabajo.signal();
+            long restante = TimeUnit.MILLISECONDS.toNanos(TIEMPO_VACIADO_MS);
+            while (totalProcesadas < objetivo && restante > 0) {
+                restante = loteProcesado.awaitNanos(restante);
+            }
+            if (totalProcesadas < objetivo) {
+                System.err.println("Advertencia: vaciado del escritor de lecturas incompleto");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // ============================================
+    // HILO ESCRITOR
+    // ============================================
+
+    private void ejecutar() {
+        while (true) {
+            int cantidad;
+            long inicioLote;
+            List<BloqueECG> bloques;
+            List<MotorEventos.Evento> eventos;
+            CalculosBPM calculos;
+            cerrojo.lock();
+            try {
+                while (activo && !vaciadoSolicitado && numPendientes < tamanoLote
+                       && bloquesPendientes.size() < LOTE_BLOQUES) {
+                    if (sinPendientes()) {
+                        hayTrabajo.await();
+                    } else {
+                        long restante = inicioLoteNanos + esperaMaximaNanos - System.nanoTime();
+                        if (restante <= 0) break;
+                        hayTrabajo.awaitNanos(restante);
+                    }
+                }
+                if (sinPendientes()) {
+                    vaciadoSolicitado = false;
+                    if (!activo) break;
+                    continue;
+                }
+                inicioLote = inicioLoteNanos;
+                cantidad = intercambiarBuferes();
+                bloques = bloquesPendientes;
+                bloquesPendientes = bloquesEnVuelo;
+                bloquesEnVuelo = bloques;
+                eventos = eventosPendientes;
+                eventosPendientes = eventosEnVuelo;
+                eventosEnVuelo = eventos;
+                calculos = calculosPendientes;
+                calculosPendientes = calculosEnVuelo;
+                calculosEnVuelo = calculos;
+                vaciadoSolicitado = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                cerrojo.unlock();
+            }
+
+            if (cantidad > 0) {
+                int escritas = db.insertarLoteLecturasECG(sesionesEnVuelo, valoresEnVuelo, instantesEnVuelo, cantidad);
+                if (escritas == cantidad) {
+                    lecturasConfirmadas.addAndGet(cantidad);
+                    lotesConfirmados.incrementAndGet();
+                } else {
+                    lecturasDescartadas.addAndGet(cantidad);
+                }
+            }
+            int numBloques = bloques.size();
+            if (numBloques > 0) {
+                if (db.insertarLoteBloquesECG(bloques) == numBloques) {
+                    bloquesConfirmados.addAndGet(numBloques);
+                } else {
+                    bloquesDescartados.addAndGet(numBloques);
+                }
+                bloques.clear();
+            }
+            int numEventos = eventos.size();
+            if (numEventos > 0) {
+                if (db.insertarLoteEventos(eventos) == numEventos) {
+                    eventosConfirmados.addAndGet(numEventos);
+                } else {
+                    eventosDescartados.addAndGet(numEventos);
+                }
+                eventos.clear();
+            }
+            int numCalculos = calculos.cantidad;
+            if (numCalculos > 0) {
+                if (db.insertarLoteCalculosBPM(calculos.sesiones, calculos.bpm, calculos.latidos,
+                                               calculos.instantes, numCalculos) == numCalculos) {
+                    calculosConfirmados.addAndGet(numCalculos);
+                } else {
+                    calculosDescartados.addAndGet(numCalculos);
+                }
+                calculos.cantidad = 0;
+            }
+
+            // Desde que el primer elemento del lote entró a la cola hasta su commit
+            ENCOLADO_COMMIT.registrarDesde(inicioLote);
+            if (cantidad > 0) TAMANO_LOTE_LECTURAS.registrar(cantidad);
+            if (numBloques > 0) TAMANO_LOTE_BLOQUES.registrar(numBloques);
+
+            cerrojo.lock();
+            try {
+                totalProcesadas += cantidad + numBloques + numEventos + numCalculos;
+                loteProcesado.signalAll();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+    }
+
+    private boolean sinPendientes() {
+        return numPendientes == 0 && bloquesPendientes.isEmpty() && eventosPendientes.isEmpty()
+            && calculosPendientes.cantidad == 0;
+    }
+
+    private int intercambiarBuferes() {
+        int[] sesiones = sesionesEnVuelo;
+        double[] valores = valoresEnVuelo;
+        long[] instantes = instantesEnVuelo;
+        sesionesEnVuelo = sesionesPendientes;
+        valoresEnVuelo = valoresPendientes;
+        instantesEnVuelo = instantesPendientes;
+        sesionesPendientes = sesiones;
+        valoresPendientes = valores;
+        instantesPendientes = instantes;
+        int cantidad = numPendientes;
+        numPendientes = 0;
+        return cantidad;
+    }
+
+    // ============================================
+    // MÉTRICAS
+    // ============================================
+
+    /** Lecturas, bloques, eventos y cálculos aceptados que aún no se confirmaron */
+    public long getPendientes() {
+        cerrojo.lock();
+        try {
+            return totalAceptadas - totalProcesadas;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public long getLecturasEnLote() { return lecturasEnLote.get(); }
+    public long getLecturasConfirmadas() { return lecturasConfirmadas.get(); }
+    public long getLecturasDescartadas() { return lecturasDescartadas.get(); }
+    public long getLotesConfirmados() { return lotesConfirmados.get(); }
+    public long getBloquesConfirmados() { return bloquesConfirmados.get(); }
+    public long getBloquesDescartados() { return bloquesDescartados.get(); }
+    public long getEventosConfirmados() { return eventosConfirmados.get(); }
+    public long getEventosDescartados() { return eventosDescartados.get(); }
+    public long getCalculosConfirmados() { return calculosConfirmados.get(); }
+    public long getCalculosDescartados() { return calculosDescartados.get(); }
+
+    public String resumen() {
+        return lecturasEnLote.get() + " en lote, " + lecturasConfirmadas.get() + " confirmadas, "
+            + lecturasDescartadas.get() + " descartadas, " + lotesConfirmados.get() + " lotes, "
+            + bloquesConfirmados.get() + " bloques (" + bloquesDescartados.get() + " descartados), "
+            + eventosConfirmados.get() + " eventos (" + eventosDescartados.get() + " descartados), "
+            + calculosConfirmados.get() + " cálculos BPM (" + calculosDescartados.get() + " descartados)";
+    }
+
+    /**
+     * Cálculos de BPM en arreglos primitivos, como las lecturas
+     */
+    private static final class CalculosBPM {
+        final int[] sesiones = new int[MAX_CALCULOS_PENDIENTES];
+        final int[] bpm = new int[MAX_CALCULOS_PENDIENTES];
+        final int[] latidos = new int[MAX_CALCULOS_PENDIENTES];
+        final long[] instantes = new long[MAX_CALCULOS_PENDIENTES];
+        int cantidad;
+
+        void agregar(int idSesion, int valor, int numLatidos, long instanteMs) {
+            sesiones[cantidad] = idSesion;
+            bpm[cantidad] = valor;
+            latidos[cantidad] = numLatidos;
+            instantes[cantidad++] = instanteMs;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+/**
+ * Cadena de filtros IIR de segundo orden (biquads) para la señal ECG cruda
+ * pasa-altos contra la deriva de línea base, notch de la red eléctrica y
+ * pasa-bajos. Los coeficientes se calculan una vez para la frecuencia de la
+ * sesión y el estado vive en arreglos primitivos: procesar no asigna memoria
+ *
+ * Se configura con -Decg.filtro.pasaAltos=0.5, -Decg.filtro.red=50|60 y
+ * -Decg.filtro.pasaBajos=40 (en Hz; 0 desactiva la etapa)
+ */
+public class FiltroECG {
+    public static final double PASA_ALTOS_DEFECTO = 0.5;
+    public static final double RED_DEFECTO = 50.0;
+    public static final double PASA_BAJOS_DEFECTO = 40.0;
+    private static final double Q_BUTTERWORTH = 1 / Math.sqrt(2);
+    private static final double Q_NOTCH = 25.0;
+    private static final int MAX_ETAPAS = 3;
+
+    private final int frecuencia;
+    // Por etapa: b0, b1, b2, a1, a2 (normalizados por a0)
+    private final double[] coeficientes = new double[MAX_ETAPAS * 5];
+    // Por etapa: z1, z2 (forma directa II transpuesta)
+    private final double[] estado = new double[MAX_ETAPAS * 2];
+    private int etapas;
+    private boolean cebado;
+    private final StringBuilder descripcion = new StringBuilder();
+
+    /**
+     * @param pasaAltosHz corte del pasa-altos, o 0 para omitirlo
+     * @param redHz frecuencia de la red (50/60), o 0 para omitir el notch
+     * @param pasaBajosHz corte del pasa-bajos, o 0 para omitirlo
+     */
+    public FiltroECG(int frecuencia, double pasaAltosHz, double redHz, double pasaBajosHz) {
+        if (frecuencia <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + frecuencia);
+        }
+        this.frecuencia = frecuencia;
+        double nyquist = frecuencia / 2.0;
+        if (pasaAltosHz > 0 && pasaAltosHz < nyquist) {
+            agregarPasaAltos(pasaAltosHz);
+        }
+        // Un notch o pasa-bajos cerca de Nyquist no tiene efecto útil
+        if (redHz > 0 && redHz < nyquist * 0.9) {
+            agregarNotch(redHz);
+        }
+        if (pasaBajosHz > 0 && pasaBajosHz < nyquist * 0.9) {
+            agregarPasaBajos(pasaBajosHz);
+        }
+    }
+
+    public static FiltroECG desdeSistema(int frecuencia) {
+        return new FiltroECG(frecuencia,
+            leerHz("ecg.filtro.pasaAltos", PASA_ALTOS_DEFECTO),
+            leerHz("ecg.filtro.red", RED_DEFECTO),
+            leerHz("ecg.filtro.pasaBajos", PASA_BAJOS_DEFECTO));
+    }
+
+    /** Cadena vacía: la señal pasa sin cambios */
+    public static FiltroECG sinFiltro(int frecuencia) {
+        return new FiltroECG(frecuencia, 0, 0, 0);
+    }
+
+    private static double leerHz(String propiedad, double defecto) {
+        String valor = System.getProperty(propiedad);
+        if (valor == null) return defecto;
+        try {
+            return Double.parseDouble(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Error en " + propiedad + ": " + valor + " no es un número; se usa " + defecto);
+            return defecto;
+        }
+    }
+
+    // ============================================
+    // DISEÑO (fórmulas del RBJ Audio EQ Cookbook)
+    // ============================================
+
+    private void agregarPasaAltos(double corte) {
+        double w = 2 * Math.PI * corte / frecuencia;
+        double cos = Math.cos(w), alfa = Math.sin(w) / (2 * Q_BUTTERWORTH);
+        agregarEtapa((1 + cos) / 2, -(1 + cos), (1 + cos) / 2, 1 + alfa, -2 * cos, 1 - alfa);
+        anotar("pasa-altos " + corte + " Hz");
+    }
+
+    private void agregarNotch(double centro) {
+        double w = 2 * Math.PI * centro / frecuencia;
+        double cos = Math.cos(w), alfa = Math.sin(w) / (2 * Q_NOTCH);
+        agregarEtapa(1, -2 * cos, 1, 1 + alfa, -2 * cos, 1 - alfa);
+        anotar("notch " + centro + " Hz");
+    }
+
+    private void agregarPasaBajos(double corte) {
+        double w = 2 * Math.PI * corte / frecuencia;
+        double cos = Math.cos(w), alfa = Math.sin(w) / (2 * Q_BUTTERWORTH);
+        agregarEtapa((1 - cos) / 2, 1 - cos, (1 - cos) / 2, 1 + alfa, -2 * cos, 1 - alfa);
+        anotar("pasa-bajos " + corte + " Hz");
+    }
+
+    private void agregarEtapa(double b0, double b1, double b2, double a0, double a1, double a2) {
+        int c = etapas * 5;
+        coeficientes[c] = b0 / a0;
+        coeficientes[c + 1] = b1 / a0;
+        coeficientes[c + 2] = b2 / a0;
+        coeficientes[c + 3] = a1 / a0;
+        coeficientes[c + 4] = a2 / a0;
+        etapas++;
+    }
+
+    private void anotar(String etapa) {
+        if (descripcion.length() > 0) descripcion.append(", ");
+        descripcion.append(etapa);
+    }
+
+    // ============================================
+    // PROCESAMIENTO (un solo hilo: el del shard)
+    // ============================================
+
+    /**
+     * Filtra una muestra
+     */
+    public double procesar(double x) {
+        if (!cebado) cebar(x);
+        double[] c = coeficientes;
+        double[] z = estado;
+        for (int k = 0, ic = 0, iz = 0; k < etapas; k++, ic += 5, iz += 2) {
+            double y = c[ic] * x + z[iz];
+            z[iz] = c[ic + 1] * x - c[ic + 3] * y + z[iz + 1];
+            z[iz + 1] = c[ic + 2] * x - c[ic + 4] * y;
+            x = y;
+        }
+        return x;
+    }
+
+    /**
+     * Filtra en el lugar las primeras n muestras del lote, etapa por etapa
+     * (coeficientes y estado en variables locales durante todo el recorrido)
+     */
+    public void procesar(double[] datos, int n) {
+        if (!cebado && n > 0) cebar(datos[0]);
+        for (int k = 0; k < etapas; k++) {
+            int ic = k * 5, iz = k * 2;
+            double b0 = coeficientes[ic], b1 = coeficientes[ic + 1], b2 = coeficientes[ic + 2];
+            double a1 = coeficientes[ic + 3], a2 = coeficientes[ic + 4];
+            double z1 = estado[iz], z2 = estado[iz + 1];
+            for (int i = 0; i < n; i++) {
+                double x = datos[i];
+                double y = b0 * x + z1;
+                z1 = b1 * x - a1 * y + z2;
+                z2 = b2 * x - a2 * y;
+                datos[i] = y;
+            }
+            estado[iz] = z1;
+            estado[iz + 1] = z2;
+        }
+    }
+
+    /**
+     * Lleva cada etapa a su régimen permanente para una entrada constante x,
+     * así el nivel de continua de la primera muestra no produce un escalón
+     */
+    private void cebar(double x) {
+        for (int k = 0, ic = 0, iz = 0; k < etapas; k++, ic += 5, iz += 2) {
+            double ganancia = (coeficientes[ic] + coeficientes[ic + 1] + coeficientes[ic + 2])
+                            / (1 + coeficientes[ic + 3] + coeficientes[ic + 4]);
+            double y = ganancia * x;
+            estado[iz] = y - coeficientes[ic] * x;
+            estado[iz + 1] = coeficientes[ic + 2] * x - coeficientes[ic + 4] * y;
+            x = y;
+        }
+        cebado = true;
+    }
+
+    /** Olvida el estado (por ejemplo, tras un hueco en la señal) */
+    public void reiniciar() {
+        Arrays.fill(estado, 0);
+        cebado = false;
+    }
+
+    public int getFrecuencia() { return frecuencia; }
+    public int getEtapas() { return etapas; }
+
+    @Override
+    public String toString() {
+        return etapas == 0 ? "sin filtro" : descripcion + " @ " + frecuencia + " Hz";
+    }
+}
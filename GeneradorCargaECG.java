@@ -0,0 +1,709 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Generador de carga para pruebas de resistencia: N pacientes sintéticos a
+ * M Hz (GeneradorSenalECG) o sesiones grabadas en Bloque_ECG, enviados como
+ * tramas TramaECG al broker o directamente a MQTTDataReader con un
+ * GestorSesiones propio
+ *
+ * El tiempo lo marca un reloj virtual: cada trama tiene un instante de señal
+ * y el reloj sólo decide cuándo se entrega (velocidad 1 = tiempo real, 0 =
+ * sin esperas). Las tramas salen siempre en el mismo orden, así que dos
+ * corridas con los mismos argumentos producen la misma huella CRC32 sin
+ * importar la velocidad. Cada intervalo se informa el caudal, las muestras
+ * perdidas, la ocupación de colas y el heap tras el último GC con su
+ * tendencia en MB/h
+ *
+ * Uso: java -cp .:sqlite-jdbc.jar GeneradorCargaECG [-n 4] [-hz 250] [-duracion 60]
+ *      [-velocidad 1] [-destino directo|mqtt] [-replay 3,5] ...   (-ayuda lista todas)
+ */
+public class GeneradorCargaECG {
+    public static final String ARCHIVO_CARGA = "carga_ecg.db";
+    // Cuentas int16 de 1 µV: ±32 mV de rango
+    private static final float ESCALA_INT16 = 0.001f;
+    private static final int BLOQUES_POR_CONSULTA = 60;
+    private static final long ESPERA_CONEXION_MS = 10_000;
+    private static final long ESPERA_DRENADO_MS = 5000;
+
+    // ============================================
+    // FUENTES DE SEÑAL
+    // ============================================
+
+    /**
+     * Origen de las muestras de un flujo; los instantes son ms de señal
+     * desde el inicio del flujo
+     */
+    interface Fuente {
+        int getFrecuencia();
+
+        /** Instante de la próxima muestra, o Long.MAX_VALUE si no quedan */
+        long getInstanteMs();
+
+        /**
+         * Copia hasta n muestras contiguas (una trama)
+         * @return muestras copiadas; 0 al terminar
+         */
+        int leer(double[] destino, int n);
+
+        String describir();
+    }
+
+    static final class FuenteSintetica implements Fuente {
+        private final GeneradorSenalECG generador;
+        private final long limiteMuestras;
+        private final String descripcion;
+
+        /**
+         * @param segundos duración en tiempo de señal; 0 = sin límite
+         */
+        FuenteSintetica(GeneradorSenalECG generador, long segundos, String descripcion) {
+            this.generador = generador;
+            this.limiteMuestras = segundos > 0 ? segundos * generador.getFrecuencia() : Long.MAX_VALUE;
+            this.descripcion = descripcion;
+        }
+
+        @Override
+        public int getFrecuencia() { return generador.getFrecuencia(); }
+
+        @Override
+        public long getInstanteMs() {
+            return generador.getMuestras() >= limiteMuestras ? Long.MAX_VALUE : generador.getInstanteMs();
+        }
+
+        @Override
+        public int leer(double[] destino, int n) {
+            int cantidad = (int) Math.min(n, limiteMuestras - generador.getMuestras());
+            if (cantidad <= 0) return 0;
+            generador.generar(destino, cantidad);
+            return cantidad;
+        }
+
+        @Override
+        public String describir() { return descripcion; }
+    }
+
+    /**
+     * Señal de una sesión grabada, leída de a BLOQUES_POR_CONSULTA bloques;
+     * los huecos entre bloques se conservan y una trama nunca cruza un bloque
+     */
+    static final class FuenteGrabada implements Fuente {
+        private final DatabaseManager db;
+        private final int idSesion;
+        private final long origenMs;
+        private final int frecuencia;
+        private List<BloqueECG> pagina;
+        private int indiceBloque;
+        private double[] muestras = new double[0];
+        private int posicion;
+        private int disponibles;
+        private BloqueECG actual;
+
+        private FuenteGrabada(DatabaseManager db, int idSesion, List<BloqueECG> primera) {
+            this.db = db;
+            this.idSesion = idSesion;
+            this.origenMs = primera.get(0).getInicioMs();
+            this.frecuencia = primera.get(0).getFrecuencia();
+            this.pagina = primera;
+            avanzarBloque();
+        }
+
+        /** @return null si la sesión no tiene bloques */
+        static FuenteGrabada abrir(DatabaseManager db, int idSesion) {
+            List<BloqueECG> primera = db.obtenerBloquesDesde(idSesion, Long.MIN_VALUE, BLOQUES_POR_CONSULTA);
+            return primera.isEmpty() ? null : new FuenteGrabada(db, idSesion, primera);
+        }
+
+        private void avanzarBloque() {
+            if (indiceBloque == pagina.size()) {
+                if (pagina.size() < BLOQUES_POR_CONSULTA) {
+                    actual = null;
+                    return;
+                }
+                long siguienteMs = pagina.get(pagina.size() - 1).getInicioMs() + 1;
+                pagina = db.obtenerBloquesDesde(idSesion, siguienteMs, BLOQUES_POR_CONSULTA);
+                indiceBloque = 0;
+                if (pagina.isEmpty()) {
+                    actual = null;
+                    return;
+                }
+            }
+            actual = pagina.get(indiceBloque++);
+            if (muestras.length < actual.getNumMuestras()) muestras = new double[actual.getNumMuestras()];
+            disponibles = actual.descomprimir(muestras, 0);
+            posicion = 0;
+        }
+
+        @Override
+        public int getFrecuencia() { return frecuencia; }
+
+        @Override
+        public long getInstanteMs() {
+            if (actual == null) return Long.MAX_VALUE;
+            return actual.getInicioMs() - origenMs + posicion * 1000L / actual.getFrecuencia();
+        }
+
+        @Override
+        public int leer(double[] destino, int n) {
+            if (actual == null) return 0;
+            int cantidad = Math.min(n, disponibles - posicion);
+            System.arraycopy(muestras, posicion, destino, 0, cantidad);
+            posicion += cantidad;
+            if (posicion == disponibles) avanzarBloque();
+            return cantidad;
+        }
+
+        @Override
+        public String describir() { return "sesión grabada " + idSesion + ", " + frecuencia + " Hz"; }
+    }
+
+    /**
+     * Un paciente simulado: su fuente, el tópico y la secuencia de tramas
+     */
+    static final class Flujo {
+        final int indice;
+        final Fuente fuente;
+        int idPaciente;
+        String topico;
+        long secuencia;
+        long siguienteMs;
+
+        Flujo(int indice, Fuente fuente) {
+            this.indice = indice;
+            this.fuente = fuente;
+        }
+    }
+
+    // ============================================
+    // DESTINOS
+    // ============================================
+
+    interface Destino {
+        /** Asigna paciente (y sesión, si corresponde) a cada flujo */
+        void preparar(List<Flujo> flujos);
+
+        /** @return false si la trama no pudo entregarse */
+        boolean enviar(Flujo flujo, ByteBuffer trama);
+
+        /** Muestras perdidas del lado del sistema (colas llenas, sin sesión) */
+        long getDescartadas();
+
+        /** Estado para el informe periódico */
+        String estado();
+
+        /** Espera a que se procese lo entregado y libera recursos */
+        void cerrar();
+    }
+
+    /**
+     * Entrega las tramas a MQTTDataReader, que las decodifica y enruta a un
+     * GestorSesiones propio con su base de datos: mide el sistema completo
+     * salvo la red
+     */
+    static final class DestinoDirecto implements Destino {
+        private final DatabaseManager db;
+        private final GestorSesiones gestor;
+        private final MQTTDataReader lector;
+        private final MetricasECG.Contador descartadasPipeline =
+            MetricasECG.global().contador("pipeline.muestras_descartadas");
+
+        DestinoDirecto(String archivo) {
+            db = new DatabaseManager(PerfilAlmacenamiento.desdeSistema(), archivo);
+            gestor = new GestorSesiones(db);
+            gestor.setAbrirAutomaticamente(false);
+            lector = new MQTTDataReader("directo", "ecg/datos");
+            lector.setCallback(new MQTTDataReader.MQTTCallback() {
+                @Override public void onDatoRecibido(double valor) { onDatoRecibido(-1, valor); }
+                @Override public void onDatoRecibido(int idPaciente, double valor) { gestor.recibirMuestra(idPaciente, valor); }
+                @Override public void onTrama(int idPaciente, long secuencia, int frecuencia, int muestras) {
+                    gestor.recibirTrama(idPaciente, secuencia, frecuencia);
+                }
+                @Override public void onConectado() { }
+                @Override public void onDesconectado() { }
+                @Override public void onError(String mensaje) { System.err.println("Error en lector directo: " + mensaje); }
+            });
+            MetricasECG.global().iniciar();
+        }
+
+        @Override
+        public void preparar(List<Flujo> flujos) {
+            for (Flujo f : flujos) {
+                f.idPaciente = db.insertarPaciente("Carga " + (f.indice + 1), 40, 170.0);
+                if (f.idPaciente <= 0 || gestor.abrirSesion(f.idPaciente, "Generador de carga: "
+                        + f.fuente.describir(), f.fuente.getFrecuencia()) == null) {
+                    throw new IllegalStateException("No se pudo abrir la sesión del flujo " + (f.indice + 1));
+                }
+            }
+        }
+
+        @Override
+        public boolean enviar(Flujo flujo, ByteBuffer trama) {
+            lector.recibirTrama(flujo.idPaciente, trama, 0, trama.limit());
+            return true;
+        }
+
+        @Override
+        public long getDescartadas() {
+            return descartadasPipeline.get() + gestor.getMuestrasSinSesion();
+        }
+
+        @Override
+        public String estado() {
+            EscritorLecturasECG escritor = db.getEscritorLecturas();
+            return String.format("procesadas %d/s, colas %d, escritor %d pendientes (%d bloques descartados)",
+                gestor.getMuestrasPorSegundo(), gestor.getOcupacionColas(),
+                escritor.getPendientes(), escritor.getBloquesDescartados());
+        }
+
+        @Override
+        public void cerrar() {
+            long limite = System.currentTimeMillis() + ESPERA_DRENADO_MS;
+            while (gestor.getOcupacionColas() > 0 && System.currentTimeMillis() < limite) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            gestor.cerrar();
+            db.cerrarConexion();
+        }
+    }
+
+    /**
+     * Publica las tramas con QoS 0 en {topico}/{idPaciente} de un broker;
+     * el sistema bajo prueba corre en otro proceso
+     */
+    static final class DestinoMQTT implements Destino {
+        private final ClienteMQTT cliente;
+        private final String topico;
+        private final int pacienteInicial;
+
+        DestinoMQTT(String broker, String topico, int pacienteInicial) throws IOException {
+            String direccion = broker.contains("://") ? broker.substring(broker.indexOf("://") + 3) : broker;
+            int separador = direccion.lastIndexOf(':');
+            String host = separador > 0 ? direccion.substring(0, separador) : direccion;
+            int puerto = separador > 0 ? Integer.parseInt(direccion.substring(separador + 1)) : 1883;
+            this.topico = topico;
+            this.pacienteInicial = pacienteInicial;
+            cliente = new ClienteMQTT(host, puerto, "carga-ecg-" + Long.toHexString(System.nanoTime() & 0xFFFFFF),
+                new ClienteMQTT.OyenteMQTT() {
+                    @Override public void onConectado() { System.out.println("✓ Conectado a " + broker); }
+                    @Override public void onConexionPerdida(String motivo) { System.err.println("Conexión MQTT perdida: " + motivo); }
+                    @Override public void onPublicacion(ClienteMQTT.Publicacion publicacion) { }
+                });
+            cliente.iniciar();
+            long limite = System.currentTimeMillis() + ESPERA_CONEXION_MS;
+            while (!cliente.estaConectado() && System.currentTimeMillis() < limite) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            }
+            if (!cliente.estaConectado()) {
+                cliente.detener();
+                throw new IOException("sin conexión con el broker " + broker);
+            }
+        }
+
+        @Override
+        public void preparar(List<Flujo> flujos) {
+            // El sistema abre la sesión al ver la primera trama de un paciente existente
+            for (Flujo f : flujos) {
+                f.idPaciente = pacienteInicial + f.indice;
+                f.topico = topico + "/" + f.idPaciente;
+            }
+        }
+
+        @Override
+        public boolean enviar(Flujo flujo, ByteBuffer trama) {
+            return cliente.publicar(flujo.topico, Arrays.copyOf(trama.array(), trama.limit()), 0, false);
+        }
+
+        @Override
+        public long getDescartadas() { return 0; }
+
+        @Override
+        public String estado() {
+            return "publicadas " + cliente.getMensajesPublicados() + ", reconexiones " + cliente.getReconexiones();
+        }
+
+        @Override
+        public void cerrar() {
+            cliente.detener();
+        }
+    }
+
+    // ============================================
+    // RELOJ VIRTUAL
+    // ============================================
+
+    /**
+     * Traduce instantes de señal a tiempo real según la velocidad y registra
+     * el atraso cuando el generador no llega a tiempo
+     */
+    static final class RelojVirtual {
+        private final double velocidad;
+        private final long inicioNanos = System.nanoTime();
+        private long atrasoMaximoNanos;
+
+        /** @param velocidad 1 = tiempo real, 10 = diez veces más rápido, 0 = sin esperas */
+        RelojVirtual(double velocidad) {
+            this.velocidad = velocidad;
+        }
+
+        void esperarHasta(long instanteMs) {
+            if (velocidad <= 0) return;
+            long objetivo = inicioNanos + (long) (instanteMs * 1e6 / velocidad);
+            long falta;
+            while ((falta = objetivo - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(falta);
+            }
+            atrasoMaximoNanos = Math.max(atrasoMaximoNanos, -falta);
+        }
+
+        long getAtrasoMaximoNanos() { return atrasoMaximoNanos; }
+
+        long getTranscurridoNanos() { return System.nanoTime() - inicioNanos; }
+    }
+
+    // ============================================
+    // CONFIGURACIÓN
+    // ============================================
+
+    private int numFlujos = 4;
+    private int frecuencia = DetectorQRS.FRECUENCIA_DEFECTO;
+    private int muestrasPorTrama = 25;
+    private int formato = TramaECG.FORMATO_INT16;
+    private double bpmMinimo = 60;
+    private double bpmMaximo = 100;
+    private double fraccionFA = 0.25;
+    private double probabilidadEctopico = 0.02;
+    private double ruido = 0.01;
+    private double interferenciaRed = 0.02;
+    private long semilla = 1;
+    private long duracionS = 60;
+    private double velocidad = 1;
+    private String destinoNombre = "directo";
+    private String archivoDb = ARCHIVO_CARGA;
+    private String broker = "localhost:1883";
+    private String topico = "ecg/datos";
+    private int pacienteInicial = 1;
+    private int[] sesionesReplay;
+    private String archivoOrigen = DatabaseManager.ARCHIVO_DEFECTO;
+    private long reporteS = 10;
+    private double maximoDescarte = -1;
+
+    // Estado de la corrida
+    private volatile boolean activo = true;
+    private final CRC32 huella = new CRC32();
+    private long tramas;
+    private long muestras;
+    private long muestrasFallidas;
+    private final List<double[]> heapTrasGC = new ArrayList<>();
+
+    public static void main(String[] args) {
+        Locale.setDefault(Locale.ROOT);
+        GeneradorCargaECG carga = new GeneradorCargaECG();
+        try {
+            if (!carga.leerArgumentos(args)) return;
+            int codigo = carga.ejecutar();
+            // Durante el cierre por Ctrl+C, System.exit bloquearía al gancho
+            if (carga.activo) System.exit(codigo);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error en argumentos: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /** @return false si sólo se pidió la ayuda */
+    private boolean leerArgumentos(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-n": numFlujos = Integer.parseInt(args[++i]); break;
+                case "-hz": frecuencia = Integer.parseInt(args[++i]); break;
+                case "-trama": muestrasPorTrama = Integer.parseInt(args[++i]); break;
+                case "-formato":
+                    formato = "float32".equals(args[++i]) ? TramaECG.FORMATO_FLOAT32 : TramaECG.FORMATO_INT16;
+                    break;
+                case "-bpm": {
+                    String[] rango = args[++i].split(":");
+                    bpmMinimo = Double.parseDouble(rango[0]);
+                    bpmMaximo = rango.length > 1 ? Double.parseDouble(rango[1]) : bpmMinimo;
+                    break;
+                }
+                case "-fa": fraccionFA = Double.parseDouble(args[++i]); break;
+                case "-ectopicos": probabilidadEctopico = Double.parseDouble(args[++i]); break;
+                case "-ruido": ruido = Double.parseDouble(args[++i]); break;
+                case "-red": interferenciaRed = Double.parseDouble(args[++i]); break;
+                case "-semilla": semilla = Long.parseLong(args[++i]); break;
+                case "-duracion": duracionS = Long.parseLong(args[++i]); break;
+                case "-velocidad": velocidad = Double.parseDouble(args[++i]); break;
+                case "-destino": destinoNombre = args[++i]; break;
+                case "-db": archivoDb = args[++i]; break;
+                case "-broker": broker = args[++i]; break;
+                case "-topico": topico = args[++i]; break;
+                case "-paciente-inicial": pacienteInicial = Integer.parseInt(args[++i]); break;
+                case "-replay":
+                    sesionesReplay = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                    break;
+                case "-origen": archivoOrigen = args[++i]; break;
+                case "-reporte": reporteS = Long.parseLong(args[++i]); break;
+                case "-max-descarte": maximoDescarte = Double.parseDouble(args[++i]); break;
+                case "-ayuda":
+                    imprimirAyuda();
+                    return false;
+                default: throw new IllegalArgumentException("opción desconocida " + args[i]);
+            }
+        }
+        if (!"directo".equals(destinoNombre) && !"mqtt".equals(destinoNombre)) {
+            throw new IllegalArgumentException("-destino debe ser directo o mqtt");
+        }
+        if (frecuencia <= 0 || frecuencia > 0xFFFF || muestrasPorTrama <= 0 || muestrasPorTrama > 0xFFFF) {
+            throw new IllegalArgumentException("frecuencia o tamaño de trama fuera de rango");
+        }
+        if (sesionesReplay == null && (numFlujos <= 0 || bpmMinimo <= 0 || bpmMaximo < bpmMinimo)) {
+            throw new IllegalArgumentException("se necesitan -n > 0 y un rango de BPM válido");
+        }
+        return true;
+    }
+
+    private static void imprimirAyuda() {
+        System.out.println("""
+            GeneradorCargaECG: carga sintética o reproducción de sesiones grabadas
+              -n 4                  flujos (pacientes) sintéticos
+              -hz 250               frecuencia de muestreo
+              -trama 25             muestras por trama
+              -formato int16        int16 (1 µV por cuenta) o float32
+              -bpm 60:100           rango de frecuencia cardíaca; cada flujo toma un valor fijo
+              -fa 0.25              fracción de flujos con fibrilación auricular
+              -ectopicos 0.02       probabilidad de extrasístole por latido
+              -ruido 0.01           ruido blanco en mV
+              -red 0.02             interferencia de red (50 Hz) en mV
+              -semilla 1            semilla de la señal
+              -duracion 60          segundos de señal por flujo (0 = hasta Ctrl+C)
+              -velocidad 1          1 = tiempo real, N = N veces más rápido, 0 = sin esperas
+              -destino directo      directo (MQTTDataReader + GestorSesiones propios) o mqtt
+              -db carga_ecg.db      base del destino directo
+              -broker localhost:1883, -topico ecg/datos, -paciente-inicial 1   (destino mqtt)
+              -replay 3,5           reproduce esas sesiones de Bloque_ECG en lugar de la señal sintética
+              -origen ecg_database.db   base de las sesiones a reproducir
+              -reporte 10           segundos entre informes
+              -max-descarte 0.001   termina con código 1 si se pierde una fracción mayor""");
+    }
+
+    // ============================================
+    // EJECUCIÓN
+    // ============================================
+
+    private int ejecutar() {
+        DatabaseManager origen = null;
+        List<Flujo> flujos = new ArrayList<>();
+        if (sesionesReplay != null) {
+            origen = new DatabaseManager(PerfilAlmacenamiento.desdeSistema(), archivoOrigen);
+            for (int idSesion : sesionesReplay) {
+                FuenteGrabada fuente = FuenteGrabada.abrir(origen, idSesion);
+                if (fuente == null) {
+                    System.err.println("Error: la sesión " + idSesion + " no tiene bloques en " + archivoOrigen);
+                    continue;
+                }
+                flujos.add(new Flujo(flujos.size(), fuente));
+            }
+        } else {
+            flujos = crearFlujosSinteticos();
+        }
+        if (flujos.isEmpty()) {
+            if (origen != null) origen.cerrarConexion();
+            return 1;
+        }
+
+        Destino destino;
+        try {
+            destino = "mqtt".equals(destinoNombre)
+                ? new DestinoMQTT(broker, topico, pacienteInicial)
+                : new DestinoDirecto(archivoDb);
+            destino.preparar(flujos);
+        } catch (Exception e) {
+            System.err.println("Error preparando el destino: " + e.getMessage());
+            if (origen != null) origen.cerrarConexion();
+            return 1;
+        }
+        for (Flujo f : flujos) {
+            System.out.println("  flujo " + (f.indice + 1) + " → paciente " + f.idPaciente + ": " + f.fuente.describir());
+        }
+        System.out.printf("✓ %d flujo(s) hacia %s, velocidad %s%n", flujos.size(), destinoNombre,
+            velocidad > 0 ? "x" + velocidad : "máxima");
+
+        Thread principal = Thread.currentThread();
+        Thread gancho = new Thread(() -> {
+            activo = false;
+            try {
+                principal.join(ESPERA_DRENADO_MS * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(gancho);
+
+        RelojVirtual reloj = new RelojVirtual(velocidad);
+        generar(flujos, destino, reloj);
+        destino.cerrar();
+        if (origen != null) origen.cerrarConexion();
+        int codigo = informarFinal(destino, reloj);
+        if (activo) Runtime.getRuntime().removeShutdownHook(gancho);
+        return codigo;
+    }
+
+    /**
+     * BPM, fibrilación y semilla de cada flujo salen de la semilla general:
+     * la misma línea de comandos reproduce la misma población
+     */
+    private List<Flujo> crearFlujosSinteticos() {
+        Random aleatorio = new Random(semilla);
+        List<Flujo> flujos = new ArrayList<>(numFlujos);
+        for (int i = 0; i < numFlujos; i++) {
+            double bpm = bpmMinimo + aleatorio.nextDouble() * (bpmMaximo - bpmMinimo);
+            // Reparte los flujos con FA de forma pareja en vez de sortearlos
+            boolean fa = Math.floor((i + 1) * fraccionFA) > Math.floor(i * fraccionFA);
+            GeneradorSenalECG g = new GeneradorSenalECG(frecuencia, bpm, aleatorio.nextLong());
+            g.setFibrilacion(fa);
+            g.setProbabilidadEctopico(probabilidadEctopico);
+            g.setRuido(ruido);
+            g.setInterferenciaRed(50, interferenciaRed);
+            String descripcion = String.format("%d Hz, %.0f BPM%s", frecuencia, bpm, fa ? ", FA" : "");
+            flujos.add(new Flujo(i, new FuenteSintetica(g, duracionS, descripcion)));
+        }
+        return flujos;
+    }
+
+    /**
+     * Entrega las tramas de todos los flujos en orden de instante de señal
+     * (y de flujo, ante empates), esperando al reloj virtual
+     */
+    private void generar(List<Flujo> flujos, Destino destino, RelojVirtual reloj) {
+        PriorityQueue<Flujo> agenda = new PriorityQueue<>(
+            Comparator.<Flujo>comparingLong(f -> f.siguienteMs).thenComparingInt(f -> f.indice));
+        for (Flujo f : flujos) {
+            f.siguienteMs = f.fuente.getInstanteMs();
+            agenda.add(f);
+        }
+        double[] bloque = new double[muestrasPorTrama];
+        ByteBuffer trama = ByteBuffer.allocate(TramaECG.largoTrama(formato, 1, muestrasPorTrama));
+        float escala = formato == TramaECG.FORMATO_INT16 ? ESCALA_INT16 : 1f;
+        long periodoReporte = TimeUnit.SECONDS.toNanos(Math.max(1, reporteS));
+        long proximoReporte = System.nanoTime() + periodoReporte;
+        long muestrasReporte = 0;
+        long descartadasReporte = 0;
+
+        while (activo && !agenda.isEmpty()) {
+            Flujo f = agenda.poll();
+            long instante = f.siguienteMs;
+            int n = f.fuente.leer(bloque, muestrasPorTrama);
+            if (n == 0) continue;
+            f.siguienteMs = f.fuente.getInstanteMs();
+            // El dispositivo envía la trama cuando tiene su última muestra
+            reloj.esperarHasta(instante + n * 1000L / f.fuente.getFrecuencia());
+
+            trama.clear();
+            TramaECG.codificar(trama, formato, 1, f.secuencia++, instante, f.fuente.getFrecuencia(), escala, bloque, 0, n);
+            trama.flip();
+            huella.update(trama.array(), 0, trama.limit());
+            if (destino.enviar(f, trama)) {
+                tramas++;
+                muestras += n;
+            } else {
+                muestrasFallidas += n;
+            }
+            if (f.siguienteMs != Long.MAX_VALUE) agenda.add(f);
+
+            long ahora = System.nanoTime();
+            if (ahora >= proximoReporte) {
+                double segundos = (ahora - proximoReporte + periodoReporte) / 1e9;
+                long descartadas = destino.getDescartadas() + muestrasFallidas;
+                informar(instante, (muestras - muestrasReporte) / segundos, descartadas - descartadasReporte,
+                    descartadas, destino, reloj);
+                muestrasReporte = muestras;
+                descartadasReporte = descartadas;
+                proximoReporte = ahora + periodoReporte;
+            }
+        }
+    }
+
+    // ============================================
+    // INFORMES
+    // ============================================
+
+    private void informar(long instanteMs, double tasa, long descartadasPeriodo, long descartadas,
+                          Destino destino, RelojVirtual reloj) {
+        long heap = heapTrasUltimoGC();
+        if (heap > 0) heapTrasGC.add(new double[] {reloj.getTranscurridoNanos() / 3.6e12, heap});
+        String memoria = heap > 0
+            ? String.format("%.1f MB (%+.1f MB/h)", heap / 1048576.0, tendenciaHeapMBPorHora())
+            : "- (sin GC aún)";
+        System.out.printf("[CARGA] señal %s | %.0f muestras/s | %d tramas | perdidas %d (total %d, %.4f %%) | %s"
+                + " | heap tras GC %s | atraso máx %.1f ms%n",
+            formatearDuracion(instanteMs), tasa, tramas, descartadasPeriodo, descartadas,
+            porcentaje(descartadas), destino.estado(), memoria, reloj.getAtrasoMaximoNanos() / 1e6);
+    }
+
+    private int informarFinal(Destino destino, RelojVirtual reloj) {
+        double segundos = reloj.getTranscurridoNanos() / 1e9;
+        long descartadas = destino.getDescartadas() + muestrasFallidas;
+        System.out.printf("%n✓ Carga terminada en %.1f s: %d tramas, %d muestras (%.0f muestras/s)%n",
+            segundos, tramas, muestras, muestras / Math.max(1e-9, segundos));
+        System.out.printf("  perdidas %d (%.4f %%), atraso máximo %.1f ms, heap tras GC %+.1f MB/h%n",
+            descartadas, porcentaje(descartadas), reloj.getAtrasoMaximoNanos() / 1e6, tendenciaHeapMBPorHora());
+        System.out.printf("  huella de la señal: %08x%n", huella.getValue());
+        if (maximoDescarte >= 0 && descartadas > maximoDescarte * (muestras + muestrasFallidas)) {
+            System.out.printf("✗ Pérdida por encima del máximo (%.4f %%)%n", maximoDescarte * 100);
+            return 1;
+        }
+        return 0;
+    }
+
+    private double porcentaje(long descartadas) {
+        long total = muestras + muestrasFallidas;
+        return total == 0 ? 0 : 100.0 * descartadas / total;
+    }
+
+    /**
+     * Suma de los pools del heap medidos al terminar su último GC: a
+     * diferencia del heap usado, no sube y baja con cada asignación
+     */
+    private static long heapTrasUltimoGC() {
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage uso = pool.getCollectionUsage();
+            if (uso != null) total += uso.getUsed();
+        }
+        return total;
+    }
+
+    /** Pendiente por mínimos cuadrados del heap tras GC, en MB por hora */
+    private double tendenciaHeapMBPorHora() {
+        int n = heapTrasGC.size();
+        if (n < 2) return 0;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (double[] p : heapTrasGC) {
+            sx += p[0];
+            sy += p[1];
+            sxx += p[0] * p[0];
+            sxy += p[0] * p[1];
+        }
+        double divisor = n * sxx - sx * sx;
+        return divisor == 0 ? 0 : (n * sxy - sx * sy) / divisor / 1048576.0;
+    }
+
+    private static String formatearDuracion(long ms) {
+        long s = ms / 1000;
+        return String.format("%02d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.Random;
+
+/**
+ * Generador de señal ECG sintética y determinista (misma semilla, misma señal)
+ *
+ * Cada latido es una suma de gaussianas P, Q, R, S y T alrededor de su onda R
+ * (morfología al estilo de ECGSYN) con el intervalo QT escalado por sqrt(RR).
+ * Se puede agregar variabilidad RR (arritmia sinusal), latidos ectópicos
+ * ventriculares, fibrilación auricular (RR irregulares, sin onda P y con
+ * ondas f), deriva de línea base, interferencia de red y ruido blanco.
+ * La salida está en mV, multiplicada por la ganancia y con el desplazamiento
+ * del conversor simulado
+ */
+public class GeneradorSenalECG {
+    // Por onda: instante relativo a la R (s, a 60 BPM), amplitud (mV), ancho (s)
+    private static final double[] INSTANTE = {-0.20, -0.025, 0.0, 0.025, 0.30};
+    private static final double[] AMPLITUD = {0.15, -0.10, 1.20, -0.25, 0.30};
+    private static final double[] ANCHO = {0.025, 0.010, 0.010, 0.010, 0.060};
+    private static final int ONDA_P = 0;
+    private static final int ONDA_R = 2;
+    private static final int ONDA_T = 4;
+    // Un latido se evalúa entre estos instantes relativos a su R
+    private static final double ANTES_R_S = 0.35, DESPUES_R_S = 0.70;
+    private static final double RR_MINIMO_S = 0.25;
+    // Latidos en curso: el anterior, el actual y el siguiente
+    private static final int LATIDOS_VIVOS = 3;
+
+    private final int frecuencia;
+    private final Random aleatorio;
+
+    private double bpm;
+    private double variabilidad = 0.03;
+    private double probabilidadEctopico;
+    private boolean fibrilacion;
+    private double ruido = 0.01;
+    private double deriva = 0.05;
+    private double amplitudRed;
+    private double frecuenciaRed = 50;
+    private double ganancia = 1;
+    private double desplazamiento;
+
+    // Estado (en segundos de tiempo de señal); la posición 2 es la R más reciente
+    private long muestra;
+    private final double[] instanteR = new double[LATIDOS_VIVOS];
+    private final double[] rrPrevio = new double[LATIDOS_VIVOS];
+    private final boolean[] ectopico = new boolean[LATIDOS_VIVOS];
+    private boolean pausaCompensatoria;
+    private double faseF;
+    private long latidos;
+
+    public GeneradorSenalECG(int frecuencia, double bpm, long semilla) {
+        if (frecuencia <= 0 || bpm <= 0) {
+            throw new IllegalArgumentException("Frecuencia y BPM deben ser positivos: " + frecuencia + "/" + bpm);
+        }
+        this.frecuencia = frecuencia;
+        this.bpm = bpm;
+        this.aleatorio = new Random(semilla);
+        for (int i = 0; i < LATIDOS_VIVOS; i++) {
+            instanteR[i] = 0.5 - (LATIDOS_VIVOS - 1 - i) * 60.0 / bpm;
+            rrPrevio[i] = 60.0 / bpm;
+        }
+    }
+
+    // ============================================
+    // CONFIGURACIÓN
+    // ============================================
+
+    public void setBpm(double bpm) {
+        if (bpm > 0) this.bpm = bpm;
+    }
+
+    /** Desvío relativo del RR (0.03 = 3 %) con una componente respiratoria de 0,25 Hz */
+    public void setVariabilidad(double variabilidad) {
+        this.variabilidad = Math.max(0, variabilidad);
+    }
+
+    /** Probabilidad por latido de una extrasístole ventricular con pausa compensatoria */
+    public void setProbabilidadEctopico(double probabilidad) {
+        this.probabilidadEctopico = Math.max(0, Math.min(1, probabilidad));
+    }
+
+    public void setFibrilacion(boolean fibrilacion) {
+        this.fibrilacion = fibrilacion;
+    }
+
+    /** Desvío estándar del ruido blanco en mV */
+    public void setRuido(double mV) {
+        this.ruido = Math.max(0, mV);
+    }
+
+    /** Amplitud de la deriva de línea base (respiración, 0,3 Hz) en mV */
+    public void setDeriva(double mV) {
+        this.deriva = Math.max(0, mV);
+    }
+
+    public void setInterferenciaRed(double hz, double mV) {
+        this.frecuenciaRed = hz;
+        this.amplitudRed = Math.max(0, mV);
+    }
+
+    /** salida = mV * ganancia + desplazamiento (por ejemplo, cuentas de un ADC) */
+    public void setEscala(double ganancia, double desplazamiento) {
+        this.ganancia = ganancia;
+        this.desplazamiento = desplazamiento;
+    }
+
+    // ============================================
+    // GENERACIÓN
+    // ============================================
+
+    public double siguiente() {
+        double t = (double) muestra++ / frecuencia;
+        // El latido que sigue a la R más reciente empieza como mucho RR_MINIMO_S después
+        while (t >= instanteR[LATIDOS_VIVOS - 1] + RR_MINIMO_S - ANTES_R_S) avanzarLatido();
+
+        double v = 0;
+        for (int i = 0; i < LATIDOS_VIVOS; i++) {
+            v += latido(t - instanteR[i], rrPrevio[i], ectopico[i]);
+        }
+        if (fibrilacion) {
+            // Ondas f de 5-7 Hz con fase que deriva lentamente
+            faseF += 2 * Math.PI * (6 + aleatorio.nextGaussian() * 0.5) / frecuencia;
+            v += 0.05 * Math.sin(faseF);
+        }
+        v += deriva * Math.sin(2 * Math.PI * 0.3 * t);
+        if (amplitudRed > 0) v += amplitudRed * Math.sin(2 * Math.PI * frecuenciaRed * t);
+        if (ruido > 0) v += ruido * aleatorio.nextGaussian();
+        return v * ganancia + desplazamiento;
+    }
+
+    /**
+     * Llena las primeras n posiciones del destino
+     */
+    public void generar(double[] destino, int n) {
+        for (int i = 0; i < n; i++) destino[i] = siguiente();
+    }
+
+    public double[] generar(int n) {
+        double[] datos = new double[n];
+        generar(datos, n);
+        return datos;
+    }
+
+    private void avanzarLatido() {
+        int ultimo = LATIDOS_VIVOS - 1;
+        System.arraycopy(instanteR, 1, instanteR, 0, ultimo);
+        System.arraycopy(rrPrevio, 1, rrPrevio, 0, ultimo);
+        System.arraycopy(ectopico, 1, ectopico, 0, ultimo);
+        double rr = 60.0 / bpm;
+        boolean esEctopico = false;
+        if (fibrilacion) {
+            // Conducción irregular: RR casi independientes entre sí
+            rr *= 0.6 + 0.8 * aleatorio.nextDouble();
+        } else if (pausaCompensatoria) {
+            rr *= 1.4;
+            pausaCompensatoria = false;
+        } else if (aleatorio.nextDouble() < probabilidadEctopico) {
+            rr *= 0.6;
+            pausaCompensatoria = true;
+            esEctopico = true;
+        } else {
+            double respiracion = Math.sin(2 * Math.PI * 0.25 * instanteR[ultimo]);
+            rr *= 1 + variabilidad * (0.5 * respiracion + 0.5 * aleatorio.nextGaussian());
+        }
+        rr = Math.max(RR_MINIMO_S, rr);
+        instanteR[ultimo] += rr;
+        rrPrevio[ultimo] = rr;
+        ectopico[ultimo] = esEctopico;
+        latidos++;
+    }
+
+    /**
+     * Valor en mV de un latido a dt segundos de su onda R
+     */
+    private double latido(double dt, double rr, boolean esEctopico) {
+        if (dt < -ANTES_R_S || dt > DESPUES_R_S) return 0;
+        double escalaQT = Math.sqrt(Math.max(0.3, rr));
+        double v = 0;
+        for (int k = 0; k < INSTANTE.length; k++) {
+            if (k == ONDA_P && (fibrilacion || esEctopico)) continue;
+            double centro = k == ONDA_T ? INSTANTE[k] * escalaQT : INSTANTE[k];
+            double ancho = ANCHO[k];
+            double amplitud = AMPLITUD[k];
+            if (esEctopico) {
+                // QRS ancho y T opuesta
+                if (k != ONDA_T) ancho *= 3;
+                else amplitud = -1.5 * amplitud;
+                if (k == ONDA_R) amplitud *= 1.3;
+            }
+            double z = (dt - centro) / ancho;
+            v += amplitud * Math.exp(-0.5 * z * z);
+        }
+        return v;
+    }
+
+    // ============================================
+    // ACCESO
+    // ============================================
+
+    public int getFrecuencia() { return frecuencia; }
+    public double getBpm() { return bpm; }
+    public long getMuestras() { return muestra; }
+    public long getLatidos() { return latidos; }
+
+    /** Instante en ms de la próxima muestra en el tiempo de la señal */
+    public long getInstanteMs() {
+        return muestra * 1000 / frecuencia;
+    }
+}
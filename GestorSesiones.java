@@ -0,0 +1,376 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Motor de monitoreo multisesión: un PipelineSesion por cada Sesion_Monitoreo
+ * activa, repartidos entre un número fijo de hilos (shards). Las muestras se
+ * enrutan por paciente según el tópico MQTT (ecg/datos/{idPaciente})
+ */
+public class GestorSesiones {
+    private static final int MAX_SHARDS = 8;
+    private static final int LOTE_SHARD = 256;
+    private static final long ESPERA_SHARD_NANOS = 100_000_000L;
+    private static final long ESPERA_CIERRE_MS = 2000;
+    // Tras no encontrar al paciente, se vuelve a consultar la base pasado este plazo
+    private static final long REINTENTO_APERTURA_NANOS = 5_000_000_000L;
+    private static final long APERTURA_EN_CURSO = Long.MAX_VALUE;
+
+    private final DatabaseManager db;
+    private final CanalAlarmas alarmas;
+    private final Shard[] shards;
+    private final Map<Integer, PipelineSesion> porSesion = new ConcurrentHashMap<>();
+    // Tabla de enrutamiento por paciente; se reemplaza completa en cada alta/baja
+    private volatile TablaRuteo ruteo = new TablaRuteo(new PipelineSesion[0]);
+    private final PipelineSesion pipelineAnonimo;
+    private volatile PipelineSesion sesionPorDefecto;
+    // Paciente -> instante (nanoTime) a partir del cual puede intentarse otra apertura
+    private final Map<Integer, Long> aperturasPendientes = new ConcurrentHashMap<>();
+    private final ExecutorService aperturas;
+    private final ScheduledExecutorService metricas;
+    private volatile boolean abrirAutomaticamente = true;
+    private volatile int frecuenciaDefecto = DetectorQRS.FRECUENCIA_DEFECTO;
+
+    // Métricas agregadas
+    private volatile long muestrasSinSesion;
+    private volatile long muestrasPorSegundo;
+    private long ultimoTotal;
+
+    public GestorSesiones(DatabaseManager db) {
+        this(db, Math.min(MAX_SHARDS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public GestorSesiones(DatabaseManager db, int numShards) {
+        this.db = db;
+        this.alarmas = new CanalAlarmas(db);
+        this.shards = new Shard[Math.max(1, numShards)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i);
+            shards[i].start();
+        }
+        this.aperturas = Executors.newSingleThreadExecutor(r -> hiloDaemon(r, "AperturaSesiones"));
+        this.metricas = Executors.newSingleThreadScheduledExecutor(r -> hiloDaemon(r, "MetricasSesiones"));
+        metricas.scheduleAtFixedRate(this::actualizarTasa, 1, 1, TimeUnit.SECONDS);
+
+        // Pipeline sin paciente: muestra la señal aunque no haya sesión seleccionada
+        pipelineAnonimo = new PipelineSesion(-1, -1, frecuenciaDefecto, db, alarmas);
+        shards[0].agregar(pipelineAnonimo);
+        sesionPorDefecto = pipelineAnonimo;
+        registrarMedidores();
+    }
+
+    private void registrarMedidores() {
+        MetricasECG m = MetricasECG.global();
+        m.medidor("sesiones.activas", porSesion::size);
+        m.medidor("sesiones.muestras_por_segundo", () -> muestrasPorSegundo);
+        m.medidor("sesiones.cola_ocupacion", this::getOcupacionColas);
+        m.medidor("sesiones.memoria_por_sesion_bytes", this::getMemoriaPorSesion);
+        m.medidor("alarmas.emitidas", alarmas::getEmitidas);
+    }
+
+    private static Thread hiloDaemon(Runnable r, String nombre) {
+        Thread t = new Thread(r, nombre);
+        t.setDaemon(true);
+        return t;
+    }
+
+    // ============================================
+    // CICLO DE VIDA DE SESIONES
+    // ============================================
+
+    /**
+     * Crea la Sesion_Monitoreo y arranca su pipeline. Si el paciente ya tiene
+     * una sesión activa, la devuelve
+     */
+    public synchronized PipelineSesion abrirSesion(int idPaciente, String notas, int frecuencia) {
+        PipelineSesion existente = ruteo.buscar(idPaciente);
+        if (existente != null) return existente;
+
+        int idSesion = db.crearSesionMonitoreo(idPaciente, notas);
+        if (idSesion <= 0) return null;
+
+        PipelineSesion p = new PipelineSesion(idSesion, idPaciente, frecuencia, db, alarmas);
+        porSesion.put(idSesion, p);
+        reconstruirRuteo();
+        shardDe(idSesion).agregar(p);
+        System.out.println("✓ Sesión iniciada: " + idSesion + " (paciente " + idPaciente + ")");
+        return p;
+    }
+
+    /**
+     * Deja de enrutar muestras a la sesión, drena su cola y la marca FINALIZADA
+     */
+    public void cerrarSesion(int idSesion) {
+        PipelineSesion p;
+        synchronized (this) {
+            p = porSesion.remove(idSesion);
+            if (p == null) return;
+            reconstruirRuteo();
+            if (sesionPorDefecto == p) sesionPorDefecto = pipelineAnonimo;
+        }
+        p.solicitarCierre();
+        shardDe(idSesion).despertar();
+        if (!p.esperarDrenado(ESPERA_CIERRE_MS)) {
+            System.err.println("Advertencia: la sesión " + idSesion + " se cerró con muestras pendientes");
+        }
+        db.finalizarSesion(idSesion);
+        System.out.println("✓ Sesión finalizada: " + p.resumen());
+    }
+
+    public void cerrar() {
+        for (Integer idSesion : new ArrayList<>(porSesion.keySet())) {
+            cerrarSesion(idSesion);
+        }
+        for (Shard s : shards) s.detener();
+        alarmas.cerrar();
+        aperturas.shutdownNow();
+        metricas.shutdownNow();
+        System.out.println("✓ Gestor de sesiones detenido: " + resumenMetricas());
+    }
+
+    private void reconstruirRuteo() {
+        ruteo = new TablaRuteo(porSesion.values().toArray(new PipelineSesion[0]));
+    }
+
+    private Shard shardDe(int idSesion) {
+        return shards[Math.floorMod(idSesion, shards.length)];
+    }
+
+    // ============================================
+    // ENRUTAMIENTO (hilo de red MQTT)
+    // ============================================
+
+    /**
+     * Entrega una muestra al pipeline del paciente. Con idPaciente < 0
+     * (tópico sin sufijo) se usa la sesión por defecto
+     */
+    public void recibirMuestra(int idPaciente, double valor) {
+        PipelineSesion p = idPaciente < 0 ? sesionPorDefecto : ruteo.buscar(idPaciente);
+        if (p == null) {
+            muestrasSinSesion++;
+            if (idPaciente >= 0 && abrirAutomaticamente) solicitarApertura(idPaciente, frecuenciaDefecto);
+            return;
+        }
+        if (p.recibir(valor)) {
+            shardDe(p.getIdSesion()).despertar();
+        }
+    }
+
+    /**
+     * Cabecera de una trama binaria: contabiliza tramas perdidas y, si el
+     * paciente aún no tiene sesión, la abre con la frecuencia del dispositivo
+     */
+    public void recibirTrama(int idPaciente, long secuencia, int frecuencia) {
+        PipelineSesion p = idPaciente < 0 ? sesionPorDefecto : ruteo.buscar(idPaciente);
+        if (p == null) {
+            if (idPaciente >= 0 && abrirAutomaticamente) solicitarApertura(idPaciente, frecuencia);
+            return;
+        }
+        p.registrarTrama(secuencia, frecuencia);
+    }
+
+    private void solicitarApertura(int idPaciente, int frecuencia) {
+        // La apertura toca la base de datos: nunca en el hilo de red
+        Long marca = aperturasPendientes.get(idPaciente);
+        if (marca == null) {
+            if (aperturasPendientes.putIfAbsent(idPaciente, APERTURA_EN_CURSO) != null) return;
+        } else if (marca == APERTURA_EN_CURSO || System.nanoTime() - marca < 0
+                   || !aperturasPendientes.replace(idPaciente, marca, APERTURA_EN_CURSO)) {
+            return;
+        }
+        boolean primerIntento = marca == null;
+        aperturas.execute(() -> {
+            try {
+                if (db.obtenerPaciente(idPaciente) != null) {
+                    abrirSesion(idPaciente, "Sesión abierta por tópico MQTT", frecuencia > 0 ? frecuencia : frecuenciaDefecto);
+                    aperturasPendientes.remove(idPaciente);
+                } else {
+                    // La marca caduca para no consultar la base de datos en cada muestra,
+                    // pero sí abrir la sesión si el paciente se da de alta más tarde
+                    aperturasPendientes.put(idPaciente, System.nanoTime() + REINTENTO_APERTURA_NANOS);
+                    if (primerIntento) {
+                        System.err.println("Muestras para paciente inexistente: " + idPaciente);
+                    }
+                }
+            } catch (RuntimeException e) {
+                aperturasPendientes.remove(idPaciente);
+                System.err.println("Error abriendo sesión para paciente " + idPaciente + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // ============================================
+    // CONSULTAS Y CONFIGURACIÓN
+    // ============================================
+
+    public PipelineSesion getSesionPorDefecto() { return sesionPorDefecto; }
+    public void setSesionPorDefecto(PipelineSesion p) { this.sesionPorDefecto = p != null ? p : pipelineAnonimo; }
+    public PipelineSesion getPipelineAnonimo() { return pipelineAnonimo; }
+    public CanalAlarmas getAlarmas() { return alarmas; }
+    public PipelineSesion buscarPorPaciente(int idPaciente) { return ruteo.buscar(idPaciente); }
+    public PipelineSesion buscarPorSesion(int idSesion) { return porSesion.get(idSesion); }
+    public List<PipelineSesion> getSesionesActivas() { return new ArrayList<>(porSesion.values()); }
+    public void setAbrirAutomaticamente(boolean valor) { this.abrirAutomaticamente = valor; }
+    public void setFrecuenciaDefecto(int frecuencia) { this.frecuenciaDefecto = frecuencia; }
+    public int getNumShards() { return shards.length; }
+
+    // ============================================
+    // MÉTRICAS AGREGADAS
+    // ============================================
+
+    public long getMuestrasProcesadasTotales() {
+        long total = 0;
+        for (Shard s : shards) total += s.muestras;
+        return total;
+    }
+
+    public long getMuestrasDescartadasTotales() {
+        long total = 0;
+        for (PipelineSesion p : porSesion.values()) total += p.getCola().getDescartadas();
+        return total;
+    }
+
+    public long getMuestrasSinSesion() { return muestrasSinSesion; }
+
+    /** Muestras en cola (sin procesar) sumando todas las sesiones */
+    public long getOcupacionColas() {
+        long total = pipelineAnonimo.getCola().getOcupacion();
+        for (PipelineSesion p : porSesion.values()) total += p.getCola().getOcupacion();
+        return total;
+    }
+
+    /** Memoria media de los arreglos de cada pipeline activo */
+    public long getMemoriaPorSesion() {
+        long total = 0;
+        int n = 0;
+        for (PipelineSesion p : porSesion.values()) {
+            total += p.getMemoriaEstimada();
+            n++;
+        }
+        return n == 0 ? 0 : total / n;
+    }
+    public long getMuestrasPorSegundo() { return muestrasPorSegundo; }
+
+    private void actualizarTasa() {
+        long total = getMuestrasProcesadasTotales();
+        muestrasPorSegundo = total - ultimoTotal;
+        ultimoTotal = total;
+    }
+
+    public String resumenMetricas() {
+        return porSesion.size() + " sesiones activas, " + shards.length + " shards, "
+            + muestrasPorSegundo + " muestras/s, " + getMuestrasProcesadasTotales() + " procesadas, "
+            + getMuestrasDescartadasTotales() + " descartadas, " + muestrasSinSesion + " sin sesión";
+    }
+
+    // ============================================
+    // SHARD: hilo que atiende un subconjunto de pipelines
+    // ============================================
+
+    private static final class Shard extends Thread {
+        private final List<PipelineSesion> pipelines = new CopyOnWriteArrayList<>();
+        private volatile boolean activo = true;
+        private volatile boolean esperando;
+        private volatile long muestras;
+
+        Shard(int indice) {
+            super("ShardECG-" + indice);
+            setDaemon(true);
+        }
+
+        void agregar(PipelineSesion p) {
+            pipelines.add(p);
+            despertar();
+        }
+
+        void despertar() {
+            if (esperando) LockSupport.unpark(this);
+        }
+
+        void detener() {
+            activo = false;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            double[] lote = new double[LOTE_SHARD];
+            while (activo) {
+                long procesadas = 0;
+                for (PipelineSesion p : pipelines) {
+                    try {
+                        int n = p.procesarPendientes(lote);
+                        procesadas += n;
+                        if (n == 0 && p.isCerrando()) {
+                            pipelines.remove(p);
+                            p.marcarDrenado();
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.println("Error procesando sesión " + p.getIdSesion() + ": " + e.getMessage());
+                    }
+                }
+                if (procesadas > 0) {
+                    muestras += procesadas;
+                    continue;
+                }
+                esperando = true;
+                if (!hayPendientes()) {
+                    LockSupport.parkNanos(this, ESPERA_SHARD_NANOS);
+                }
+                esperando = false;
+            }
+        }
+
+        private boolean hayPendientes() {
+            for (PipelineSesion p : pipelines) {
+                if (p.tienePendientes() || p.isCerrando()) return true;
+            }
+            return false;
+        }
+    }
+
+    // ============================================
+    // TABLA DE RUTEO idPaciente → pipeline (direccionamiento abierto)
+    // ============================================
+
+    private static final class TablaRuteo {
+        private final int[] claves;
+        private final PipelineSesion[] valores;
+        private final int mascara;
+
+        TablaRuteo(PipelineSesion[] pipelines) {
+            int capacidad = Integer.highestOneBit(Math.max(4, pipelines.length * 2) - 1) << 1;
+            claves = new int[capacidad];
+            valores = new PipelineSesion[capacidad];
+            mascara = capacidad - 1;
+            for (PipelineSesion p : pipelines) {
+                int i = dispersar(p.getIdPaciente()) & mascara;
+                while (valores[i] != null) i = (i + 1) & mascara;
+                claves[i] = p.getIdPaciente();
+                valores[i] = p;
+            }
+        }
+
+        PipelineSesion buscar(int idPaciente) {
+            int i = dispersar(idPaciente) & mascara;
+            PipelineSesion p;
+            while ((p = valores[i]) != null) {
+                if (claves[i] == idPaciente) return p;
+                i = (i + 1) & mascara;
+            }
+            return null;
+        }
+
+        private static int dispersar(int x) {
+            x *= 0x9E3779B9;
+            return x ^ (x >>> 16);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma log-lineal de valores enteros no negativos (al estilo de
+ * HdrHistogram): cada potencia de dos se divide en 64 sub-intervalos, así el
+ * error relativo de un percentil es menor al 1,6 % en todo el rango
+ *
+ * Registrar es un incremento atómico sobre un arreglo fijo, sin asignar
+ * memoria ni bloquear; lo usan a la vez los hilos de los shards, del
+ * escritor y el EDT
+ */
+public class Histograma {
+    private static final int BITS_SUB = 7;
+    private static final int SUB = 1 << BITS_SUB;
+    private static final int MITAD_SUB = SUB / 2;
+    // 2^40 ns son unos 18 minutos; los valores mayores se acumulan en el último intervalo
+    private static final int MAGNITUD_MAXIMA = 40;
+    public static final long VALOR_MAXIMO = (1L << MAGNITUD_MAXIMA) - 1;
+
+    private final String nombre;
+    private final String unidad;
+    private final double divisor;
+    private final AtomicLongArray conteos = new AtomicLongArray(indice(VALOR_MAXIMO) + 1);
+    private final AtomicLong cantidad = new AtomicLong();
+    private final AtomicLong suma = new AtomicLong();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * @param unidad unidad mostrada (por ejemplo "ms")
+     * @param divisor factor entre el valor registrado y la unidad (1e6 para ns → ms)
+     */
+    public Histograma(String nombre, String unidad, double divisor) {
+        this.nombre = nombre;
+        this.unidad = unidad;
+        this.divisor = divisor;
+    }
+
+    /** Histograma de latencias registradas en nanosegundos y mostradas en ms */
+    public static Histograma latencia(String nombre) {
+        return new Histograma(nombre, "ms", 1e6);
+    }
+
+    // ============================================
+    // REGISTRO (cualquier hilo)
+    // ============================================
+
+    public void registrar(long valor) {
+        if (valor < 0) valor = 0;
+        if (valor > VALOR_MAXIMO) valor = VALOR_MAXIMO;
+        conteos.incrementAndGet(indice(valor));
+        cantidad.incrementAndGet();
+        suma.addAndGet(valor);
+        long m = maximo.get();
+        while (valor > m && !maximo.compareAndSet(m, valor)) {
+            m = maximo.get();
+        }
+    }
+
+    /** Registra el tiempo transcurrido desde un System.nanoTime() anterior */
+    public void registrarDesde(long inicioNanos) {
+        registrar(System.nanoTime() - inicioNanos);
+    }
+
+    // ============================================
+    // INTERVALOS
+    // ============================================
+
+    /**
+     * Índice del intervalo: los primeros SUB son exactos y luego cada
+     * potencia de dos ocupa MITAD_SUB intervalos de igual ancho
+     */
+    static int indice(long valor) {
+        int magnitud = 63 - Long.numberOfLeadingZeros(valor | (SUB - 1));
+        int desplazamiento = magnitud - (BITS_SUB - 1);
+        int sub = (int) (valor >>> desplazamiento);
+        return (desplazamiento << (BITS_SUB - 1)) + sub;
+    }
+
+    /** Mayor valor que cae en el intervalo */
+    static long valorMaximoDe(int indice) {
+        if (indice < SUB) return indice;
+        int desplazamiento = (indice >> (BITS_SUB - 1)) - 1;
+        long sub = (indice & (MITAD_SUB - 1)) + MITAD_SUB;
+        return ((sub + 1) << desplazamiento) - 1;
+    }
+
+    // ============================================
+    // LECTURA
+    // ============================================
+
+    public String getNombre() { return nombre; }
+    public String getUnidad() { return unidad; }
+    public long getCantidad() { return cantidad.get(); }
+    public long getMaximo() { return maximo.get(); }
+
+    public double getMedia() {
+        long n = cantidad.get();
+        return n == 0 ? 0 : suma.get() / (double) n;
+    }
+
+    /** Copia de los conteos por intervalo (para calcular percentiles de un período) */
+    public long[] copiarConteos() {
+        long[] copia = new long[conteos.length()];
+        for (int i = 0; i < copia.length; i++) copia[i] = conteos.get(i);
+        return copia;
+    }
+
+    /**
+     * @param p percentil en [0, 100]
+     */
+    public long percentil(double p) {
+        long[] c = copiarConteos();
+        long total = 0;
+        for (long v : c) total += v;
+        return Math.min(percentil(c, total, p), maximo.get());
+    }
+
+    /**
+     * Percentil sobre conteos ya copiados (o restados entre dos copias)
+     */
+    public static long percentil(long[] conteos, long total, double p) {
+        if (total == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, p)) / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < conteos.length; i++) {
+            acumulado += conteos[i];
+            if (acumulado >= objetivo) return valorMaximoDe(i);
+        }
+        return VALOR_MAXIMO;
+    }
+
+    /** Valor registrado expresado en la unidad del histograma */
+    public double enUnidad(long valor) {
+        return valor / divisor;
+    }
+
+    @Override
+    public String toString() {
+        long n = cantidad.get();
+        if (n == 0) return nombre + ": sin datos";
+        return String.format("%s: n=%d p50=%.3f p99=%.3f p99.9=%.3f máx=%.3f %s", nombre, n,
+            enUnidad(percentil(50)), enUnidad(percentil(99)), enUnidad(percentil(99.9)), enUnidad(maximo.get()), unidad);
+    }
+}
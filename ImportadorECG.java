@@ -0,0 +1,1036 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Importación masiva de registros ECG grabados: CSV, MIT-BIH (cabecera .hea
+ * con datos en formato 212 o 16) y EDF/EDF+
+ *
+ * Cada archivo se mapea en memoria y se divide en trozos independientes que
+ * un ForkJoinPool decodifica en paralelo. Los trozos se escriben en orden,
+ * mientras se decodifican los siguientes, como bloques comprimidos de
+ * Bloque_ECG con su pirámide de Resumen_ECG, en una transacción por trozo.
+ * Cada archivo es una Sesion_Monitoreo que empieza en el instante de la
+ * grabación (o al importar, si el archivo no lo dice)
+ *
+ * Con -detectar la señal pasa además, en orden y en paralelo con la
+ * escritura, por FiltroECG, DetectorQRS, MotorEventos y MotorVFC con los
+ * instantes de la grabación: Calculo_BPM, Evento_Detectado y Calculo_VFC
+ * quedan como si la sesión se hubiera monitoreado en vivo
+ *
+ * Uso: java -cp .:sqlite-jdbc.jar ImportadorECG [-paciente 3 | -edad 60 -estatura 170]
+ *      [-hz 360] [-canal 0] [-detectar] [-hilos 4] archivo.csv registro.hea registro.edf ...
+ */
+public class ImportadorECG {
+    public static final int BYTES_TROZO = 4 << 20;
+    // Una línea de CSV puede cruzar el final de su trozo hasta este largo
+    private static final int MAX_LINEA = 4096;
+    private static final int INTERVALO_BPM_SEGUNDOS = 10;
+    private static final long ESPERA_ESPECTROS_MS = 60_000;
+    private static final double[] POTENCIAS_10 = new double[23];
+
+    private static final Histograma DECODIFICACION = MetricasECG.global().latencia("importacion.decodificacion");
+    private static final Histograma ESCRITURA = MetricasECG.global().latencia("importacion.escritura");
+    private static final MetricasECG.Contador MUESTRAS = MetricasECG.global().contador("importacion.muestras");
+
+    static {
+        POTENCIAS_10[0] = 1;
+        for (int i = 1; i < POTENCIAS_10.length; i++) POTENCIAS_10[i] = POTENCIAS_10[i - 1] * 10;
+    }
+
+    private final DatabaseManager db;
+    private final ForkJoinPool pool;
+
+    // Opciones
+    private int idPaciente = -1;
+    private String nombre;
+    private int edad = -1;
+    private double estatura = -1;
+    private int frecuencia;
+    private int canal = -1;
+    private boolean detectar;
+
+    public ImportadorECG(DatabaseManager db, int hilos) {
+        this.db = db;
+        this.pool = new ForkJoinPool(Math.max(1, hilos),
+            p -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("importacion-" + t.getPoolIndex());
+                return t;
+            },
+            null, false);
+    }
+
+    /** Paciente existente para todas las sesiones; -1 crea uno por archivo */
+    public void setPaciente(int idPaciente) { this.idPaciente = idPaciente; }
+
+    /** Datos del paciente a crear que el archivo no trae (null / -1 = del archivo) */
+    public void setDatosPaciente(String nombre, int edad, double estatura) {
+        this.nombre = nombre;
+        this.edad = edad;
+        this.estatura = estatura;
+    }
+
+    /** Frecuencia de los CSV sin columna de tiempo (0 = deducirla o 250 Hz) */
+    public void setFrecuencia(int frecuencia) { this.frecuencia = frecuencia; }
+
+    /** Índice de la señal a importar entre las del archivo (-1 = la primera de ECG) */
+    public void setCanal(int canal) { this.canal = canal; }
+
+    public void setDetectar(boolean detectar) { this.detectar = detectar; }
+
+    public void cerrar() {
+        pool.shutdown();
+    }
+
+    // ============================================
+    // IMPORTACIÓN
+    // ============================================
+
+    /**
+     * Importa un archivo como una sesión nueva
+     * @return id de la sesión creada
+     * @throws IOException si el archivo no se puede leer o la base rechaza un trozo
+     */
+    public int importar(Path archivo) throws IOException {
+        try (Registro registro = abrir(archivo)) {
+            int paciente = idPaciente > 0 ? idPaciente : crearPaciente(registro);
+            long inicioMs = registro.inicioMs >= 0 ? registro.inicioMs : System.currentTimeMillis();
+            int idSesion = db.crearSesionImportada(paciente,
+                "Importado de " + archivo.getFileName() + " (" + registro.descripcion + ")", inicioMs);
+            if (idSesion <= 0) throw new IOException("no se pudo crear la sesión");
+
+            long inicio = System.nanoTime();
+            Escritura escritura = new Escritura(idSesion, registro.frecuencia, inicioMs);
+            Analisis analisis = detectar ? new Analisis(idSesion, registro.frecuencia, inicioMs) : null;
+            // Trozos en vuelo: acotan la memoria sin dejar hilos ociosos mientras se escribe
+            int ventana = 2 * pool.getParallelism() + 1;
+            ArrayDeque<ForkJoinTask<Trozo>> decodificando = new ArrayDeque<>();
+            ArrayDeque<CompletableFuture<Void>> analizando = new ArrayDeque<>();
+            CompletableFuture<Void> cadena = CompletableFuture.completedFuture(null);
+            long tamano = registro.tamanoTrozo();
+            long siguiente = registro.desde;
+            try {
+                while (siguiente < registro.hasta && decodificando.size() < ventana) {
+                    decodificando.add(enviar(registro, siguiente, Math.min(registro.hasta, siguiente + tamano)));
+                    siguiente += tamano;
+                }
+                while (!decodificando.isEmpty()) {
+                    Trozo trozo = esperar(decodificando.poll());
+                    if (siguiente < registro.hasta) {
+                        decodificando.add(enviar(registro, siguiente, Math.min(registro.hasta, siguiente + tamano)));
+                        siguiente += tamano;
+                    }
+                    escritura.agregar(trozo);
+                    if (analisis != null) {
+                        // Encadenados: el detector ve los trozos en orden y de a uno
+                        cadena = cadena.thenRunAsync(() -> analisis.procesar(trozo), pool);
+                        analizando.add(cadena);
+                        if (analizando.size() > ventana) analizando.poll().join();
+                    }
+                }
+                escritura.terminar();
+                if (analisis != null) {
+                    cadena.join();
+                    if (!MotorVFC.esperarAnalisis(ESPERA_ESPECTROS_MS)) {
+                        System.err.println("Advertencia: quedan espectros de VFC sin terminar en la sesión " + idSesion);
+                    }
+                }
+            } catch (IOException | CompletionException e) {
+                for (ForkJoinTask<Trozo> t : decodificando) t.cancel(false);
+                Throwable causa = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                throw new IOException(causa.getMessage() + " (la sesión " + idSesion
+                    + " queda en estado IMPORTANDO con lo ya escrito)", causa);
+            }
+            db.finalizarSesionImportada(idSesion, escritura.getFinMs());
+
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            long muestras = escritura.getMuestras();
+            StringBuilder resumen = new StringBuilder(String.format(
+                "✓ Sesión %d: %d muestras (%d s de señal a %d Hz) de %s en %.2f s, %.2f M muestras/s",
+                idSesion, muestras, muestras / registro.frecuencia, registro.frecuencia,
+                archivo.getFileName(), segundos, muestras / segundos / 1e6));
+            if (escritura.getDescartadas() > 0) {
+                resumen.append(", ").append(escritura.getDescartadas()).append(" líneas no numéricas");
+            }
+            if (analisis != null) {
+                resumen.append(String.format("; %d latidos, %d eventos, %d cálculos de VFC",
+                    analisis.latidos, analisis.eventos, analisis.calculosVFC.get()));
+            }
+            System.out.println(resumen);
+            return idSesion;
+        }
+    }
+
+    private ForkJoinTask<Trozo> enviar(Registro registro, long desde, long hasta) {
+        return pool.submit(() -> {
+            long inicio = System.nanoTime();
+            Trozo t = registro.decodificar(desde, hasta);
+            DECODIFICACION.registrarDesde(inicio);
+            return t;
+        });
+    }
+
+    private static Trozo esperar(ForkJoinTask<Trozo> tarea) throws IOException {
+        try {
+            return tarea.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("importación interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) throw io;
+            throw new IOException("Error decodificando: " + causa, causa);
+        }
+    }
+
+    private int crearPaciente(Registro registro) throws IOException {
+        String n = nombre != null ? nombre : registro.paciente;
+        int e = registro.edad > 0 ? registro.edad : edad;
+        if (e <= 0 || estatura <= 0) {
+            throw new IOException("faltan la edad o la estatura del paciente de " + registro.archivo.getFileName()
+                + " (usa -edad y -estatura, o -paciente N)");
+        }
+        int id = db.insertarPaciente(n, e, estatura);
+        if (id <= 0) throw new IOException("no se pudo crear el paciente " + n);
+        return id;
+    }
+
+    // ============================================
+    // ESCRITURA Y ANÁLISIS
+    // ============================================
+
+    /** Muestras decodificadas de un trozo, en unidades físicas (mV) */
+    static final class Trozo {
+        final double[] muestras;
+        final int cantidad;
+        final int descartadas;
+
+        Trozo(double[] muestras, int cantidad, int descartadas) {
+            this.muestras = muestras;
+            this.cantidad = cantidad;
+            this.descartadas = descartadas;
+        }
+    }
+
+    /**
+     * Arma bloques de BloqueECG.SEGUNDOS_BLOQUE sobre la línea de tiempo de la
+     * grabación y los guarda por trozo (sólo el hilo que importa)
+     */
+    private final class Escritura {
+        private final int idSesion;
+        private final int frecuencia;
+        private final long inicioMs;
+        private final double[] bloque;
+        private int enBloque;
+        private long bloques;
+        private long muestras;
+        private long descartadas;
+
+        Escritura(int idSesion, int frecuencia, long inicioMs) {
+            this.idSesion = idSesion;
+            this.frecuencia = frecuencia;
+            this.inicioMs = inicioMs;
+            this.bloque = new double[frecuencia * BloqueECG.SEGUNDOS_BLOQUE];
+        }
+
+        void agregar(Trozo trozo) throws IOException {
+            List<BloqueECG> lote = new ArrayList<>(trozo.cantidad / bloque.length + 1);
+            for (int i = 0; i < trozo.cantidad; ) {
+                int n = Math.min(bloque.length - enBloque, trozo.cantidad - i);
+                System.arraycopy(trozo.muestras, i, bloque, enBloque, n);
+                enBloque += n;
+                i += n;
+                if (enBloque == bloque.length) lote.add(cerrarBloque());
+            }
+            guardar(lote);
+            muestras += trozo.cantidad;
+            descartadas += trozo.descartadas;
+            MUESTRAS.sumar(trozo.cantidad);
+        }
+
+        void terminar() throws IOException {
+            if (enBloque > 0) guardar(List.of(cerrarBloque()));
+        }
+
+        private BloqueECG cerrarBloque() {
+            BloqueECG b = BloqueECG.comprimir(idSesion, inicioMs + bloques * BloqueECG.SEGUNDOS_BLOQUE * 1000L,
+                frecuencia, bloque, enBloque, BloqueECG.ESCALA_DEFECTO);
+            bloques++;
+            enBloque = 0;
+            return b;
+        }
+
+        private void guardar(List<BloqueECG> lote) throws IOException {
+            if (lote.isEmpty()) return;
+            long inicio = System.nanoTime();
+            if (db.insertarLoteBloquesECG(lote) != lote.size()) {
+                throw new IOException("la base rechazó un lote de " + lote.size() + " bloques");
+            }
+            ESCRITURA.registrarDesde(inicio);
+        }
+
+        long getMuestras() { return muestras; }
+        long getDescartadas() { return descartadas; }
+        long getFinMs() { return inicioMs + muestras * 1000 / frecuencia; }
+    }
+
+    /**
+     * Detección sobre la señal importada; los trozos llegan de a uno y en
+     * orden (encadenados en el pool), así que el estado no se comparte
+     */
+    private final class Analisis {
+        private final int idSesion;
+        private final int frecuencia;
+        private final long inicioMs;
+        private final FiltroECG filtro;
+        private final DetectorQRS detector;
+        private final MotorEventos motorEventos;
+        private final MotorVFC motorVFC;
+        private final List<MotorEventos.Evento> nuevos = new ArrayList<>();
+        private double[] filtrada = new double[0];
+        private long muestra;
+        private int latidosIntervalo;
+        private int muestrasIntervalo;
+
+        // Cálculos de BPM del trozo en curso
+        private int[] sesionesBPM = new int[16];
+        private int[] bpm = new int[16];
+        private int[] latidosBPM = new int[16];
+        private long[] instantesBPM = new long[16];
+        private int calculosBPM;
+
+        volatile long latidos;
+        volatile long eventos;
+        // Los espectros se entregan desde el pool de MotorVFC
+        final AtomicLong calculosVFC = new AtomicLong();
+
+        Analisis(int idSesion, int frecuencia, long inicioMs) {
+            this.idSesion = idSesion;
+            this.frecuencia = frecuencia;
+            this.inicioMs = inicioMs;
+            this.filtro = FiltroECG.desdeSistema(frecuencia);
+            this.detector = new DetectorQRS(frecuencia);
+            this.motorEventos = new MotorEventos(idSesion, nuevos::add);
+            this.motorVFC = new MotorVFC(idSesion, r -> {
+                db.insertarCalculoVFC(r);
+                calculosVFC.incrementAndGet();
+            });
+            motorVFC.setSinOmitir(true);
+        }
+
+        void procesar(Trozo trozo) {
+            // La escritura usa las muestras crudas: se filtra una copia
+            int n = trozo.cantidad;
+            if (filtrada.length < n) filtrada = new double[n];
+            System.arraycopy(trozo.muestras, 0, filtrada, 0, n);
+            filtro.procesar(filtrada, n);
+
+            for (int i = 0; i < n; i++, muestra++) {
+                double valor = filtrada[i];
+                if (detector.procesar(valor)) {
+                    latidos++;
+                    latidosIntervalo++;
+                    double instanteR = inicioMs + detector.getUltimoLatidoMs();
+                    motorEventos.procesarLatido(detector.getUltimoRRMs(), (long) instanteR, valor);
+                    if (detector.getUltimoRRMs() > 0) {
+                        motorVFC.procesarLatido(detector.getUltimoRRMs(), instanteR);
+                    }
+                }
+                if (++muestrasIntervalo >= INTERVALO_BPM_SEGUNDOS * frecuencia) {
+                    if (detector.getBPM() > 0) agregarBPM(detector.getBPM(), latidosIntervalo, instante(muestra));
+                    latidosIntervalo = 0;
+                    muestrasIntervalo = 0;
+                }
+            }
+
+            if (!nuevos.isEmpty()) {
+                eventos += db.insertarLoteEventos(nuevos);
+                nuevos.clear();
+            }
+            if (calculosBPM > 0) {
+                db.insertarLoteCalculosBPM(sesionesBPM, bpm, latidosBPM, instantesBPM, calculosBPM);
+                calculosBPM = 0;
+            }
+        }
+
+        private void agregarBPM(int valor, int numLatidos, long instanteMs) {
+            if (calculosBPM == bpm.length) {
+                sesionesBPM = Arrays.copyOf(sesionesBPM, calculosBPM * 2);
+                bpm = Arrays.copyOf(bpm, calculosBPM * 2);
+                latidosBPM = Arrays.copyOf(latidosBPM, calculosBPM * 2);
+                instantesBPM = Arrays.copyOf(instantesBPM, calculosBPM * 2);
+            }
+            sesionesBPM[calculosBPM] = idSesion;
+            bpm[calculosBPM] = valor;
+            latidosBPM[calculosBPM] = numLatidos;
+            instantesBPM[calculosBPM++] = instanteMs;
+        }
+
+        private long instante(long indice) {
+            return inicioMs + indice * 1000 / frecuencia;
+        }
+    }
+
+    // ============================================
+    // FORMATOS
+    // ============================================
+
+    /**
+     * Abre el archivo según su extensión; para MIT-BIH se acepta tanto el
+     * .hea como el .dat o el nombre del registro sin extensión
+     */
+    Registro abrir(Path archivo) throws IOException {
+        try {
+            return abrirSegunExtension(archivo);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IOException("cabecera inválida en " + archivo.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Registro abrirSegunExtension(Path archivo) throws IOException {
+        String nombreArchivo = archivo.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (nombreArchivo.endsWith(".edf") || nombreArchivo.endsWith(".rec")) {
+            return new RegistroEDF(archivo, canal);
+        }
+        if (nombreArchivo.endsWith(".csv") || nombreArchivo.endsWith(".txt")) {
+            return new RegistroCSV(archivo, canal, frecuencia);
+        }
+        Path cabecera = nombreArchivo.endsWith(".hea") ? archivo
+            : archivo.resolveSibling(quitarExtension(archivo.getFileName().toString()) + ".hea");
+        if (Files.exists(cabecera)) return RegistroMIT.abrir(cabecera, canal);
+        throw new IOException("formato no reconocido: " + archivo.getFileName() + " (se esperaba .csv, .hea/.dat o .edf)");
+    }
+
+    static String quitarExtension(String nombre) {
+        int punto = nombre.lastIndexOf('.');
+        return punto > 0 ? nombre.substring(0, punto) : nombre;
+    }
+
+    /**
+     * Archivo abierto: cabecera leída y datos en [desde, hasta), divididos en
+     * trozos que se decodifican por separado
+     */
+    abstract static class Registro implements AutoCloseable {
+        final Path archivo;
+        final FileChannel datos;
+        String paciente;
+        String descripcion;
+        int frecuencia;
+        long inicioMs = -1;
+        int edad = -1;
+        long desde;
+        long hasta;
+
+        Registro(Path archivo, Path archivoDatos) throws IOException {
+            this.archivo = archivo;
+            this.datos = FileChannel.open(archivoDatos, StandardOpenOption.READ);
+            this.paciente = quitarExtension(archivo.getFileName().toString());
+            this.hasta = datos.size();
+        }
+
+        /** Los trozos empiezan en desde + un múltiplo de este largo en bytes */
+        abstract long alineacion();
+
+        /** Muestras de la señal elegida cuyos datos empiezan en [inicio, fin) */
+        abstract Trozo decodificar(long inicio, long fin) throws IOException;
+
+        long tamanoTrozo() {
+            long a = alineacion();
+            return Math.max(a, BYTES_TROZO / a * a);
+        }
+
+        ByteBuffer mapear(long inicio, long largo) throws IOException {
+            return datos.map(FileChannel.MapMode.READ_ONLY, inicio, largo).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public void close() throws IOException {
+            datos.close();
+        }
+    }
+
+    /**
+     * Texto con una muestra por línea. Con varias columnas (separadas por
+     * coma, punto y coma, tabulador o espacios) la primera es el tiempo o el
+     * número de muestra y canal elige entre las demás; con punto y coma la
+     * coma decimal también vale. Las líneas no numéricas (cabeceras) se saltan
+     */
+    static final class RegistroCSV extends Registro {
+        private final byte separador;
+        private final byte decimal;
+        private final int columna;
+
+        RegistroCSV(Path archivo, int canal, int frecuencia) throws IOException {
+            super(archivo, archivo);
+            try {
+                // Las primeras líneas alcanzan para el separador, las columnas y el paso de tiempo
+                ByteBuffer inicio = mapear(0, Math.min(hasta, 64 * 1024));
+                List<String> lineas = new ArrayList<>();
+                StringBuilder actual = new StringBuilder();
+                while (inicio.hasRemaining() && lineas.size() < 64) {
+                    char c = (char) (inicio.get() & 0xFF);
+                    if (c == '\n') {
+                        lineas.add(actual.toString().trim());
+                        actual.setLength(0);
+                    } else {
+                        actual.append(c);
+                    }
+                }
+                String muestra = lineas.stream().filter(l -> !l.isEmpty() && esNumerica(l.charAt(0))).findFirst().orElse("");
+                if (muestra.indexOf(';') >= 0) separador = ';';
+                else if (muestra.indexOf(',') >= 0) separador = ',';
+                else if (muestra.indexOf('\t') >= 0) separador = '\t';
+                else separador = ' ';
+                decimal = separador == ';' && muestra.indexOf('.') < 0 ? (byte) ',' : (byte) '.';
+                String[] campos = separador == ' ' ? muestra.split("\\s+") : muestra.split(separador == '\t' ? "\t" : String.valueOf((char) separador));
+                int columnas = Math.max(1, campos.length);
+                int senal = Math.max(0, canal);
+                if (columnas > 1 && senal >= columnas - 1) {
+                    throw new IOException("el CSV tiene " + (columnas - 1) + " señales; -canal " + canal + " no existe");
+                }
+                columna = columnas == 1 ? 0 : 1 + senal;
+
+                if (frecuencia <= 0 && columnas > 1) frecuencia = deducirFrecuencia(lineas);
+                if (frecuencia <= 0) {
+                    frecuencia = DetectorQRS.FRECUENCIA_DEFECTO;
+                    System.err.println("Advertencia: " + archivo.getFileName() + " no indica la frecuencia; se asume "
+                        + frecuencia + " Hz (usa -hz)");
+                }
+                this.frecuencia = frecuencia;
+                descripcion = "CSV, columna " + columna + ", " + frecuencia + " Hz";
+            } catch (IOException | RuntimeException e) {
+                // La cabecera no sirve: el canal no llega a quien lo cerraría
+                datos.close();
+                throw e;
+            }
+        }
+
+        private static boolean esNumerica(char c) {
+            return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+        }
+
+        /** Frecuencia a partir del paso de la primera columna, si es tiempo en segundos */
+        private int deducirFrecuencia(List<String> lineas) {
+            double anterior = Double.NaN;
+            for (String l : lineas) {
+                if (l.isEmpty() || !esNumerica(l.charAt(0))) continue;
+                String primero = separador == ' ' ? l.split("\\s+")[0] : l.substring(0, Math.max(0, l.indexOf(separador)));
+                double t;
+                try {
+                    t = Double.parseDouble(decimal == ',' ? primero.replace(',', '.') : primero);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+                if (!Double.isNaN(anterior)) {
+                    double paso = t - anterior;
+                    return paso > 0 && paso < 1 ? (int) Math.round(1 / paso) : 0;
+                }
+                anterior = t;
+            }
+            return 0;
+        }
+
+        @Override long alineacion() { return 1; }
+
+        @Override
+        Trozo decodificar(long inicio, long fin) throws IOException {
+            // Una línea pertenece al trozo en el que empieza: se mapea un byte
+            // antes para saber si inicio cae al principio de una línea
+            long base = inicio == 0 ? 0 : inicio - 1;
+            ByteBuffer b = mapear(base, Math.min(hasta, fin + MAX_LINEA) - base);
+            int limite = b.limit();
+            int finTrozo = (int) (fin - base);
+            int i = 0;
+            if (inicio > 0) {
+                while (i < limite && b.get(i) != '\n') i++;
+                i++;
+            }
+            double[] muestras = new double[(int) Math.max(16, (fin - inicio) / 6)];
+            int n = 0, descartadas = 0;
+            while (i < finTrozo && i < limite) {
+                int p = i;
+                for (int c = 0; c < columna && p >= 0; c++) p = siguienteCampo(b, p, limite);
+                double v = Double.NaN;
+                if (p >= 0) {
+                    // Número decimal: mantisa entera de hasta 18 dígitos y potencia de 10
+                    while (p < limite && (b.get(p) == ' ' || b.get(p) == '\t' || b.get(p) == '"')) p++;
+                    boolean negativo = false;
+                    if (p < limite && (b.get(p) == '-' || b.get(p) == '+')) negativo = b.get(p++) == '-';
+                    long mantisa = 0;
+                    int digitos = 0, exponente = 0;
+                    boolean hayDigitos = false, punto = false;
+                    while (p < limite) {
+                        byte c = b.get(p);
+                        if (c >= '0' && c <= '9') {
+                            hayDigitos = true;
+                            if (digitos < 18) {
+                                if (mantisa != 0 || c != '0') {
+                                    mantisa = mantisa * 10 + (c - '0');
+                                    digitos++;
+                                }
+                                if (punto) exponente--;
+                            } else if (!punto) {
+                                exponente++;
+                            }
+                        } else if (c == decimal && !punto) {
+                            punto = true;
+                        } else {
+                            break;
+                        }
+                        p++;
+                    }
+                    if (hayDigitos && p < limite && (b.get(p) == 'e' || b.get(p) == 'E')) {
+                        int q = p + 1, signo = 1, e = 0;
+                        if (q < limite && (b.get(q) == '-' || b.get(q) == '+')) signo = b.get(q++) == '-' ? -1 : 1;
+                        int desdeExponente = q;
+                        while (q < limite && b.get(q) >= '0' && b.get(q) <= '9' && e < 10000) e = e * 10 + (b.get(q++) - '0');
+                        if (q > desdeExponente) {
+                            exponente += signo * e;
+                            p = q;
+                        }
+                    }
+                    byte siguiente = p < limite ? b.get(p) : (byte) '\n';
+                    boolean finCampo = siguiente == separador || siguiente == '\n' || siguiente == '\r'
+                        || siguiente == ' ' || siguiente == '\t' || siguiente == '"';
+                    if (hayDigitos && finCampo) {
+                        v = mantisa;
+                        if (exponente < 0) v = exponente >= -22 ? v / POTENCIAS_10[-exponente] : v * Math.pow(10, exponente);
+                        else if (exponente > 0) v = exponente <= 22 ? v * POTENCIAS_10[exponente] : v * Math.pow(10, exponente);
+                        if (negativo) v = -v;
+                    }
+                }
+                int j = Math.max(i, p);
+                while (j < limite && b.get(j) != '\n') j++;
+                if (j == limite && base + limite < hasta) {
+                    throw new IOException("línea de más de " + MAX_LINEA + " bytes en " + archivo.getFileName()
+                        + " cerca del byte " + (base + i));
+                }
+                if (!Double.isNaN(v)) {
+                    if (n == muestras.length) muestras = Arrays.copyOf(muestras, n + (n >> 1));
+                    muestras[n++] = v;
+                } else if (j > i && !(j == i + 1 && b.get(i) == '\r')) {
+                    descartadas++;
+                }
+                i = j + 1;
+            }
+            return new Trozo(muestras, n, descartadas);
+        }
+
+        /** Posición del campo siguiente, o -1 si la línea termina antes */
+        private int siguienteCampo(ByteBuffer b, int p, int limite) {
+            if (separador == ' ') {
+                while (p < limite && (b.get(p) == ' ' || b.get(p) == '\t')) p++;
+                while (p < limite && b.get(p) != ' ' && b.get(p) != '\t' && b.get(p) != '\n') p++;
+                return p < limite && b.get(p) != '\n' ? p : -1;
+            }
+            while (p < limite && b.get(p) != separador && b.get(p) != '\n') p++;
+            return p < limite && b.get(p) == separador ? p + 1 : -1;
+        }
+    }
+
+    /**
+     * Registro de PhysioNet/MIT-BIH: cabecera .hea de texto y un .dat con
+     * las señales intercaladas en formato 212 (dos muestras de 12 bits en 3
+     * bytes) o 16 (enteros de 16 bits little-endian)
+     */
+    static final class RegistroMIT extends Registro {
+        private final int formato;
+        private final int numSenales;
+        private final int senal;
+        private final double milivoltiosPorCuenta;
+        private final double lineaBase;
+        private final long totalValores;
+
+        private RegistroMIT(Path cabecera, Path archivoDatos, int formato, int numSenales, int senal,
+                            double ganancia, double lineaBase, long muestrasPorSenal, long desplazamiento) throws IOException {
+            super(cabecera, archivoDatos);
+            this.formato = formato;
+            this.numSenales = numSenales;
+            this.senal = senal;
+            this.milivoltiosPorCuenta = 1 / ganancia;
+            this.lineaBase = lineaBase;
+            desde = desplazamiento;
+            long porArchivo = formato == 212 ? (hasta - desde) * 2 / 3 : (hasta - desde) / 2;
+            porArchivo -= porArchivo % numSenales;
+            totalValores = muestrasPorSenal > 0 ? Math.min(porArchivo, muestrasPorSenal * numSenales) : porArchivo;
+            hasta = desde + (formato == 212 ? (totalValores * 3 + 1) / 2 : totalValores * 2);
+        }
+
+        static RegistroMIT abrir(Path cabecera, int canal) throws IOException {
+            List<String> lineas = new ArrayList<>();
+            String comentario = null;
+            for (String l : Files.readAllLines(cabecera, StandardCharsets.ISO_8859_1)) {
+                l = l.trim();
+                if (l.startsWith("#")) {
+                    if (comentario == null) comentario = l.substring(1).trim();
+                } else if (!l.isEmpty()) {
+                    lineas.add(l);
+                }
+            }
+            if (lineas.isEmpty()) throw new IOException("cabecera vacía: " + cabecera.getFileName());
+            String[] registro = lineas.get(0).split("\\s+");
+            if (registro.length < 3 || registro[0].contains("/")) {
+                throw new IOException("cabecera MIT no soportada (registros multisegmento o sin frecuencia): " + cabecera.getFileName());
+            }
+            int numSenales = Integer.parseInt(registro[1]);
+            double hz = Double.parseDouble(registro[2].split("[/(]")[0]);
+            long muestras = registro.length > 3 ? Long.parseLong(registro[3]) : 0;
+            if (numSenales < 1 || lineas.size() < 1 + numSenales) {
+                throw new IOException("cabecera MIT sin sus " + numSenales + " señales: " + cabecera.getFileName());
+            }
+            if (Math.abs(hz - Math.rint(hz)) > 1e-6) throw new IOException("frecuencia no entera: " + hz + " Hz");
+
+            int senal = canal;
+            String[][] senales = new String[numSenales][];
+            for (int i = 0; i < numSenales; i++) senales[i] = lineas.get(1 + i).split("\\s+");
+            if (senal < 0) {
+                senal = 0;
+                for (int i = numSenales - 1; i >= 0; i--) {
+                    String d = senales[i].length > 8 ? senales[i][8].toUpperCase(Locale.ROOT) : "";
+                    if (d.contains("ECG") || d.startsWith("ML")) senal = i;
+                }
+            }
+            if (senal >= numSenales) throw new IOException("el registro tiene " + numSenales + " señales; -canal " + canal + " no existe");
+
+            // Todas las señales deben estar intercaladas en el mismo archivo y formato
+            String archivoDatos = senales[0][0];
+            String formatoTexto = senales[0].length > 1 ? senales[0][1] : "16";
+            for (String[] s : senales) {
+                if (!s[0].equals(archivoDatos) || !(s.length > 1 ? s[1] : "16").equals(formatoTexto)) {
+                    throw new IOException("registro MIT con señales en varios archivos o formatos: " + cabecera.getFileName());
+                }
+            }
+            if (formatoTexto.contains("x")) throw new IOException("registro MIT con varias muestras por cuadro: " + formatoTexto);
+            long desplazamiento = formatoTexto.contains("+") ? Long.parseLong(formatoTexto.substring(formatoTexto.indexOf('+') + 1)) : 0;
+            int formato = Integer.parseInt(formatoTexto.split("[:+]")[0]);
+            if (formato != 212 && formato != 16) throw new IOException("formato MIT " + formato + " no soportado (sólo 212 y 16)");
+
+            // Ganancia "200(0)/mV": cuentas por unidad y línea base; sin línea base vale el cero del ADC
+            String[] s = senales[senal];
+            String gananciaTexto = s.length > 2 ? s[2] : "";
+            double ganancia = gananciaTexto.isEmpty() ? 0 : Double.parseDouble(gananciaTexto.split("[(/]")[0]);
+            if (ganancia == 0) ganancia = 200;
+            double lineaBase = s.length > 4 ? Double.parseDouble(s[4]) : 0;
+            if (gananciaTexto.contains("(")) {
+                lineaBase = Double.parseDouble(gananciaTexto.substring(gananciaTexto.indexOf('(') + 1, gananciaTexto.indexOf(')')));
+            }
+            if (gananciaTexto.toLowerCase(Locale.ROOT).endsWith("/uv")) ganancia *= 1000;
+
+            RegistroMIT r = new RegistroMIT(cabecera, cabecera.resolveSibling(archivoDatos), formato, numSenales, senal,
+                ganancia, lineaBase, muestras, desplazamiento);
+            r.frecuencia = (int) Math.rint(hz);
+            r.descripcion = "MIT-BIH " + formato + ", señal " + senal
+                + (s.length > 8 ? " " + String.join(" ", Arrays.copyOfRange(s, 8, s.length)) : "") + ", " + r.frecuencia + " Hz";
+            r.inicioMs = instanteBase(registro);
+            if (comentario != null) {
+                // Los registros de MIT-BIH empiezan con "# 69 M ..." (edad y sexo)
+                String[] c = comentario.split("\\s+");
+                if (c.length > 0 && c[0].matches("\\d{1,3}")) r.edad = Integer.parseInt(c[0]);
+            }
+            return r;
+        }
+
+        /** "hh:mm:ss dd/mm/aaaa" opcionales al final de la primera línea, o -1 */
+        private static long instanteBase(String[] registro) {
+            if (registro.length < 6) return -1;
+            try {
+                String[] h = registro[4].split(":");
+                String[] f = registro[5].split("/");
+                LocalDateTime t = LocalDateTime.of(Integer.parseInt(f[2]), Integer.parseInt(f[1]), Integer.parseInt(f[0]),
+                    Integer.parseInt(h[0]), Integer.parseInt(h[1]), (int) Double.parseDouble(h[2]));
+                return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+
+        // Dos cuadros: en 212 es lo mínimo que empieza en un byte entero
+        @Override long alineacion() { return formato == 212 ? 3L * numSenales : 2L * numSenales; }
+
+        @Override
+        Trozo decodificar(long inicio, long fin) throws IOException {
+            ByteBuffer b = mapear(inicio, fin - inicio);
+            long primerValor = formato == 212 ? (inicio - desde) / 3 * 2 : (inicio - desde) / 2;
+            int valores = (int) Math.min(totalValores - primerValor, formato == 212 ? (fin - inicio) * 2 / 3 : (fin - inicio) / 2);
+            double[] muestras = new double[valores / numSenales + 1];
+            int n = 0;
+            int anterior = 0;
+            if (formato == 16) {
+                for (int v = senal; v < valores; v += numSenales) {
+                    int adc = b.getShort(2 * v);
+                    // -32768 marca una muestra inválida: se repite la anterior
+                    if (adc == -32768) adc = anterior;
+                    anterior = adc;
+                    muestras[n++] = (adc - lineaBase) * milivoltiosPorCuenta;
+                }
+                return new Trozo(muestras, n, 0);
+            }
+            int s = 0;
+            for (int k = 0, v = 0; v < valores; k += 3) {
+                int b0 = b.get(k) & 0xFF;
+                int b1 = b.get(k + 1) & 0xFF;
+                int adc = ((b1 & 0x0F) << 8 | b0) << 20 >> 20;
+                if (s == senal) {
+                    if (adc == -2048) adc = anterior;
+                    anterior = adc;
+                    muestras[n++] = (adc - lineaBase) * milivoltiosPorCuenta;
+                }
+                if (++s == numSenales) s = 0;
+                if (++v == valores) break;
+                adc = ((b1 & 0xF0) << 4 | (b.get(k + 2) & 0xFF)) << 20 >> 20;
+                if (s == senal) {
+                    if (adc == -2048) adc = anterior;
+                    anterior = adc;
+                    muestras[n++] = (adc - lineaBase) * milivoltiosPorCuenta;
+                }
+                if (++s == numSenales) s = 0;
+                v++;
+            }
+            return new Trozo(muestras, n, 0);
+        }
+    }
+
+    /**
+     * EDF/EDF+: cabecera ASCII de 256 + 256 bytes por señal y registros de
+     * datos con las muestras de 16 bits de cada señal seguidas. Los
+     * registros EDF+D discontinuos se importan como si fueran continuos
+     */
+    static final class RegistroEDF extends Registro {
+        private static final DateTimeFormatter FECHA_NACIMIENTO = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive().appendPattern("dd-MMM-yyyy").toFormatter(Locale.ENGLISH);
+
+        private final int bytesRegistro;
+        private final int desplazamientoSenal;
+        private final int muestrasPorRegistro;
+        private final double escala;
+        private final double cero;
+
+        RegistroEDF(Path archivo, int canal) throws IOException {
+            super(archivo, archivo);
+            try {
+                ByteBuffer fija = mapear(0, Math.min(hasta, 256));
+                if (hasta < 256) throw new IOException("EDF truncado: " + archivo.getFileName());
+                int numSenales = Integer.parseInt(campo(fija, 252, 4));
+                int bytesCabecera = Integer.parseInt(campo(fija, 184, 8));
+                long numRegistros = Long.parseLong(campo(fija, 236, 8));
+                double duracion = Double.parseDouble(campo(fija, 244, 8));
+                if (numSenales < 1 || bytesCabecera != 256 + 256 * numSenales || duracion <= 0) {
+                    throw new IOException("cabecera EDF inválida: " + archivo.getFileName());
+                }
+                if (bytesCabecera > hasta) throw new IOException("EDF truncado: " + archivo.getFileName());
+                ByteBuffer c = mapear(0, bytesCabecera);
+                int[] porRegistro = new int[numSenales];
+                String[] etiquetas = new String[numSenales];
+                int total = 0;
+                for (int i = 0; i < numSenales; i++) {
+                    etiquetas[i] = campo(c, 256 + i * 16, 16);
+                    porRegistro[i] = Integer.parseInt(campo(c, 256 + numSenales * 216 + i * 8, 8));
+                    total += porRegistro[i];
+                }
+                int senal = canal;
+                if (senal < 0) {
+                    senal = 0;
+                    for (int i = numSenales - 1; i >= 0; i--) {
+                        String e = etiquetas[i].toUpperCase(Locale.ROOT);
+                        if (e.contains("ECG") || e.contains("EKG")) senal = i;
+                    }
+                }
+                if (senal >= numSenales || etiquetas[senal].startsWith("EDF Annotations")) {
+                    throw new IOException("el EDF no tiene una señal " + canal + " importable");
+                }
+
+                double fisicoMin = Double.parseDouble(campo(c, 256 + numSenales * 104 + senal * 8, 8));
+                double fisicoMax = Double.parseDouble(campo(c, 256 + numSenales * 112 + senal * 8, 8));
+                double digitalMin = Double.parseDouble(campo(c, 256 + numSenales * 120 + senal * 8, 8));
+                double digitalMax = Double.parseDouble(campo(c, 256 + numSenales * 128 + senal * 8, 8));
+                String unidad = campo(c, 256 + numSenales * 96 + senal * 8, 8);
+                double aMilivoltios = unidad.equalsIgnoreCase("uV") ? 0.001 : unidad.equalsIgnoreCase("V") ? 1000 : 1;
+                escala = (fisicoMax - fisicoMin) / (digitalMax - digitalMin) * aMilivoltios;
+                cero = (fisicoMin - digitalMin * (fisicoMax - fisicoMin) / (digitalMax - digitalMin)) * aMilivoltios;
+
+                int desplazamiento = 0;
+                for (int i = 0; i < senal; i++) desplazamiento += 2 * porRegistro[i];
+                desplazamientoSenal = desplazamiento;
+                muestrasPorRegistro = porRegistro[senal];
+                bytesRegistro = 2 * total;
+                double hz = muestrasPorRegistro / duracion;
+                if (Math.abs(hz - Math.rint(hz)) > 1e-6) throw new IOException("frecuencia no entera: " + hz + " Hz");
+                frecuencia = (int) Math.rint(hz);
+
+                // Con -1 registros (grabación sin cerrar) cuentan los que hay completos
+                long enArchivo = (hasta - bytesCabecera) / bytesRegistro;
+                desde = bytesCabecera;
+                hasta = desde + (numRegistros >= 0 ? Math.min(numRegistros, enArchivo) : enArchivo) * bytesRegistro;
+                descripcion = "EDF, señal " + senal + " " + etiquetas[senal] + ", " + frecuencia + " Hz";
+                leerInicio(campo(fija, 168, 8), campo(fija, 176, 8));
+                leerPaciente(campo(fija, 8, 80));
+            } catch (IOException | RuntimeException e) {
+                // La cabecera no sirve: el canal no llega a quien lo cerraría
+                datos.close();
+                throw e;
+            }
+        }
+
+        private static String campo(ByteBuffer b, int desde, int largo) {
+            byte[] bytes = new byte[largo];
+            b.get(desde, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII).trim();
+        }
+
+        /** "dd.mm.aa" y "hh.mm.ss"; los años 85-99 son 1985-1999 */
+        private void leerInicio(String fecha, String hora) {
+            try {
+                String[] f = fecha.split("\\.");
+                String[] h = hora.split("\\.");
+                int anio = Integer.parseInt(f[2]);
+                anio += anio >= 85 ? 1900 : 2000;
+                LocalDateTime t = LocalDateTime.of(anio, Integer.parseInt(f[1]), Integer.parseInt(f[0]),
+                    Integer.parseInt(h[0]), Integer.parseInt(h[1]), Integer.parseInt(h[2]));
+                inicioMs = t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (RuntimeException e) {
+                inicioMs = -1;
+            }
+        }
+
+        /** EDF+: "código sexo nacimiento nombre", con X donde no se conoce */
+        private void leerPaciente(String campo) {
+            String[] partes = campo.split("\\s+");
+            if (partes.length >= 4 && partes[1].matches("[MFX]")) {
+                if (!partes[3].equals("X")) paciente = partes[3].replace('_', ' ');
+                try {
+                    LocalDate nacimiento = LocalDate.parse(partes[2], FECHA_NACIMIENTO);
+                    LocalDate grabacion = inicioMs >= 0
+                        ? LocalDate.ofInstant(Instant.ofEpochMilli(inicioMs), ZoneId.systemDefault()) : LocalDate.now();
+                    edad = Period.between(nacimiento, grabacion).getYears();
+                } catch (RuntimeException e) {
+                    edad = -1;
+                }
+            } else if (!campo.isEmpty()) {
+                paciente = campo;
+            }
+        }
+
+        @Override long alineacion() { return bytesRegistro; }
+
+        @Override
+        Trozo decodificar(long inicio, long fin) throws IOException {
+            ByteBuffer b = mapear(inicio, fin - inicio);
+            int registros = (int) ((fin - inicio) / bytesRegistro);
+            double[] muestras = new double[registros * muestrasPorRegistro];
+            int n = 0;
+            for (int r = 0; r < registros; r++) {
+                int p = r * bytesRegistro + desplazamientoSenal;
+                for (int j = 0; j < muestrasPorRegistro; j++, p += 2) {
+                    muestras[n++] = b.getShort(p) * escala + cero;
+                }
+            }
+            return new Trozo(muestras, n, 0);
+        }
+    }
+
+    // ============================================
+    // LÍNEA DE COMANDOS
+    // ============================================
+
+    public static void main(String[] args) {
+        Locale.setDefault(Locale.ROOT);
+        String archivoDb = DatabaseManager.ARCHIVO_DEFECTO;
+        int hilos = Runtime.getRuntime().availableProcessors();
+        int paciente = -1, edad = -1, hz = 0, canal = -1;
+        double estatura = -1;
+        String nombre = null;
+        boolean detectar = false;
+        List<Path> archivos = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-db": archivoDb = args[++i]; break;
+                    case "-paciente": paciente = Integer.parseInt(args[++i]); break;
+                    case "-nombre": nombre = args[++i]; break;
+                    case "-edad": edad = Integer.parseInt(args[++i]); break;
+                    case "-estatura": estatura = Double.parseDouble(args[++i]); break;
+                    case "-hz": hz = Integer.parseInt(args[++i]); break;
+                    case "-canal": canal = Integer.parseInt(args[++i]); break;
+                    case "-detectar": detectar = true; break;
+                    case "-hilos": hilos = Integer.parseInt(args[++i]); break;
+                    case "-ayuda":
+                        imprimirAyuda();
+                        return;
+                    default:
+                        if (args[i].startsWith("-")) throw new IllegalArgumentException("opción desconocida " + args[i]);
+                        archivos.add(Path.of(args[i]));
+                }
+            }
+            if (archivos.isEmpty()) throw new IllegalArgumentException("falta al menos un archivo");
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Error en argumentos: " + e.getMessage());
+            imprimirAyuda();
+            System.exit(2);
+        }
+
+        DatabaseManager db = new DatabaseManager(PerfilAlmacenamiento.desdeSistema(), archivoDb);
+        ImportadorECG importador = new ImportadorECG(db, hilos);
+        importador.setPaciente(paciente);
+        importador.setDatosPaciente(nombre, edad, estatura);
+        importador.setFrecuencia(hz);
+        importador.setCanal(canal);
+        importador.setDetectar(detectar);
+        int errores = 0;
+        try {
+            for (Path archivo : archivos) {
+                try {
+                    importador.importar(archivo);
+                } catch (NoSuchFileException e) {
+                    errores++;
+                    System.err.println("Error importando " + archivo + ": no existe " + e.getFile());
+                } catch (IOException e) {
+                    errores++;
+                    System.err.println("Error importando " + archivo + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            importador.cerrar();
+            db.cerrarConexion();
+        }
+        System.exit(errores == 0 ? 0 : 1);
+    }
+
+    private static void imprimirAyuda() {
+        System.out.println("""
+            ImportadorECG: importa registros grabados como sesiones nuevas
+              archivo ...           .csv/.txt, registro MIT-BIH (.hea, .dat o sin extensión) o .edf
+              -db ecg_database.db   base de destino
+              -paciente 3           agrega las sesiones a ese paciente
+              -nombre, -edad 60, -estatura 170   datos del paciente a crear cuando el archivo no los trae
+              -hz 360               frecuencia de los CSV sin columna de tiempo en segundos
+              -canal 0              señal a importar (por defecto la primera de ECG)
+              -detectar             corre detección, eventos y VFC sobre la señal importada
+              -hilos 4              hilos de decodificación (por defecto, los procesadores)""");
+    }
+}
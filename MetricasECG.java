@@ -0,0 +1,303 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registro de métricas del camino de datos: histogramas de latencia,
+ * contadores y medidores
+ *
+ * Los componentes obtienen sus histogramas y contadores una vez (campos
+ * estáticos) y en el camino caliente sólo hacen incrementos atómicos, una
+ * vez por lote y no por muestra. Todo se expone como atributos del MBean
+ * ecg:type=Metricas y, opcionalmente, en un volcado de texto periódico con
+ * percentiles y tasas del último intervalo
+ *
+ * -Decg.metricas.intervalo=60 fija el período del volcado en segundos (0 lo desactiva)
+ */
+public class MetricasECG {
+    public static final String NOMBRE_JMX = "ecg:type=Metricas";
+    public static final long INTERVALO_DEFECTO_S = 60;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final MetricasECG GLOBAL = new MetricasECG();
+
+    /**
+     * Contador monótono; el volcado muestra además su tasa por segundo
+     */
+    public static final class Contador {
+        private final LongAdder valor = new LongAdder();
+
+        public void incrementar() { valor.increment(); }
+        public void sumar(long n) { valor.add(n); }
+        public long get() { return valor.sum(); }
+    }
+
+    // Ordenados por nombre para un volcado estable
+    private final Map<String, Histograma> histogramas = new ConcurrentSkipListMap<>();
+    private final Map<String, Contador> contadores = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> medidores = new ConcurrentSkipListMap<>();
+
+    // Estado del volcado (bajo el monitor de esta clase)
+    private final Map<String, long[]> conteosAnteriores = new HashMap<>();
+    private final Map<String, Long> contadoresAnteriores = new HashMap<>();
+    private long volcadoAnteriorNanos = System.nanoTime();
+    private ScheduledExecutorService volcador;
+
+    public static MetricasECG global() {
+        return GLOBAL;
+    }
+
+    MetricasECG() {
+        Runtime rt = Runtime.getRuntime();
+        medidor("jvm.heap_usado_bytes", () -> rt.totalMemory() - rt.freeMemory());
+        medidor("jvm.heap_maximo_bytes", rt::maxMemory);
+    }
+
+    // ============================================
+    // REGISTRO
+    // ============================================
+
+    /**
+     * Histograma de latencias en ns (mostrado en ms); se crea la primera vez
+     */
+    public Histograma latencia(String nombre) {
+        return histogramas.computeIfAbsent(nombre, Histograma::latencia);
+    }
+
+    /**
+     * Histograma de magnitudes sin unidad de tiempo (tamaños de lote, etc.)
+     */
+    public Histograma distribucion(String nombre, String unidad) {
+        return histogramas.computeIfAbsent(nombre, n -> new Histograma(n, unidad, 1));
+    }
+
+    public Contador contador(String nombre) {
+        return contadores.computeIfAbsent(nombre, n -> new Contador());
+    }
+
+    /**
+     * Registra (o reemplaza) un medidor; la fuente se consulta al leerlo y
+     * debe ser barata y segura desde cualquier hilo
+     */
+    public void medidor(String nombre, LongSupplier fuente) {
+        medidores.put(nombre, fuente);
+    }
+
+    public void quitarMedidor(String nombre) {
+        medidores.remove(nombre);
+    }
+
+    // ============================================
+    // JMX Y VOLCADO
+    // ============================================
+
+    /**
+     * Registra el MBean y arranca el volcado según ecg.metricas.intervalo
+     */
+    public synchronized void iniciar() {
+        registrarJMX();
+        long intervalo = INTERVALO_DEFECTO_S;
+        String valor = System.getProperty("ecg.metricas.intervalo");
+        if (valor != null) {
+            try {
+                intervalo = Long.parseLong(valor.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Error en ecg.metricas.intervalo: " + valor + " no es un número; se usa " + intervalo);
+            }
+        }
+        if (intervalo > 0 && volcador == null) {
+            volcador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "MetricasECG");
+                t.setDaemon(true);
+                return t;
+            });
+            volcador.scheduleAtFixedRate(() -> System.out.print(volcar()), intervalo, intervalo, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void detener() {
+        if (volcador != null) {
+            volcador.shutdownNow();
+            volcador = null;
+        }
+    }
+
+    private void registrarJMX() {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nombre = new ObjectName(NOMBRE_JMX);
+            if (!servidor.isRegistered(nombre)) {
+                servidor.registerMBean(new MBeanMetricas(), nombre);
+                System.out.println("✓ Métricas publicadas en JMX: " + NOMBRE_JMX);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registrando métricas en JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Texto con los percentiles y tasas desde el volcado anterior (y los
+     * valores actuales de los medidores)
+     */
+    public synchronized String volcar() {
+        long ahora = System.nanoTime();
+        double segundos = Math.max(1e-9, (ahora - volcadoAnteriorNanos) / 1e9);
+        volcadoAnteriorNanos = ahora;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[METRICAS] últimos %.1f s%n", segundos));
+        for (Histograma h : histogramas.values()) {
+            long[] conteos = h.copiarConteos();
+            long[] anteriores = conteosAnteriores.put(h.getNombre(), conteos);
+            long[] periodo = conteos.clone();
+            long total = 0;
+            for (int i = 0; i < periodo.length; i++) {
+                if (anteriores != null) periodo[i] -= anteriores[i];
+                total += periodo[i];
+            }
+            sb.append("  ").append(h.getNombre()).append(": n=").append(total);
+            if (total > 0) {
+                for (double p : PERCENTILES) {
+                    sb.append(String.format(" p%s=%.3f", formatearPercentil(p),
+                        h.enUnidad(Histograma.percentil(periodo, total, p))));
+                }
+                sb.append(' ').append(h.getUnidad());
+            }
+            sb.append(String.format(" (total %d, máx %.3f)%n", h.getCantidad(), h.enUnidad(h.getMaximo())));
+        }
+        for (Map.Entry<String, Contador> e : contadores.entrySet()) {
+            long valor = e.getValue().get();
+            Long anterior = contadoresAnteriores.put(e.getKey(), valor);
+            double tasa = (valor - (anterior != null ? anterior : 0)) / segundos;
+            sb.append(String.format("  %s: %d (%.1f/s)%n", e.getKey(), valor, tasa));
+        }
+        for (Map.Entry<String, LongSupplier> e : medidores.entrySet()) {
+            sb.append("  ").append(e.getKey()).append(" = ").append(leerMedidor(e.getValue())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String formatearPercentil(double p) {
+        return p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p);
+    }
+
+    private static long leerMedidor(LongSupplier fuente) {
+        try {
+            return fuente.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // ============================================
+    // MBEAN DINÁMICO
+    // ============================================
+
+    /**
+     * Atributos de sólo lectura: por histograma .cantidad, .media, .p50,
+     * .p90, .p99, .p99.9 y .maximo (en su unidad, acumulados); un atributo
+     * por contador y por medidor
+     */
+    private final class MBeanMetricas implements DynamicMBean {
+        @Override
+        public Object getAttribute(String atributo) throws AttributeNotFoundException {
+            Contador c = contadores.get(atributo);
+            if (c != null) return c.get();
+            LongSupplier m = medidores.get(atributo);
+            if (m != null) return leerMedidor(m);
+            // Los nombres de histograma llevan puntos: se prueba desde el último
+            for (int i = atributo.length() - 1; i > 0; i--) {
+                if (atributo.charAt(i) != '.') continue;
+                Histograma h = histogramas.get(atributo.substring(0, i));
+                if (h != null) return valorHistograma(h, atributo.substring(i + 1));
+            }
+            throw new AttributeNotFoundException(atributo);
+        }
+
+        private Object valorHistograma(Histograma h, String campo) throws AttributeNotFoundException {
+            switch (campo) {
+                case "cantidad": return h.getCantidad();
+                case "media": return h.enUnidad(Math.round(h.getMedia()));
+                case "maximo": return h.enUnidad(h.getMaximo());
+                default:
+                    if (campo.startsWith("p")) {
+                        try {
+                            return h.enUnidad(h.percentil(Double.parseDouble(campo.substring(1))));
+                        } catch (NumberFormatException e) {
+                            // cae al error de abajo
+                        }
+                    }
+                    throw new AttributeNotFoundException(h.getNombre() + "." + campo);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] atributos) {
+            AttributeList lista = new AttributeList();
+            for (String a : atributos) {
+                try {
+                    lista.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException e) {
+                    // JMX omite los atributos que no existen
+                }
+            }
+            return lista;
+        }
+
+        @Override
+        public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Las métricas son de sólo lectura: " + atributo.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList atributos) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String operacion, Object[] parametros, String[] firma) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(operacion), "Sin operaciones: " + operacion);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            // Se rearma en cada consulta: los pipelines registran métricas al abrirse
+            List<MBeanAttributeInfo> info = new ArrayList<>();
+            for (Histograma h : histogramas.values()) {
+                info.add(atributo(h.getNombre() + ".cantidad", "long", "Valores registrados"));
+                info.add(atributo(h.getNombre() + ".media", "double", "Media (" + h.getUnidad() + ")"));
+                for (double p : PERCENTILES) {
+                    info.add(atributo(h.getNombre() + ".p" + formatearPercentil(p), "double",
+                        "Percentil " + formatearPercentil(p) + " (" + h.getUnidad() + ")"));
+                }
+                info.add(atributo(h.getNombre() + ".maximo", "double", "Máximo (" + h.getUnidad() + ")"));
+            }
+            for (String nombre : contadores.keySet()) info.add(atributo(nombre, "long", "Contador"));
+            for (String nombre : medidores.keySet()) info.add(atributo(nombre, "long", "Medidor"));
+            return new MBeanInfo(MetricasECG.class.getName(), "Métricas del sistema ECG",
+                info.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        private MBeanAttributeInfo atributo(String nombre, String tipo, String descripcion) {
+            return new MBeanAttributeInfo(nombre, tipo, descripcion, true, false, false);
+        }
+    }
+}
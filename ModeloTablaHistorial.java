@@ -0,0 +1,249 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Modelo de tabla virtual para el historial de un paciente
+ *
+ * Sólo se leen de la base las páginas que la tabla pide al pintar las filas
+ * visibles. Las páginas se guardan como arreglos primitivos en una caché LRU
+ * pequeña y las celdas se formatean al pedirlas. Un hilo propio carga las
+ * páginas avanzando con el cursor keyset de ConsultaHistorial y recuerda el
+ * cursor de inicio de cada página recorrida para saltar directo la próxima vez
+ */
+public class ModeloTablaHistorial extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public static final int FILAS_POR_PAGINA = 500;
+    public static final int MAX_PAGINAS_CACHE = 32;
+    // Solicitudes pendientes que se conservan; al arrastrar la barra se descartan las viejas
+    private static final int MAX_SOLICITUDES = 4;
+    private static final String[] COLUMNAS = {"Timestamp", "Valor", "Evento"};
+    private static final String CARGANDO = "…";
+
+    /**
+     * Origen de los datos (lo implementa ModeloECG sobre DatabaseManager)
+     */
+    public interface Fuente {
+        long contarHistorial(ConsultaHistorial consulta);
+
+        ConsultaHistorial.Cursor recorrerHistorial(ConsultaHistorial consulta, ConsultaHistorial.Cursor desde,
+                                                   int limite, ConsultaHistorial.Receptor receptor);
+    }
+
+    private final Fuente fuente;
+    private final ConsultaHistorial consulta;
+    private final ExecutorService cargador;
+
+    // Sólo EDT
+    private int filas;
+    private final Map<Integer, Pagina> cache = new LinkedHashMap<>(MAX_PAGINAS_CACHE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Pagina> mayor) {
+            return size() > MAX_PAGINAS_CACHE;
+        }
+    };
+    private final Set<Integer> enCurso = new HashSet<>();
+
+    // Compartido con el cargador (protegido por sí mismo)
+    private final ArrayDeque<Integer> solicitudes = new ArrayDeque<>();
+
+    // Sólo hilo cargador: cursores.get(k) es el inicio de la página k y
+    // filasPagina.get(k) las filas que entregó al recorrerla
+    private final List<ConsultaHistorial.Cursor> cursores = new ArrayList<>();
+    private final List<Integer> filasPagina = new ArrayList<>();
+
+    private volatile boolean cerrado;
+
+    public ModeloTablaHistorial(Fuente fuente, int idPaciente) {
+        this.fuente = fuente;
+        this.consulta = new ConsultaHistorial(idPaciente);
+        this.consulta.setTamanoPagina(FILAS_POR_PAGINA);
+        this.cursores.add(ConsultaHistorial.Cursor.INICIO);
+        this.cargador = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "historial-paciente-" + idPaciente);
+            t.setDaemon(true);
+            return t;
+        });
+        cargador.execute(this::contar);
+    }
+
+    /**
+     * Detiene el cargador; las páginas en vuelo se descartan
+     */
+    public void cerrar() {
+        cerrado = true;
+        cargador.shutdownNow();
+    }
+
+    // ============================================
+    // TABLE MODEL (EDT)
+    // ============================================
+
+    @Override
+    public int getRowCount() { return filas; }
+
+    @Override
+    public int getColumnCount() { return COLUMNAS.length; }
+
+    @Override
+    public String getColumnName(int columna) { return COLUMNAS[columna]; }
+
+    @Override
+    public Object getValueAt(int fila, int columna) {
+        int numero = fila / FILAS_POR_PAGINA;
+        Pagina p = cache.get(numero);
+        if (p == null) {
+            solicitar(numero);
+            return CARGANDO;
+        }
+        int i = fila - numero * FILAS_POR_PAGINA;
+        if (i >= p.cantidad) return "";
+        // Anticipar la página siguiente cuando se llega al último cuarto
+        if (i > FILAS_POR_PAGINA * 3 / 4 && (numero + 1) * FILAS_POR_PAGINA < filas && !cache.containsKey(numero + 1)) {
+            solicitar(numero + 1);
+        }
+        switch (columna) {
+            case 0:
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(p.instantes[i]), ZoneId.systemDefault());
+            case 1:
+                return String.format("%.2f", p.valores[i]);
+            default:
+                return p.eventos[i] != null ? p.eventos[i] : "Normal";
+        }
+    }
+
+    private void solicitar(int numero) {
+        if (cerrado || !enCurso.add(numero)) return;
+        synchronized (solicitudes) {
+            solicitudes.addFirst(numero);
+            while (solicitudes.size() > MAX_SOLICITUDES) {
+                enCurso.remove(solicitudes.removeLast());
+            }
+        }
+        cargador.execute(this::atenderSolicitud);
+    }
+
+    private void paginaCargada(int numero, Pagina p) {
+        enCurso.remove(numero);
+        if (cerrado) return;
+        if (p == null) {
+            fireTableDataChanged();
+            return;
+        }
+        cache.put(numero, p);
+        int desde = numero * FILAS_POR_PAGINA;
+        int hasta = Math.min(filas, desde + FILAS_POR_PAGINA) - 1;
+        if (hasta >= desde) fireTableRowsUpdated(desde, hasta);
+    }
+
+    // ============================================
+    // CARGADOR (hilo propio)
+    // ============================================
+
+    private void contar() {
+        long total = fuente.contarHistorial(consulta);
+        int n = (int) Math.min(Integer.MAX_VALUE, Math.max(0, total));
+        SwingUtilities.invokeLater(() -> {
+            if (cerrado) return;
+            filas = n;
+            fireTableDataChanged();
+        });
+    }
+
+    private void atenderSolicitud() {
+        Integer numero;
+        synchronized (solicitudes) {
+            numero = solicitudes.pollFirst();
+        }
+        if (numero == null || cerrado) return;
+        Pagina p = cargar(numero);
+        int n = numero;
+        if (p != null && p.cantidad < FILAS_POR_PAGINA) {
+            // El conteo puede diferir del recorrido real (rango parcial o datos nuevos)
+            int reales = n * FILAS_POR_PAGINA + p.cantidad;
+            SwingUtilities.invokeLater(() -> ajustarFilas(reales));
+        }
+        SwingUtilities.invokeLater(() -> paginaCargada(n, p));
+    }
+
+    private void ajustarFilas(int reales) {
+        if (cerrado || reales == filas) return;
+        filas = reales;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Avanza desde el cursor conocido más cercano y lee la página pedida
+     * @return la página, o null si la página está más allá del final
+     */
+    private Pagina cargar(int numero) {
+        ContadorSalto salto = new ContadorSalto();
+        while (cursores.size() <= numero) {
+            ConsultaHistorial.Cursor ultimo = cursores.get(cursores.size() - 1);
+            if (cerrado) return null;
+            if (ultimo.esFin()) return finAlcanzado();
+            // Las páginas intermedias sólo se cuentan, no se guardan
+            salto.entregadas = 0;
+            cursores.add(fuente.recorrerHistorial(consulta, ultimo, FILAS_POR_PAGINA, salto));
+            filasPagina.add(salto.entregadas);
+        }
+        if (cursores.get(numero).esFin()) return finAlcanzado();
+        Pagina p = new Pagina();
+        ConsultaHistorial.Cursor siguiente = fuente.recorrerHistorial(consulta, cursores.get(numero), FILAS_POR_PAGINA, p);
+        if (cursores.size() == numero + 1) {
+            cursores.add(siguiente);
+            filasPagina.add(p.cantidad);
+        }
+        return p;
+    }
+
+    /**
+     * El último cursor conocido es el fin: el total real es la suma de las
+     * páginas recorridas, con la última posiblemente incompleta
+     */
+    private Pagina finAlcanzado() {
+        int ultima = cursores.size() - 2;
+        int reales = ultima * FILAS_POR_PAGINA + filasPagina.get(ultima);
+        SwingUtilities.invokeLater(() -> ajustarFilas(reales));
+        return null;
+    }
+
+    private static final class ContadorSalto implements ConsultaHistorial.Receptor {
+        int entregadas;
+
+        @Override
+        public void recibir(int idSesion, int idLectura, long instanteMs, double valor, String tipoEvento) {
+            entregadas++;
+        }
+    }
+
+    /**
+     * Página en arreglos primitivos: sin objetos por fila
+     */
+    private static final class Pagina implements ConsultaHistorial.Receptor {
+        final long[] instantes = new long[FILAS_POR_PAGINA];
+        final double[] valores = new double[FILAS_POR_PAGINA];
+        final String[] eventos = new String[FILAS_POR_PAGINA];
+        int cantidad;
+
+        @Override
+        public void recibir(int idSesion, int idLectura, long instanteMs, double valor, String tipoEvento) {
+            instantes[cantidad] = instanteMs;
+            valores[cantidad] = valor;
+            eventos[cantidad++] = tipoEvento;
+        }
+    }
+}
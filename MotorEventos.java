@@ -0,0 +1,271 @@
+import java.util.Arrays;
+
+/**
+ * Motor de eventos de ritmo sobre intervalos RR, uno por pipeline
+ *
+ * Evalúa taquicardia, bradicardia, ritmo irregular y un ritmo tipo
+ * fibrilación auricular (RMSSD normalizado y entropía de Shannon del
+ * histograma RR) con histéresis: un episodio se abre tras varios latidos
+ * consecutivos que cumplen el umbral de entrada y se cierra tras varios que
+ * cumplen el de salida. Sólo la apertura produce un Evento, así un episodio
+ * en curso no se registra una vez por latido. Se ejecuta en el hilo del
+ * shard y sólo trabaja al confirmarse un latido, sobre arreglos fijos
+ */
+public class MotorEventos {
+    public static final String TAQUICARDIA = "Taquicardia";
+    public static final String BRADICARDIA = "Bradicardia";
+    public static final String ARRITMIA = "Arritmia";
+    public static final String FIBRILACION = "Fibrilación";
+
+    private static final int TIPO_TAQUICARDIA = 0;
+    private static final int TIPO_BRADICARDIA = 1;
+    private static final int TIPO_ARRITMIA = 2;
+    private static final int TIPO_FIBRILACION = 3;
+    private static final String[] NOMBRES = {TAQUICARDIA, BRADICARDIA, ARRITMIA, FIBRILACION};
+
+    // Latidos consecutivos para abrir / cerrar cada tipo de episodio
+    private static final int[] LATIDOS_ENTRADA = {8, 8, 4, 8};
+    private static final int[] LATIDOS_SALIDA = {8, 8, 8, 16};
+
+    private static final double BPM_TAQUICARDIA = 100, BPM_FIN_TAQUICARDIA = 95;
+    private static final double BPM_BRADICARDIA = 60, BPM_FIN_BRADICARDIA = 65;
+    private static final double DESVIO_ECTOPICO = 0.20;
+    private static final int ECTOPICOS_IRREGULAR = 3;
+    private static final double RMSSD_FA = 0.10, RMSSD_FIN_FA = 0.07;
+    private static final double ENTROPIA_FA = 0.70, ENTROPIA_FIN_FA = 0.55;
+
+    private static final int RR_RITMO = 8;
+    private static final int RR_IRREGULAR = 16;
+    private static final int RR_FA = 64;
+    private static final int BINS_ENTROPIA = 16;
+    // RR fuera de este rango es un artefacto del detector, no un latido
+    private static final double RR_MINIMO_MS = 200, RR_MAXIMO_MS = 3000;
+
+    /**
+     * Inicio de un episodio; la única asignación del motor
+     */
+    public static final class Evento {
+        private final int idSesion;
+        private final String tipo;
+        private final long instanteMs;
+        private final double valor;
+        private final String descripcion;
+        private final long detectadoNanos = System.nanoTime();
+
+        Evento(int idSesion, String tipo, long instanteMs, double valor, String descripcion) {
+            this.idSesion = idSesion;
+            this.tipo = tipo;
+            this.instanteMs = instanteMs;
+            this.valor = valor;
+            this.descripcion = descripcion;
+        }
+
+        public int getIdSesion() { return idSesion; }
+        /** Nombre en Tipo_Evento */
+        public String getTipo() { return tipo; }
+        public long getInstanteMs() { return instanteMs; }
+        public double getValor() { return valor; }
+        public String getDescripcion() { return descripcion; }
+        /** System.nanoTime() de la detección, para medir latencias */
+        public long getDetectadoNanos() { return detectadoNanos; }
+
+        @Override
+        public String toString() {
+            return tipo + " (sesión " + idSesion + "): " + descripcion;
+        }
+    }
+
+    /**
+     * Recibe cada apertura de episodio (en el hilo del shard)
+     */
+    public interface Sumidero {
+        void registrar(Evento evento);
+    }
+
+    private final int idSesion;
+    private final Sumidero sumidero;
+
+    // Anillo de los últimos RR_FA intervalos RR en ms
+    private final double[] rr = new double[RR_FA];
+    private int posRR;
+    private int numRR;
+    private final int[] histograma = new int[BINS_ENTROPIA];
+
+    // Histéresis por tipo
+    private final boolean[] activo = new boolean[NOMBRES.length];
+    private final int[] cuentaEntrada = new int[NOMBRES.length];
+    private final int[] cuentaSalida = new int[NOMBRES.length];
+    private final long[] episodios = new long[NOMBRES.length];
+
+    // Métricas del último latido
+    private double bpm;
+    // RMSSD normalizado por el RR medio en la ventana corta y en la de FA
+    private double rmssdNormalizado;
+    private double rmssdNormalizadoFA;
+    private int ectopicos;
+    private double entropia;
+
+    public MotorEventos(int idSesion, Sumidero sumidero) {
+        this.idSesion = idSesion;
+        this.sumidero = sumidero;
+    }
+
+    /**
+     * Procesa el intervalo RR de un latido confirmado
+     * @param valor muestra de señal asociada (se guarda con el evento)
+     * @return número de episodios abiertos con este latido
+     */
+    public int procesarLatido(double rrMs, long instanteMs, double valor) {
+        if (rrMs < RR_MINIMO_MS || rrMs > RR_MAXIMO_MS) return 0;
+        rr[posRR] = rrMs;
+        posRR = (posRR + 1) & (RR_FA - 1);
+        if (numRR < RR_FA) numRR++;
+        if (numRR < RR_RITMO) return 0;
+
+        bpm = 60000.0 / media(RR_RITMO);
+        rmssdNormalizado = rmssdNormalizado(Math.min(numRR, RR_IRREGULAR));
+        ectopicos = contarEctopicos(Math.min(numRR, RR_IRREGULAR));
+        boolean ventanaFA = numRR >= RR_FA;
+        rmssdNormalizadoFA = ventanaFA ? rmssdNormalizado(RR_FA) : 0;
+        entropia = ventanaFA ? entropiaShannon() : 0;
+
+        int abiertos = 0;
+        abiertos += evaluar(TIPO_TAQUICARDIA, bpm > BPM_TAQUICARDIA, bpm < BPM_FIN_TAQUICARDIA, instanteMs, valor);
+        abiertos += evaluar(TIPO_BRADICARDIA, bpm < BPM_BRADICARDIA, bpm > BPM_FIN_BRADICARDIA, instanteMs, valor);
+        boolean fa = ventanaFA && rmssdNormalizadoFA > RMSSD_FA && entropia > ENTROPIA_FA;
+        boolean finFA = !ventanaFA || rmssdNormalizadoFA < RMSSD_FIN_FA || entropia < ENTROPIA_FIN_FA;
+        abiertos += evaluar(TIPO_FIBRILACION, fa, finFA, instanteMs, valor);
+        // Durante una fibrilación la irregularidad ya está explicada: no se abre otro episodio
+        boolean irregular = !activo[TIPO_FIBRILACION] && ectopicos >= ECTOPICOS_IRREGULAR;
+        boolean finIrregular = activo[TIPO_FIBRILACION] || ectopicos <= 1;
+        abiertos += evaluar(TIPO_ARRITMIA, irregular, finIrregular, instanteMs, valor);
+        return abiertos;
+    }
+
+    /**
+     * Aplica la histéresis de un tipo y entrega el evento si abre un episodio
+     * @return 1 si se abrió un episodio
+     */
+    private int evaluar(int tipo, boolean entrada, boolean salida, long instanteMs, double valor) {
+        if (!activo[tipo]) {
+            cuentaEntrada[tipo] = entrada ? cuentaEntrada[tipo] + 1 : 0;
+            if (cuentaEntrada[tipo] < LATIDOS_ENTRADA[tipo]) return 0;
+            activo[tipo] = true;
+            cuentaSalida[tipo] = 0;
+            episodios[tipo]++;
+            sumidero.registrar(new Evento(idSesion, NOMBRES[tipo], instanteMs, valor, describir(tipo)));
+            return 1;
+        }
+        cuentaSalida[tipo] = salida ? cuentaSalida[tipo] + 1 : 0;
+        if (cuentaSalida[tipo] >= LATIDOS_SALIDA[tipo]) {
+            activo[tipo] = false;
+            cuentaEntrada[tipo] = 0;
+        }
+        return 0;
+    }
+
+    private String describir(int tipo) {
+        switch (tipo) {
+            case TIPO_TAQUICARDIA:
+            case TIPO_BRADICARDIA:
+                return String.format("Inicio de episodio: %.0f BPM (últimos %d latidos)", bpm, RR_RITMO);
+            case TIPO_ARRITMIA:
+                return String.format("Ritmo irregular: %d cambios bruscos de RR en %d latidos, RMSSD normalizado %.2f",
+                    ectopicos, RR_IRREGULAR, rmssdNormalizado);
+            default:
+                return String.format("Ritmo tipo FA: RMSSD normalizado %.2f, entropía RR %.2f, %.0f BPM",
+                    rmssdNormalizadoFA, entropia, bpm);
+        }
+    }
+
+    // ============================================
+    // CARACTERÍSTICAS RR
+    // ============================================
+
+    /** i-ésimo RR más reciente (0 = el último) */
+    private double rrReciente(int i) {
+        return rr[(posRR - 1 - i) & (RR_FA - 1)];
+    }
+
+    private double media(int n) {
+        double suma = 0;
+        for (int i = 0; i < n; i++) suma += rrReciente(i);
+        return suma / n;
+    }
+
+    /** RMSSD de los últimos n intervalos dividido por su RR medio */
+    private double rmssdNormalizado(int n) {
+        if (n < 2) return 0;
+        double sumaCuadrados = 0;
+        for (int i = 1; i < n; i++) {
+            double d = rrReciente(i) - rrReciente(i - 1);
+            sumaCuadrados += d * d;
+        }
+        return Math.sqrt(sumaCuadrados / (n - 1)) / media(n);
+    }
+
+    /**
+     * Latidos cuyo RR cambia más de un 20 % respecto del anterior en los
+     * últimos n; un cambio sostenido de frecuencia cuenta una sola vez
+     */
+    private int contarEctopicos(int n) {
+        int fuera = 0;
+        for (int i = 1; i < n; i++) {
+            double anterior = rrReciente(i);
+            if (Math.abs(rrReciente(i - 1) - anterior) > DESVIO_ECTOPICO * anterior) fuera++;
+        }
+        return fuera;
+    }
+
+    /**
+     * Entropía de Shannon del histograma de los últimos RR_FA intervalos,
+     * normalizada a [0, 1] por log(BINS_ENTROPIA)
+     */
+    private double entropiaShannon() {
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i = 0; i < RR_FA; i++) {
+            min = Math.min(min, rr[i]);
+            max = Math.max(max, rr[i]);
+        }
+        if (max - min < 1e-9) return 0;
+        Arrays.fill(histograma, 0);
+        double escala = (BINS_ENTROPIA - 1e-9) / (max - min);
+        for (int i = 0; i < RR_FA; i++) histograma[(int) ((rr[i] - min) * escala)]++;
+        double h = 0;
+        for (int c : histograma) {
+            if (c == 0) continue;
+            double p = (double) c / RR_FA;
+            h -= p * Math.log(p);
+        }
+        return h / Math.log(BINS_ENTROPIA);
+    }
+
+    // ============================================
+    // ACCESO
+    // ============================================
+
+    public boolean isActivo(String tipo) {
+        for (int i = 0; i < NOMBRES.length; i++) {
+            if (NOMBRES[i].equals(tipo)) return activo[i];
+        }
+        return false;
+    }
+
+    public long getEpisodios() {
+        long total = 0;
+        for (long e : episodios) total += e;
+        return total;
+    }
+
+    public double getRmssdNormalizado() { return rmssdNormalizado; }
+    public double getEntropia() { return entropia; }
+
+    public String resumen() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NOMBRES.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(NOMBRES[i]).append(' ').append(episodios[i]).append(activo[i] ? " (activo)" : "");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,468 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Variabilidad de la frecuencia cardíaca (VFC) de una sesión sobre los RR del detector
+ *
+ * En el dominio del tiempo mantiene una ventana deslizante de VENTANA_S
+ * segundos de intervalos NN (RR normales, sin artefactos ni ectópicos) con
+ * acumuladores de Welford que admiten quitar el más viejo: SDNN, RMSSD,
+ * pNN50 y Poincaré SD1/SD2 cuestan O(1) por latido. Cada INTERVALO_S
+ * segundos de señal se toma una instantánea de la ventana y el análisis
+ * espectral (remuestreo a 4 Hz, tendencia lineal fuera, Hann, FFT, potencia
+ * LF 0,04-0,15 Hz y HF 0,15-0,4 Hz) corre en un ForkJoinPool compartido,
+ * fuera del hilo del shard; el Resultado completo va al Sumidero desde allí
+ */
+public class MotorVFC {
+    public static final double VENTANA_S = 300;
+    public static final int INTERVALO_S = 60;
+    public static final double FRECUENCIA_REMUESTREO_HZ = 4.0;
+    public static final double LF_DESDE_HZ = 0.04, LF_HASTA_HZ = 0.15, HF_HASTA_HZ = 0.40;
+
+    // Fuera de 30-200 BPM es un artefacto del detector, no un latido
+    private static final double RR_MINIMO_MS = 300, RR_MAXIMO_MS = 2000;
+    // Un RR que se aparta más que esto de los NN recientes es ectópico o artefacto
+    private static final double DESVIO_ECTOPICO = 0.20;
+    private static final int NN_REFERENCIA = 8;
+    private static final double DIFERENCIA_NN50_MS = 50;
+    // Menos que esto no da una estimación útil
+    private static final int MINIMO_NN = 30;
+    private static final double MINIMO_ESPECTRAL_S = 120;
+    private static final int CAPACIDAD = (int) (VENTANA_S * 1000 / RR_MINIMO_MS) + 1;
+    // Con más análisis en cola (señal más rápida que el tiempo real) se entrega sin espectro
+    private static final int MAX_PENDIENTES = 256;
+
+    private static final Histograma ESPECTRO = MetricasECG.global().latencia("vfc.espectro");
+    private static final MetricasECG.Contador CALCULOS = MetricasECG.global().contador("vfc.calculos");
+    private static final MetricasECG.Contador DESCARTADOS = MetricasECG.global().contador("vfc.rr_descartados");
+    private static final MetricasECG.Contador OMITIDOS = MetricasECG.global().contador("vfc.espectros_omitidos");
+    private static final AtomicInteger PENDIENTES = new AtomicInteger();
+    // Factores de giro del último largo de FFT usado; todas las ventanas de 5 min dan el mismo
+    private static volatile double[][] giros = new double[][] {new double[0], new double[0]};
+
+    // Compartido por todas las sesiones; los hilos son demonio
+    private static final ForkJoinPool ANALISIS = new ForkJoinPool(
+        Runtime.getRuntime().availableProcessors(),
+        pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("vfc-" + t.getPoolIndex());
+            return t;
+        },
+        null, true);
+
+    static {
+        MetricasECG.global().medidor("vfc.pendientes", PENDIENTES::get);
+    }
+
+    /**
+     * Métricas de una ventana; NaN donde no hubo datos suficientes
+     */
+    public static final class Resultado {
+        private final int idSesion;
+        private final long instanteMs;
+        private final double ventanaS;
+        private final int numNN;
+        private final int descartados;
+        private final double rrMedio, sdnn, rmssd, pnn50, sd1, sd2;
+        private double lf = Double.NaN, hf = Double.NaN;
+
+        Resultado(int idSesion, long instanteMs, double ventanaS, int numNN, int descartados,
+                  double rrMedio, double sdnn, double rmssd, double pnn50, double sd1, double sd2) {
+            this.idSesion = idSesion;
+            this.instanteMs = instanteMs;
+            this.ventanaS = ventanaS;
+            this.numNN = numNN;
+            this.descartados = descartados;
+            this.rrMedio = rrMedio;
+            this.sdnn = sdnn;
+            this.rmssd = rmssd;
+            this.pnn50 = pnn50;
+            this.sd1 = sd1;
+            this.sd2 = sd2;
+        }
+
+        public int getIdSesion() { return idSesion; }
+        /** Fin de la ventana, en ms de época */
+        public long getInstanteMs() { return instanteMs; }
+        /** Duración cubierta por los NN de la ventana */
+        public double getVentanaS() { return ventanaS; }
+        public int getNumNN() { return numNN; }
+        /** RR descartados (artefactos o ectópicos) en el intervalo */
+        public int getDescartados() { return descartados; }
+        public double getRrMedio() { return rrMedio; }
+        public double getSdnn() { return sdnn; }
+        public double getRmssd() { return rmssd; }
+        /** Porcentaje de diferencias sucesivas mayores a 50 ms */
+        public double getPnn50() { return pnn50; }
+        public double getSd1() { return sd1; }
+        public double getSd2() { return sd2; }
+        /** Potencia LF en ms² */
+        public double getLf() { return lf; }
+        /** Potencia HF en ms² */
+        public double getHf() { return hf; }
+        public double getLfHf() { return hf > 0 ? lf / hf : Double.NaN; }
+
+        void setEspectro(double lf, double hf) {
+            this.lf = lf;
+            this.hf = hf;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT,
+                "sesión %d: %d NN en %.0f s, RR %.0f ms, SDNN %.1f, RMSSD %.1f, pNN50 %.1f %%, SD1 %.1f, SD2 %.1f, LF %.0f, HF %.0f, LF/HF %.2f",
+                idSesion, numNN, ventanaS, rrMedio, sdnn, rmssd, pnn50, sd1, sd2, lf, hf, getLfHf());
+        }
+    }
+
+    /**
+     * Recibe cada Resultado, desde un hilo del ForkJoinPool
+     */
+    public interface Sumidero {
+        void registrar(Resultado resultado);
+    }
+
+    /**
+     * Media y suma de cuadrados de desvíos con alta y baja en O(1)
+     */
+    static final class Welford {
+        private int n;
+        private double media;
+        private double m2;
+
+        void agregar(double x) {
+            n++;
+            double d = x - media;
+            media += d / n;
+            m2 += d * (x - media);
+        }
+
+        void quitar(double x) {
+            if (n <= 1) {
+                n = 0;
+                media = 0;
+                m2 = 0;
+                return;
+            }
+            double d = x - media;
+            n--;
+            media -= d / n;
+            m2 -= d * (x - media);
+            // El redondeo acumulado no puede volver negativa la suma
+            if (m2 < 0) m2 = 0;
+        }
+
+        int getN() { return n; }
+        double getMedia() { return media; }
+        /** Varianza muestral (n - 1) */
+        double getVarianza() { return n > 1 ? m2 / (n - 1) : 0; }
+        /** Media de los cuadrados */
+        double getCuadratica() { return n > 0 ? m2 / n + media * media : 0; }
+    }
+
+    private final int idSesion;
+    private final Sumidero sumidero;
+
+    // Anillo de la ventana: NN, su instante y su diferencia con el NN previo (NaN si no lo hay)
+    private final double[] nn = new double[CAPACIDAD];
+    private final double[] instantes = new double[CAPACIDAD];
+    private final double[] diferencias = new double[CAPACIDAD];
+    private int inicio;
+    private int cantidad;
+    private final Welford estadisticaNN = new Welford();
+    private final Welford estadisticaDiferencias = new Welford();
+    private int diferenciasNN50;
+
+    // NN del latido anterior, NaN si ese latido se descartó
+    private double anterior = Double.NaN;
+    private double proximaInstantaneaMs = Double.NaN;
+    private int descartadosIntervalo;
+    private volatile boolean sinOmitir;
+    private volatile Resultado ultimo;
+
+    public MotorVFC(int idSesion, Sumidero sumidero) {
+        this.idSesion = idSesion;
+        this.sumidero = sumidero;
+    }
+
+    /**
+     * Procesa el RR de un latido confirmado (hilo del shard)
+     * @param instanteMs instante de la R en ms de época
+     * @return true si el RR entró a la ventana como NN
+     */
+    public boolean procesarLatido(double rrMs, double instanteMs) {
+        if (Double.isNaN(proximaInstantaneaMs)) proximaInstantaneaMs = instanteMs + INTERVALO_S * 1000.0;
+        // Primero sale lo que quedó fuera de la ventana
+        while (cantidad > 0 && instantes[inicio] <= instanteMs - VENTANA_S * 1000) quitarPrimero();
+
+        boolean aceptado = esNormal(rrMs);
+        if (aceptado) {
+            if (cantidad == CAPACIDAD) quitarPrimero();
+            int pos = (inicio + cantidad++) % CAPACIDAD;
+            double diferencia = Double.isNaN(anterior) ? Double.NaN : rrMs - anterior;
+            nn[pos] = rrMs;
+            instantes[pos] = instanteMs;
+            diferencias[pos] = diferencia;
+            estadisticaNN.agregar(rrMs);
+            if (!Double.isNaN(diferencia)) {
+                estadisticaDiferencias.agregar(diferencia);
+                if (Math.abs(diferencia) > DIFERENCIA_NN50_MS) diferenciasNN50++;
+            }
+            anterior = rrMs;
+        } else {
+            anterior = Double.NaN;
+            descartadosIntervalo++;
+            DESCARTADOS.incrementar();
+        }
+
+        if (instanteMs >= proximaInstantaneaMs) {
+            proximaInstantaneaMs += INTERVALO_S * 1000.0;
+            if (proximaInstantaneaMs <= instanteMs) proximaInstantaneaMs = instanteMs + INTERVALO_S * 1000.0;
+            tomarInstantanea((long) instanteMs);
+        }
+        return aceptado;
+    }
+
+    private boolean esNormal(double rrMs) {
+        if (rrMs < RR_MINIMO_MS || rrMs > RR_MAXIMO_MS) return false;
+        int n = Math.min(cantidad, NN_REFERENCIA);
+        if (n < 3) return true;
+        double suma = 0;
+        for (int i = cantidad - n; i < cantidad; i++) suma += nn[(inicio + i) % CAPACIDAD];
+        double referencia = suma / n;
+        return Math.abs(rrMs - referencia) <= DESVIO_ECTOPICO * referencia;
+    }
+
+    private void quitarPrimero() {
+        estadisticaNN.quitar(nn[inicio]);
+        double diferencia = diferencias[inicio];
+        if (!Double.isNaN(diferencia)) {
+            estadisticaDiferencias.quitar(diferencia);
+            if (Math.abs(diferencia) > DIFERENCIA_NN50_MS) diferenciasNN50--;
+        }
+        inicio = (inicio + 1) % CAPACIDAD;
+        cantidad--;
+    }
+
+    /**
+     * Métricas del tiempo en O(1) y, si la ventana alcanza, el espectro en el pool
+     */
+    private void tomarInstantanea(long instanteMs) {
+        int descartados = descartadosIntervalo;
+        descartadosIntervalo = 0;
+        if (cantidad < MINIMO_NN) return;
+
+        double ventanaS = (instantes[(inicio + cantidad - 1) % CAPACIDAD] - instantes[inicio]) / 1000.0;
+        int numDiferencias = estadisticaDiferencias.getN();
+        double varianzaNN = estadisticaNN.getVarianza();
+        double varianzaDiferencias = estadisticaDiferencias.getVarianza();
+        Resultado r = new Resultado(idSesion, instanteMs, ventanaS, cantidad, descartados,
+            estadisticaNN.getMedia(),
+            Math.sqrt(varianzaNN),
+            Math.sqrt(estadisticaDiferencias.getCuadratica()),
+            numDiferencias > 0 ? 100.0 * diferenciasNN50 / numDiferencias : Double.NaN,
+            Math.sqrt(varianzaDiferencias / 2),
+            Math.sqrt(Math.max(0, 2 * varianzaNN - varianzaDiferencias / 2)));
+        CALCULOS.incrementar();
+
+        if (ventanaS < MINIMO_ESPECTRAL_S) {
+            entregar(r);
+            return;
+        }
+        boolean saturado = PENDIENTES.get() >= MAX_PENDIENTES;
+        if (saturado && !sinOmitir) {
+            OMITIDOS.incrementar();
+            entregar(r);
+            return;
+        }
+        // La copia es lo único que cruza de hilo
+        double[] t = new double[cantidad];
+        double[] v = new double[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            int pos = (inicio + i) % CAPACIDAD;
+            t[i] = instantes[pos];
+            v[i] = nn[pos];
+        }
+        if (saturado) {
+            long desde = System.nanoTime();
+            double[] potencias = potenciaBandas(t, v);
+            r.setEspectro(potencias[0], potencias[1]);
+            ESPECTRO.registrarDesde(desde);
+            entregar(r);
+            return;
+        }
+        PENDIENTES.incrementAndGet();
+        ANALISIS.execute(() -> {
+            try {
+                long desde = System.nanoTime();
+                double[] potencias = potenciaBandas(t, v);
+                r.setEspectro(potencias[0], potencias[1]);
+                ESPECTRO.registrarDesde(desde);
+                entregar(r);
+            } finally {
+                PENDIENTES.decrementAndGet();
+            }
+        });
+    }
+
+    private void entregar(Resultado r) {
+        // Un espectro puede terminar después que la instantánea siguiente sin espectro
+        synchronized (this) {
+            if (ultimo == null || r.instanteMs >= ultimo.instanteMs) ultimo = r;
+        }
+        if (sumidero != null) sumidero.registrar(r);
+    }
+
+    /**
+     * Con el pool saturado, calcula el espectro en el hilo que llama en vez
+     * de omitirlo (importaciones, que van más rápido que el tiempo real)
+     */
+    public void setSinOmitir(boolean sinOmitir) { this.sinOmitir = sinOmitir; }
+
+    /**
+     * Espera a que el pool termine los espectros pendientes de todas las sesiones
+     * @return false si se agotó el tiempo
+     */
+    public static boolean esperarAnalisis(long milisegundos) {
+        return ANALISIS.awaitQuiescence(milisegundos, TimeUnit.MILLISECONDS);
+    }
+
+    /** Último resultado entregado, o null */
+    public Resultado getUltimo() { return ultimo; }
+
+    /** NN en la ventana actual */
+    public int getNumNN() { return cantidad; }
+
+    // ============================================
+    // DOMINIO DE LA FRECUENCIA
+    // ============================================
+
+    /**
+     * Potencias LF y HF en ms² del tacograma NN (instantes en ms, valores en ms)
+     * @return {lf, hf}
+     */
+    static double[] potenciaBandas(double[] instantes, double[] valores) {
+        double fs = FRECUENCIA_REMUESTREO_HZ;
+        double paso = 1000.0 / fs;
+        int n = (int) ((instantes[instantes.length - 1] - instantes[0]) / paso) + 1;
+        int tamano = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+        double[] re = new double[tamano];
+        double[] im = new double[tamano];
+
+        // Spline cúbica natural a fs Hz: la interpolación lineal atenúa HF
+        // (a 0,25 Hz con RR de 900 ms se pierde casi un 30 % de la potencia)
+        double[] curvaturas = curvaturasSpline(instantes, valores);
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            double t = instantes[0] + i * paso;
+            while (j < instantes.length - 2 && instantes[j + 1] < t) j++;
+            double h = instantes[j + 1] - instantes[j];
+            double a = (instantes[j + 1] - t) / h, b = 1 - a;
+            re[i] = a * valores[j] + b * valores[j + 1]
+                + ((a * a * a - a) * curvaturas[j] + (b * b * b - b) * curvaturas[j + 1]) * h * h / 6;
+        }
+
+        // Tendencia lineal por mínimos cuadrados y ventana de Hann
+        double mediaX = (n - 1) / 2.0, mediaY = 0;
+        for (int i = 0; i < n; i++) mediaY += re[i];
+        mediaY /= n;
+        double sxy = 0, sxx = 0;
+        for (int i = 0; i < n; i++) {
+            sxy += (i - mediaX) * (re[i] - mediaY);
+            sxx += (i - mediaX) * (i - mediaX);
+        }
+        double pendiente = sxx > 0 ? sxy / sxx : 0;
+        // cos(iθ) por la recurrencia de Chebyshev: un coseno en vez de n
+        double doble = n > 1 ? 2 * Math.cos(2 * Math.PI / (n - 1)) : 2;
+        double cosAnterior = n > 1 ? Math.cos(2 * Math.PI / (n - 1)) : 1, cos = 1;
+        double energiaVentana = 0;
+        for (int i = 0; i < n; i++) {
+            double w = n > 1 ? 0.5 - 0.5 * cos : 1;
+            re[i] = (re[i] - mediaY - pendiente * (i - mediaX)) * w;
+            energiaVentana += w * w;
+            double siguiente = doble * cos - cosAnterior;
+            cosAnterior = cos;
+            cos = siguiente;
+        }
+
+        fft(re, im);
+
+        // Periodograma de un lado en ms²/Hz, integrado por banda
+        double df = fs / tamano;
+        double escala = 2.0 / (fs * energiaVentana);
+        double lf = 0, hf = 0;
+        for (int k = 1; k < tamano / 2; k++) {
+            double f = k * df;
+            if (f < LF_DESDE_HZ) continue;
+            if (f > HF_HASTA_HZ) break;
+            double p = (re[k] * re[k] + im[k] * im[k]) * escala * df;
+            if (f < LF_HASTA_HZ) lf += p; else hf += p;
+        }
+        return new double[] {lf, hf};
+    }
+
+    /**
+     * Segundas derivadas de la spline cúbica natural por (x, y), con x
+     * estrictamente creciente (algoritmo de Thomas, O(n))
+     */
+    static double[] curvaturasSpline(double[] x, double[] y) {
+        int n = x.length;
+        double[] m = new double[n];
+        double[] u = new double[n];
+        for (int i = 1; i < n - 1; i++) {
+            double sig = (x[i] - x[i - 1]) / (x[i + 1] - x[i - 1]);
+            double p = sig * m[i - 1] + 2;
+            m[i] = (sig - 1) / p;
+            double d = (y[i + 1] - y[i]) / (x[i + 1] - x[i]) - (y[i] - y[i - 1]) / (x[i] - x[i - 1]);
+            u[i] = (6 * d / (x[i + 1] - x[i - 1]) - sig * u[i - 1]) / p;
+        }
+        m[n - 1] = 0;
+        for (int i = n - 2; i >= 0; i--) m[i] = m[i] * m[i + 1] + u[i];
+        m[0] = 0;
+        return m;
+    }
+
+    /**
+     * FFT radix-2 iterativa en el lugar; el largo debe ser potencia de 2
+     */
+    static void fft(double[] re, double[] im) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        double[][] tabla = giros;
+        if (tabla[0].length != n / 2) {
+            tabla = new double[][] {new double[n / 2], new double[n / 2]};
+            for (int k = 0; k < n / 2; k++) {
+                tabla[0][k] = Math.cos(-2 * Math.PI * k / n);
+                tabla[1][k] = Math.sin(-2 * Math.PI * k / n);
+            }
+            giros = tabla;
+        }
+        double[] cosenos = tabla[0], senos = tabla[1];
+        for (int largo = 2; largo <= n; largo <<= 1) {
+            int mitad = largo / 2;
+            int salto = n / largo;
+            for (int k = 0; k < mitad; k++) {
+                double c = cosenos[k * salto], s = senos[k * salto];
+                for (int a = k; a < n; a += largo) {
+                    int b = a + mitad;
+                    double tr = re[b] * c - im[b] * s;
+                    double ti = re[b] * s + im[b] * c;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import javax.swing.*;
+
+/**
+ * Panel de osciloscopio para la señal ECG
+ * Un temporizador Swing (en el EDT) repinta a una tasa fija sólo si llegaron
+ * muestras nuevas, así el costo de dibujo no depende de la frecuencia de
+ * muestreo. La cuadrícula se pinta una sola vez en una imagen compatible
+ * que sólo se rehace al cambiar el tamaño.
+ *
+ * Modo barrido (monitor de cabecera): la traza vive en una capa propia; en
+ * cada cuadro sólo se dibuja el tramo nuevo y se borra una franja delante
+ * de él, y se repinta únicamente esa región.
+ * Modo desplazamiento: la ventana completa se reduce a mínimo/máximo por
+ * columna y se dibuja con una sola polilínea sobre arreglos reutilizados
+ */
+public class PanelOsciloscopio extends JPanel {
+    private static final long serialVersionUID = 1L;
+    public static final int CUADROS_POR_SEGUNDO_DEFECTO = 30;
+    private static final double ESCALA_VERTICAL = 0.3;
+    private static final int FRANJA_BORRADO = 16;
+
+    private static final Color COLOR_GRAFICO = new Color(15, 18, 25);
+    private static final Color COLOR_LINEA = new Color(0, 200, 100);
+    private static final Color COLOR_GRID = new Color(40, 45, 55);
+    private static final Color COLOR_GRID_MENOR = new Color(35, 40, 50);
+    private static final Color COLOR_EJES = new Color(60, 70, 85);
+    private static final BasicStroke TRAZO_SENAL = new BasicStroke(2.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final BasicStroke TRAZO_GRID = new BasicStroke(1.5f);
+    private static final BasicStroke TRAZO_GRID_MENOR = new BasicStroke(0.5f);
+    private static final Histograma BUFFER_PINTADO = MetricasECG.global().latencia("vista.buffer_pintado");
+    private static final MetricasECG.Contador CUADROS = MetricasECG.global().contador("vista.cuadros");
+
+    private final Timer temporizador;
+    private BufferCircularECG buffer;
+    private BufferCircularECG.Instantanea datos;
+    private long secuenciaReinicio;
+    private long secuenciaPintada = -1;
+    private Runnable alPintarCuadro;
+    private boolean modoBarrido = true;
+
+    // Capas en caché (se recrean al cambiar el tamaño)
+    private BufferedImage capaCuadricula;
+    private BufferedImage capaTraza;
+    private Graphics2D lapizTraza;
+
+    // Estado del barrido: última muestra dibujada y su posición
+    private long secuenciaBarrido;
+    private int ultimoX = -1;
+    private int ultimoY;
+
+    // Polilínea reutilizada: hasta dos puntos (mín/máx) por columna
+    private int[] puntosX = new int[0];
+    private int[] puntosY = new int[0];
+    private long cuadrosPintados;
+    // Última escritura del búfer ya medida, para contar cada lote una sola vez
+    private long escrituraMedida;
+
+    public PanelOsciloscopio() {
+        setBackground(COLOR_GRAFICO);
+        setOpaque(true);
+        temporizador = new Timer(1000 / CUADROS_POR_SEGUNDO_DEFECTO, e -> refrescarSiHayDatos());
+        temporizador.setCoalesce(true);
+    }
+
+    // ============================================
+    // CICLO DE VIDA
+    // ============================================
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        temporizador.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        temporizador.stop();
+        super.removeNotify();
+    }
+
+    public void setCuadrosPorSegundo(int cuadros) {
+        temporizador.setDelay(1000 / Math.max(1, Math.min(120, cuadros)));
+    }
+
+    /** Tick del temporizador (EDT); BenchmarkECG lo invoca directamente */
+    void refrescarSiHayDatos() {
+        if (buffer == null || buffer.getSecuencia() == secuenciaPintada) return;
+        if (modoBarrido && asegurarCapas()) {
+            barrer();
+        } else {
+            repaint();
+        }
+    }
+
+    // ============================================
+    // DATOS (EDT)
+    // ============================================
+
+    public void setBuffer(BufferCircularECG buffer) {
+        this.buffer = buffer;
+        this.datos = new BufferCircularECG.Instantanea(buffer.getVentana());
+        this.secuenciaReinicio = 0;
+        this.secuenciaPintada = -1;
+        reiniciarBarrido();
+        repaint();
+    }
+
+    /** Descarta lo mostrado hasta ahora; la traza se rehace con las muestras nuevas */
+    public void reiniciar() {
+        if (buffer != null) secuenciaReinicio = buffer.getSecuencia();
+        reiniciarBarrido();
+        repaint();
+    }
+
+    public boolean isModoBarrido() { return modoBarrido; }
+
+    public void setModoBarrido(boolean modoBarrido) {
+        if (this.modoBarrido == modoBarrido) return;
+        this.modoBarrido = modoBarrido;
+        reiniciarBarrido();
+        repaint();
+    }
+
+    /** Se invoca en el EDT después de pintar cada cuadro */
+    public void setAlPintarCuadro(Runnable alPintarCuadro) {
+        this.alPintarCuadro = alPintarCuadro;
+    }
+
+    public int getMuestrasVisibles() {
+        if (buffer == null) return 0;
+        return (int) Math.min(buffer.getVentana(), secuenciaPintada < 0 ? 0 : secuenciaPintada - secuenciaReinicio);
+    }
+
+    public long getCuadrosPintados() { return cuadrosPintados; }
+
+    // ============================================
+    // DIBUJO
+    // ============================================
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2d = (Graphics2D) g;
+        if (!asegurarCapas()) {
+            super.paintComponent(g);
+            return;
+        }
+        // Con barrido el recorte suele ser sólo la franja recién dibujada
+        g2d.drawImage(capaCuadricula, 0, 0, null);
+        if (modoBarrido) {
+            if (secuenciaPintada < 0) barrer();
+            g2d.drawImage(capaTraza, 0, 0, null);
+        } else {
+            dibujarSenal(g2d);
+        }
+        cuadrosPintados++;
+        CUADROS.incrementar();
+        medirLatencia();
+        if (alPintarCuadro != null) alPintarCuadro.run();
+    }
+
+    /**
+     * Edad del último lote publicado en el búfer cuando llega a la pantalla
+     */
+    private void medirLatencia() {
+        if (buffer == null) return;
+        long escritura = buffer.getEscrituraNanos();
+        if (escritura == 0 || escritura == escrituraMedida) return;
+        escrituraMedida = escritura;
+        BUFFER_PINTADO.registrarDesde(escritura);
+    }
+
+    // ============================================
+    // CAPAS EN CACHÉ
+    // ============================================
+
+    /**
+     * Crea o recrea las capas si cambió el tamaño
+     * @return false si el panel todavía no tiene tamaño
+     */
+    private boolean asegurarCapas() {
+        int ancho = getWidth();
+        int alto = getHeight();
+        if (ancho <= 0 || alto <= 0) return false;
+        if (capaCuadricula != null && capaCuadricula.getWidth() == ancho && capaCuadricula.getHeight() == alto) {
+            return true;
+        }
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        capaCuadricula = gc != null
+            ? gc.createCompatibleImage(ancho, alto, Transparency.OPAQUE)
+            : new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = capaCuadricula.createGraphics();
+        dibujarCuadricula(g, ancho, alto);
+        g.dispose();
+
+        if (lapizTraza != null) lapizTraza.dispose();
+        capaTraza = gc != null
+            ? gc.createCompatibleImage(ancho, alto, Transparency.TRANSLUCENT)
+            : new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB);
+        lapizTraza = capaTraza.createGraphics();
+        lapizTraza.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        lapizTraza.setColor(COLOR_LINEA);
+        lapizTraza.setStroke(TRAZO_SENAL);
+        // La capa nueva está vacía: redibujar la ventana visible
+        reiniciarBarrido();
+        return true;
+    }
+
+    private static void dibujarCuadricula(Graphics2D g2d, int ancho, int alto) {
+        g2d.setColor(COLOR_GRAFICO);
+        g2d.fillRect(0, 0, ancho, alto);
+
+        g2d.setColor(COLOR_GRID);
+        g2d.setStroke(TRAZO_GRID);
+        for (int i = 0; i < ancho; i += 40) g2d.drawLine(i, 0, i, alto);
+        for (int i = 0; i < alto; i += 40) g2d.drawLine(0, i, ancho, i);
+
+        g2d.setColor(COLOR_GRID_MENOR);
+        g2d.setStroke(TRAZO_GRID_MENOR);
+        for (int i = 0; i < ancho; i += 8) g2d.drawLine(i, 0, i, alto);
+        for (int i = 0; i < alto; i += 8) g2d.drawLine(0, i, ancho, i);
+
+        g2d.setColor(COLOR_EJES);
+        g2d.setStroke(TRAZO_GRID);
+        g2d.drawLine(0, alto / 2, ancho, alto / 2);
+        g2d.drawLine(ancho / 2, 0, ancho / 2, alto);
+    }
+
+    // ============================================
+    // MODO BARRIDO
+    // ============================================
+
+    private void reiniciarBarrido() {
+        if (capaTraza != null) {
+            borrar(0, capaTraza.getWidth());
+        }
+        secuenciaBarrido = 0;
+        ultimoX = -1;
+        secuenciaPintada = -1;
+    }
+
+    /**
+     * Dibuja en la capa de traza sólo las muestras llegadas desde el último
+     * cuadro y solicita el repintado de la región afectada
+     */
+    private void barrer() {
+        secuenciaPintada = buffer.getSecuencia();
+        buffer.leerDesde(Math.max(secuenciaBarrido, secuenciaReinicio), datos);
+        int n = datos.getLongitud();
+        if (n == 0) return;
+
+        int ancho = capaTraza.getWidth();
+        int centroY = capaTraza.getHeight() / 2;
+        int porPantalla = buffer.getVentana();
+        long primera = datos.getSecuenciaInicio();
+        // Si se perdió continuidad (reinicio o demasiadas muestras) no se une con el tramo anterior
+        if (primera != secuenciaBarrido) ultimoX = -1;
+        double[] v = datos.getDatos();
+
+        int k = 0;
+        int desdeX = -1;
+        if (puntosX.length < n + 1) {
+            puntosX = new int[n + 1];
+            puntosY = new int[n + 1];
+        }
+        if (ultimoX >= 0) {
+            puntosX[0] = ultimoX;
+            puntosY[0] = ultimoY;
+            k = 1;
+            desdeX = ultimoX;
+        }
+        for (int i = 0; i < n; i++) {
+            int x = (int) (Math.floorMod(primera + i, (long) porPantalla) * ancho / porPantalla);
+            int y = (int) (centroY - v[i] * ESCALA_VERTICAL);
+            if (k > 0 && x < puntosX[k - 1]) {
+                // Vuelta al borde izquierdo: cerrar el tramo y empezar otro
+                trazarTramo(k, desdeX, ancho);
+                k = 0;
+                desdeX = -1;
+            }
+            if (desdeX < 0) desdeX = x;
+            puntosX[k] = x;
+            puntosY[k++] = y;
+        }
+        trazarTramo(k, desdeX, ancho);
+        ultimoX = puntosX[k - 1];
+        ultimoY = puntosY[k - 1];
+        secuenciaBarrido = datos.getSecuenciaFin();
+    }
+
+    private void trazarTramo(int puntos, int desdeX, int ancho) {
+        int hastaX = puntosX[puntos - 1];
+        // Franja de borrado delante del cursor (con vuelta al inicio)
+        int borrarDesde = desdeX == ultimoX && puntos > 1 ? desdeX + 2 : desdeX;
+        int borrarHasta = hastaX + FRANJA_BORRADO;
+        borrar(borrarDesde, Math.min(borrarHasta, ancho));
+        if (borrarHasta > ancho) borrar(0, borrarHasta - ancho);
+
+        if (puntos > 1) {
+            lapizTraza.drawPolyline(puntosX, puntosY, puntos);
+        } else {
+            lapizTraza.drawLine(puntosX[0], puntosY[0], puntosX[0], puntosY[0]);
+        }
+
+        int margen = (int) Math.ceil(TRAZO_SENAL.getLineWidth());
+        repaint(Math.max(0, desdeX - margen), 0, Math.min(borrarHasta, ancho) - desdeX + 2 * margen, getHeight());
+        if (borrarHasta > ancho) repaint(0, 0, borrarHasta - ancho + margen, getHeight());
+    }
+
+    private void borrar(int desdeX, int hastaX) {
+        if (hastaX <= desdeX) return;
+        Composite previo = lapizTraza.getComposite();
+        lapizTraza.setComposite(AlphaComposite.Clear);
+        lapizTraza.fillRect(desdeX, 0, hastaX - desdeX, capaTraza.getHeight());
+        lapizTraza.setComposite(previo);
+    }
+
+    // ============================================
+    // MODO DESPLAZAMIENTO
+    // ============================================
+
+    private void dibujarSenal(Graphics2D g2d) {
+        if (buffer == null) return;
+        // Instantánea tomada en el EDT; el pipeline nunca espera al dibujo
+        secuenciaPintada = buffer.getSecuencia();
+        buffer.leerDesde(secuenciaReinicio, datos);
+        int n = datos.getLongitud();
+        if (n < 2) return;
+
+        int puntos = construirPolilinea(n, getWidth(), getHeight() / 2);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(COLOR_LINEA);
+        g2d.setStroke(TRAZO_SENAL);
+        g2d.drawPolyline(puntosX, puntosY, puntos);
+    }
+
+    /**
+     * Llena puntosX/puntosY con la traza reducida
+     * @return número de puntos de la polilínea
+     */
+    private int construirPolilinea(int n, int ancho, int centroY) {
+        int maxPuntos = Math.max(n < ancho ? n : 2 * ancho, 2);
+        if (puntosX.length < maxPuntos) {
+            puntosX = new int[maxPuntos];
+            puntosY = new int[maxPuntos];
+        }
+        double[] v = datos.getDatos();
+        int k = 0;
+        if (n <= ancho) {
+            for (int i = 0; i < n; i++) {
+                puntosX[k] = (int) ((long) i * ancho / n);
+                puntosY[k++] = (int) (centroY - v[i] * ESCALA_VERTICAL);
+            }
+            return k;
+        }
+        // Varias muestras por columna: conservar mínimo y máximo en su orden
+        // de aparición para que los complejos QRS no desaparezcan
+        int inicio = 0;
+        for (int x = 0; x < ancho; x++) {
+            int fin = (int) ((long) (x + 1) * n / ancho);
+            if (fin <= inicio) continue;
+            int iMin = inicio, iMax = inicio;
+            for (int i = inicio + 1; i < fin; i++) {
+                if (v[i] < v[iMin]) iMin = i;
+                if (v[i] > v[iMax]) iMax = i;
+            }
+            int primero = Math.min(iMin, iMax);
+            int segundo = Math.max(iMin, iMax);
+            puntosX[k] = x;
+            puntosY[k++] = (int) (centroY - v[primero] * ESCALA_VERTICAL);
+            if (segundo != primero) {
+                puntosX[k] = x;
+                puntosY[k++] = (int) (centroY - v[segundo] * ESCALA_VERTICAL);
+            }
+            inicio = fin;
+        }
+        return k;
+    }
+}
@@ -0,0 +1,122 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Perfil de configuración de SQLite: modo de diario, PRAGMAs por conexión y
+ * número de conexiones de lectura. Se elige con -Decg.db.perfil=
+ * rendimiento | seguro | compatible (por defecto rendimiento)
+ */
+public class PerfilAlmacenamiento {
+    private final String nombre;
+    private String modoDiario = "WAL";
+    private String sincronizacion = "NORMAL";
+    private int cacheKb = 32 * 1024;
+    private long mmapBytes = 256L * 1024 * 1024;
+    private String almacenTemporal = "MEMORY";
+    private int esperaBloqueoMs = 5000;
+    private int conexionesLectura = 2;
+    private int sentenciasEnCache = 32;
+
+    private PerfilAlmacenamiento(String nombre) {
+        this.nombre = nombre;
+    }
+
+    // ============================================
+    // PERFILES PREDEFINIDOS
+    // ============================================
+
+    /** WAL con synchronous=NORMAL: una escritura nunca bloquea a los lectores */
+    public static PerfilAlmacenamiento rendimiento() {
+        return new PerfilAlmacenamiento("rendimiento");
+    }
+
+    /** WAL con synchronous=FULL: cada transacción confirmada sobrevive a un corte de energía */
+    public static PerfilAlmacenamiento seguro() {
+        PerfilAlmacenamiento p = new PerfilAlmacenamiento("seguro");
+        p.sincronizacion = "FULL";
+        return p;
+    }
+
+    /** Diario de reversión clásico, para bases de datos en carpetas compartidas por red */
+    public static PerfilAlmacenamiento compatible() {
+        PerfilAlmacenamiento p = new PerfilAlmacenamiento("compatible");
+        p.modoDiario = "DELETE";
+        p.sincronizacion = "FULL";
+        p.mmapBytes = 0;
+        p.conexionesLectura = 1;
+        return p;
+    }
+
+    public static PerfilAlmacenamiento desdeSistema() {
+        String nombre = System.getProperty("ecg.db.perfil", "rendimiento");
+        PerfilAlmacenamiento p;
+        switch (nombre.toLowerCase()) {
+            case "seguro": p = seguro(); break;
+            case "compatible": p = compatible(); break;
+            default: p = rendimiento(); break;
+        }
+        p.setConexionesLectura(Integer.getInteger("ecg.db.lectores", p.conexionesLectura));
+        return p;
+    }
+
+    // ============================================
+    // APLICACIÓN
+    // ============================================
+
+    /**
+     * PRAGMAs de la conexión de escritura; también fija el modo de diario,
+     * que queda guardado en el archivo
+     */
+    public void aplicarEscritura(Connection conexion) throws SQLException {
+        try (Statement stmt = conexion.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + esperaBloqueoMs);
+            stmt.execute("PRAGMA journal_mode = " + modoDiario);
+            aplicarComunes(stmt);
+        }
+    }
+
+    /**
+     * PRAGMAs de una conexión de lectura: sólo consultas
+     */
+    public void aplicarLectura(Connection conexion) throws SQLException {
+        try (Statement stmt = conexion.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + esperaBloqueoMs);
+            aplicarComunes(stmt);
+            stmt.execute("PRAGMA query_only = ON");
+        }
+    }
+
+    private void aplicarComunes(Statement stmt) throws SQLException {
+        stmt.execute("PRAGMA synchronous = " + sincronizacion);
+        // Valor negativo: tamaño en KiB en lugar de páginas
+        stmt.execute("PRAGMA cache_size = -" + cacheKb);
+        stmt.execute("PRAGMA mmap_size = " + mmapBytes);
+        stmt.execute("PRAGMA temp_store = " + almacenTemporal);
+    }
+
+    // ============================================
+    // ACCESO
+    // ============================================
+
+    public String getNombre() { return nombre; }
+    public String getModoDiario() { return modoDiario; }
+    public String getSincronizacion() { return sincronizacion; }
+    public void setSincronizacion(String sincronizacion) { this.sincronizacion = sincronizacion; }
+    public int getCacheKb() { return cacheKb; }
+    public void setCacheKb(int cacheKb) { this.cacheKb = cacheKb; }
+    public long getMmapBytes() { return mmapBytes; }
+    public void setMmapBytes(long mmapBytes) { this.mmapBytes = mmapBytes; }
+    public int getEsperaBloqueoMs() { return esperaBloqueoMs; }
+    public void setEsperaBloqueoMs(int esperaBloqueoMs) { this.esperaBloqueoMs = esperaBloqueoMs; }
+    public int getConexionesLectura() { return conexionesLectura; }
+    public void setConexionesLectura(int conexionesLectura) { this.conexionesLectura = Math.max(1, conexionesLectura); }
+    public int getSentenciasEnCache() { return sentenciasEnCache; }
+    public void setSentenciasEnCache(int sentenciasEnCache) { this.sentenciasEnCache = sentenciasEnCache; }
+
+    @Override
+    public String toString() {
+        return nombre + " (journal_mode=" + modoDiario + ", synchronous=" + sincronizacion
+            + ", cache=" + cacheKb + " KiB, mmap=" + (mmapBytes >> 20) + " MiB, lectores=" + conexionesLectura + ")";
+    }
+}
@@ -0,0 +1,337 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline independiente de una Sesion_Monitoreo activa:
+ * ingesta (cola SPSC) → filtros (FiltroECG) → búfer de señal → detección
+ * QRS/BPM → eventos de ritmo (MotorEventos) y variabilidad (MotorVFC). La señal cruda, sin filtrar, se persiste por bloques comprimidos
+ * de BloqueECG.SEGUNDOS_BLOQUE segundos
+ * Sólo el hilo de su shard ejecuta procesarPendientes, así el estado del
+ * detector no necesita sincronización
+ */
+public class PipelineSesion {
+    public static final int VENTANA_SENAL = 600;
+    private static final int CAPACIDAD_COLA = 8192;
+    private static final int INTERVALO_BPM_SEGUNDOS = 10;
+    private static final int EVENTOS_RECIENTES = 16;
+
+    // Compartidas por todas las sesiones; se registran una vez por lote
+    private static final Histograma INGESTA_BUFFER = MetricasECG.global().latencia("pipeline.ingesta_buffer");
+    private static final Histograma BUFFER_BPM = MetricasECG.global().latencia("pipeline.buffer_bpm");
+    private static final MetricasECG.Contador MUESTRAS = MetricasECG.global().contador("pipeline.muestras");
+    private static final MetricasECG.Contador DESCARTADAS = MetricasECG.global().contador("pipeline.muestras_descartadas");
+
+    /**
+     * Notificaciones hacia la vista; se invocan desde el hilo del shard
+     */
+    public interface OyentePipeline {
+        void onMuestras(PipelineSesion pipeline, int cantidad);
+        void onBPM(PipelineSesion pipeline, int bpm);
+    }
+
+    private final int idSesion;
+    private final int idPaciente;
+    private final int frecuencia;
+    private final DatabaseManager db;
+    private final ColaMuestrasSPSC cola = new ColaMuestrasSPSC(CAPACIDAD_COLA);
+    private final BufferCircularECG buffer = new BufferCircularECG(VENTANA_SENAL);
+    private final FiltroECG filtro;
+    private final DetectorQRS detector;
+    private final MotorEventos motorEventos;
+    private final MotorVFC motorVFC;
+    private final CanalAlarmas alarmas;
+    private volatile OyentePipeline oyente;
+
+    // Llegada de la muestra más antigua aún sin procesar; 0 si la cola se drenó
+    private volatile long llegadaNanos;
+
+    // Estado del intervalo de BPM (sólo hilo del shard)
+    private int latidosIntervalo;
+    private long muestrasIntervalo;
+    // Línea de tiempo de la señal (la de los bloques): la muestra anclaMuestra
+    // ocurrió en anclaMs. Un hueco reancla al reloj; la ancla previa sigue
+    // fechando las muestras anteriores al hueco que aún no se analizaron
+    private long anclaMs = -1;
+    private long anclaMuestra;
+    private long anclaPreviaMs;
+    private long anclaPreviaMuestra;
+
+    // Bloque en construcción (sólo hilo del shard)
+    private final double[] bloque;
+    private int muestrasBloque;
+    private long inicioBloqueMs;
+    private long siguienteInicioMs = -1;
+
+    // Secuencia de tramas binarias (sólo hilo de red)
+    private long ultimaSecuencia = -1;
+    private volatile long tramasRecibidas;
+    private volatile long tramasPerdidas;
+    private boolean avisoFrecuencia;
+
+    // Métricas
+    private volatile long muestrasProcesadas;
+    private volatile long latidos;
+    private volatile int ultimoBPM;
+    private volatile long eventos;
+
+    // Últimos eventos para lectores de otros hilos; la ranura n % EVENTOS_RECIENTES
+    // se escribe antes de publicar el contador eventos
+    private final MotorEventos.Evento[] recientes = new MotorEventos.Evento[EVENTOS_RECIENTES];
+
+    // Cierre ordenado: el shard drena la cola antes de soltar el pipeline
+    private volatile boolean cerrando;
+    private final CountDownLatch drenado = new CountDownLatch(1);
+
+    /**
+     * @param idSesion id en Sesion_Monitoreo, o -1 para un pipeline sin persistencia
+     */
+    public PipelineSesion(int idSesion, int idPaciente, int frecuencia, DatabaseManager db) {
+        this(idSesion, idPaciente, frecuencia, db, null);
+    }
+
+    /**
+     * @param alarmas canal de los eventos ALTA/CRITICA, o null para registrarlos en lote
+     */
+    public PipelineSesion(int idSesion, int idPaciente, int frecuencia, DatabaseManager db, CanalAlarmas alarmas) {
+        this.idSesion = idSesion;
+        this.idPaciente = idPaciente;
+        this.frecuencia = frecuencia;
+        this.db = db;
+        this.alarmas = alarmas;
+        this.filtro = FiltroECG.desdeSistema(frecuencia);
+        this.detector = new DetectorQRS(frecuencia);
+        this.motorEventos = new MotorEventos(idSesion, this::registrarEvento);
+        this.motorVFC = new MotorVFC(idSesion, this::registrarVFC);
+        this.bloque = new double[idSesion > 0 ? frecuencia * BloqueECG.SEGUNDOS_BLOQUE : 0];
+    }
+
+    // ============================================
+    // INGESTA (hilo de red)
+    // ============================================
+
+    public boolean recibir(double valor) {
+        if (!cola.ofrecer(valor)) {
+            DESCARTADAS.incrementar();
+            return false;
+        }
+        if (llegadaNanos == 0) llegadaNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Registra la cabecera de una trama para detectar huecos de secuencia
+     */
+    void registrarTrama(long secuencia, int frecuenciaTrama) {
+        if (ultimaSecuencia >= 0) {
+            long hueco = (secuencia - ultimaSecuencia - 1) & 0xFFFFFFFFL;
+            // Un salto enorme es un reinicio del dispositivo, no una pérdida
+            if (hueco > 0 && hueco < 0x80000000L) tramasPerdidas += hueco;
+        }
+        ultimaSecuencia = secuencia;
+        tramasRecibidas++;
+        if (frecuenciaTrama != frecuencia && !avisoFrecuencia) {
+            avisoFrecuencia = true;
+            System.err.println("Advertencia: sesión " + idSesion + " configurada a " + frecuencia
+                + " Hz recibe tramas a " + frecuenciaTrama + " Hz");
+        }
+    }
+
+    // ============================================
+    // PROCESAMIENTO (hilo del shard)
+    // ============================================
+
+    /**
+     * Drena y procesa un lote de muestras
+     * @return número de muestras procesadas
+     */
+    int procesarPendientes(double[] lote) {
+        // Se toma antes de drenar: una muestra que llega durante el drenado marca el lote siguiente
+        long llegada = llegadaNanos;
+        llegadaNanos = 0;
+        int n = cola.drenar(lote, lote.length);
+        if (n == 0) return 0;
+        long inicio = System.nanoTime();
+        if (anclaMs < 0) anclar(System.currentTimeMillis(), 0);
+        if (llegada != 0) {
+            INGESTA_BUFFER.registrar(inicio - llegada);
+            // Si quedó cola, lo que resta no llegó antes que esto: cota superior para el lote siguiente
+            if (n == lote.length) llegadaNanos = llegada;
+        }
+
+        if (idSesion > 0) {
+            long primera = muestrasProcesadas;
+            for (int i = 0; i < n; i++) agregarABloque(lote[i], primera + i);
+        }
+        // A partir de aquí el lote contiene la señal filtrada
+        filtro.procesar(lote, n);
+
+        int bpm = -1;
+        for (int i = 0; i < n; i++) {
+            double valor = lote[i];
+            buffer.agregar(valor);
+
+            if (detector.procesar(valor)) {
+                latidos++;
+                latidosIntervalo++;
+                // Eventos y VFC se fechan con el instante de la onda R en la señal
+                double instanteR = instante(detector.getUltimaR());
+                motorEventos.procesarLatido(detector.getUltimoRRMs(), (long) instanteR, valor);
+                if (detector.getUltimoRRMs() > 0) {
+                    motorVFC.procesarLatido(detector.getUltimoRRMs(), instanteR);
+                }
+                if (detector.getBPM() > 0) bpm = detector.getBPM();
+            }
+
+            // Guardar un cálculo por intervalo, no por muestra
+            if (++muestrasIntervalo >= (long) INTERVALO_BPM_SEGUNDOS * frecuencia) {
+                if (idSesion > 0 && detector.getBPM() > 0) {
+                    // Por el escritor: el hilo del shard no espera a la base
+                    db.registrarCalculoBPM(idSesion, detector.getBPM(), latidosIntervalo,
+                                           (long) instante(muestrasProcesadas + i + 1));
+                }
+                latidosIntervalo = 0;
+                muestrasIntervalo = 0;
+            }
+        }
+        muestrasProcesadas += n;
+        long fin = System.nanoTime();
+        buffer.marcarEscritura(fin);
+        BUFFER_BPM.registrar(fin - inicio);
+        MUESTRAS.sumar(n);
+
+        OyentePipeline o = oyente;
+        if (bpm > 0) ultimoBPM = bpm;
+        if (o != null) {
+            o.onMuestras(this, n);
+            if (bpm > 0) o.onBPM(this, bpm);
+        }
+        return n;
+    }
+
+    private void registrarEvento(MotorEventos.Evento evento) {
+        recientes[(int) (eventos % EVENTOS_RECIENTES)] = evento;
+        eventos++;
+        // Los prioritarios saltan el lote; si el canal está saturado siguen la vía normal
+        if (alarmas != null && alarmas.emitir(evento, idPaciente)) return;
+        if (idSesion > 0) db.registrarEvento(evento);
+    }
+
+    /** Desde el pool de MotorVFC, no desde el shard */
+    private void registrarVFC(MotorVFC.Resultado resultado) {
+        if (idSesion > 0) db.insertarCalculoVFC(resultado);
+    }
+
+    private void agregarABloque(double valor, long indice) {
+        if (muestrasBloque == 0) {
+            // Los bloques contiguos conservan una línea de tiempo continua y
+            // monótona; sólo un hueco real (más de un bloque) la reinicia
+            long ahora = System.currentTimeMillis();
+            if (siguienteInicioMs >= 0 && ahora - siguienteInicioMs <= BloqueECG.SEGUNDOS_BLOQUE * 1000L) {
+                inicioBloqueMs = siguienteInicioMs;
+            } else {
+                inicioBloqueMs = ahora;
+                anclar(ahora, indice);
+            }
+        }
+        bloque[muestrasBloque++] = valor;
+        if (muestrasBloque == bloque.length) {
+            emitirBloque();
+        }
+    }
+
+    private void anclar(long instanteMs, long indice) {
+        anclaPreviaMs = anclaMs < 0 ? instanteMs : anclaMs;
+        anclaPreviaMuestra = anclaMs < 0 ? indice : anclaMuestra;
+        anclaMs = instanteMs;
+        anclaMuestra = indice;
+    }
+
+    /** Instante de época de una posición (en muestras desde la primera) de la señal */
+    private double instante(double muestra) {
+        return muestra >= anclaMuestra
+            ? anclaMs + (muestra - anclaMuestra) * 1000.0 / frecuencia
+            : anclaPreviaMs + (muestra - anclaPreviaMuestra) * 1000.0 / frecuencia;
+    }
+
+    private void emitirBloque() {
+        if (muestrasBloque == 0) return;
+        BloqueECG b = BloqueECG.comprimir(idSesion, inicioBloqueMs, frecuencia, bloque, muestrasBloque, BloqueECG.ESCALA_DEFECTO);
+        db.insertarBloqueECG(b);
+        siguienteInicioMs = b.getFinMs();
+        muestrasBloque = 0;
+    }
+
+    boolean tienePendientes() {
+        return cola.getOcupacion() > 0;
+    }
+
+    // ============================================
+    // CIERRE
+    // ============================================
+
+    void solicitarCierre() {
+        cerrando = true;
+    }
+
+    boolean isCerrando() { return cerrando; }
+
+    void marcarDrenado() {
+        // Bloque parcial del final de la sesión
+        emitirBloque();
+        drenado.countDown();
+    }
+
+    boolean esperarDrenado(long milisegundos) {
+        try {
+            return drenado.await(milisegundos, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ============================================
+    // ACCESO
+    // ============================================
+
+    public int getIdSesion() { return idSesion; }
+    public int getIdPaciente() { return idPaciente; }
+    public int getFrecuencia() { return frecuencia; }
+    public BufferCircularECG getBuffer() { return buffer; }
+    public FiltroECG getFiltro() { return filtro; }
+    public ColaMuestrasSPSC getCola() { return cola; }
+    public void setOyente(OyentePipeline oyente) { this.oyente = oyente; }
+    public OyentePipeline getOyente() { return oyente; }
+    public long getMuestrasProcesadas() { return muestrasProcesadas; }
+    public long getLatidos() { return latidos; }
+    public int getUltimoBPM() { return ultimoBPM; }
+    public long getEventos() { return eventos; }
+
+    /**
+     * Evento número n (desde 0) si todavía está entre los últimos
+     * EVENTOS_RECIENTES; null si ya se reemplazó o aún no ocurrió
+     */
+    public MotorEventos.Evento getEventoReciente(long n) {
+        if (n < 0 || n >= eventos) return null;
+        MotorEventos.Evento e = recientes[(int) (n % EVENTOS_RECIENTES)];
+        VarHandle.acquireFence();
+        // El evento n + EVENTOS_RECIENTES pisa la ranura antes de incrementar el contador
+        return eventos - n < EVENTOS_RECIENTES ? e : null;
+    }
+    public MotorEventos getMotorEventos() { return motorEventos; }
+    public MotorVFC getMotorVFC() { return motorVFC; }
+    public long getTramasRecibidas() { return tramasRecibidas; }
+    public long getTramasPerdidas() { return tramasPerdidas; }
+
+    /** Bytes de los arreglos propios del pipeline (cola, búfer de señal y bloque) */
+    public long getMemoriaEstimada() {
+        return 8L * (cola.getCapacidad() + buffer.getCapacidad() + bloque.length);
+    }
+
+    public String resumen() {
+        return "sesión " + idSesion + " (paciente " + idPaciente + "): " + muestrasProcesadas
+            + " muestras, " + latidos + " latidos, BPM " + ultimoBPM + ", " + eventos + " eventos, tramas "
+            + tramasRecibidas + " (" + tramasPerdidas + " perdidas), cola " + cola.resumen();
+    }
+}
@@ -0,0 +1,240 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pirámide de resúmenes mínimo/máximo de la señal de una sesión (tabla Resumen_ECG)
+ *
+ * El nivel 0 divide el tiempo en cubetas de ANCHO_BASE_MS y cada nivel
+ * siguiente junta FACTOR cubetas del anterior. Las cubetas están alineadas
+ * al reloj (cubeta = instante / ancho), así que un nivel se anida exacto en
+ * el siguiente. Se guardan en teselas de CUBETAS_POR_TESELA cubetas; para
+ * pintar cualquier ventana basta leer el nivel cuya cubeta no supera el
+ * ancho de un píxel, o sea unas pocas cubetas por columna
+ *
+ * El Acumulador la construye a medida que se escriben los bloques: mínimo y
+ * máximo son idempotentes, así que una cubeta abierta se puede guardar
+ * parcial y volver a guardar ampliada sin contar nada dos veces
+ */
+public class PiramideECG {
+    public static final long ANCHO_BASE_MS = 80;
+    public static final int FACTOR = 4;
+    public static final int NIVELES = 7;
+    public static final int CUBETAS_POR_TESELA = 256;
+    private static final long NINGUNA = Long.MIN_VALUE;
+    private static final long[] ANCHOS = new long[NIVELES];
+
+    static {
+        long ancho = ANCHO_BASE_MS;
+        for (int i = 0; i < NIVELES; i++) {
+            ANCHOS[i] = ancho;
+            ancho *= FACTOR;
+        }
+    }
+
+    private PiramideECG() {
+    }
+
+    /** Duración de una cubeta del nivel en ms */
+    public static long anchoCubeta(int nivel) {
+        return ANCHOS[nivel];
+    }
+
+    /** Duración de una tesela del nivel en ms */
+    public static long anchoTesela(int nivel) {
+        return ANCHOS[nivel] * CUBETAS_POR_TESELA;
+    }
+
+    /**
+     * Nivel más grueso cuya cubeta no supera msPorPixel
+     * @return -1 si ni el nivel 0 alcanza y hay que pintar la señal cruda
+     */
+    public static int nivelPara(double msPorPixel) {
+        for (int nivel = NIVELES - 1; nivel >= 0; nivel--) {
+            if (ANCHOS[nivel] <= msPorPixel) return nivel;
+        }
+        return -1;
+    }
+
+    // ============================================
+    // TESELA
+    // ============================================
+
+    /**
+     * CUBETAS_POR_TESELA pares mínimo/máximo consecutivos de un nivel; NaN
+     * marca una cubeta sin muestras (hueco en la grabación)
+     */
+    public static final class Tesela {
+        private final int nivel;
+        private final long indice;
+        private final float[] minimos = new float[CUBETAS_POR_TESELA];
+        private final float[] maximos = new float[CUBETAS_POR_TESELA];
+
+        public Tesela(int nivel, long indice) {
+            this.nivel = nivel;
+            this.indice = indice;
+            Arrays.fill(minimos, Float.NaN);
+            Arrays.fill(maximos, Float.NaN);
+        }
+
+        /** Amplía la cubeta i con [min, max] */
+        void combinar(int i, float min, float max) {
+            if (Float.isNaN(minimos[i])) {
+                minimos[i] = min;
+                maximos[i] = max;
+            } else {
+                if (min < minimos[i]) minimos[i] = min;
+                if (max > maximos[i]) maximos[i] = max;
+            }
+        }
+
+        /** Big-endian: mínimo y máximo en float32 por cubeta */
+        public byte[] serializar() {
+            ByteBuffer b = ByteBuffer.allocate(CUBETAS_POR_TESELA * 8);
+            for (int i = 0; i < CUBETAS_POR_TESELA; i++) b.putFloat(minimos[i]).putFloat(maximos[i]);
+            return b.array();
+        }
+
+        public static Tesela deserializar(int nivel, long indice, byte[] datos) {
+            if (datos.length != CUBETAS_POR_TESELA * 8) {
+                throw new IllegalStateException("Tesela de resumen corrupta (nivel " + nivel + ", índice " + indice + ")");
+            }
+            Tesela t = new Tesela(nivel, indice);
+            ByteBuffer b = ByteBuffer.wrap(datos);
+            for (int i = 0; i < CUBETAS_POR_TESELA; i++) {
+                t.minimos[i] = b.getFloat();
+                t.maximos[i] = b.getFloat();
+            }
+            return t;
+        }
+
+        public int getNivel() { return nivel; }
+        public long getIndice() { return indice; }
+        public long getInicioMs() { return indice * anchoTesela(nivel); }
+        public long getFinMs() { return (indice + 1) * anchoTesela(nivel); }
+        public boolean tieneDatos(int i) { return !Float.isNaN(minimos[i]); }
+        public float getMinimo(int i) { return minimos[i]; }
+        public float getMaximo(int i) { return maximos[i]; }
+    }
+
+    // ============================================
+    // CONSTRUCCIÓN INCREMENTAL
+    // ============================================
+
+    /**
+     * Lee la tesela ya guardada, para ampliarla en lugar de pisarla
+     */
+    public interface Cargador {
+        /** @return la tesela guardada, o null si no existe */
+        Tesela cargar(int idSesion, int nivel, long indice);
+    }
+
+    /**
+     * Estado de construcción de una sesión: la cubeta abierta y la tesela en
+     * curso de cada nivel. Las muestras deben llegar en orden temporal; una
+     * muestra anterior a la cubeta abierta se suma a esa cubeta
+     */
+    public static final class Acumulador {
+        private final int idSesion;
+        private final Cargador cargador;
+        private final long[] cubetas = new long[NIVELES];
+        private final float[] minimos = new float[NIVELES];
+        private final float[] maximos = new float[NIVELES];
+        private final Tesela[] actuales = new Tesela[NIVELES];
+        private final List<Tesela> completas = new ArrayList<>();
+        private double[] muestras = new double[0];
+
+        public Acumulador(int idSesion, Cargador cargador) {
+            this.idSesion = idSesion;
+            this.cargador = cargador;
+            Arrays.fill(cubetas, NINGUNA);
+        }
+
+        public void agregar(BloqueECG bloque) {
+            int n = bloque.getNumMuestras();
+            if (muestras.length < n) muestras = new double[n];
+            bloque.descomprimir(muestras, 0);
+            long inicio = bloque.getInicioMs();
+            long frecuencia = bloque.getFrecuencia();
+            int i = 0;
+            while (i < n) {
+                long cubeta = Math.floorDiv(bloque.instanteMuestra(i), ANCHO_BASE_MS);
+                // Primera muestra de la cubeta siguiente: instanteMuestra(j) >= fin de la cubeta
+                long hastaFin = (cubeta + 1) * ANCHO_BASE_MS - inicio;
+                int fin = (int) Math.min(n, Math.max(i + 1, Math.floorDiv(hastaFin * frecuencia + 999, 1000)));
+                float min = (float) muestras[i];
+                float max = min;
+                for (int j = i + 1; j < fin; j++) {
+                    float v = (float) muestras[j];
+                    if (v < min) min = v;
+                    if (v > max) max = v;
+                }
+                agregarCubeta(0, cubeta, min, max);
+                i = fin;
+            }
+        }
+
+        public void agregar(long instanteMs, double valor) {
+            float v = (float) valor;
+            agregarCubeta(0, Math.floorDiv(instanteMs, ANCHO_BASE_MS), v, v);
+        }
+
+        private void agregarCubeta(int nivel, long cubeta, float min, float max) {
+            long abierta = cubetas[nivel];
+            if (abierta != NINGUNA && cubeta <= abierta) {
+                if (min < minimos[nivel]) minimos[nivel] = min;
+                if (max > maximos[nivel]) maximos[nivel] = max;
+                return;
+            }
+            if (abierta != NINGUNA) {
+                // La cubeta cerrada pasa a su tesela y sube al nivel siguiente
+                escribir(nivel, abierta, minimos[nivel], maximos[nivel]);
+                if (nivel + 1 < NIVELES) {
+                    agregarCubeta(nivel + 1, Math.floorDiv(abierta, FACTOR), minimos[nivel], maximos[nivel]);
+                }
+            }
+            cubetas[nivel] = cubeta;
+            minimos[nivel] = min;
+            maximos[nivel] = max;
+        }
+
+        private void escribir(int nivel, long cubeta, float min, float max) {
+            long indice = Math.floorDiv(cubeta, CUBETAS_POR_TESELA);
+            Tesela t = actuales[nivel];
+            if (t == null || t.indice != indice) {
+                if (t != null) completas.add(t);
+                t = cargador != null ? cargador.cargar(idSesion, nivel, indice) : null;
+                if (t == null) t = new Tesela(nivel, indice);
+                actuales[nivel] = t;
+            }
+            t.combinar((int) (cubeta - indice * CUBETAS_POR_TESELA), min, max);
+        }
+
+        /**
+         * Vuelca las cubetas abiertas (parciales) en sus teselas
+         * @return las teselas modificadas desde el último vaciado, para guardarlas
+         */
+        public List<Tesela> vaciar() {
+            // Cada cubeta abierta aún no subió: se escribe en su nivel y en
+            // todas sus antecesoras. De arriba abajo, para que cada tesela
+            // reciba las cubetas en orden temporal y no se cambie hacia atrás
+            for (int nivel = NIVELES - 1; nivel >= 0; nivel--) {
+                long cubeta = cubetas[nivel];
+                if (cubeta == NINGUNA) continue;
+                for (int superior = nivel; superior < NIVELES; superior++) {
+                    escribir(superior, cubeta, minimos[nivel], maximos[nivel]);
+                    cubeta = Math.floorDiv(cubeta, FACTOR);
+                }
+            }
+            List<Tesela> modificadas = new ArrayList<>(completas);
+            completas.clear();
+            for (Tesela t : actuales) {
+                if (t != null) modificadas.add(t);
+            }
+            return modificadas;
+        }
+
+        public int getIdSesion() { return idSesion; }
+    }
+}
@@ -0,0 +1,385 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Modo servidor sin interfaz gráfica: ModeloECG, MQTTDataReader, detección,
+ * alarmas y almacenamiento, sin cargar AWT ni Swing
+ *
+ * Con -ws difunde además la señal en vivo por WebSocket
+ * (ServidorWebSocketECG) a cualquier número de visores
+ *
+ * Se controla con comandos de texto desde la consola o desde un socket de
+ * administración que sólo escucha en 127.0.0.1. El mismo ejecutable actúa
+ * como cliente con -comando: envía una línea al servidor en marcha y
+ * muestra la respuesta. Cada respuesta termina con una línea "OK" o
+ * "ERROR: motivo"
+ *
+ * Uso: java -Xmx128m -cp .:sqlite-jdbc.jar ServidorECG [-broker localhost:1883]
+ *      [-topico ecg/datos] [-hz 250] [-admin 7070] [-ws 8081] [-sin-consola]
+ *      java -cp . ServidorECG [-admin 7070] -comando "estado"
+ */
+public class ServidorECG {
+    public static final int PUERTO_ADMIN_DEFECTO = 7070;
+    public static final String TOPICO_MOTOR = "esp8266/motor";
+
+    private final ModeloECG modelo;
+    private final CountDownLatch detenido = new CountDownLatch(1);
+    private MQTTDataReader mqttReader;
+    private ServerSocket socketAdmin;
+    private ServidorWebSocketECG difusion;
+    private volatile boolean cerrando;
+
+    public ServidorECG(ModeloECG modelo) {
+        this.modelo = modelo;
+        CanalAlarmas alarmas = modelo.getGestorSesiones().getAlarmas();
+        // Sin vista: la alarma queda en el registro y viaja por ecg/alarmas/{id}
+        alarmas.setOyente(alarma -> System.out.println("[ALARMA] " + alarma));
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Cualquier intento de abrir una ventana falla en lugar de buscar un display
+        System.setProperty("java.awt.headless", "true");
+        Locale.setDefault(Locale.ROOT);
+        String broker = null;
+        String topico = "ecg/datos";
+        int frecuencia = DetectorQRS.FRECUENCIA_DEFECTO;
+        int puertoAdmin = PUERTO_ADMIN_DEFECTO;
+        int puertoWs = ServidorWebSocketECG.PUERTO_DEFECTO;
+        boolean consola = true;
+        String comando = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-broker": broker = args[++i]; break;
+                case "-topico": topico = args[++i]; break;
+                case "-hz": frecuencia = Integer.parseInt(args[++i]); break;
+                case "-admin": puertoAdmin = Integer.parseInt(args[++i]); break;
+                case "-ws": puertoWs = Integer.parseInt(args[++i]); break;
+                case "-sin-consola": consola = false; break;
+                case "-comando": comando = args[++i]; break;
+                default:
+                    System.err.println("Error en argumentos: opción desconocida " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (comando != null) {
+            System.exit(enviarComando(puertoAdmin, comando));
+        }
+
+        long inicio = System.nanoTime();
+        ModeloECG modelo = new ModeloECG();
+        modelo.setFrecuenciaMuestreo(frecuencia);
+        MetricasECG.global().iniciar();
+        ServidorECG servidor = new ServidorECG(modelo);
+        Runtime.getRuntime().addShutdownHook(new Thread(servidor::cerrar, "CierreServidorECG"));
+        if (broker != null) servidor.conectar(broker, topico);
+        if (puertoAdmin > 0) servidor.abrirAdministracion(puertoAdmin);
+        if (puertoWs > 0) servidor.difusion = new ServidorWebSocketECG(modelo.getGestorSesiones(), puertoWs);
+        System.out.printf("✓ Servidor ECG en marcha en %d ms (heap usado %.1f MB)%n",
+            (System.nanoTime() - inicio) / 1_000_000,
+            (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1048576.0);
+
+        if (consola) servidor.atenderConsola();
+        // Sin consola (o con la entrada cerrada) se espera al comando detener
+        servidor.detenido.await();
+    }
+
+    // ============================================
+    // MQTT
+    // ============================================
+
+    public synchronized boolean conectar(String broker, String topico) {
+        desconectar();
+        GestorSesiones gestor = modelo.getGestorSesiones();
+        mqttReader = new MQTTDataReader(broker, topico);
+        mqttReader.setCallback(new MQTTDataReader.MQTTCallback() {
+            @Override
+            public void onConectado() {
+                System.out.println("✓ Conectado a MQTT Broker: " + broker);
+            }
+
+            @Override
+            public void onReconectando(String motivo) {
+                System.err.println("Conexión MQTT perdida (" + motivo + "), reconectando...");
+            }
+
+            @Override
+            public void onDatoRecibido(double valor) {
+                onDatoRecibido(-1, valor);
+            }
+
+            @Override
+            public void onDatoRecibido(int idPaciente, double valor) {
+                gestor.recibirMuestra(idPaciente, valor);
+            }
+
+            @Override
+            public void onTrama(int idPaciente, long secuencia, int frecuencia, int muestras) {
+                gestor.recibirTrama(idPaciente, secuencia, frecuencia);
+            }
+
+            @Override
+            public void onDesconectado() {
+                System.out.println("✓ Desconectado de MQTT");
+            }
+
+            @Override
+            public void onError(String mensaje) {
+                System.err.println("Error MQTT: " + mensaje);
+            }
+        });
+        if (!mqttReader.conectar()) {
+            mqttReader = null;
+            return false;
+        }
+        gestor.getAlarmas().setPublicador(mqttReader::publicarMensaje);
+        return true;
+    }
+
+    public synchronized void desconectar() {
+        if (mqttReader == null) return;
+        modelo.getGestorSesiones().getAlarmas().setPublicador(null);
+        mqttReader.desconectar();
+        mqttReader = null;
+    }
+
+    // ============================================
+    // COMANDOS (consola y socket de administración)
+    // ============================================
+
+    /**
+     * Ejecuta una línea de comando y escribe la respuesta, terminada en
+     * "OK" o "ERROR: motivo"
+     */
+    public synchronized void ejecutar(String linea, PrintWriter salida) {
+        String[] partes = linea.trim().split("\\s+");
+        try {
+            switch (partes[0].toLowerCase(Locale.ROOT)) {
+                case "":
+                    return;
+                case "ayuda":
+                    salida.println("estado | sesiones | pacientes | metricas");
+                    salida.println("paciente-nuevo <nombre> <edad> <estatura> | seleccionar <idPaciente>");
+                    salida.println("abrir <idPaciente> [hz] | cerrar <idSesion> | vfc <idSesion> [n]");
+                    salida.println("conectar <broker> [topico] | desconectar | motor on|off | detener");
+                    break;
+                case "estado":
+                    salida.println("MQTT: " + (mqttReader == null ? "desconectado"
+                        : mqttReader.estaConectadoBroker() ? "conectado" : "reconectando")
+                        + (mqttReader != null ? " (" + mqttReader.getTramasRecibidas() + " tramas, "
+                            + mqttReader.getTramasInvalidas() + " inválidas)" : ""));
+                    salida.println("Sesiones: " + modelo.getGestorSesiones().resumenMetricas());
+                    salida.println("Escritor: " + modelo.getDatabase().getEscritorLecturas().resumen());
+                    salida.println("Alarmas: " + modelo.getGestorSesiones().getAlarmas().resumen());
+                    salida.println("WebSocket: " + (difusion == null ? "desactivado"
+                        : "puerto " + difusion.getPuerto() + ", " + difusion.resumen()));
+                    salida.printf("Heap: %.1f MB usados de %.1f MB%n",
+                        (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1048576.0,
+                        Runtime.getRuntime().maxMemory() / 1048576.0);
+                    break;
+                case "sesiones":
+                    for (PipelineSesion p : modelo.getGestorSesiones().getSesionesActivas()) salida.println(p.resumen());
+                    break;
+                case "pacientes":
+                    for (Paciente p : modelo.obtenerTodosPacientes()) {
+                        salida.println(p.getIdPaciente() + "\t" + p.getNombre() + "\t" + p.getEdad() + "\t" + p.getEstatura());
+                    }
+                    break;
+                case "metricas":
+                    salida.print(MetricasECG.global().volcar());
+                    break;
+                case "paciente-nuevo": {
+                    if (partes.length < 4) throw new IllegalArgumentException("uso: paciente-nuevo <nombre> <edad> <estatura>");
+                    String nombre = String.join(" ", Arrays.copyOfRange(partes, 1, partes.length - 2));
+                    int id = modelo.getDatabase().insertarPaciente(nombre, Integer.parseInt(partes[partes.length - 2]),
+                        Double.parseDouble(partes[partes.length - 1]));
+                    if (id <= 0) throw new IllegalStateException("no se pudo crear el paciente");
+                    salida.println("Paciente " + id);
+                    break;
+                }
+                case "seleccionar": {
+                    Paciente p = modelo.obtenerPaciente(entero(partes, 1));
+                    if (p == null) throw new IllegalArgumentException("paciente inexistente");
+                    modelo.setPacienteActual(p);
+                    salida.println("Sesión por defecto: " + modelo.getPipelineActual().getIdSesion());
+                    break;
+                }
+                case "abrir": {
+                    int idPaciente = entero(partes, 1);
+                    if (modelo.obtenerPaciente(idPaciente) == null) throw new IllegalArgumentException("paciente inexistente");
+                    int hz = partes.length > 2 ? Integer.parseInt(partes[2]) : modelo.getFrecuenciaMuestreo();
+                    PipelineSesion p = modelo.getGestorSesiones().abrirSesion(idPaciente, "Sesión abierta por administración", hz);
+                    if (p == null) throw new IllegalStateException("no se pudo abrir la sesión");
+                    salida.println("Sesión " + p.getIdSesion());
+                    break;
+                }
+                case "cerrar":
+                    if (modelo.getGestorSesiones().buscarPorSesion(entero(partes, 1)) == null) {
+                        throw new IllegalArgumentException("la sesión no está activa");
+                    }
+                    modelo.getGestorSesiones().cerrarSesion(entero(partes, 1));
+                    break;
+                case "vfc": {
+                    int n = partes.length > 2 ? Integer.parseInt(partes[2]) : 5;
+                    List<MotorVFC.Resultado> calculos = modelo.getDatabase().obtenerCalculosVFC(entero(partes, 1), n);
+                    if (calculos.isEmpty()) salida.println("Sin cálculos de VFC (hacen falta " + MotorVFC.INTERVALO_S + " s con latidos)");
+                    for (MotorVFC.Resultado r : calculos) {
+                        salida.println(LocalDateTime.ofInstant(Instant.ofEpochMilli(r.getInstanteMs()), ZoneId.systemDefault())
+                            .truncatedTo(ChronoUnit.SECONDS) + "\t" + r);
+                    }
+                    break;
+                }
+                case "conectar":
+                    if (!conectar(texto(partes, 1), partes.length > 2 ? partes[2] : "ecg/datos")) {
+                        throw new IllegalStateException("no se pudo conectar");
+                    }
+                    break;
+                case "desconectar":
+                    desconectar();
+                    break;
+                case "motor": {
+                    String orden = texto(partes, 1).toLowerCase(Locale.ROOT);
+                    if (!orden.equals("on") && !orden.equals("off")) throw new IllegalArgumentException("uso: motor on|off");
+                    if (mqttReader == null) throw new IllegalStateException("sin conexión MQTT");
+                    modelo.registrarComandoMotor(orden);
+                    mqttReader.publicarMensaje(TOPICO_MOTOR, orden);
+                    break;
+                }
+                case "detener":
+                    salida.println("OK");
+                    salida.flush();
+                    // El cierre corre en el gancho de apagado, fuera de este monitor
+                    new Thread(() -> System.exit(0), "DetenerServidorECG").start();
+                    return;
+                default:
+                    throw new IllegalArgumentException("comando desconocido: " + partes[0] + " (ver ayuda)");
+            }
+            salida.println("OK");
+        } catch (RuntimeException e) {
+            salida.println("ERROR: " + e.getMessage());
+        } finally {
+            salida.flush();
+        }
+    }
+
+    private static int entero(String[] partes, int i) {
+        return Integer.parseInt(texto(partes, i));
+    }
+
+    private static String texto(String[] partes, int i) {
+        if (partes.length <= i) throw new IllegalArgumentException("falta un argumento (ver ayuda)");
+        return partes[i];
+    }
+
+    private void atenderConsola() throws IOException {
+        BufferedReader entrada = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        PrintWriter salida = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), true);
+        String linea;
+        while (!cerrando && (linea = entrada.readLine()) != null) {
+            ejecutar(linea, salida);
+        }
+    }
+
+    // ============================================
+    // SOCKET DE ADMINISTRACIÓN
+    // ============================================
+
+    /**
+     * Escucha sólo en la interfaz local: quien llega ya tiene acceso a la máquina
+     */
+    public void abrirAdministracion(int puerto) throws IOException {
+        socketAdmin = new ServerSocket(puerto, 8, InetAddress.getLoopbackAddress());
+        Thread aceptador = new Thread(() -> {
+            while (!socketAdmin.isClosed()) {
+                try {
+                    Socket cliente = socketAdmin.accept();
+                    Thread t = new Thread(() -> atenderAdministracion(cliente), "AdminECG-" + cliente.getPort());
+                    t.setDaemon(true);
+                    t.start();
+                } catch (IOException e) {
+                    if (!socketAdmin.isClosed()) System.err.println("Error en administración: " + e.getMessage());
+                }
+            }
+        }, "AdminECG");
+        aceptador.setDaemon(true);
+        aceptador.start();
+        System.out.println("✓ Administración en 127.0.0.1:" + puerto);
+    }
+
+    private void atenderAdministracion(Socket cliente) {
+        try (Socket s = cliente;
+             BufferedReader entrada = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter salida = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String linea;
+            while ((linea = entrada.readLine()) != null) {
+                if (linea.isBlank()) continue;
+                ejecutar(linea, salida);
+            }
+        } catch (IOException e) {
+            System.err.println("Error en conexión de administración: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Modo cliente: envía el comando al servidor local e imprime la respuesta
+     * @return 0 si terminó en OK
+     */
+    static int enviarComando(int puerto, String comando) {
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), puerto);
+             BufferedReader entrada = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter salida = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            salida.println(comando);
+            String linea;
+            while ((linea = entrada.readLine()) != null) {
+                if (linea.equals("OK")) return 0;
+                if (linea.startsWith("ERROR: ")) {
+                    System.err.println(linea);
+                    return 1;
+                }
+                System.out.println(linea);
+            }
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Error conectando al servidor en el puerto " + puerto + ": " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // ============================================
+    // CIERRE
+    // ============================================
+
+    /**
+     * Gancho de apagado: cierra administración, difusión, MQTT, sesiones y base
+     */
+    private void cerrar() {
+        cerrando = true;
+        System.out.println("\n✓ Cerrando servidor ECG...");
+        try {
+            if (socketAdmin != null) socketAdmin.close();
+        } catch (IOException e) {
+            System.err.println("Error cerrando administración: " + e.getMessage());
+        }
+        if (difusion != null) difusion.cerrar();
+        synchronized (this) {
+            desconectar();
+        }
+        modelo.cerrarConexion();
+        System.out.print(MetricasECG.global().volcar());
+        detenido.countDown();
+    }
+}
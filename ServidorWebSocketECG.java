@@ -0,0 +1,895 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Difusión de la señal en vivo a visores remotos por WebSocket (RFC 6455)
+ *
+ * Cada TICK_MS un hilo lee el búfer de señal de las sesiones que tienen
+ * suscriptores (como otro lector más: no toca la ingesta), diezma la señal,
+ * la codifica una sola vez en un cuadro WebSocket y encola el mismo cuadro
+ * a todos los suscriptores. Un único hilo NIO atiende las conexiones. Cada
+ * cliente admite hasta MAX_SENALES_EN_COLA cuadros de señal pendientes; si
+ * no los consume, los cuadros nuevos se descartan para él y los demás no se
+ * enteran. Los eventos y respuestas no se descartan: un cliente que acumula
+ * MAX_MENSAJES_EN_COLA se desconecta
+ *
+ * Protocolo (ruta /ecg; /ecg?sesion=N suscribe al conectar):
+ *   cliente → servidor, texto: "suscribir N", "desuscribir N", "sesiones"
+ *   servidor → cliente, texto JSON: sesiones, suscrito, evento, fin, error
+ *   servidor → cliente, binario (big-endian):
+ *     0  u8   tipo MENSAJE_SENAL
+ *     1  u8   versión (1)
+ *     2  u16  BPM (0 si aún no hay)
+ *     4  i32  id de sesión
+ *     8  i64  índice de la primera muestra (diezmada) del cuadro
+ *     16 u16  frecuencia de la sesión (Hz)
+ *     18 u16  factor de diezmado
+ *     20 u16  muestras
+ *     22 f32  escala
+ *     26 muestras cuantizadas con la escala, como diferencias sucesivas en
+ *        zigzag + varint (la primera, respecto de 0)
+ * Un salto en el índice indica cuadros descartados para ese cliente
+ */
+public class ServidorWebSocketECG {
+    public static final int PUERTO_DEFECTO = 8081;
+    public static final String RUTA = "/ecg";
+    public static final int HZ_SALIDA_DEFECTO = 125;
+    public static final long TICK_MS = 40;
+    public static final byte MENSAJE_SENAL = 1;
+    public static final float ESCALA_SENAL = 0.001f;
+    static final int CABECERA_SENAL = 26;
+    private static final String GUID_WEBSOCKET = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_SENALES_EN_COLA = 4;
+    private static final int MAX_MENSAJES_EN_COLA = 256;
+    private static final int MAX_CABECERA_HTTP = 8192;
+    private static final int MAX_MENSAJE_CLIENTE = 4096;
+    // Un búfer de envío grande esconde al visor lento: vería la señal con segundos de atraso
+    private static final int BUFER_ENVIO = 8 * 1024;
+    private static final int OPCODE_TEXTO = 0x1;
+    private static final int OPCODE_BINARIO = 0x2;
+    private static final int OPCODE_CIERRE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private static final Histograma TICK = MetricasECG.global().latencia("ws.tick");
+    private static final MetricasECG.Contador CUADROS = MetricasECG.global().contador("ws.cuadros_codificados");
+    private static final MetricasECG.Contador ENVIADOS = MetricasECG.global().contador("ws.mensajes_enviados");
+    private static final MetricasECG.Contador DESCARTADOS = MetricasECG.global().contador("ws.cuadros_descartados");
+
+    private final GestorSesiones gestor;
+    private final int hzSalida;
+    private final ServerSocketChannel servidor;
+    private final Selector selector;
+    private final Thread hiloRed;
+    private final ScheduledExecutorService ticker;
+    private final Set<Cliente> clientes = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean hayEscrituras = new AtomicBoolean();
+    private volatile boolean activo = true;
+
+    // Estado del hilo del tick
+    private final Map<Integer, Difusion> difusiones = new HashMap<>();
+    private final double[] diezmadas = new double[PipelineSesion.VENTANA_SENAL];
+    private byte[] codificacion = new byte[CABECERA_SENAL + PipelineSesion.VENTANA_SENAL * 10];
+
+    public ServidorWebSocketECG(GestorSesiones gestor, int puerto) throws IOException {
+        this(gestor, puerto, HZ_SALIDA_DEFECTO);
+    }
+
+    /**
+     * @param hzSalida frecuencia máxima de la señal enviada; se diezma por un factor entero
+     */
+    public ServidorWebSocketECG(GestorSesiones gestor, int puerto, int hzSalida) throws IOException {
+        this.gestor = gestor;
+        this.hzSalida = Math.max(1, hzSalida);
+        this.selector = Selector.open();
+        this.servidor = ServerSocketChannel.open();
+        servidor.bind(new InetSocketAddress(puerto));
+        servidor.configureBlocking(false);
+        servidor.register(selector, SelectionKey.OP_ACCEPT);
+        hiloRed = new Thread(this::ejecutarRed, "WebSocketECG");
+        hiloRed.setDaemon(true);
+        hiloRed.start();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "WebSocketECG-tick");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        MetricasECG.global().medidor("ws.clientes", clientes::size);
+        System.out.println("✓ Difusión WebSocket en el puerto " + getPuerto() + RUTA);
+    }
+
+    public int getPuerto() {
+        return servidor.socket().getLocalPort();
+    }
+
+    // ============================================
+    // CLIENTE CONECTADO
+    // ============================================
+
+    private final class Cliente {
+        final SocketChannel canal;
+        final SelectionKey clave;
+        final ByteBuffer lectura = ByteBuffer.allocate(MAX_CABECERA_HTTP);
+        final Set<Integer> suscripciones = ConcurrentHashMap.newKeySet();
+        final String direccion;
+        // La escribe el hilo de red y la lee el tick
+        volatile boolean abierto;
+        // Cola de salida (bajo el monitor del cliente): la llena el tick, la vacía el hilo de red
+        private final ArrayDeque<ByteBuffer> salida = new ArrayDeque<>();
+        private int senalesEnCola;
+        private boolean cerrarTrasEnviar;
+        private volatile long descartados;
+
+        Cliente(SocketChannel canal, SelectionKey clave) throws IOException {
+            this.canal = canal;
+            this.clave = clave;
+            this.direccion = String.valueOf(canal.getRemoteAddress());
+        }
+
+        /**
+         * Encola un cuadro de señal compartido
+         * @return false si el cliente va atrasado y el cuadro se descartó
+         */
+        synchronized boolean encolarSenal(ByteBuffer cuadro) {
+            if (cerrarTrasEnviar) return false;
+            if (senalesEnCola >= MAX_SENALES_EN_COLA) {
+                descartados++;
+                DESCARTADOS.incrementar();
+                return false;
+            }
+            // duplicate(): posición propia sobre el mismo contenido
+            salida.add(cuadro.duplicate());
+            senalesEnCola++;
+            return true;
+        }
+
+        synchronized void encolar(ByteBuffer mensaje) {
+            if (cerrarTrasEnviar) return;
+            if (salida.size() >= MAX_MENSAJES_EN_COLA) {
+                System.err.println("Visor WebSocket " + direccion + " desconectado: no consume sus mensajes");
+                salida.clear();
+                cerrarTrasEnviar = true;
+                salida.add(cuadro(OPCODE_CIERRE, codigoCierre(1008, "lento")));
+                return;
+            }
+            salida.add(mensaje.duplicate());
+        }
+
+        synchronized void cerrarTrasEnviar(ByteBuffer cierre) {
+            if (cerrarTrasEnviar) return;
+            salida.add(cierre);
+            cerrarTrasEnviar = true;
+        }
+
+        /**
+         * Escribe lo posible sin bloquear (hilo de red)
+         * @return true si el cliente debe cerrarse
+         */
+        synchronized boolean vaciar() throws IOException {
+            ByteBuffer b;
+            while ((b = salida.peek()) != null) {
+                canal.write(b);
+                if (b.hasRemaining()) {
+                    clave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return false;
+                }
+                salida.poll();
+                if (esSenal(b)) senalesEnCola--;
+                ENVIADOS.incrementar();
+            }
+            clave.interestOps(SelectionKey.OP_READ);
+            return cerrarTrasEnviar;
+        }
+    }
+
+    private static boolean esSenal(ByteBuffer cuadro) {
+        return cuadro.capacity() > 0 && cuadro.get(0) == (byte) (0x80 | OPCODE_BINARIO);
+    }
+
+    // ============================================
+    // HILO DE RED
+    // ============================================
+
+    private void ejecutarRed() {
+        while (activo) {
+            try {
+                selector.select();
+                if (hayEscrituras.getAndSet(false)) {
+                    for (Cliente c : clientes) {
+                        if (c.abierto) vaciarOCerrar(c);
+                    }
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) continue;
+                    if (k.isAcceptable()) {
+                        aceptar();
+                        continue;
+                    }
+                    Cliente c = (Cliente) k.attachment();
+                    if (k.isReadable()) leer(c);
+                    if (k.isValid() && k.isWritable()) vaciarOCerrar(c);
+                }
+            } catch (IOException e) {
+                if (activo) System.err.println("Error en difusión WebSocket: " + e.getMessage());
+            }
+        }
+        for (Cliente c : clientes) cerrarCliente(c);
+    }
+
+    private void aceptar() throws IOException {
+        SocketChannel canal = servidor.accept();
+        if (canal == null) return;
+        canal.configureBlocking(false);
+        canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        canal.setOption(StandardSocketOptions.SO_SNDBUF, BUFER_ENVIO);
+        SelectionKey clave = canal.register(selector, SelectionKey.OP_READ);
+        Cliente c = new Cliente(canal, clave);
+        clave.attach(c);
+        clientes.add(c);
+    }
+
+    private void leer(Cliente c) {
+        try {
+            int n = c.canal.read(c.lectura);
+            if (n < 0) {
+                cerrarCliente(c);
+                return;
+            }
+            if (!c.abierto) {
+                leerHandshake(c);
+            }
+            if (c.abierto) leerMensajes(c);
+            vaciarOCerrar(c);
+        } catch (IOException e) {
+            cerrarCliente(c);
+        }
+    }
+
+    private void vaciarOCerrar(Cliente c) {
+        try {
+            if (c.vaciar()) cerrarCliente(c);
+        } catch (IOException | RuntimeException e) {
+            cerrarCliente(c);
+        }
+    }
+
+    private void cerrarCliente(Cliente c) {
+        clientes.remove(c);
+        c.clave.cancel();
+        try {
+            c.canal.close();
+        } catch (IOException e) {
+            // ya estaba cerrado
+        }
+    }
+
+    // ============================================
+    // HANDSHAKE HTTP
+    // ============================================
+
+    private void leerHandshake(Cliente c) {
+        ByteBuffer b = c.lectura;
+        // ISO-8859-1: un carácter por byte, así los índices del texto son posiciones del búfer
+        String texto = new String(b.array(), 0, b.position(), StandardCharsets.ISO_8859_1);
+        int fin = texto.indexOf("\r\n\r\n");
+        if (fin < 0) {
+            if (!b.hasRemaining()) rechazar(c, "431 Request Header Fields Too Large");
+            return;
+        }
+        String[] lineas = texto.substring(0, fin).split("\r\n");
+        String[] peticion = lineas[0].split(" ");
+        Map<String, String> cabeceras = new HashMap<>();
+        for (int i = 1; i < lineas.length; i++) {
+            int dosPuntos = lineas[i].indexOf(':');
+            if (dosPuntos > 0) {
+                cabeceras.put(lineas[i].substring(0, dosPuntos).trim().toLowerCase(Locale.ROOT),
+                              lineas[i].substring(dosPuntos + 1).trim());
+            }
+        }
+        String ruta = peticion.length > 1 ? peticion[1] : "";
+        int consulta = ruta.indexOf('?');
+        String camino = consulta >= 0 ? ruta.substring(0, consulta) : ruta;
+        if (!"GET".equals(peticion[0]) || !RUTA.equals(camino)) {
+            rechazar(c, "404 Not Found");
+            return;
+        }
+        String clave = cabeceras.get("sec-websocket-key");
+        if (clave == null || !cabeceras.getOrDefault("upgrade", "").toLowerCase(Locale.ROOT).contains("websocket")
+                || !"13".equals(cabeceras.get("sec-websocket-version"))) {
+            rechazar(c, "400 Bad Request\r\nSec-WebSocket-Version: 13");
+            return;
+        }
+        String respuesta = "HTTP/1.1 101 Switching Protocols\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + aceptacion(clave) + "\r\n\r\n";
+        c.encolar(ByteBuffer.wrap(respuesta.getBytes(StandardCharsets.ISO_8859_1)));
+        c.abierto = true;
+        // Lo que siga a la cabecera ya son cuadros WebSocket
+        b.flip();
+        b.position(fin + 4);
+        b.compact();
+
+        c.encolar(texto(listaSesiones()));
+        if (consulta >= 0) {
+            for (String parametro : ruta.substring(consulta + 1).split("&")) {
+                if (parametro.startsWith("sesion=")) comando(c, "suscribir " + parametro.substring(7));
+            }
+        }
+    }
+
+    static String aceptacion(String clave) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1")
+                .digest((clave + GUID_WEBSOCKET).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // Todo JRE incluye SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void rechazar(Cliente c, String estado) {
+        c.abierto = false;
+        String respuesta = "HTTP/1.1 " + estado + "\r\nConnection: close\r\nContent-Length: 0\r\n\r\n";
+        c.cerrarTrasEnviar(ByteBuffer.wrap(respuesta.getBytes(StandardCharsets.ISO_8859_1)));
+        vaciarOCerrar(c);
+    }
+
+    // ============================================
+    // CUADROS DEL CLIENTE
+    // ============================================
+
+    private void leerMensajes(Cliente c) {
+        ByteBuffer b = c.lectura;
+        b.flip();
+        try {
+            while (b.remaining() >= 2) {
+                int inicio = b.position();
+                int b0 = b.get(inicio) & 0xFF;
+                int b1 = b.get(inicio + 1) & 0xFF;
+                int largo = b1 & 0x7F;
+                int pos = inicio + 2;
+                if (largo == 126) {
+                    if (b.limit() - pos < 2) break;
+                    largo = b.getShort(pos) & 0xFFFF;
+                    pos += 2;
+                } else if (largo == 127) {
+                    largo = Integer.MAX_VALUE;
+                }
+                // RFC 6455: los cuadros del cliente siempre van enmascarados
+                if ((b1 & 0x80) == 0 || largo > MAX_MENSAJE_CLIENTE) {
+                    c.cerrarTrasEnviar(cuadro(OPCODE_CIERRE, codigoCierre((b1 & 0x80) == 0 ? 1002 : 1009, "")));
+                    return;
+                }
+                if (b.limit() - pos < 4 + largo) break;
+                byte[] datos = new byte[largo];
+                for (int i = 0; i < largo; i++) {
+                    datos[i] = (byte) (b.get(pos + 4 + i) ^ b.get(pos + (i & 3)));
+                }
+                b.position(pos + 4 + largo);
+                switch (b0 & 0x0F) {
+                    case OPCODE_TEXTO:
+                        comando(c, new String(datos, StandardCharsets.UTF_8));
+                        break;
+                    case OPCODE_PING:
+                        c.encolar(cuadro(OPCODE_PONG, datos));
+                        break;
+                    case OPCODE_CIERRE:
+                        c.cerrarTrasEnviar(cuadro(OPCODE_CIERRE, datos.length >= 2 ? Arrays.copyOf(datos, 2) : datos));
+                        return;
+                    default:
+                        // Binarios, pong y continuaciones no se usan
+                        break;
+                }
+            }
+        } finally {
+            b.compact();
+        }
+    }
+
+    private void comando(Cliente c, String texto) {
+        String[] partes = texto.trim().split("\\s+");
+        try {
+            switch (partes[0]) {
+                case "sesiones":
+                    c.encolar(texto(listaSesiones()));
+                    break;
+                case "suscribir": {
+                    int idSesion = Integer.parseInt(partes[1]);
+                    PipelineSesion p = gestor.buscarPorSesion(idSesion);
+                    if (p == null) {
+                        c.encolar(texto("{\"tipo\":\"error\",\"mensaje\":\"sesión " + idSesion + " inactiva\"}"));
+                        return;
+                    }
+                    c.suscripciones.add(idSesion);
+                    c.encolar(texto("{\"tipo\":\"suscrito\",\"sesion\":" + idSesion + ",\"paciente\":" + p.getIdPaciente()
+                        + ",\"frecuencia\":" + p.getFrecuencia() + ",\"factor\":" + factorDiezmado(p.getFrecuencia()) + "}"));
+                    break;
+                }
+                case "desuscribir":
+                    c.suscripciones.remove(Integer.parseInt(partes[1]));
+                    break;
+                default:
+                    c.encolar(texto("{\"tipo\":\"error\",\"mensaje\":\"comando desconocido\"}"));
+            }
+        } catch (RuntimeException e) {
+            c.encolar(texto("{\"tipo\":\"error\",\"mensaje\":\"comando inválido\"}"));
+        }
+    }
+
+    private String listaSesiones() {
+        StringBuilder sb = new StringBuilder("{\"tipo\":\"sesiones\",\"sesiones\":[");
+        boolean primera = true;
+        for (PipelineSesion p : gestor.getSesionesActivas()) {
+            if (!primera) sb.append(',');
+            primera = false;
+            sb.append("{\"sesion\":").append(p.getIdSesion())
+              .append(",\"paciente\":").append(p.getIdPaciente())
+              .append(",\"frecuencia\":").append(p.getFrecuencia())
+              .append(",\"bpm\":").append(p.getUltimoBPM()).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    // ============================================
+    // TICK: una codificación por sesión, un cuadro para todos
+    // ============================================
+
+    /**
+     * Lectura y diezmado de una sesión difundida (sólo hilo del tick)
+     */
+    private static final class Difusion {
+        final BufferCircularECG.Instantanea instantanea = new BufferCircularECG.Instantanea(PipelineSesion.VENTANA_SENAL);
+        final int factor;
+        long leidas;
+        long emitidas;
+        long eventosVistos = -1;
+        int enGrupo;
+        double elegida;
+        double ultimaEmitida;
+
+        Difusion(int factor) {
+            this.factor = factor;
+        }
+    }
+
+    private int factorDiezmado(int frecuencia) {
+        return Math.max(1, (frecuencia + hzSalida - 1) / hzSalida);
+    }
+
+    private void tick() {
+        long inicio = System.nanoTime();
+        try {
+            Map<Integer, List<Cliente>> porSesion = new HashMap<>();
+            for (Cliente c : clientes) {
+                if (!c.abierto) continue;
+                for (Integer idSesion : c.suscripciones) {
+                    porSesion.computeIfAbsent(idSesion, k -> new ArrayList<>()).add(c);
+                }
+            }
+            difusiones.keySet().retainAll(porSesion.keySet());
+            boolean encolado = false;
+            for (Map.Entry<Integer, List<Cliente>> e : porSesion.entrySet()) {
+                encolado |= difundir(e.getKey(), e.getValue());
+            }
+            if (encolado) {
+                hayEscrituras.set(true);
+                selector.wakeup();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error en tick WebSocket: " + e.getMessage());
+        }
+        TICK.registrarDesde(inicio);
+    }
+
+    private boolean difundir(int idSesion, List<Cliente> suscriptores) {
+        PipelineSesion p = gestor.buscarPorSesion(idSesion);
+        if (p == null) {
+            ByteBuffer fin = texto("{\"tipo\":\"fin\",\"sesion\":" + idSesion + "}");
+            for (Cliente c : suscriptores) {
+                c.suscripciones.remove(idSesion);
+                c.encolar(fin);
+            }
+            difusiones.remove(idSesion);
+            return true;
+        }
+        Difusion d = difusiones.computeIfAbsent(idSesion, k -> new Difusion(factorDiezmado(p.getFrecuencia())));
+        boolean encolado = false;
+
+        ByteBuffer senal = codificarSenal(p, d);
+        if (senal != null) {
+            CUADROS.incrementar();
+            for (Cliente c : suscriptores) encolado |= c.encolarSenal(senal);
+        }
+
+        // Sólo los eventos posteriores a la primera difusión
+        long total = p.getEventos();
+        if (d.eventosVistos < 0) d.eventosVistos = total;
+        for (; d.eventosVistos < total; d.eventosVistos++) {
+            MotorEventos.Evento ev = p.getEventoReciente(d.eventosVistos);
+            if (ev == null) continue;
+            ByteBuffer mensaje = texto(eventoJson(ev, p.getIdPaciente()));
+            for (Cliente c : suscriptores) c.encolar(mensaje);
+            encolado = true;
+        }
+        return encolado;
+    }
+
+    /**
+     * Lee las muestras nuevas del búfer, las diezma conservando el pico de
+     * cada grupo y arma el cuadro binario
+     * @return null si no hay muestras nuevas completas
+     */
+    private ByteBuffer codificarSenal(PipelineSesion p, Difusion d) {
+        BufferCircularECG.Instantanea inst = d.instantanea;
+        p.getBuffer().leerDesde(d.leidas, inst);
+        if (inst.getLongitud() == 0) return null;
+        long perdidas = inst.getSecuenciaInicio() - d.leidas;
+        if (perdidas > 0 && d.leidas > 0) {
+            // El tick se atrasó más que la ventana del búfer: el índice salta
+            d.emitidas += perdidas / d.factor;
+            d.enGrupo = 0;
+        }
+        d.leidas = inst.getSecuenciaFin();
+
+        int n = 0;
+        long primera = d.emitidas;
+        double[] datos = inst.getDatos();
+        for (int i = 0; i < inst.getLongitud(); i++) {
+            double v = datos[i];
+            // De cada grupo se queda la muestra más alejada de la última emitida (conserva las R)
+            if (d.enGrupo == 0 || Math.abs(v - d.ultimaEmitida) > Math.abs(d.elegida - d.ultimaEmitida)) d.elegida = v;
+            if (++d.enGrupo == d.factor) {
+                diezmadas[n++] = d.elegida;
+                d.ultimaEmitida = d.elegida;
+                d.enGrupo = 0;
+            }
+        }
+        if (n == 0) return null;
+        d.emitidas += n;
+
+        ByteBuffer cabecera = ByteBuffer.wrap(codificacion);
+        cabecera.put(MENSAJE_SENAL)
+                .put((byte) 1)
+                .putShort((short) Math.max(0, p.getUltimoBPM()))
+                .putInt(p.getIdSesion())
+                .putLong(primera)
+                .putShort((short) p.getFrecuencia())
+                .putShort((short) d.factor)
+                .putShort((short) n)
+                .putFloat(ESCALA_SENAL);
+        int pos = CABECERA_SENAL;
+        long anterior = 0;
+        for (int i = 0; i < n; i++) {
+            long q = Math.round(diezmadas[i] / ESCALA_SENAL);
+            pos = BloqueECG.escribirVarint(codificacion, pos, BloqueECG.zigzag(q - anterior));
+            anterior = q;
+        }
+        return cuadro(OPCODE_BINARIO, codificacion, pos);
+    }
+
+    private static String eventoJson(MotorEventos.Evento e, int idPaciente) {
+        return "{\"tipo\":\"evento\",\"sesion\":" + e.getIdSesion()
+            + ",\"paciente\":" + idPaciente
+            + ",\"evento\":\"" + escapar(e.getTipo())
+            + "\",\"instante_ms\":" + e.getInstanteMs()
+            + ",\"descripcion\":\"" + escapar(e.getDescripcion()) + "\"}";
+    }
+
+    private static String escapar(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // ============================================
+    // CUADROS DEL SERVIDOR (sin máscara)
+    // ============================================
+
+    private static ByteBuffer texto(String s) {
+        return cuadro(OPCODE_TEXTO, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer cuadro(int opcode, byte[] datos) {
+        return cuadro(opcode, datos, datos.length);
+    }
+
+    static ByteBuffer cuadro(int opcode, byte[] datos, int largo) {
+        int cabecera = largo < 126 ? 2 : largo <= 0xFFFF ? 4 : 10;
+        ByteBuffer b = ByteBuffer.allocate(cabecera + largo);
+        b.put((byte) (0x80 | opcode));
+        if (largo < 126) {
+            b.put((byte) largo);
+        } else if (largo <= 0xFFFF) {
+            b.put((byte) 126).putShort((short) largo);
+        } else {
+            b.put((byte) 127).putLong(largo);
+        }
+        b.put(datos, 0, largo);
+        b.flip();
+        return b;
+    }
+
+    private static byte[] codigoCierre(int codigo, String motivo) {
+        byte[] texto = motivo.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = ByteBuffer.allocate(2 + texto.length);
+        b.putShort((short) codigo).put(texto);
+        return b.array();
+    }
+
+    // ============================================
+    // CIERRE Y CONSULTAS
+    // ============================================
+
+    public void cerrar() {
+        activo = false;
+        ticker.shutdownNow();
+        selector.wakeup();
+        try {
+            hiloRed.join(2000);
+            servidor.close();
+            selector.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error cerrando difusión WebSocket: " + e.getMessage());
+        }
+        MetricasECG.global().quitarMedidor("ws.clientes");
+        System.out.println("✓ Difusión WebSocket detenida: " + resumen());
+    }
+
+    public int getClientes() { return clientes.size(); }
+
+    public String resumen() {
+        long descartados = 0;
+        for (Cliente c : clientes) descartados += c.descartados;
+        return clientes.size() + " visores, " + CUADROS.get() + " cuadros codificados, " + ENVIADOS.get()
+            + " mensajes enviados, " + DESCARTADOS.get() + " cuadros descartados (" + descartados + " en visores actuales)";
+    }
+
+    // ============================================
+    // CLIENTE DE PRUEBA (bloqueante, mismo proceso o línea de comandos)
+    // ============================================
+
+    /**
+     * Cliente WebSocket mínimo para probar la difusión sin navegador
+     */
+    public static final class ClienteLocal implements Closeable {
+        private final Socket socket;
+        private final InputStream entrada;
+        private final OutputStream salida;
+
+        public ClienteLocal(String host, int puerto, String ruta) throws IOException {
+            socket = new Socket(host, puerto);
+            socket.setTcpNoDelay(true);
+            entrada = socket.getInputStream();
+            salida = socket.getOutputStream();
+            byte[] nonce = new byte[16];
+            ThreadLocalRandom.current().nextBytes(nonce);
+            String clave = Base64.getEncoder().encodeToString(nonce);
+            String peticion = "GET " + ruta + " HTTP/1.1\r\n"
+                + "Host: " + host + ":" + puerto + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + clave + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n";
+            salida.write(peticion.getBytes(StandardCharsets.ISO_8859_1));
+            salida.flush();
+            StringBuilder cabecera = new StringBuilder();
+            while (!cabecera.toString().endsWith("\r\n\r\n")) {
+                int c = entrada.read();
+                if (c < 0 || cabecera.length() > MAX_CABECERA_HTTP) throw new EOFException("handshake incompleto");
+                cabecera.append((char) c);
+            }
+            String respuesta = cabecera.toString();
+            if (!respuesta.startsWith("HTTP/1.1 101") || !respuesta.contains(aceptacion(clave))) {
+                socket.close();
+                throw new IOException("handshake rechazado: " + respuesta.lines().findFirst().orElse(""));
+            }
+        }
+
+        /** Envía un comando de texto (enmascarado, como exige el protocolo) */
+        public synchronized void enviarTexto(String texto) throws IOException {
+            byte[] datos = texto.getBytes(StandardCharsets.UTF_8);
+            if (datos.length > MAX_MENSAJE_CLIENTE) throw new IllegalArgumentException("mensaje demasiado largo");
+            byte[] mascara = new byte[4];
+            ThreadLocalRandom.current().nextBytes(mascara);
+            ByteBuffer b = ByteBuffer.allocate(8 + datos.length);
+            b.put((byte) (0x80 | OPCODE_TEXTO));
+            if (datos.length < 126) {
+                b.put((byte) (0x80 | datos.length));
+            } else {
+                b.put((byte) (0x80 | 126)).putShort((short) datos.length);
+            }
+            b.put(mascara);
+            for (int i = 0; i < datos.length; i++) b.put((byte) (datos[i] ^ mascara[i & 3]));
+            salida.write(b.array(), 0, b.position());
+            salida.flush();
+        }
+
+        /**
+         * Espera el siguiente mensaje del servidor. El tiempo límite sólo cuenta
+         * hasta el primer byte; el resto de la trama se lee completo para no
+         * perder la sincronía del flujo
+         * @return null si se agotó el tiempo o el servidor cerró la conexión
+         */
+        public Mensaje recibir(long timeoutMs) throws IOException {
+            socket.setSoTimeout((int) Math.max(1, timeoutMs));
+            int b0;
+            try {
+                b0 = leerByte();
+            } catch (SocketTimeoutException e) {
+                return null;
+            } catch (EOFException e) {
+                return null;
+            }
+            socket.setSoTimeout(0);
+            try {
+                int largo = leerByte() & 0x7F;
+                if (largo == 126) {
+                    largo = (leerByte() << 8) | leerByte();
+                } else if (largo == 127) {
+                    throw new IOException("mensaje demasiado largo");
+                }
+                byte[] datos = entrada.readNBytes(largo);
+                if (datos.length < largo) throw new EOFException();
+                if ((b0 & 0x0F) == OPCODE_CIERRE) return null;
+                return new Mensaje((b0 & 0x0F) == OPCODE_BINARIO, datos);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        private int leerByte() throws IOException {
+            int b = entrada.read();
+            if (b < 0) throw new EOFException();
+            return b;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Mensaje recibido por ClienteLocal; los binarios se decodifican como señal
+     */
+    public static final class Mensaje {
+        private final boolean binario;
+        private final byte[] datos;
+
+        Mensaje(boolean binario, byte[] datos) {
+            this.binario = binario;
+            this.datos = datos;
+        }
+
+        public boolean esSenal() { return binario && datos.length >= CABECERA_SENAL && datos[0] == MENSAJE_SENAL; }
+        public String getTexto() { return binario ? null : new String(datos, StandardCharsets.UTF_8); }
+        public byte[] getDatos() { return datos; }
+        public int getBytes() { return datos.length; }
+        public int getBPM() { return ByteBuffer.wrap(datos).getShort(2) & 0xFFFF; }
+        public int getIdSesion() { return ByteBuffer.wrap(datos).getInt(4); }
+        public long getPrimeraMuestra() { return ByteBuffer.wrap(datos).getLong(8); }
+        public int getFrecuencia() { return ByteBuffer.wrap(datos).getShort(16) & 0xFFFF; }
+        public int getFactor() { return ByteBuffer.wrap(datos).getShort(18) & 0xFFFF; }
+        public int getNumMuestras() { return ByteBuffer.wrap(datos).getShort(20) & 0xFFFF; }
+
+        /** Reconstruye las muestras diezmadas del cuadro de señal */
+        public double[] getMuestras() {
+            float escala = ByteBuffer.wrap(datos).getFloat(22);
+            double[] muestras = new double[getNumMuestras()];
+            int pos = CABECERA_SENAL;
+            long q = 0;
+            for (int i = 0; i < muestras.length; i++) {
+                long v = 0;
+                int desplazamiento = 0;
+                byte b;
+                do {
+                    b = datos[pos++];
+                    v |= (long) (b & 0x7F) << desplazamiento;
+                    desplazamiento += 7;
+                } while ((b & 0x80) != 0);
+                q += (v >>> 1) ^ -(v & 1);
+                muestras[i] = q * (double) escala;
+            }
+            return muestras;
+        }
+    }
+
+    /**
+     * Visor de consola: se suscribe y resume por segundo lo recibido
+     *
+     * Uso: java -cp . ServidorWebSocketECG [-host localhost] [-puerto 8081]
+     *      -sesion N [-segundos 0] [-lento ms]
+     * -lento simula un visor que tarda en leer cada mensaje
+     */
+    public static void main(String[] args) throws Exception {
+        Locale.setDefault(Locale.ROOT);
+        String host = "localhost";
+        int puerto = PUERTO_DEFECTO;
+        int idSesion = -1;
+        long segundos = 0;
+        long lento = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-host": host = args[++i]; break;
+                case "-puerto": puerto = Integer.parseInt(args[++i]); break;
+                case "-sesion": idSesion = Integer.parseInt(args[++i]); break;
+                case "-segundos": segundos = Long.parseLong(args[++i]); break;
+                case "-lento": lento = Long.parseLong(args[++i]); break;
+                case "-ayuda":
+                    System.out.println("Uso: ServidorWebSocketECG [-host localhost] [-puerto 8081] -sesion N [-segundos 0] [-lento ms]");
+                    return;
+                default:
+                    System.err.println("Error en argumentos: opción desconocida " + args[i]);
+                    System.exit(2);
+            }
+        }
+        String ruta = idSesion >= 0 ? RUTA + "?sesion=" + idSesion : RUTA;
+        try (ClienteLocal cliente = new ClienteLocal(host, puerto, ruta)) {
+            long fin = segundos > 0 ? System.currentTimeMillis() + segundos * 1000 : Long.MAX_VALUE;
+            long siguienteReporte = System.currentTimeMillis() + 1000;
+            long cuadros = 0, muestras = 0, bytes = 0, saltos = 0, esperada = -1;
+            int bpm = 0;
+            while (System.currentTimeMillis() < fin) {
+                Mensaje m = cliente.recibir(250);
+                if (m != null && m.esSenal()) {
+                    cuadros++;
+                    muestras += m.getNumMuestras();
+                    bytes += m.getBytes();
+                    bpm = m.getBPM();
+                    if (esperada >= 0 && m.getPrimeraMuestra() != esperada) saltos++;
+                    esperada = m.getPrimeraMuestra() + m.getNumMuestras();
+                } else if (m != null) {
+                    System.out.println(m.getTexto());
+                }
+                if (lento > 0) Thread.sleep(lento);
+                long ahora = System.currentTimeMillis();
+                if (ahora >= siguienteReporte) {
+                    System.out.printf("[WS] %d cuadros, %d muestras, %.1f B/muestra, %d saltos, BPM %d%n",
+                        cuadros, muestras, muestras > 0 ? (double) bytes / muestras : 0.0, saltos, bpm);
+                    cuadros = muestras = bytes = 0;
+                    siguienteReporte = ahora + 1000;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error en visor WebSocket: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -1,7 +1,8 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -59,15 +60,19 @@ class DatoHistorico {
     public String getTipoEvento() { return tipoEvento; }
     public void setTipoEvento(String tipo) { this.tipoEvento = tipo; }
     public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 }
 
-class ModeloECG {
+class ModeloECG implements ModeloTablaHistorial.Fuente, VisorRegistroECG.Fuente {
     private DatabaseManager db;
+    private GestorSesiones gestorSesiones;
     private Paciente pacienteActual;
     private int sesionActual = -1;
+    private int frecuenciaMuestreo = DetectorQRS.FRECUENCIA_DEFECTO;
 
     public ModeloECG() {
         this.db = new DatabaseManager();
+        this.gestorSesiones = new GestorSesiones(db);
     }
 
     public void crearPaciente(String nombre, int edad, double estatura) {
@@ -93,48 +98,77 @@ class ModeloECG {
         db.eliminarPaciente(id);
     }
 
-    public void agregarDatoHistorico(int idPaciente, double valorSenal) {
-        // Solo agregar si hay una sesión activa
-        if (sesionActual > 0) {
-            db.insertarLecturaECG(sesionActual, valorSenal);
-        }
-    }
-
     public List<DatoHistorico> obtenerHistorialPaciente(int idPaciente) {
         return db.obtenerHistorialPaciente(idPaciente);
     }
 
-    public int calcularBPM(List<Double> senalECG) {
-        int complejos = detectarComplejos(senalECG);
-        int bpm = complejos * 6;
-        bpm = Math.min(Math.max(bpm, 40), 200);
-        
-        // Guardar cálculo en BD si hay sesión activa
-        if (sesionActual > 0) {
-            db.insertarCalculoBPM(sesionActual, bpm, complejos);
-        }
-        
-        return bpm;
+    public ConsultaHistorial.Pagina obtenerPaginaHistorial(ConsultaHistorial consulta, ConsultaHistorial.Cursor desde) {
+        return db.obtenerPaginaHistorial(consulta, desde);
     }
 
-    private int detectarComplejos(List<Double> senal) {
-        int complejos = 0;
-        double umbral = 150;
-        for (double valor : senal) {
-            if (valor > umbral) complejos++;
-        }
-        return complejos;
+    @Override
+    public long contarHistorial(ConsultaHistorial consulta) {
+        return db.contarHistorial(consulta);
+    }
+
+    @Override
+    public ConsultaHistorial.Cursor recorrerHistorial(ConsultaHistorial consulta, ConsultaHistorial.Cursor desde,
+                                                      int limite, ConsultaHistorial.Receptor receptor) {
+        return db.recorrerHistorial(consulta, desde, limite, receptor);
+    }
+
+    public List<Integer> obtenerSesionesPaciente(int idPaciente) {
+        return db.obtenerSesionesPaciente(idPaciente);
+    }
+
+    @Override
+    public long[] obtenerExtensionSesion(int idSesion) {
+        return db.obtenerExtensionSesion(idSesion);
+    }
+
+    @Override
+    public boolean tieneResumen(int idSesion) {
+        return db.tieneResumen(idSesion);
+    }
+
+    @Override
+    public int reconstruirResumen(int idSesion) {
+        return db.reconstruirResumen(idSesion);
     }
 
-    public void iniciarSesion(int idPaciente, String notas) {
-        sesionActual = db.crearSesionMonitoreo(idPaciente, notas);
-        System.out.println("✓ Sesión iniciada: " + sesionActual);
+    @Override
+    public List<PiramideECG.Tesela> obtenerTeselas(int idSesion, int nivel, long desde, long hasta) {
+        return db.obtenerTeselas(idSesion, nivel, desde, hasta);
+    }
+
+    @Override
+    public List<BloqueECG> obtenerBloquesSesion(int idSesion, long desdeMs, long hastaMs) {
+        return db.obtenerBloquesSesion(idSesion, desdeMs, hastaMs);
+    }
+
+    public void setFrecuenciaMuestreo(int frecuencia) {
+        this.frecuenciaMuestreo = frecuencia;
+        gestorSesiones.setFrecuenciaDefecto(frecuencia);
+    }
+
+    public int getFrecuenciaMuestreo() { return frecuenciaMuestreo; }
+
+    /**
+     * Abre (o reutiliza) el pipeline del paciente y lo convierte en la sesión
+     * que recibe las muestras del tópico sin sufijo de paciente
+     */
+    public PipelineSesion iniciarSesion(int idPaciente, String notas) {
+        PipelineSesion p = gestorSesiones.abrirSesion(idPaciente, notas, frecuenciaMuestreo);
+        if (p != null) {
+            sesionActual = p.getIdSesion();
+            gestorSesiones.setSesionPorDefecto(p);
+        }
+        return p;
     }
 
     public void finalizarSesion() {
         if (sesionActual > 0) {
-            db.finalizarSesion(sesionActual);
-            System.out.println("✓ Sesión finalizada: " + sesionActual);
+            gestorSesiones.cerrarSesion(sesionActual);
             sesionActual = -1;
         }
     }
@@ -147,18 +181,24 @@ class ModeloECG {
 
     public void setPacienteActual(Paciente p) { 
         this.pacienteActual = p;
-        // Iniciar nueva sesión cuando se selecciona un paciente
-        if (p != null && sesionActual == -1) {
+        // Iniciar (o retomar) la sesión del paciente seleccionado
+        if (p != null) {
             iniciarSesion(p.getIdPaciente(), "Sesión de monitoreo");
         }
     }
     
     public Paciente getPacienteActual() { return pacienteActual; }
+
+    /** Pipeline que recibe las muestras sin paciente explícito en el tópico */
+    public PipelineSesion getPipelineActual() { return gestorSesiones.getSesionPorDefecto(); }
     
     public DatabaseManager getDatabase() { return db; }
+
+    public GestorSesiones getGestorSesiones() { return gestorSesiones; }
     
     public void cerrarConexion() {
-        finalizarSesion();
+        sesionActual = -1;
+        gestorSesiones.cerrar();
         db.cerrarConexion();
     }
 }
@@ -168,11 +208,17 @@ class ModeloECG {
 // ============================================
 
 class MQTTDataReader {
+    private static final int PUERTO_DEFECTO = 1883;
+
     private String brokerURL;
     private String topico;
-    private double ultimoDato;
-    private boolean activo = false;
-    private Thread hiloConexion;
+    private byte[] topicoBytes;
+    private volatile double ultimoDato;
+    private volatile boolean activo = false;
+    private ClienteMQTT cliente;
+    private int canalECG = 0;
+    private volatile long tramasRecibidas;
+    private volatile long tramasInvalidas;
     
     // Interface para callbacks
     interface MQTTCallback {
@@ -180,6 +226,11 @@ class MQTTDataReader {
         void onConectado();
         void onDesconectado();
         void onError(String mensaje);
+        default void onReconectando(String motivo) { }
+        /** Muestra con el paciente tomado del tópico (ecg/datos/{id}); -1 si no viene */
+        default void onDatoRecibido(int idPaciente, double valor) { onDatoRecibido(valor); }
+        /** Cabecera de una trama binaria; se invoca antes de entregar sus muestras */
+        default void onTrama(int idPaciente, long secuencia, int frecuencia, int muestras) { }
     }
     
     private MQTTCallback callback;
@@ -187,6 +238,7 @@ class MQTTDataReader {
     public MQTTDataReader(String brokerURL, String topico) {
         this.brokerURL = brokerURL;
         this.topico = topico;
+        this.topicoBytes = topico.getBytes(StandardCharsets.UTF_8);
         this.ultimoDato = -1;
     }
 
@@ -204,43 +256,131 @@ class MQTTDataReader {
             System.out.println("Conectando a MQTT Broker: " + brokerURL);
             System.out.println("Topic: " + topico);
             
-            // Simular conexión MQTT con HttpURLConnection (alternativa sin librerías externas)
-            hiloConexion = new Thread(() -> {
-                try {
-                    // Conectar y mantener conexión simulada
-                    activo = true;
+            String direccion = brokerURL.substring(brokerURL.indexOf("://") + 3);
+            int separador = direccion.lastIndexOf(':');
+            String host = separador > 0 ? direccion.substring(0, separador) : direccion;
+            int puerto = separador > 0 ? Integer.parseInt(direccion.substring(separador + 1)) : PUERTO_DEFECTO;
+            String idCliente = "sistema-ecg-" + Long.toHexString(System.nanoTime() & 0xFFFFFF);
+
+            cliente = new ClienteMQTT(host, puerto, idCliente, new ClienteMQTT.OyenteMQTT() {
+                @Override
+                public void onConectado() {
                     if (callback != null) callback.onConectado();
-                    
-                    // Mantener conexión abierta
-                    while (activo) {
-                        Thread.sleep(100);
+                }
+
+                @Override
+                public void onConexionPerdida(String motivo) {
+                    if (callback != null) callback.onReconectando(motivo);
+                }
+
+                @Override
+                public void onPublicacion(ClienteMQTT.Publicacion publicacion) {
+                    int idPaciente = publicacion.topicoEs(topicoBytes) ? -1 : publicacion.sufijoNumericoTopico();
+                    ByteBuffer carga = publicacion.getBuffer();
+                    int inicio = publicacion.getInicioCarga();
+                    int largo = publicacion.getLargoCarga();
+                    if (TramaECG.esBinaria(carga, inicio, largo)) {
+                        recibirTrama(idPaciente, carga, inicio, largo);
+                        return;
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                    // Formato de texto original: un valor por mensaje
+                    double valor = parsearValor(publicacion);
+                    if (!Double.isNaN(valor)) recibirDato(idPaciente, valor);
                 }
             });
-            hiloConexion.setDaemon(true);
-            hiloConexion.start();
+            // Tópico base (sesión seleccionada) y un subtópico por paciente
+            cliente.suscribir(topico, 0);
+            cliente.suscribir(topico + "/+", 0);
+            activo = true;
+            cliente.iniciar();
             
             return true;
         } catch (Exception e) {
+            activo = false;
             System.err.println("Error conectando a MQTT: " + e.getMessage());
             if (callback != null) callback.onError("Error de conexión: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Convierte la carga de texto ("120.5") a double leyendo directamente
+     * del búfer de red, sin crear cadenas intermedias
+     * @return NaN si la carga no es un número válido
+     */
+    static double parsearValor(ClienteMQTT.Publicacion publicacion) {
+        int largo = publicacion.getLargoCarga();
+        int i = 0;
+        while (i < largo && publicacion.byteCarga(i) <= ' ') i++;
+        boolean negativo = false;
+        if (i < largo && (publicacion.byteCarga(i) == '-' || publicacion.byteCarga(i) == '+')) {
+            negativo = publicacion.byteCarga(i) == '-';
+            i++;
+        }
+        long mantisa = 0;
+        int decimales = 0;
+        int digitos = 0;
+        boolean punto = false;
+        for (; i < largo; i++) {
+            byte b = publicacion.byteCarga(i);
+            if (b >= '0' && b <= '9') {
+                if (digitos < 18) {
+                    mantisa = mantisa * 10 + (b - '0');
+                    if (punto) decimales++;
+                } else if (!punto) {
+                    decimales--;
+                }
+                digitos++;
+            } else if ((b == '.' || b == ',') && !punto) {
+                punto = true;
+            } else {
+                break;
+            }
+        }
+        while (i < largo && publicacion.byteCarga(i) <= ' ') i++;
+        if (digitos == 0 || i < largo) return Double.NaN;
+        double valor = decimales >= 0 ? mantisa / Math.pow(10, decimales) : mantisa * Math.pow(10, -decimales);
+        return negativo ? -valor : valor;
+    }
+
+    /**
+     * Decodifica una trama binaria directamente del búfer de red y entrega
+     * las muestras del canal ECG configurado; GeneradorCargaECG la invoca
+     * sin broker de por medio
+     */
+    void recibirTrama(int idPaciente, ByteBuffer carga, int inicio, int largo) {
+        int muestras = TramaECG.validar(carga, inicio, largo);
+        if (muestras < 0) {
+            tramasInvalidas++;
+            return;
+        }
+        tramasRecibidas++;
+        if (callback != null) {
+            callback.onTrama(idPaciente, TramaECG.secuencia(carga, inicio), TramaECG.frecuencia(carga, inicio), muestras);
+        }
+        int canal = Math.min(canalECG, TramaECG.canales(carga, inicio) - 1);
+        for (int i = 0; i < muestras; i++) {
+            recibirDato(idPaciente, TramaECG.muestra(carga, inicio, i, canal));
+        }
+    }
+
     public void recibirDato(double valor) {
+        recibirDato(-1, valor);
+    }
+
+    public void recibirDato(int idPaciente, double valor) {
         this.ultimoDato = valor;
         if (callback != null) {
-            callback.onDatoRecibido(valor);
+            callback.onDatoRecibido(idPaciente, valor);
         }
     }
 
     public void publicarMensaje(String topico, String mensaje) {
         try {
             System.out.println("[MQTT PUBLISH] Tema: " + topico + " | Mensaje: " + mensaje);
-            // En producción, aquí iría el código real de publicación MQTT
+            if (cliente == null || !cliente.publicar(topico, mensaje.getBytes(StandardCharsets.UTF_8), 1, false)) {
+                System.err.println("Error publicando mensaje: sin conexión MQTT");
+            }
         } catch (Exception e) {
             System.err.println("Error publicando mensaje: " + e.getMessage());
         }
@@ -259,14 +399,22 @@ class MQTTDataReader {
         return activo;
     }
 
+    public void setCanalECG(int canal) { this.canalECG = canal; }
+    public long getTramasRecibidas() { return tramasRecibidas; }
+    public long getTramasInvalidas() { return tramasInvalidas; }
+
+    public boolean estaConectadoBroker() {
+        return cliente != null && cliente.estaConectado();
+    }
+
+    public ClienteMQTT getCliente() {
+        return cliente;
+    }
+
     public void desconectar() {
         activo = false;
-        try {
-            if (hiloConexion != null && hiloConexion.isAlive()) {
-                hiloConexion.join(1000);
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        if (cliente != null) {
+            cliente.detener();
         }
         if (callback != null) callback.onDesconectado();
     }
@@ -279,39 +427,99 @@ class MQTTDataReader {
 class ControladorECG {
     private final ModeloECG modelo;
     private final VistaECG vista;
-    private final List<Double> bufferSenal;
-    private boolean conectado = false;
+    private volatile boolean conectado = false;
     private MQTTDataReader mqttReader;
-    private Thread hiloLectura;
+    private PipelineSesion pipelineVisible;
+    // Todo acceso a ModeloECG/DatabaseManager desde la UI pasa por aquí
+    private final AccesoDatosAsync datos = new AccesoDatosAsync();
+
+    // La vista sigue sólo al pipeline enfocado; los demás corren sin UI
+    private final PipelineSesion.OyentePipeline oyenteVista = new PipelineSesion.OyentePipeline() {
+        @Override
+        public void onMuestras(PipelineSesion pipeline, int cantidad) {
+            // El panel se refresca con su propio temporizador a tasa fija
+        }
+
+        @Override
+        public void onBPM(PipelineSesion pipeline, int bpm) {
+            SwingUtilities.invokeLater(() -> vista.actualizarBPM(bpm));
+        }
+    };
 
     public ControladorECG(ModeloECG modelo, VistaECG vista) {
         this.modelo = modelo;
         this.vista = vista;
-        this.bufferSenal = new ArrayList<>();
+        enfocarPipeline(modelo.getPipelineActual());
+        inicializarAlarmas();
         inicializarDatos();
     }
 
+    /**
+     * Las alarmas ALTA/CRITICA llegan por su propio canal, no por mostrarMensaje
+     */
+    private void inicializarAlarmas() {
+        CanalAlarmas alarmas = modelo.getGestorSesiones().getAlarmas();
+        alarmas.setOyente(alarma -> SwingUtilities.invokeLater(() -> {
+            vista.mostrarAlarma(alarma.toString(), alarma.isCritica());
+            alarmas.confirmarEntregaUI(alarma);
+        }));
+    }
+
+    private void enfocarPipeline(PipelineSesion pipeline) {
+        if (pipeline == pipelineVisible) return;
+        if (pipelineVisible != null) pipelineVisible.setOyente(null);
+        pipelineVisible = pipeline;
+        vista.setBufferSenal(pipeline.getBuffer());
+        pipeline.setOyente(oyenteVista);
+    }
+
     private void inicializarDatos() {
-        modelo.crearPaciente("Juan Pérez", 45, 175.5);
-        modelo.crearPaciente("María García", 38, 162.0);
-        vista.actualizarListaPacientes(modelo.obtenerTodosPacientes());
+        datos.consultar(() -> {
+            modelo.crearPaciente("Juan Pérez", 45, 175.5);
+            modelo.crearPaciente("María García", 38, 162.0);
+            return modelo.obtenerTodosPacientes();
+        }, vista::actualizarListaPacientes, this::mostrarError);
+    }
+
+    private void mostrarError(String mensaje) {
+        vista.mostrarMensaje("Error: " + mensaje);
     }
 
     public void conectarMQTT(String brokerURL, String topico) {
         try {
             mqttReader = new MQTTDataReader(brokerURL, topico);
+            GestorSesiones gestor = modelo.getGestorSesiones();
             
             // Configurar callback MQTT
             mqttReader.setCallback(new MQTTDataReader.MQTTCallback() {
                 @Override
                 public void onConectado() {
-                    vista.mostrarMensaje("Conectado a MQTT Broker: " + brokerURL);
-                    vista.actualizarEstado("CONECTADO");
+                    // Se invoca desde el hilo de red MQTT: no bloquearlo con el diálogo
+                    SwingUtilities.invokeLater(() -> {
+                        vista.actualizarEstado("CONECTADO");
+                        vista.mostrarMensaje("Conectado a MQTT Broker: " + brokerURL);
+                    });
+                }
+                
+                @Override
+                public void onReconectando(String motivo) {
+                    SwingUtilities.invokeLater(() -> vista.actualizarEstado("RECONECTANDO"));
                 }
                 
                 @Override
                 public void onDatoRecibido(double valor) {
-                    // Los datos se procesan en iniciarLecturaDatos()
+                    onDatoRecibido(-1, valor);
+                }
+
+                @Override
+                public void onDatoRecibido(int idPaciente, double valor) {
+                    // Sólo enrutar y encolar: el hilo de red nunca espera al procesamiento
+                    gestor.recibirMuestra(idPaciente, valor);
+                }
+
+                @Override
+                public void onTrama(int idPaciente, long secuencia, int frecuencia, int muestras) {
+                    gestor.recibirTrama(idPaciente, secuencia, frecuencia);
                 }
                 
                 @Override
@@ -328,10 +536,9 @@ class ControladorECG {
             });
             
             conectado = mqttReader.conectar();
+            gestor.getAlarmas().setPublicador(mqttReader::publicarMensaje);
             
-            if (conectado) {
-                iniciarLecturaDatos();
-            } else {
+            if (!conectado) {
                 vista.mostrarMensaje("Error al conectar a MQTT");
             }
         } catch (Exception e) {
@@ -344,66 +551,70 @@ class ControladorECG {
         conectarMQTT(puerto, "ecg/datos");
     }
 
-    private void iniciarLecturaDatos() {
-        hiloLectura = new Thread(() -> {
-            while (conectado && mqttReader.estaActivo()) {
-                try {
-                    double valor = mqttReader.leerValor();
-                    if (valor >= 0) {
-                        bufferSenal.add(valor);
-                        if (bufferSenal.size() > 600) bufferSenal.remove(0);
-
-                        if (modelo.getPacienteActual() != null) {
-                            modelo.agregarDatoHistorico(modelo.getPacienteActual().getIdPaciente(), valor);
-                        }
-
-                        vista.actualizarGrafico(new ArrayList<>(bufferSenal));
-
-                        if (bufferSenal.size() >= 100) {
-                            int bpm = modelo.calcularBPM(bufferSenal);
-                            vista.actualizarBPM(bpm);
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error leyendo datos: " + e.getMessage());
-                }
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-            conectado = false;
-            vista.actualizarEstado("DESCONECTADO");
-        });
-        hiloLectura.setDaemon(true);
-        hiloLectura.start();
-    }
-
     public void crearPaciente(String nombre, int edad, double estatura) {
-        modelo.crearPaciente(nombre, edad, estatura);
-        vista.actualizarListaPacientes(modelo.obtenerTodosPacientes());
+        datos.consultar(() -> {
+            modelo.crearPaciente(nombre, edad, estatura);
+            return modelo.obtenerTodosPacientes();
+        }, vista::actualizarListaPacientes, this::mostrarError);
     }
 
+    /**
+     * Abre la sesión del paciente fuera del EDT; si se selecciona otro antes
+     * de terminar, la selección anterior se cancela o se descarta
+     */
     public void seleccionarPaciente(int idPaciente) {
-        Paciente p = modelo.obtenerPaciente(idPaciente);
-        modelo.setPacienteActual(p);
-        vista.mostrarHistorialPaciente(modelo.obtenerHistorialPaciente(idPaciente));
+        datos.consultarUnica("seleccion", () -> {
+            Paciente p = modelo.obtenerPaciente(idPaciente);
+            modelo.setPacienteActual(p);
+            return modelo.getPipelineActual();
+        }, pipeline -> {
+            enfocarPipeline(pipeline);
+            vista.mostrarHistorialPaciente(new ModeloTablaHistorial(modelo, idPaciente));
+        }, this::mostrarError);
+    }
+
+    /**
+     * Abre el visor de registros con las sesiones grabadas del paciente actual
+     */
+    public void abrirRegistro() {
+        Paciente p = modelo.getPacienteActual();
+        if (p == null) {
+            vista.mostrarMensaje("Selecciona un paciente en PACIENTES para ver sus registros");
+            return;
+        }
+        datos.consultar(() -> modelo.obtenerSesionesPaciente(p.getIdPaciente()), sesiones -> {
+            if (sesiones.isEmpty()) {
+                vista.mostrarMensaje("El paciente " + p.getNombre() + " no tiene sesiones grabadas");
+            } else {
+                vista.mostrarVentanaRegistro(modelo, p.getNombre(), sesiones);
+            }
+        }, this::mostrarError);
     }
 
     public void actualizarPaciente(int id, String nombre, int edad, double estatura) {
-        modelo.actualizarPaciente(id, nombre, edad, estatura);
-        vista.actualizarListaPacientes(modelo.obtenerTodosPacientes());
+        datos.consultar(() -> {
+            modelo.actualizarPaciente(id, nombre, edad, estatura);
+            return modelo.obtenerTodosPacientes();
+        }, vista::actualizarListaPacientes, this::mostrarError);
     }
 
     public void eliminarPaciente(int idPaciente) {
-        modelo.eliminarPaciente(idPaciente);
-        vista.actualizarListaPacientes(modelo.obtenerTodosPacientes());
+        datos.consultar(() -> {
+            modelo.eliminarPaciente(idPaciente);
+            return modelo.obtenerTodosPacientes();
+        }, vista::actualizarListaPacientes, this::mostrarError);
+    }
+
+    /**
+     * Espera las operaciones de datos encoladas (llamar antes de cerrar la base)
+     */
+    public void cerrar() {
+        datos.cerrar();
     }
 
     public void desconectar() {
         conectado = false;
+        modelo.getGestorSesiones().getAlarmas().setPublicador(null);
         if (mqttReader != null) {
             mqttReader.desconectar();
         }
@@ -416,7 +627,7 @@ class ControladorECG {
         }
         
         // Registrar comando en la base de datos
-        modelo.registrarComandoMotor(comando);
+        datos.ejecutar(() -> modelo.registrarComandoMotor(comando));
         
         // Publicar comando al motor
         String topico = "esp8266/motor";
@@ -435,13 +646,15 @@ class ControladorECG {
 
 class VistaECG extends JFrame {
     private ControladorECG controlador;
-    private JPanel panelGrafico;
+    private PanelOsciloscopio panelGrafico;
     private JLabel labelBPM;
     private JLabel labelEstado;
     private JLabel labelTiempo;
+    private JLabel bannerAlarma;
+    private Timer ocultarAlarma;
     private JTable tablaPacientes;
     private JTable tablaHistorial;
-    private List<Double> datosGrafico;
+    private int muestrasMostradas = -1;
     
     // Colores estilo osciloscopio profesional
     private static final Color COLOR_FONDO = new Color(20, 25, 35);
@@ -452,7 +665,9 @@ class VistaECG extends JFrame {
     private static final Color COLOR_TEXTO = new Color(200, 200, 200);
     private static final Color COLOR_BOTON = new Color(40, 45, 55);
     private static final Color COLOR_BOTON_HOVER = new Color(60, 70, 85);
-    private static final Color COLOR_GRID = new Color(40, 45, 55);
+    private static final Color COLOR_ALARMA_CRITICA = new Color(200, 30, 30);
+    private static final Color COLOR_ALARMA_ALTA = new Color(220, 120, 0);
+    private static final int DURACION_ALARMA_ALTA_MS = 10000;
 
     public VistaECG() {
         setTitle("Monitor ECG - Osciloscopio Digital");
@@ -514,53 +729,42 @@ class VistaECG extends JFrame {
         JPanel panel = new JPanel(new BorderLayout(10, 10));
         panel.setBackground(COLOR_FONDO);
 
-        panelGrafico = new JPanel() {
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                Graphics2D g2d = (Graphics2D) g;
-                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                
-                g2d.setColor(COLOR_GRAFICO);
-                g2d.fillRect(0, 0, getWidth(), getHeight());
-                
-                g2d.setColor(COLOR_GRID);
-                g2d.setStroke(new BasicStroke(1.5f));
-                for (int i = 0; i < getWidth(); i += 40) {
-                    g2d.drawLine(i, 0, i, getHeight());
-                }
-                for (int i = 0; i < getHeight(); i += 40) {
-                    g2d.drawLine(0, i, getWidth(), i);
-                }
-                
-                g2d.setColor(new Color(35, 40, 50));
-                g2d.setStroke(new BasicStroke(0.5f));
-                for (int i = 0; i < getWidth(); i += 8) {
-                    g2d.drawLine(i, 0, i, getHeight());
-                }
-                for (int i = 0; i < getHeight(); i += 8) {
-                    g2d.drawLine(0, i, getWidth(), i);
-                }
-                
-                g2d.setColor(new Color(60, 70, 85));
-                g2d.setStroke(new BasicStroke(1.5f));
-                g2d.drawLine(0, getHeight() / 2, getWidth(), getHeight() / 2);
-                g2d.drawLine(getWidth() / 2, 0, getWidth() / 2, getHeight());
-                
-                dibujarECG(g2d);
-            }
-        };
+        panelGrafico = new PanelOsciloscopio();
+        panelGrafico.setAlPintarCuadro(this::actualizarTiempo);
         panelGrafico.setBackground(COLOR_GRAFICO);
         panelGrafico.setBorder(BorderFactory.createLineBorder(new Color(60, 70, 85), 3));
 
         JPanel panelMedidas = crearPanelMedidas();
 
+        panel.add(crearBannerAlarma(), BorderLayout.NORTH);
         panel.add(panelGrafico, BorderLayout.CENTER);
         panel.add(panelMedidas, BorderLayout.EAST);
 
         return panel;
     }
 
+    /**
+     * Aviso no modal sobre el osciloscopio; oculto hasta la primera alarma
+     */
+    private JLabel crearBannerAlarma() {
+        bannerAlarma = new JLabel();
+        bannerAlarma.setOpaque(true);
+        bannerAlarma.setFont(new Font("Courier New", Font.BOLD, 14));
+        bannerAlarma.setForeground(Color.WHITE);
+        bannerAlarma.setBorder(BorderFactory.createEmptyBorder(8, 12, 8, 12));
+        bannerAlarma.setToolTipText("Clic para descartar");
+        bannerAlarma.setVisible(false);
+        bannerAlarma.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                bannerAlarma.setVisible(false);
+            }
+        });
+        ocultarAlarma = new Timer(DURACION_ALARMA_ALTA_MS, e -> bannerAlarma.setVisible(false));
+        ocultarAlarma.setRepeats(false);
+        return bannerAlarma;
+    }
+
     private JPanel crearPanelMedidas() {
         JPanel panel = new JPanel(new GridLayout(5, 1, 5, 5));
         panel.setBackground(COLOR_PANEL);
@@ -624,17 +828,32 @@ class VistaECG extends JFrame {
 
         JButton btnBorrar = crearBoton("🔄 REINICIAR");
         btnBorrar.addActionListener(e -> {
-            datosGrafico = new ArrayList<>();
-            panelGrafico.repaint();
+            panelGrafico.reiniciar();
         });
         panelBotones.add(btnBorrar);
 
+        JButton btnModo = crearBoton("📈 MODO BARRIDO");
+        btnModo.addActionListener(e -> {
+            boolean barrido = !panelGrafico.isModoBarrido();
+            panelGrafico.setModoBarrido(barrido);
+            btnModo.setText(barrido ? "📈 MODO BARRIDO" : "📈 MODO DESPLAZAR");
+        });
+        panelBotones.add(btnModo);
+
         JButton btnPacientes = crearBoton("📋 PACIENTES");
         btnPacientes.addActionListener(e -> {
             mostrarVentanaPacientes();
         });
         panelBotones.add(btnPacientes);
 
+        JButton btnRegistro = crearBoton("📼 REGISTRO");
+        btnRegistro.addActionListener(e -> {
+            if (controlador != null) {
+                controlador.abrirRegistro();
+            }
+        });
+        panelBotones.add(btnRegistro);
+
         JButton btnMotorOn = crearBoton("🔋 MOTOR ENCENDER");
         btnMotorOn.addActionListener(e -> {
             if (controlador != null) {
@@ -803,6 +1022,16 @@ class VistaECG extends JFrame {
                 new String[]{"Timestamp", "Valor", "Evento"}, 0));
         estilizarTabla(tablaHistorial);
         JScrollPane scrollHistorial = new JScrollPane(tablaHistorial);
+        JTable historial = tablaHistorial;
+        ventana.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                // Liberar el hilo de carga del historial mostrado
+                if (historial.getModel() instanceof ModeloTablaHistorial modeloHistorial) {
+                    modeloHistorial.cerrar();
+                }
+            }
+        });
 
         JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, scrollPacientes, scrollHistorial);
         split.setDividerLocation(0.5);
@@ -819,6 +1048,44 @@ class VistaECG extends JFrame {
         ventana.setVisible(true);
     }
 
+    /**
+     * Ventana con el visor de registros; el visor carga por su cuenta
+     */
+    public void mostrarVentanaRegistro(VisorRegistroECG.Fuente fuente, String paciente, List<Integer> sesiones) {
+        JFrame ventana = new JFrame("Registro ECG - " + paciente);
+        ventana.setSize(1200, 500);
+        ventana.setLocationRelativeTo(this);
+        ventana.getContentPane().setBackground(COLOR_FONDO);
+
+        VisorRegistroECG visor = new VisorRegistroECG(fuente);
+        JComboBox<Integer> selector = new JComboBox<>(sesiones.toArray(new Integer[0]));
+        selector.addActionListener(e -> visor.mostrarSesion((Integer) selector.getSelectedItem()));
+
+        JLabel ayuda = new JLabel("Rueda: zoom · Arrastrar / ← →: desplazar · Inicio: sesión completa");
+        ayuda.setForeground(COLOR_LINEA);
+        ayuda.setFont(new Font("Courier New", Font.PLAIN, 11));
+        JLabel etiqueta = new JLabel("Sesión:");
+        etiqueta.setForeground(COLOR_LINEA);
+
+        JPanel panelNorte = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        panelNorte.setBackground(COLOR_PANEL);
+        panelNorte.add(etiqueta);
+        panelNorte.add(selector);
+        panelNorte.add(ayuda);
+
+        ventana.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                visor.cerrar();
+            }
+        });
+        ventana.add(panelNorte, BorderLayout.NORTH);
+        ventana.add(visor, BorderLayout.CENTER);
+        ventana.setVisible(true);
+        visor.mostrarSesion(sesiones.get(0));
+        visor.requestFocusInWindow();
+    }
+
     private JButton crearBoton(String texto) {
         JButton btn = new JButton(texto);
         btn.setFont(new Font("Courier New", Font.BOLD, 11));
@@ -863,29 +1130,15 @@ class VistaECG extends JFrame {
         tabla.setRowHeight(22);
     }
 
-    private void dibujarECG(Graphics2D g) {
-        if (datosGrafico == null || datosGrafico.isEmpty()) return;
-
-        int ancho = panelGrafico.getWidth();
-        int alto = panelGrafico.getHeight();
-        int centroY = alto / 2;
-
-        g.setColor(COLOR_LINEA);
-        g.setStroke(new BasicStroke(2.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-
-        for (int i = 1; i < datosGrafico.size(); i++) {
-            int x1 = (i - 1) * ancho / datosGrafico.size();
-            int x2 = i * ancho / datosGrafico.size();
-            int y1 = (int) (centroY - datosGrafico.get(i - 1) * 0.3);
-            int y2 = (int) (centroY - datosGrafico.get(i) * 0.3);
-            g.drawLine(x1, y1, x2, y2);
-        }
+    public void setBufferSenal(BufferCircularECG buffer) {
+        panelGrafico.setBuffer(buffer);
     }
 
-    public void actualizarGrafico(List<Double> datos) {
-        this.datosGrafico = datos;
-        panelGrafico.repaint();
-        labelTiempo.setText("⏱ T: " + (datos.size() * 10) + "ms");
+    private void actualizarTiempo() {
+        int n = panelGrafico.getMuestrasVisibles();
+        if (n == muestrasMostradas) return;
+        muestrasMostradas = n;
+        labelTiempo.setText("⏱ T: " + (n * 10) + "ms");
     }
 
     public void actualizarBPM(int bpm) {
@@ -906,14 +1159,30 @@ class VistaECG extends JFrame {
         }
     }
 
-    public void mostrarHistorialPaciente(List<DatoHistorico> historial) {
-        if (tablaHistorial == null) return;
-        DefaultTableModel model = (DefaultTableModel) tablaHistorial.getModel();
-        model.setRowCount(0);
-        for (DatoHistorico d : historial) {
-            model.addRow(new Object[]{d.getTimestamp(), String.format("%.2f", d.getValorSenal()),
-                    d.isEventoDetectado() ? d.getTipoEvento() : "Normal"});
+    /**
+     * Muestra el historial con un modelo virtual que carga sólo las páginas visibles
+     */
+    public void mostrarHistorialPaciente(ModeloTablaHistorial historial) {
+        if (tablaHistorial == null) {
+            historial.cerrar();
+            return;
+        }
+        if (tablaHistorial.getModel() instanceof ModeloTablaHistorial anterior) {
+            anterior.cerrar();
         }
+        tablaHistorial.setModel(historial);
+    }
+
+    /**
+     * Muestra una alarma sin bloquear el EDT; las críticas quedan visibles
+     * hasta que se descartan con un clic, las demás se ocultan solas
+     */
+    public void mostrarAlarma(String texto, boolean critica) {
+        ocultarAlarma.stop();
+        bannerAlarma.setText((critica ? "⚠ CRÍTICA: " : "⚠ ") + texto);
+        bannerAlarma.setBackground(critica ? COLOR_ALARMA_CRITICA : COLOR_ALARMA_ALTA);
+        bannerAlarma.setVisible(true);
+        if (!critica) ocultarAlarma.restart();
     }
 
     public void mostrarMensaje(String mensaje) {
@@ -931,8 +1200,10 @@ class VistaECG extends JFrame {
 
 public class SistemaECG {
     public static void main(String[] args) {
+        // Abrir e inicializar SQLite en el hilo principal, no en el EDT
+        ModeloECG modelo = new ModeloECG();
+        MetricasECG.global().iniciar();
         SwingUtilities.invokeLater(() -> {
-            ModeloECG modelo = new ModeloECG();
             VistaECG vista = new VistaECG();
             ControladorECG controlador = new ControladorECG(modelo, vista);
             vista.setControlador(controlador);
@@ -941,7 +1212,9 @@ public class SistemaECG {
             // Agregar hook para cerrar la base de datos al salir
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("\n✓ Cerrando sistema ECG...");
+                controlador.cerrar();
                 modelo.cerrarConexion();
+                System.out.print(MetricasECG.global().volcar());
             }));
         });
     }
@@ -0,0 +1,112 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Formato binario de tramas multimuestra para el tópico ecg/datos
+ *
+ * Cabecera de 24 bytes (big-endian):
+ *   0  u8   magia 0xEC (nunca es el primer byte de una carga de texto)
+ *   1  u8   versión (1)
+ *   2  u8   formato: 1 = int16, 2 = float32
+ *   3  u8   canales (1..16)
+ *   4  u32  secuencia de la trama
+ *   8  i64  instante del dispositivo (ms desde época)
+ *   16 u16  frecuencia de muestreo (Hz)
+ *   18 u16  muestras por canal
+ *   20 f32  escala: valor = crudo * escala (sólo int16)
+ * Seguido de las muestras intercaladas por canal: m0c0, m0c1, ..., m1c0, ...
+ *
+ * Todos los accesos son absolutos sobre el búfer recibido: decodificar no
+ * reserva memoria ni modifica la posición del búfer
+ */
+public final class TramaECG {
+    public static final byte MAGIA = (byte) 0xEC;
+    public static final int VERSION = 1;
+    public static final int FORMATO_INT16 = 1;
+    public static final int FORMATO_FLOAT32 = 2;
+    public static final int LARGO_CABECERA = 24;
+    public static final int MAX_CANALES = 16;
+
+    private TramaECG() {
+    }
+
+    // ============================================
+    // DECODIFICACIÓN
+    // ============================================
+
+    public static boolean esBinaria(ByteBuffer b, int inicio, int largo) {
+        return largo > 0 && b.get(inicio) == MAGIA;
+    }
+
+    /**
+     * Verifica cabecera y longitud
+     * @return muestras por canal, o -1 si la trama es inválida
+     */
+    public static int validar(ByteBuffer b, int inicio, int largo) {
+        if (largo < LARGO_CABECERA || b.get(inicio) != MAGIA || b.get(inicio + 1) != VERSION) return -1;
+        int bytesMuestra = bytesPorMuestra(formato(b, inicio));
+        int canales = canales(b, inicio);
+        if (bytesMuestra == 0 || canales < 1 || canales > MAX_CANALES) return -1;
+        int muestras = muestrasPorCanal(b, inicio);
+        if (LARGO_CABECERA + muestras * canales * bytesMuestra > largo) return -1;
+        return muestras;
+    }
+
+    public static int formato(ByteBuffer b, int inicio) { return b.get(inicio + 2) & 0xFF; }
+    public static int canales(ByteBuffer b, int inicio) { return b.get(inicio + 3) & 0xFF; }
+    public static long secuencia(ByteBuffer b, int inicio) { return b.getInt(inicio + 4) & 0xFFFFFFFFL; }
+    public static long instanteDispositivo(ByteBuffer b, int inicio) { return b.getLong(inicio + 8); }
+    public static int frecuencia(ByteBuffer b, int inicio) { return b.getShort(inicio + 16) & 0xFFFF; }
+    public static int muestrasPorCanal(ByteBuffer b, int inicio) { return b.getShort(inicio + 18) & 0xFFFF; }
+    public static float escala(ByteBuffer b, int inicio) { return b.getFloat(inicio + 20); }
+
+    /**
+     * Valor de la muestra i del canal indicado (la trama debe estar validada)
+     */
+    public static double muestra(ByteBuffer b, int inicio, int i, int canal) {
+        int indice = i * canales(b, inicio) + canal;
+        if (formato(b, inicio) == FORMATO_INT16) {
+            return b.getShort(inicio + LARGO_CABECERA + indice * 2) * (double) escala(b, inicio);
+        }
+        return b.getFloat(inicio + LARGO_CABECERA + indice * 4);
+    }
+
+    private static int bytesPorMuestra(int formato) {
+        return formato == FORMATO_INT16 ? 2 : formato == FORMATO_FLOAT32 ? 4 : 0;
+    }
+
+    // ============================================
+    // CODIFICACIÓN (dispositivos, generadores de carga)
+    // ============================================
+
+    public static int largoTrama(int formato, int canales, int muestrasPorCanal) {
+        return LARGO_CABECERA + canales * muestrasPorCanal * bytesPorMuestra(formato);
+    }
+
+    /**
+     * Escribe una trama en la posición actual del destino
+     * @param muestras valores intercalados por canal (muestrasPorCanal * canales)
+     */
+    public static void codificar(ByteBuffer destino, int formato, int canales, long secuencia,
+                                 long instanteMs, int frecuencia, float escala,
+                                 double[] muestras, int desde, int muestrasPorCanal) {
+        destino.put(MAGIA)
+               .put((byte) VERSION)
+               .put((byte) formato)
+               .put((byte) canales)
+               .putInt((int) secuencia)
+               .putLong(instanteMs)
+               .putShort((short) frecuencia)
+               .putShort((short) muestrasPorCanal)
+               .putFloat(escala);
+        int total = muestrasPorCanal * canales;
+        for (int i = 0; i < total; i++) {
+            double v = muestras[desde + i];
+            if (formato == FORMATO_INT16) {
+                long crudo = Math.round(v / escala);
+                destino.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, crudo)));
+            } else {
+                destino.putFloat((float) v);
+            }
+        }
+    }
+}
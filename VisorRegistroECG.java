@@ -0,0 +1,606 @@
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.*;
+
+/**
+ * Visor de una sesión grabada, con zoom desde el día completo hasta latidos sueltos
+ *
+ * Cada columna de píxeles se pinta con el mínimo y máximo de las cubetas de
+ * PiramideECG del nivel que corresponde al zoom, así que lo leído y pintado
+ * depende del ancho del panel y no de la duración de la ventana. Por debajo
+ * del nivel 0 se pinta la señal cruda de Bloque_ECG. Un hilo propio trae lo
+ * que falta (primero lo visible, después una pantalla a cada lado) y,
+ * mientras llega, cada columna se pinta con el nivel más grueso ya cargado
+ *
+ * Rueda: zoom alrededor del cursor; arrastrar o ←/→: desplazar; +/-: zoom;
+ * Inicio: sesión completa
+ */
+public class VisorRegistroECG extends JPanel {
+    private static final long serialVersionUID = 1L;
+    public static final int MAX_TESELAS_CACHE = 512;
+    public static final long PAGINA_CRUDA_MS = 10_000;
+    private static final int MAX_PAGINAS_CRUDAS = 32;
+    // Teselas que se piden juntas en una consulta
+    private static final int TESELAS_POR_GRUPO = 8;
+    // Solicitudes pendientes que se conservan; al desplazar rápido se descartan las viejas
+    private static final int MAX_SOLICITUDES = 8;
+    private static final double MIN_MS_POR_PIXEL = 0.5;
+    private static final double ZOOM_POR_PASO = 1.25;
+    private static final int MARGEN = 24;
+    private static final long[] PASOS_MS = {
+        10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10_000, 15_000, 30_000, 60_000, 120_000, 300_000,
+        600_000, 900_000, 1_800_000, 3_600_000, 7_200_000, 10_800_000, 21_600_000
+    };
+    private static final DateTimeFormatter HORA = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter HORA_MS = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private static final DateTimeFormatter FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final Color COLOR_GRAFICO = new Color(15, 18, 25);
+    private static final Color COLOR_LINEA = new Color(0, 200, 100);
+    private static final Color COLOR_GRID = new Color(40, 45, 55);
+    private static final Color COLOR_TEXTO = new Color(100, 150, 200);
+    private static final Color COLOR_FUERA = new Color(25, 28, 36);
+    private static final BasicStroke TRAZO_SENAL = new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final Histograma CUADRO = MetricasECG.global().latencia("vista.registro_cuadro");
+    // Marca una tesela consultada que no existe en la base (hueco sin señal)
+    private static final PiramideECG.Tesela VACIA = new PiramideECG.Tesela(0, -1);
+
+    /**
+     * Origen de los datos (lo implementa ModeloECG sobre DatabaseManager)
+     */
+    public interface Fuente {
+        long[] obtenerExtensionSesion(int idSesion);
+
+        boolean tieneResumen(int idSesion);
+
+        int reconstruirResumen(int idSesion);
+
+        List<PiramideECG.Tesela> obtenerTeselas(int idSesion, int nivel, long desde, long hasta);
+
+        List<BloqueECG> obtenerBloquesSesion(int idSesion, long desdeMs, long hastaMs);
+    }
+
+    private final Fuente fuente;
+    private final ExecutorService cargador;
+
+    // Sólo EDT
+    private int idSesion = -1;
+    private int generacion;
+    private long inicioSesion;
+    private long finSesion;
+    private double desdeMs;
+    private double msPorPixel = 1000;
+    private String estado = "Selecciona una sesión";
+    private final Map<Long, PiramideECG.Tesela> teselas = new LinkedHashMap<>(MAX_TESELAS_CACHE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PiramideECG.Tesela> mayor) {
+            return size() > MAX_TESELAS_CACHE;
+        }
+    };
+    private final Map<Long, List<BloqueECG>> paginasCrudas = new LinkedHashMap<>(MAX_PAGINAS_CRUDAS, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<BloqueECG>> mayor) {
+            return size() > MAX_PAGINAS_CRUDAS;
+        }
+    };
+    private final Set<String> enCurso = new HashSet<>();
+    private int arrastreX = -1;
+
+    // Columnas y polilínea reutilizadas entre cuadros
+    private float[] columnasMin = new float[0];
+    private float[] columnasMax = new float[0];
+    private int[] puntosX = new int[0];
+    private int[] puntosY = new int[0];
+    private double[] valores = new double[0];
+    private double[] muestras = new double[0];
+    private long cubetasLeidas;
+
+    // Compartido con el cargador (protegido por sí mismo)
+    private final ArrayDeque<Runnable> solicitudes = new ArrayDeque<>();
+
+    private volatile boolean cerrado;
+
+    public VisorRegistroECG(Fuente fuente) {
+        this.fuente = fuente;
+        this.cargador = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "registro-ecg");
+            t.setDaemon(true);
+            return t;
+        });
+        setBackground(COLOR_GRAFICO);
+        setOpaque(true);
+        setFocusable(true);
+        instalarControles();
+    }
+
+    /**
+     * Detiene el cargador; las consultas en vuelo se descartan
+     */
+    public void cerrar() {
+        cerrado = true;
+        cargador.shutdownNow();
+    }
+
+    // ============================================
+    // SESIÓN Y VENTANA (EDT)
+    // ============================================
+
+    /**
+     * Carga la extensión de la sesión y la muestra completa. Si la sesión se
+     * grabó antes de Resumen_ECG, primero se construye su pirámide
+     */
+    public void mostrarSesion(int idSesion) {
+        this.idSesion = idSesion;
+        int gen = ++generacion;
+        teselas.clear();
+        paginasCrudas.clear();
+        enCurso.clear();
+        synchronized (solicitudes) {
+            solicitudes.clear();
+        }
+        estado = "Cargando sesión " + idSesion + "…";
+        repaint();
+        cargador.execute(() -> {
+            long[] extension = fuente.obtenerExtensionSesion(idSesion);
+            if (extension != null && !fuente.tieneResumen(idSesion)) {
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generacion) return;
+                    estado = "Construyendo resumen de la sesión " + idSesion + "…";
+                    repaint();
+                });
+                fuente.reconstruirResumen(idSesion);
+            }
+            SwingUtilities.invokeLater(() -> sesionCargada(gen, extension));
+        });
+    }
+
+    private void sesionCargada(int gen, long[] extension) {
+        if (cerrado || gen != generacion) return;
+        if (extension == null) {
+            estado = "La sesión " + idSesion + " no tiene señal grabada";
+            finSesion = inicioSesion = 0;
+            repaint();
+            return;
+        }
+        estado = null;
+        inicioSesion = extension[0];
+        finSesion = extension[1];
+        verTodo();
+    }
+
+    public void verTodo() {
+        int ancho = Math.max(1, getWidth());
+        setVentana(inicioSesion, finSesion > inicioSesion ? finSesion : inicioSesion + ancho);
+    }
+
+    /** Muestra [desdeMs, hastaMs) a lo ancho del panel */
+    public void setVentana(double desdeMs, double hastaMs) {
+        int ancho = Math.max(1, getWidth());
+        this.msPorPixel = (hastaMs - desdeMs) / ancho;
+        this.desdeMs = desdeMs;
+        limitar();
+        repaint();
+    }
+
+    private void zoom(int x, double factor) {
+        double instante = desdeMs + x * msPorPixel;
+        msPorPixel *= factor;
+        limitar();
+        // El instante bajo el cursor se queda bajo el cursor
+        desdeMs = instante - x * msPorPixel;
+        limitar();
+        repaint();
+    }
+
+    private void desplazar(double pixeles) {
+        desdeMs += pixeles * msPorPixel;
+        limitar();
+        repaint();
+    }
+
+    private void limitar() {
+        int ancho = Math.max(1, getWidth());
+        double maximo = Math.max(MIN_MS_POR_PIXEL, (finSesion - inicioSesion) * 1.05 / ancho);
+        msPorPixel = Math.max(MIN_MS_POR_PIXEL, Math.min(maximo, msPorPixel));
+        // Siempre queda al menos media pantalla de sesión a la vista
+        double mitad = ancho * msPorPixel / 2;
+        desdeMs = Math.max(inicioSesion - mitad, Math.min(finSesion - mitad, desdeMs));
+    }
+
+    public int getIdSesion() { return idSesion; }
+    public double getDesdeMs() { return desdeMs; }
+    public double getMsPorPixel() { return msPorPixel; }
+    public int getNivel() { return PiramideECG.nivelPara(msPorPixel); }
+    /** Cubetas de resumen consultadas al pintar el último cuadro */
+    public long getCubetasLeidas() { return cubetasLeidas; }
+    /** Consultas pendientes o en curso; 0 cuando todo lo visible está cargado */
+    public int getCargasPendientes() { return enCurso.size(); }
+
+    private void instalarControles() {
+        MouseAdapter raton = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                requestFocusInWindow();
+                arrastreX = e.getX();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (arrastreX < 0) return;
+                desplazar(arrastreX - e.getX());
+                arrastreX = e.getX();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                arrastreX = -1;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(e.getX(), Math.pow(ZOOM_POR_PASO, e.getPreciseWheelRotation()));
+            }
+        };
+        addMouseListener(raton);
+        addMouseMotionListener(raton);
+        addMouseWheelListener(raton);
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_LEFT: desplazar(-getWidth() / 4.0); break;
+                    case KeyEvent.VK_RIGHT: desplazar(getWidth() / 4.0); break;
+                    case KeyEvent.VK_PLUS: case KeyEvent.VK_ADD: case KeyEvent.VK_EQUALS: zoom(getWidth() / 2, 1 / 2.0); break;
+                    case KeyEvent.VK_MINUS: case KeyEvent.VK_SUBTRACT: zoom(getWidth() / 2, 2.0); break;
+                    case KeyEvent.VK_HOME: verTodo(); break;
+                    default: break;
+                }
+            }
+        });
+    }
+
+    // ============================================
+    // DIBUJO (EDT)
+    // ============================================
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long inicio = System.nanoTime();
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        int ancho = getWidth();
+        int alto = getHeight();
+        g2d.setFont(new Font("Courier New", Font.PLAIN, 11));
+        if (estado != null || ancho <= 0) {
+            g2d.setColor(COLOR_TEXTO);
+            if (estado != null) g2d.drawString(estado, MARGEN, MARGEN);
+            return;
+        }
+        if (columnasMin.length < ancho) {
+            columnasMin = new float[ancho];
+            columnasMax = new float[ancho];
+        }
+        cubetasLeidas = 0;
+        int nivel = PiramideECG.nivelPara(msPorPixel);
+        dibujarFondo(g2d, ancho, alto);
+
+        int puntos = 0;
+        if (nivel >= 0) {
+            for (int x = 0; x < ancho; x++) {
+                columna(nivel, x, (long) Math.floor(desdeMs + x * msPorPixel), (long) Math.floor(desdeMs + (x + 1) * msPorPixel));
+            }
+        } else {
+            puntos = leerCrudo(ancho);
+        }
+        double[] rango = rangoVertical(ancho, puntos);
+        double vMin = rango[0];
+        double escala = (alto - 2.0 * MARGEN) / (rango[1] - rango[0]);
+
+        g2d.setColor(COLOR_LINEA);
+        for (int x = 0; x < ancho; x++) {
+            if (Float.isNaN(columnasMin[x])) continue;
+            int yMax = (int) (alto - MARGEN - (columnasMax[x] - vMin) * escala);
+            int yMin = (int) (alto - MARGEN - (columnasMin[x] - vMin) * escala);
+            g2d.fillRect(x, yMax, 1, Math.max(1, yMin - yMax + 1));
+        }
+        if (puntos > 0) dibujarCrudo(g2d, puntos, alto, vMin, escala);
+        dibujarRotulos(g2d, nivel, ancho);
+        if (nivel >= 0) anticipar(nivel, ancho);
+        CUADRO.registrarDesde(inicio);
+    }
+
+    private void dibujarFondo(Graphics2D g2d, int ancho, int alto) {
+        // Fuera de la sesión
+        int xInicio = (int) ((inicioSesion - desdeMs) / msPorPixel);
+        int xFin = (int) ((finSesion - desdeMs) / msPorPixel);
+        g2d.setColor(COLOR_FUERA);
+        if (xInicio > 0) g2d.fillRect(0, 0, xInicio, alto);
+        if (xFin < ancho) g2d.fillRect(Math.max(0, xFin), 0, ancho - Math.max(0, xFin), alto);
+
+        // Líneas verticales en pasos de tiempo redondos, a unos 100 px
+        long paso = PASOS_MS[PASOS_MS.length - 1];
+        for (long p : PASOS_MS) {
+            if (p / msPorPixel >= 100) {
+                paso = p;
+                break;
+            }
+        }
+        DateTimeFormatter formato = paso < 1000 ? HORA_MS : HORA;
+        long primera = Math.floorDiv((long) desdeMs, paso) * paso + paso;
+        for (long t = primera; t < desdeMs + ancho * msPorPixel; t += paso) {
+            int x = (int) ((t - desdeMs) / msPorPixel);
+            g2d.setColor(COLOR_GRID);
+            g2d.drawLine(x, 0, x, alto);
+            g2d.setColor(COLOR_TEXTO);
+            g2d.drawString(formato.format(Instant.ofEpochMilli(t).atZone(ZoneId.systemDefault())), x + 3, alto - 6);
+        }
+    }
+
+    private void dibujarRotulos(Graphics2D g2d, int nivel, int ancho) {
+        double ventana = ancho * msPorPixel;
+        String detalle = nivel >= 0
+            ? String.format(Locale.ROOT, "nivel %d (%s por cubeta)", nivel, duracion(PiramideECG.anchoCubeta(nivel)))
+            : "señal cruda";
+        String texto = String.format(Locale.ROOT, "Sesión %d · %s · ventana %s · %s%s",
+            idSesion, FECHA.format(Instant.ofEpochMilli((long) desdeMs).atZone(ZoneId.systemDefault())),
+            duracion((long) ventana), detalle, enCurso.isEmpty() ? "" : " · cargando…");
+        g2d.setColor(COLOR_TEXTO);
+        g2d.drawString(texto, 8, 14);
+    }
+
+    private static String duracion(long ms) {
+        if (ms < 1000) return ms + " ms";
+        if (ms < 60_000) return String.format(Locale.ROOT, "%.1f s", ms / 1000.0);
+        if (ms < 3_600_000) return String.format(Locale.ROOT, "%d min %d s", ms / 60_000, ms / 1000 % 60);
+        return String.format(Locale.ROOT, "%d h %d min", ms / 3_600_000, ms / 60_000 % 60);
+    }
+
+    /**
+     * Mínimo y máximo de la columna x según la pirámide; si el nivel pedido
+     * aún no llegó se usa el más grueso que esté en caché
+     */
+    private void columna(int nivel, int x, long t0, long t1) {
+        columnasMin[x] = Float.NaN;
+        if (t1 <= inicioSesion || t0 >= finSesion || t1 <= t0) return;
+        for (int n = nivel; n < PiramideECG.NIVELES; n++) {
+            if (columnaDesdeNivel(n, t0, t1, x, n == nivel)) return;
+        }
+    }
+
+    /** @return false si falta alguna tesela del nivel */
+    private boolean columnaDesdeNivel(int nivel, long t0, long t1, int x, boolean pedir) {
+        long ancho = PiramideECG.anchoCubeta(nivel);
+        long primera = Math.floorDiv(t0, ancho);
+        long ultima = Math.floorDiv(t1 - 1, ancho);
+        float min = Float.NaN;
+        float max = Float.NaN;
+        PiramideECG.Tesela t = null;
+        for (long c = primera; c <= ultima; c++) {
+            long indice = Math.floorDiv(c, PiramideECG.CUBETAS_POR_TESELA);
+            if (t == null || t.getIndice() != indice) {
+                t = teselas.get(clave(nivel, indice));
+                if (t == null) {
+                    if (pedir) pedirTeselas(nivel, indice, true);
+                    return false;
+                }
+                if (t == VACIA) {
+                    // Saltar el resto de la tesela vacía
+                    c = (indice + 1) * PiramideECG.CUBETAS_POR_TESELA - 1;
+                    t = null;
+                    continue;
+                }
+            }
+            int i = (int) (c - indice * PiramideECG.CUBETAS_POR_TESELA);
+            cubetasLeidas++;
+            if (!t.tieneDatos(i)) continue;
+            if (Float.isNaN(min) || t.getMinimo(i) < min) min = t.getMinimo(i);
+            if (Float.isNaN(max) || t.getMaximo(i) > max) max = t.getMaximo(i);
+        }
+        columnasMin[x] = min;
+        columnasMax[x] = max;
+        return true;
+    }
+
+    /**
+     * Junta las muestras crudas visibles en valores/puntosX; las páginas que
+     * faltan se piden y sus columnas se llenan desde el nivel 0
+     * @return número de puntos (un punto con x negativa corta la polilínea)
+     */
+    private int leerCrudo(int ancho) {
+        Arrays.fill(columnasMin, 0, ancho, Float.NaN);
+        double hastaMs = desdeMs + ancho * msPorPixel;
+        long primera = Math.floorDiv((long) Math.floor(Math.max(desdeMs, inicioSesion)), PAGINA_CRUDA_MS);
+        long ultima = Math.floorDiv((long) Math.ceil(Math.min(hastaMs, finSesion)) - 1, PAGINA_CRUDA_MS);
+        int k = 0;
+        long finAnterior = Long.MIN_VALUE;
+        for (long p = primera; p <= ultima; p++) {
+            List<BloqueECG> pagina = paginasCrudas.get(p);
+            if (pagina == null) {
+                pedirPaginaCruda(p);
+                // Mientras tanto, mínimo/máximo del nivel 0 en las columnas de la página
+                int x0 = Math.max(0, (int) ((p * PAGINA_CRUDA_MS - desdeMs) / msPorPixel));
+                int x1 = Math.min(ancho, (int) Math.ceil(((p + 1) * PAGINA_CRUDA_MS - desdeMs) / msPorPixel));
+                for (int x = x0; x < x1; x++) {
+                    long t0 = (long) Math.floor(desdeMs + x * msPorPixel);
+                    long t1 = Math.max(t0 + PiramideECG.ANCHO_BASE_MS, (long) Math.floor(desdeMs + (x + 1) * msPorPixel));
+                    columna(0, x, t0, t1);
+                }
+                finAnterior = Long.MIN_VALUE;
+                continue;
+            }
+            for (BloqueECG b : pagina) {
+                int n = b.getNumMuestras();
+                if (b.getFinMs() < desdeMs || b.getInicioMs() > hastaMs) continue;
+                // El bloque que cruza el borde de página viene en las dos
+                if (finAnterior != Long.MIN_VALUE && b.getInicioMs() < finAnterior) continue;
+                if (muestras.length < n) muestras = new double[n];
+                if (puntosX.length < k + n + 1) {
+                    int capacidad = Math.max(2 * puntosX.length, k + n + 1);
+                    puntosX = Arrays.copyOf(puntosX, capacidad);
+                    puntosY = Arrays.copyOf(puntosY, capacidad);
+                    valores = Arrays.copyOf(valores, capacidad);
+                }
+                // Un hueco de más de un bloque corta la traza
+                if (finAnterior != Long.MIN_VALUE && b.getInicioMs() - finAnterior > BloqueECG.SEGUNDOS_BLOQUE * 1000L) {
+                    puntosX[k++] = -1;
+                }
+                b.descomprimir(muestras, 0);
+                for (int i = 0; i < n; i++) {
+                    puntosX[k] = (int) Math.round((b.instanteMuestra(i) - desdeMs) / msPorPixel);
+                    valores[k++] = muestras[i];
+                }
+                finAnterior = b.getFinMs();
+            }
+        }
+        return k;
+    }
+
+    private double[] rangoVertical(int ancho, int puntos) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int x = 0; x < ancho; x++) {
+            if (Float.isNaN(columnasMin[x])) continue;
+            min = Math.min(min, columnasMin[x]);
+            max = Math.max(max, columnasMax[x]);
+        }
+        for (int i = 0; i < puntos; i++) {
+            if (puntosX[i] < 0 || puntosX[i] >= ancho) continue;
+            min = Math.min(min, valores[i]);
+            max = Math.max(max, valores[i]);
+        }
+        if (min > max) return new double[] {-1, 1};
+        if (max - min < 1e-9) return new double[] {min - 1, max + 1};
+        return new double[] {min, max};
+    }
+
+    private void dibujarCrudo(Graphics2D g2d, int puntos, int alto, double vMin, double escala) {
+        for (int i = 0; i < puntos; i++) {
+            if (puntosX[i] >= 0) puntosY[i] = (int) (alto - MARGEN - (valores[i] - vMin) * escala);
+        }
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setStroke(TRAZO_SENAL);
+        int inicioTramo = 0;
+        for (int i = 0; i <= puntos; i++) {
+            if (i == puntos || puntosX[i] < 0) {
+                int n = i - inicioTramo;
+                if (n > 1) {
+                    g2d.drawPolyline(Arrays.copyOfRange(puntosX, inicioTramo, i), Arrays.copyOfRange(puntosY, inicioTramo, i), n);
+                }
+                inicioTramo = i + 1;
+            }
+        }
+    }
+
+    // ============================================
+    // CARGA PROGRESIVA
+    // ============================================
+
+    private static long clave(int nivel, long indice) {
+        return indice * PiramideECG.NIVELES + nivel;
+    }
+
+    /**
+     * Pide el grupo de teselas vecinas de una pantalla a cada lado del nivel
+     * visible, para que el desplazamiento encuentre los datos ya cargados
+     */
+    private void anticipar(int nivel, int ancho) {
+        long anchoTesela = PiramideECG.anchoTesela(nivel);
+        double ventana = ancho * msPorPixel;
+        for (double t : new double[] {desdeMs - ventana, desdeMs + 2 * ventana}) {
+            if (t < inicioSesion || t >= finSesion) continue;
+            long indice = Math.floorDiv((long) t, anchoTesela);
+            if (!teselas.containsKey(clave(nivel, indice))) pedirTeselas(nivel, indice, false);
+        }
+    }
+
+    private void pedirTeselas(int nivel, long indice, boolean visible) {
+        long grupo = Math.floorDiv(indice, TESELAS_POR_GRUPO);
+        String clave = "t" + nivel + ":" + grupo;
+        if (cerrado || !enCurso.add(clave)) return;
+        int gen = generacion;
+        int sesion = idSesion;
+        encolar(clave, visible, () -> {
+            long desde = grupo * TESELAS_POR_GRUPO;
+            List<PiramideECG.Tesela> leidas = fuente.obtenerTeselas(sesion, nivel, desde, desde + TESELAS_POR_GRUPO - 1);
+            SwingUtilities.invokeLater(() -> {
+                enCurso.remove(clave);
+                if (cerrado || gen != generacion) return;
+                // Las que no volvieron no tienen señal
+                for (long i = desde; i < desde + TESELAS_POR_GRUPO; i++) teselas.put(clave(nivel, i), VACIA);
+                for (PiramideECG.Tesela t : leidas) teselas.put(clave(nivel, t.getIndice()), t);
+                repaint();
+            });
+        });
+    }
+
+    private void pedirPaginaCruda(long pagina) {
+        String clave = "c" + pagina;
+        if (cerrado || !enCurso.add(clave)) return;
+        int gen = generacion;
+        int sesion = idSesion;
+        encolar(clave, true, () -> {
+            List<BloqueECG> bloques = fuente.obtenerBloquesSesion(sesion, pagina * PAGINA_CRUDA_MS, (pagina + 1) * PAGINA_CRUDA_MS);
+            SwingUtilities.invokeLater(() -> {
+                enCurso.remove(clave);
+                if (cerrado || gen != generacion) return;
+                paginasCrudas.put(pagina, bloques);
+                repaint();
+            });
+        });
+    }
+
+    /**
+     * Lo visible se atiende primero (la última pedida antes); si se acumulan
+     * demasiadas solicitudes se descartan las más viejas
+     */
+    private void encolar(String clave, boolean visible, Runnable consulta) {
+        Runnable solicitud = new Runnable() {
+            @Override
+            public void run() {
+                consulta.run();
+            }
+
+            @Override
+            public String toString() {
+                return clave;
+            }
+        };
+        synchronized (solicitudes) {
+            if (visible) solicitudes.addFirst(solicitud); else solicitudes.addLast(solicitud);
+            while (solicitudes.size() > MAX_SOLICITUDES) {
+                enCurso.remove(solicitudes.removeLast().toString());
+            }
+        }
+        cargador.execute(this::atenderSolicitud);
+    }
+
+    private void atenderSolicitud() {
+        Runnable solicitud;
+        synchronized (solicitudes) {
+            solicitud = solicitudes.pollFirst();
+        }
+        if (solicitud == null || cerrado) return;
+        solicitud.run();
+    }
+}
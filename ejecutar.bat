@@ -25,7 +25,7 @@ if not exist "slf4j-api.jar" (
 )
 
 echo [1/2] Compilando sistema...
-javac -encoding UTF-8 -cp ".;sqlite-jdbc.jar" SistemaECG.java DatabaseManager.java
+javac -encoding UTF-8 -cp ".;sqlite-jdbc.jar" *.java
 
 if %errorlevel% neq 0 (
     echo.
@@ -24,7 +24,7 @@ if (-not (Test-Path "slf4j-api.jar")) {
 }
 
 Write-Host "[1/2] Compilando sistema..." -ForegroundColor Yellow
-javac -encoding UTF-8 -cp ".;sqlite-jdbc.jar" SistemaECG.java DatabaseManager.java
+javac -encoding UTF-8 -cp ".;sqlite-jdbc.jar" *.java
 
 if ($LASTEXITCODE -ne 0) {
     Write-Host ""
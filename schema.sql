@@ -33,13 +33,15 @@ CREATE TABLE IF NOT EXISTS Paciente (
 -- TABLA: Sesion_Monitoreo
 -- Registra sesiones de monitoreo ECG
 -- Separada de Paciente para evitar redundancia (3FN)
+-- estado: ACTIVA (en vivo), IMPORTANDO (ImportadorECG en curso, o interrumpido
+-- si no pasa a FINALIZADA), FINALIZADA o CANCELADA
 -- ============================================
 CREATE TABLE IF NOT EXISTS Sesion_Monitoreo (
     id_sesion INTEGER PRIMARY KEY AUTOINCREMENT,
     id_paciente INTEGER NOT NULL,
     fecha_inicio TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     fecha_fin TIMESTAMP NULL,
-    estado VARCHAR(20) DEFAULT 'ACTIVA' CHECK (estado IN ('ACTIVA', 'FINALIZADA', 'CANCELADA')),
+    estado VARCHAR(20) DEFAULT 'ACTIVA' CHECK (estado IN ('ACTIVA', 'IMPORTANDO', 'FINALIZADA', 'CANCELADA')),
     notas TEXT,
     FOREIGN KEY (id_paciente) REFERENCES Paciente(id_paciente) ON DELETE CASCADE
 );
@@ -57,6 +59,41 @@ CREATE TABLE IF NOT EXISTS Lectura_ECG (
     FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
 );
 
+-- ============================================
+-- TABLA: Bloque_ECG
+-- Señal continua en bloques de 1 segundo comprimidos (delta + zigzag + varint)
+-- inicio_ms: instante de la primera muestra (ms desde época, UTC)
+-- valor = entero decodificado * escala
+-- ============================================
+CREATE TABLE IF NOT EXISTS Bloque_ECG (
+    id_bloque INTEGER PRIMARY KEY AUTOINCREMENT,
+    id_sesion INTEGER NOT NULL,
+    inicio_ms INTEGER NOT NULL,
+    frecuencia INTEGER NOT NULL CHECK (frecuencia > 0),
+    num_muestras INTEGER NOT NULL CHECK (num_muestras > 0),
+    escala REAL NOT NULL,
+    valor_min DECIMAL(10,4),
+    valor_max DECIMAL(10,4),
+    datos BLOB NOT NULL,
+    FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
+);
+
+-- ============================================
+-- TABLA: Resumen_ECG
+-- Pirámide de mínimos/máximos de la señal para pintar rangos largos (PiramideECG)
+-- nivel 0: cubetas de 80 ms; cada nivel siguiente es 4 veces más ancho
+-- indice: número de tesela de 256 cubetas dentro del nivel
+-- Datos derivados de Bloque_ECG (redundancia deliberada)
+-- ============================================
+CREATE TABLE IF NOT EXISTS Resumen_ECG (
+    id_sesion INTEGER NOT NULL,
+    nivel INTEGER NOT NULL CHECK (nivel >= 0),
+    indice INTEGER NOT NULL,
+    datos BLOB NOT NULL,
+    PRIMARY KEY (id_sesion, nivel, indice),
+    FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
+) WITHOUT ROWID;
+
 -- ============================================
 -- TABLA: Tipo_Evento
 -- Catálogo de tipos de eventos (3FN - tabla de referencia)
@@ -72,13 +109,20 @@ CREATE TABLE IF NOT EXISTS Tipo_Evento (
 -- TABLA: Evento_Detectado
 -- Registra eventos anormales detectados
 -- Cumple con 3FN: no hay dependencias transitivas
+-- (id_sesion, instante_ms): sesión e instante de la onda R (ms desde época, UTC),
+-- sobre la misma línea de tiempo que Bloque_ECG
+-- id_lectura: sólo en eventos de datos anteriores a Bloque_ECG
 -- ============================================
 CREATE TABLE IF NOT EXISTS Evento_Detectado (
     id_evento INTEGER PRIMARY KEY AUTOINCREMENT,
-    id_lectura INTEGER NOT NULL,
+    id_sesion INTEGER,
+    instante_ms INTEGER,
+    id_lectura INTEGER NULL,
     id_tipo_evento INTEGER NOT NULL,
     descripcion TEXT,
     timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CHECK (id_lectura IS NOT NULL OR (id_sesion IS NOT NULL AND instante_ms IS NOT NULL)),
+    FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE,
     FOREIGN KEY (id_lectura) REFERENCES Lectura_ECG(id_lectura) ON DELETE CASCADE,
     FOREIGN KEY (id_tipo_evento) REFERENCES Tipo_Evento(id_tipo_evento)
 );
@@ -98,6 +142,33 @@ CREATE TABLE IF NOT EXISTS Calculo_BPM (
     FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
 );
 
+-- ============================================
+-- TABLA: Calculo_VFC
+-- Variabilidad de la frecuencia cardíaca cada minuto de señal (MotorVFC)
+-- instante_ms: instante de la señal al que corresponde la ventana (ms desde época, UTC)
+-- rr_medio, sdnn, rmssd, sd1, sd2 en ms; pnn50 en %; lf, hf en ms²
+-- lf, hf y lf_hf quedan NULL si la ventana es corta o se omitió el espectro
+-- ============================================
+CREATE TABLE IF NOT EXISTS Calculo_VFC (
+    id_calculo INTEGER PRIMARY KEY AUTOINCREMENT,
+    id_sesion INTEGER NOT NULL,
+    instante_ms INTEGER NOT NULL,
+    ventana_segundos REAL NOT NULL CHECK (ventana_segundos > 0),
+    num_nn INTEGER NOT NULL CHECK (num_nn >= 0),
+    rr_descartados INTEGER NOT NULL CHECK (rr_descartados >= 0),
+    rr_medio REAL,
+    sdnn REAL,
+    rmssd REAL,
+    pnn50 REAL,
+    sd1 REAL,
+    sd2 REAL,
+    lf REAL,
+    hf REAL,
+    lf_hf REAL,
+    timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (id_sesion) REFERENCES Sesion_Monitoreo(id_sesion) ON DELETE CASCADE
+);
+
 -- ============================================
 -- TABLA: Configuracion_MQTT
 -- Configuraciones de conexión MQTT
@@ -130,10 +201,15 @@ CREATE TABLE IF NOT EXISTS Historial_Motor (
 -- ============================================
 CREATE INDEX IF NOT EXISTS idx_lectura_sesion ON Lectura_ECG(id_sesion);
 CREATE INDEX IF NOT EXISTS idx_lectura_timestamp ON Lectura_ECG(timestamp);
+-- Índice cubriente para la paginación por (id_sesion, id_lectura)
+CREATE INDEX IF NOT EXISTS idx_lectura_sesion_cubre ON Lectura_ECG(id_sesion, id_lectura, timestamp, valor_senal);
+CREATE INDEX IF NOT EXISTS idx_bloque_sesion_inicio ON Bloque_ECG(id_sesion, inicio_ms);
 CREATE INDEX IF NOT EXISTS idx_evento_lectura ON Evento_Detectado(id_lectura);
+CREATE INDEX IF NOT EXISTS idx_evento_sesion_instante ON Evento_Detectado(id_sesion, instante_ms);
 CREATE INDEX IF NOT EXISTS idx_sesion_paciente ON Sesion_Monitoreo(id_paciente);
 CREATE INDEX IF NOT EXISTS idx_sesion_estado ON Sesion_Monitoreo(estado);
 CREATE INDEX IF NOT EXISTS idx_bpm_sesion ON Calculo_BPM(id_sesion);
+CREATE INDEX IF NOT EXISTS idx_vfc_sesion_instante ON Calculo_VFC(id_sesion, instante_ms);
 
 -- ============================================
 -- DATOS INICIALES - Tipos de Eventos